@@ -0,0 +1,92 @@
+//***************************************************************************
+//*  Copyright 2016 Joseph Molnar
+//*
+//*  Licensed under the Apache License, Version 2.0 (the "License");
+//*  you may not use this file except in compliance with the License.
+//*  You may obtain a copy of the License at
+//*
+//*      http://www.apache.org/licenses/LICENSE-2.0
+//*
+//*  Unless required by applicable law or agreed to in writing, software
+//*  distributed under the License is distributed on an "AS IS" BASIS,
+//*  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//*  See the License for the specific language governing permissions and
+//*  limitations under the License.
+//***************************************************************************
+package com.talvish.tales.rigs.configuration.client;
+
+import java.util.List;
+
+import com.talvish.tales.contracts.data.DataContract;
+import com.talvish.tales.contracts.data.DataMember;
+
+/**
+ * The settings for one profile and block returned when asking for the 
+ * settings of several blocks at once, along with the version and entity
+ * tag that would be returned when asking for the block on its own.
+ * @author jmolnar
+ *
+ */
+@DataContract( name="com.talvish.tales.configuration.block_settings")
+public class BlockSettingsResult {
+	@DataMember( name="profile" )
+	private String profile;
+	
+	@DataMember( name="block" )
+	private String block;
+	
+	@DataMember( name="version" )
+	private long version;
+	
+	@DataMember( name="entity_tag" )
+	private String entityTag;
+	
+	@DataMember( name="settings" )
+	private List<Setting> settings;
+	
+	/**
+	 * A simple constructor needed for serialization.
+	 */
+	protected BlockSettingsResult( ) {
+	}
+	
+	/**
+	 * The name of the profile the settings are for.
+	 * @return the profile name
+	 */
+	public String getProfile( ) {
+		return profile;
+	}
+	
+	/**
+	 * The name of the block the settings are for.
+	 * @return the block name
+	 */
+	public String getBlock( ) {
+		return block;
+	}
+	
+	/**
+	 * The version in which the settings last changed.
+	 * @return the version
+	 */
+	public long getVersion( ) {
+		return version;
+	}
+	
+	/**
+	 * The entity tag for the settings.
+	 * @return the entity tag
+	 */
+	public String getEntityTag( ) {
+		return entityTag;
+	}
+	
+	/**
+	 * The settings, ordered by name.
+	 * @return the settings
+	 */
+	public List<Setting> getSettings( ) {
+		return settings;
+	}
+}
@@ -21,6 +21,7 @@ import com.google.common.base.Strings;
 
 import com.talvish.tales.client.http.ResourceClient;
 import com.talvish.tales.client.http.ResourceMethod;
+import com.talvish.tales.client.http.ResourceRequest;
 import com.talvish.tales.client.http.ResourceResult;
 import com.talvish.tales.communication.HttpVerb;
 import com.talvish.tales.parts.reflection.TypeUtility;
@@ -32,8 +33,20 @@ import com.talvish.tales.validation.Conditions;
 *
 */
 public class ConfigurationClient extends ResourceClient {
+	private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+	private static final String ACCEPT_ENCODING_HEADER = "Accept-Encoding";
+	private static final String GZIP_ENCODING = "gzip";
+	// not 'version', which requests already use for the contract version
+	private static final String SETTINGS_VERSION_PARAMETER = "settings_version";
+	
+	private final boolean acceptCompression;
+
     @SuppressWarnings("unused")
 	private static List<Setting> settingTypes; // this is for reflection to pick up to get all type information
+    @SuppressWarnings("unused")
+	private static List<BlockReference> blockReferenceTypes; // this is for reflection to pick up to get all type information
+    @SuppressWarnings("unused")
+	private static List<String> nameTypes; // this is for reflection to pick up to get all type information
  
  
     /**
@@ -43,14 +56,45 @@ public class ConfigurationClient extends ResourceClient {
      */
 	public ConfigurationClient( ConfigurationConfiguration theConfiguration, String theUserAgent ) {
 		super( theConfiguration, "/configuration", "20160701", theUserAgent ); 
+		acceptCompression = theConfiguration.shouldAcceptCompression( );
  
 		// we now define the methods that we are going to expose for calling
-		this.methods = new ResourceMethod[ 1 ];
+		this.methods = new ResourceMethod[ 6 ];
 		
 		this.methods[ 0 ] = this.defineMethod( "get_settings", TypeUtility.extractFieldType( this.getClass( ), "settingTypes" ), HttpVerb.GET, "settings" )
 				.defineQueryParameter( "profile", String.class )
-				.defineQueryParameter( "block", String.class );
+				.defineQueryParameter( "block", String.class )
+				.defineHeaderParameter( IF_NONE_MATCH_HEADER, String.class )
+				.defineHeaderParameter( ACCEPT_ENCODING_HEADER, String.class );
+
+		this.methods[ 1 ] = this.defineMethod( "wait_for_settings", TypeUtility.extractFieldType( this.getClass( ), "settingTypes" ), HttpVerb.GET, "settings/changes" )
+				.defineQueryParameter( "profile", String.class )
+				.defineQueryParameter( "block", String.class )
+				.defineQueryParameter( SETTINGS_VERSION_PARAMETER, Long.class )
+				.defineHeaderParameter( IF_NONE_MATCH_HEADER, String.class )
+				.defineHeaderParameter( ACCEPT_ENCODING_HEADER, String.class );
+
+		this.methods[ 2 ] = this.defineMethod( "get_settings_delta", SettingsDelta.class, HttpVerb.GET, "settings/delta" )
+				.defineQueryParameter( "profile", String.class )
+				.defineQueryParameter( "block", String.class )
+				.defineQueryParameter( SETTINGS_VERSION_PARAMETER, Long.class )
+				.defineHeaderParameter( IF_NONE_MATCH_HEADER, String.class )
+				.defineHeaderParameter( ACCEPT_ENCODING_HEADER, String.class );
+
+		this.methods[ 3 ] = this.defineMethod( "get_settings_batch", SettingsBatch.class, HttpVerb.POST, "settings/batch" )
+				.defineBodyParameter( "blocks", TypeUtility.extractFieldType( this.getClass( ), "blockReferenceTypes" ) )
+				.defineHeaderParameter( ACCEPT_ENCODING_HEADER, String.class );
+
+		this.methods[ 4 ] = this.defineMethod( "get_setting", Setting.class, HttpVerb.GET, "setting" )
+				.defineQueryParameter( "profile", String.class )
+				.defineQueryParameter( "block", String.class )
+				.defineQueryParameter( "name", String.class );
 
+		this.methods[ 5 ] = this.defineMethod( "get_named_settings", TypeUtility.extractFieldType( this.getClass( ), "settingTypes" ), HttpVerb.POST, "settings/named" )
+				.defineBodyParameter( "profile", String.class )
+				.defineBodyParameter( "block", String.class )
+				.defineBodyParameter( "names", TypeUtility.extractFieldType( this.getClass( ), "nameTypes" ) )
+				.defineHeaderParameter( ACCEPT_ENCODING_HEADER, String.class );
 	}
 	
 	/**
@@ -62,11 +106,157 @@ public class ConfigurationClient extends ResourceClient {
 		Conditions.checkParameter( !Strings.isNullOrEmpty( theProfile ), "a profile name must be given" );
 		Conditions.checkParameter( !Strings.isNullOrEmpty( theBlock ), "a block name must be given" );
 		
-		return this.createRequest( this.methods[ 0 ] )
+		return this.createSettingsRequest( this.methods[ 0 ] )
 				.setQueryParameter( "profile", theProfile )
 				.setQueryParameter( "block", theBlock )
 				.call();
 	}
-	
 
-}
\ No newline at end of file
+	/**
+	 * Returns the settings for a particular profile/block combination, unless they
+	 * haven't changed since the entity tag given was returned, in which case the 
+	 * status is OPERATION_NOT_MODIFIED and no settings are returned.
+	 * @param theEntityTag the entity tag from a previous result, which may be null to always get the settings
+	 * @return the list of available settings
+	 * @throws InterruptedException thrown if the calling thread is interrupted
+	 */
+	public ResourceResult<List<Setting>> getSettings( String theProfile, String theBlock, String theEntityTag ) throws InterruptedException {
+		if( Strings.isNullOrEmpty( theEntityTag ) ) {
+			return getSettings( theProfile, theBlock );
+		} else {
+			Conditions.checkParameter( !Strings.isNullOrEmpty( theProfile ), "a profile name must be given" );
+			Conditions.checkParameter( !Strings.isNullOrEmpty( theBlock ), "a block name must be given" );
+			
+			return this.createSettingsRequest( this.methods[ 0 ] )
+					.setQueryParameter( "profile", theProfile )
+					.setQueryParameter( "block", theBlock )
+					.setHeaderParameter( IF_NONE_MATCH_HEADER, theEntityTag )
+					.call();
+		}
+	}
+
+	/**
+	 * Returns a single setting for a particular profile/block combination.
+	 * @param theName the name of the setting
+	 * @return the setting
+	 * @throws InterruptedException thrown if the calling thread is interrupted
+	 */
+	public ResourceResult<Setting> getSetting( String theProfile, String theBlock, String theName ) throws InterruptedException {
+		Conditions.checkParameter( !Strings.isNullOrEmpty( theProfile ), "a profile name must be given" );
+		Conditions.checkParameter( !Strings.isNullOrEmpty( theBlock ), "a block name must be given" );
+		Conditions.checkParameter( !Strings.isNullOrEmpty( theName ), "a setting name must be given" );
+		
+		return this.createRequest( this.methods[ 4 ] )
+				.setQueryParameter( "profile", theProfile )
+				.setQueryParameter( "block", theBlock )
+				.setQueryParameter( "name", theName )
+				.call();
+	}
+
+	/**
+	 * Returns the named settings for a particular profile/block combination. Names
+	 * without a setting are skipped, so missing settings are those not returned.
+	 * @param theNames the names of the settings
+	 * @return the settings found, in the order of the names
+	 * @throws InterruptedException thrown if the calling thread is interrupted
+	 */
+	public ResourceResult<List<Setting>> getNamedSettings( String theProfile, String theBlock, List<String> theNames ) throws InterruptedException {
+		Conditions.checkParameter( !Strings.isNullOrEmpty( theProfile ), "a profile name must be given" );
+		Conditions.checkParameter( !Strings.isNullOrEmpty( theBlock ), "a block name must be given" );
+		Conditions.checkParameter( theNames != null && !theNames.isEmpty( ), "at least one setting name must be given" );
+		
+		return this.createSettingsRequest( this.methods[ 5 ] )
+				.setBodyParameter( "profile", theProfile )
+				.setBodyParameter( "block", theBlock )
+				.setBodyParameter( "names", theNames )
+				.call();
+	}
+
+	/**
+	 * Returns the settings for several profile/block combinations in one call, all 
+	 * taken from the same version of the settings. If any of the blocks cannot be 
+	 * found the call fails.
+	 * @param theBlocks the profile/block combinations to get settings for
+	 * @return the settings for each profile/block combination, in the order requested
+	 * @throws InterruptedException thrown if the calling thread is interrupted
+	 */
+	public ResourceResult<SettingsBatch> getSettingsBatch( List<BlockReference> theBlocks ) throws InterruptedException {
+		Conditions.checkParameter( theBlocks != null && !theBlocks.isEmpty( ), "at least one block must be given" );
+		
+		return this.createSettingsRequest( this.methods[ 3 ] )
+				.setBodyParameter( "blocks", theBlocks )
+				.call();
+	}
+
+	/**
+	 * Returns the settings added, changed and removed for a particular profile/block
+	 * combination since the version given, which is from the X-Settings-Version header 
+	 * of a previous result, along with the entity tag from the same result. Versions 
+	 * aren't unique across service instances or restarts, so the service only sends 
+	 * changes when both match, otherwise the delta is a full snapshot. If both are 
+	 * current the status is OPERATION_NOT_MODIFIED and no delta is returned.
+	 * @param theVersion the version of the settings the caller has
+	 * @param theEntityTag the entity tag of the settings the caller has, which may be null to always get a full snapshot
+	 * @return the changes to the settings
+	 * @throws InterruptedException thrown if the calling thread is interrupted
+	 */
+	public ResourceResult<SettingsDelta> getSettingsDelta( String theProfile, String theBlock, long theVersion, String theEntityTag ) throws InterruptedException {
+		Conditions.checkParameter( !Strings.isNullOrEmpty( theProfile ), "a profile name must be given" );
+		Conditions.checkParameter( !Strings.isNullOrEmpty( theBlock ), "a block name must be given" );
+		Conditions.checkParameter( theVersion >= 0, "the version cannot be negative" );
+		
+		ResourceRequest request = this.createSettingsRequest( this.methods[ 2 ] )
+				.setQueryParameter( "profile", theProfile )
+				.setQueryParameter( "block", theBlock )
+				.setQueryParameter( SETTINGS_VERSION_PARAMETER, theVersion );
+		if( !Strings.isNullOrEmpty( theEntityTag ) ) {
+			request.setHeaderParameter( IF_NONE_MATCH_HEADER, theEntityTag );
+		}
+		return request.call();
+	}
+
+	/**
+	 * Waits for the settings for a particular profile/block combination to change 
+	 * from the version given, which is from the X-Settings-Version header of a 
+	 * previous result, and the entity tag from the same result. Versions aren't 
+	 * unique across service instances or restarts, so if the entity tag doesn't
+	 * match the settings are returned right away. If the settings don't change 
+	 * before the service's maximum wait the status is OPERATION_NOT_MODIFIED and 
+	 * no settings are returned. The request timeout for the client must be longer 
+	 * than the service's maximum wait.
+	 * @param theVersion the version of the settings the caller has
+	 * @param theEntityTag the entity tag of the settings the caller has, which may be null to get the settings right away
+	 * @return the changed settings
+	 * @throws InterruptedException thrown if the calling thread is interrupted
+	 */
+	public ResourceResult<List<Setting>> waitForSettings( String theProfile, String theBlock, long theVersion, String theEntityTag ) throws InterruptedException {
+		Conditions.checkParameter( !Strings.isNullOrEmpty( theProfile ), "a profile name must be given" );
+		Conditions.checkParameter( !Strings.isNullOrEmpty( theBlock ), "a block name must be given" );
+		Conditions.checkParameter( theVersion >= 0, "the version cannot be negative" );
+		
+		ResourceRequest request = this.createSettingsRequest( this.methods[ 1 ] )
+				.setQueryParameter( "profile", theProfile )
+				.setQueryParameter( "block", theBlock )
+				.setQueryParameter( SETTINGS_VERSION_PARAMETER, theVersion );
+		if( !Strings.isNullOrEmpty( theEntityTag ) ) {
+			request.setHeaderParameter( IF_NONE_MATCH_HEADER, theEntityTag );
+		}
+		return request.call();
+	}
+
+	/**
+	 * Helper method that creates a request for settings which, if configured, asks
+	 * for the settings to be compressed. Only gzip is asked for since the underlying
+	 * HTTP client decodes gzip responses as a stream while they are read.
+	 * @param theMethod the method to create the request for
+	 * @return the request
+	 */
+	private ResourceRequest createSettingsRequest( ResourceMethod theMethod ) {
+		ResourceRequest request = this.createRequest( theMethod );
+		
+		if( acceptCompression ) {
+			request.setHeaderParameter( ACCEPT_ENCODING_HEADER, GZIP_ENCODING );
+		}
+		return request;
+	}
+}
@@ -44,6 +44,9 @@ public class ConfigurationConfiguration extends ResourceConfigurationBase<Config
 	@Setting( name="{prefix}.ignore_errors" )
 	private boolean ignoreErrors= false;
 
+	@Setting( name="{prefix}.accept_compression" )
+	private boolean acceptCompression = true;
+
 	/**
 	 * Gets the profile that this configuration should used.
 	 * @return the profile to use for the configuration
@@ -95,4 +98,22 @@ public class ConfigurationConfiguration extends ResourceConfigurationBase<Config
 		clearCache = shouldClearCache;
 		return this;
 	}
+
+	/**
+	 * Indicates if the service is asked to compress settings it sends.
+	 * @return true if compressed settings are accepted, false if not
+	 */
+	public boolean shouldAcceptCompression( ) {
+		return acceptCompression;
+	}
+	
+	/**
+	 * Sets whether the service is asked to compress settings it sends.
+	 * @param shouldAccept true if compressed settings are accepted, false if not
+	 * @return this configuration object to chain settings
+	 */
+	public ConfigurationConfiguration setAcceptCompression( boolean shouldAccept ) {
+		acceptCompression = shouldAccept;
+		return this;
+	}
 }
@@ -25,6 +25,7 @@ import org.slf4j.LoggerFactory;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.talvish.tales.client.http.ResourceResult;
+import com.talvish.tales.communication.Status;
 import com.talvish.tales.system.configuration.ConfigurationSource;
 import com.talvish.tales.system.configuration.JsonValueHelper;
 import com.talvish.tales.system.configuration.LoadedSetting;
@@ -32,20 +33,41 @@ import com.talvish.tales.system.configuration.SourceConfiguration;
 
 /**
  * This class represents a config source where the data comes
- * from the configuration service.
+ * from the configuration service. The settings held, and the entity
+ * tag and version they came with, are replaced together so readers
+ * and refreshes always see settings that match their version.
  * @author jmolnar
  *
  */
 @SourceConfiguration( settingsClass = ConfigurationConfiguration.class )
 public class ConfigurationServiceSource implements ConfigurationSource {
 	private static final Logger logger = LoggerFactory.getLogger( ConfigurationServiceSource.class ); 
+	private static final String ENTITY_TAG_HEADER = "ETag";
+	private static final String SETTINGS_VERSION_HEADER = "X-Settings-Version";
 			
 	private final ConfigurationClient client;
 	private final String sourceName;
 	private final String profile;
 	private final String block;
 	
-	private Map<String, Setting> settings = new HashMap<>( 0 ); 
+	private final Object fetchLock = new Object( ); // so refreshes apply changes one at a time
+	private volatile SettingsState state = new SettingsState( new HashMap<>( 0 ), null, -1 );
+	
+	/**
+	 * The settings held along with what identifies their version. This is never 
+	 * changed once created, a new one replaces it when the settings change.
+	 */
+	private static final class SettingsState {
+		private final Map<String, Setting> settings;
+		private final String entityTag; // identifies the version of the settings we have
+		private final long version; // the service's version of the settings we have, if known, so we can ask for changes
+		
+		private SettingsState( Map<String, Setting> theSettings, String theEntityTag, long theVersion ) {
+			settings = theSettings;
+			entityTag = theEntityTag;
+			version = theVersion;
+		}
+	}
 
 
 	public ConfigurationServiceSource( ConfigurationConfiguration theConfiguration ) {
@@ -59,36 +81,155 @@ public class ConfigurationServiceSource implements ConfigurationSource {
 		fetchSettings( );
 	}
 
-	protected void fetchSettings( ) {
-		try {
-			ResourceResult<List<Setting>> settingsResult = client.getSettings( profile, block );
-			
-			if( settingsResult.getStatus( ).getCode().isSuccess( ) ) {
-				List<Setting> settingsList = settingsResult.getResult( );
-				if( settingsList != null ) {
-					Map<String, Setting> settingsMap = new HashMap<>( settingsList.size( ) );
-					
-					for( Setting setting : settingsList ) {
+	/**
+	 * Asks the service for the current settings, which the service only sends 
+	 * if they changed since they were last retrieved. If the calling thread is 
+	 * interrupted the settings held are kept and the thread's interrupt flag is set.
+	 * @return true if new settings were received, false otherwise
+	 */
+	public boolean refresh( ) {
+		return fetchSettings( );
+	}
+
+	/**
+	 * Gets the settings from the service. If the version of the settings held
+	 * is known only the changes since that version are requested and applied.
+	 * The entity tag is sent with the version, since another service instance
+	 * may use the same version for other settings, in which case the service
+	 * sends all of the settings. If the version isn't known the entity tag of 
+	 * the settings held is sent so the service only sends settings that changed.
+	 * Only one fetch happens at a time, so changes are always applied to the 
+	 * version they were requested for.
+	 * @return true if new settings were received, false otherwise
+	 */
+	protected boolean fetchSettings( ) {
+		synchronized( fetchLock ) {
+			SettingsState currentState = state;
+			try {
+				if( currentState.version >= 0 ) {
+					return fetchDelta( currentState );
+				} else {
+					return fetchAll( currentState );
+				}
+			} catch( InterruptedException e ) {
+				// keep the settings held, but let the caller know it was interrupted
+				Thread.currentThread( ).interrupt( );
+				logger.warn( "Interrupted while getting settings from '{}', so the settings held were kept.", sourceName );
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Helper method that gets all of the settings, unless they haven't changed
+	 * since the entity tag of the settings held.
+	 * @param theState the settings currently held
+	 * @return true if new settings were received, false otherwise
+	 * @throws InterruptedException thrown if the calling thread is interrupted
+	 */
+	private boolean fetchAll( SettingsState theState ) throws InterruptedException {
+		ResourceResult<List<Setting>> settingsResult = client.getSettings( profile, block, theState.entityTag );
+		
+		if( settingsResult.getStatus( ).getCode() == Status.OPERATION_NOT_MODIFIED ) {
+			logger.debug( "Settings from '{}' have not changed.", sourceName );
+
+		} else if( settingsResult.getStatus( ).getCode().isSuccess( ) ) {
+			List<Setting> settingsList = settingsResult.getResult( );
+			if( settingsList != null ) {
+				Map<String, Setting> settingsMap = new HashMap<>( settingsList.size( ) );
+				
+				for( Setting setting : settingsList ) {
+					settingsMap.put( setting.getName(), setting );
+				}
+				
+				state = new SettingsState( 
+						settingsMap, 
+						settingsResult.getHeaders( ) == null ? null : settingsResult.getHeaders( ).get( ENTITY_TAG_HEADER ),
+						extractVersion( settingsResult ) );
+				return true;
+			} else {
+				logger.warn(  "While a successful response, no settings were received from '{}'.", sourceName );
+			}
+		} else {
+			logger.warn( 
+					"Received status '{}|{}' and message '{}' while attempting to get settings from '{}'.", 
+					settingsResult.getStatus().getCode(), 
+					settingsResult.getStatus().getSubcode(), 
+					settingsResult.getStatus().getMessage(),
+					sourceName );
+		}
+		return false;
+	}
+	
+	/**
+	 * Helper method that gets the changes to the settings since the version held and
+	 * applies them to a copy of the settings, which then replaces the settings held.
+	 * @param theState the settings currently held
+	 * @return true if new settings were received, false otherwise
+	 * @throws InterruptedException thrown if the calling thread is interrupted
+	 */
+	private boolean fetchDelta( SettingsState theState ) throws InterruptedException {
+		ResourceResult<SettingsDelta> deltaResult = client.getSettingsDelta( profile, block, theState.version, theState.entityTag );
+		
+		if( deltaResult.getStatus( ).getCode() == Status.OPERATION_NOT_MODIFIED ) {
+			logger.debug( "Settings from '{}' have not changed.", sourceName );
+
+		} else if( deltaResult.getStatus( ).getCode().isSuccess( ) ) {
+			SettingsDelta delta = deltaResult.getResult( );
+			if( delta != null ) {
+				Map<String, Setting> settingsMap = delta.isFull( ) ? new HashMap<>( ) : new HashMap<>( theState.settings );
+				
+				if( delta.getAdded( ) != null ) {
+					for( Setting setting : delta.getAdded( ) ) {
 						settingsMap.put( setting.getName(), setting );
 					}
-					
-					settings = settingsMap;
-				} else {
-					logger.warn(  "While a successful response, no settings were received from '{}'.", sourceName );
 				}
+				if( delta.getChanged( ) != null ) {
+					for( Setting setting : delta.getChanged( ) ) {
+						settingsMap.put( setting.getName(), setting );
+					}
+				}
+				if( delta.getRemoved( ) != null ) {
+					for( String name : delta.getRemoved( ) ) {
+						settingsMap.remove( name );
+					}
+				}
+				state = new SettingsState( 
+						settingsMap, 
+						deltaResult.getHeaders( ) == null ? null : deltaResult.getHeaders( ).get( ENTITY_TAG_HEADER ),
+						delta.getToVersion( ) );
+				logger.debug( "Settings from '{}' moved from version {} to {}.", sourceName, delta.getFromVersion( ), delta.getToVersion( ) );
+				return true;
 			} else {
-				logger.warn( 
-						"Received status '{}|{}' and message '{}' while attempting to get settings from '{}'.", 
-						settingsResult.getStatus().getCode(), 
-						settingsResult.getStatus().getSubcode(), 
-						settingsResult.getStatus().getMessage(),
-						sourceName );
+				logger.warn(  "While a successful response, no settings delta was received from '{}'.", sourceName );
+			}
+		} else {
+			logger.warn( 
+					"Received status '{}|{}' and message '{}' while attempting to get changed settings from '{}'.", 
+					deltaResult.getStatus().getCode(), 
+					deltaResult.getStatus().getSubcode(), 
+					deltaResult.getStatus().getMessage(),
+					sourceName );
+		}
+		return false;
+	}
+	
+	/**
+	 * Helper method that gets the version of the settings from the headers of a result.
+	 * @param theResult the result to get the version from
+	 * @return the version, or -1 if the version isn't available
+	 */
+	private static long extractVersion( ResourceResult<?> theResult ) {
+		String versionHeader = theResult.getHeaders( ) == null ? null : theResult.getHeaders( ).get( SETTINGS_VERSION_HEADER );
+		
+		if( !Strings.isNullOrEmpty( versionHeader ) ) {
+			try {
+				return Long.parseLong( versionHeader.trim( ) );
+			} catch( NumberFormatException e ) {
+				logger.warn( "Received an invalid settings version '{}'.", versionHeader );
 			}
-			
-		} catch (InterruptedException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
 		}
+		return -1;
 	}
 	
 	/**
@@ -97,7 +238,7 @@ public class ConfigurationServiceSource implements ConfigurationSource {
 	 * @return the value retrieved
 	 */
 	public boolean contains( String theName ) {
-		return settings.containsKey( theName );
+		return state.settings.containsKey( theName );
 	}
 	
 	/**
@@ -112,7 +253,7 @@ public class ConfigurationServiceSource implements ConfigurationSource {
 		Preconditions.checkNotNull( theType, "Need a type to be able to translate." );
 
 		LoadedSetting setting = null;
-		Setting networkSetting = settings.get( theName );
+		Setting networkSetting = state.settings.get( theName );
 		if( networkSetting != null ) {
 			setting = JsonValueHelper.generateValue( theName, networkSetting.getValue(), networkSetting.getDescription(), networkSetting.isSensitive(), generateSourceName( networkSetting ), theType );
 		}
@@ -131,7 +272,7 @@ public class ConfigurationServiceSource implements ConfigurationSource {
 		Preconditions.checkNotNull( theElementType, "Need an element type to be able to translate." );
 
 		LoadedSetting setting = null;
-		Setting networkSetting = settings.get( theName );
+		Setting networkSetting = state.settings.get( theName );
 		if( networkSetting != null  ) {
 			setting = JsonValueHelper.generateList( theName, networkSetting.getValue(), networkSetting.getDescription(), networkSetting.isSensitive(), generateSourceName( networkSetting ), theElementType );
 		}
@@ -152,7 +293,7 @@ public class ConfigurationServiceSource implements ConfigurationSource {
 		Preconditions.checkNotNull( theValueType, "Need a value type to be able to translate." );
 
 		LoadedSetting setting = null;
-		Setting networkSetting = settings.get( theName );
+		Setting networkSetting = state.settings.get( theName );
 		if( networkSetting != null  ) {
 			setting = JsonValueHelper.generateMap( theName, networkSetting.getValue(), networkSetting.getDescription(), networkSetting.isSensitive(), generateSourceName( networkSetting ), theKeyType, theValueType );
 		}
@@ -0,0 +1,105 @@
+//***************************************************************************
+//*  Copyright 2016 Joseph Molnar
+//*
+//*  Licensed under the Apache License, Version 2.0 (the "License");
+//*  you may not use this file except in compliance with the License.
+//*  You may obtain a copy of the License at
+//*
+//*      http://www.apache.org/licenses/LICENSE-2.0
+//*
+//*  Unless required by applicable law or agreed to in writing, software
+//*  distributed under the License is distributed on an "AS IS" BASIS,
+//*  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//*  See the License for the specific language governing permissions and
+//*  limitations under the License.
+//***************************************************************************
+package com.talvish.tales.rigs.configuration.client;
+
+import java.util.List;
+
+import com.talvish.tales.contracts.data.DataContract;
+import com.talvish.tales.contracts.data.DataMember;
+
+/**
+ * The changes to the settings of a profile and block between the version
+ * the client has and the current version. If the client's version was too 
+ * old for the service to have its history the delta is a full snapshot, 
+ * with every setting listed as added, and should replace the settings held.
+ * @author jmolnar
+ *
+ */
+@DataContract( name="com.talvish.tales.configuration.settings_delta")
+public class SettingsDelta {
+	@DataMember( name="from_version" )
+	private long fromVersion;
+	
+	@DataMember( name="to_version" )
+	private long toVersion;
+
+	@DataMember( name="full" )
+	private boolean full;
+
+	@DataMember( name="added" )
+	private List<Setting> added;
+
+	@DataMember( name="changed" )
+	private List<Setting> changed;
+
+	@DataMember( name="removed" )
+	private List<String> removed;
+	
+	/**
+	 * A simple constructor needed for serialization.
+	 */
+	protected SettingsDelta( ) {
+	}
+	
+	/**
+	 * The version of the settings the client had.
+	 * @return the version the delta is from
+	 */
+	public long getFromVersion( ) {
+		return fromVersion;
+	}
+	
+	/**
+	 * The version of the settings the delta brings the client to.
+	 * @return the version the delta is to
+	 */
+	public long getToVersion( ) {
+		return toVersion;
+	}
+	
+	/**
+	 * Indicates if the delta is a full snapshot, in which case the added 
+	 * settings are all of the settings and should replace those held.
+	 * @return true if a full snapshot, false if only changes
+	 */
+	public boolean isFull( ) {
+		return full;
+	}
+	
+	/**
+	 * The settings added since the client's version.
+	 * @return the added settings
+	 */
+	public List<Setting> getAdded( ) {
+		return added;
+	}
+
+	/**
+	 * The settings changed since the client's version.
+	 * @return the changed settings
+	 */
+	public List<Setting> getChanged( ) {
+		return changed;
+	}
+
+	/**
+	 * The names of the settings removed since the client's version.
+	 * @return the names of the removed settings
+	 */
+	public List<String> getRemoved( ) {
+		return removed;
+	}
+}
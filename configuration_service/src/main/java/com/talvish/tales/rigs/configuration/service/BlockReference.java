@@ -0,0 +1,56 @@
+//***************************************************************************
+//*  Copyright 2016 Joseph Molnar
+//*
+//*  Licensed under the Apache License, Version 2.0 (the "License");
+//*  you may not use this file except in compliance with the License.
+//*  You may obtain a copy of the License at
+//*
+//*      http://www.apache.org/licenses/LICENSE-2.0
+//*
+//*  Unless required by applicable law or agreed to in writing, software
+//*  distributed under the License is distributed on an "AS IS" BASIS,
+//*  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//*  See the License for the specific language governing permissions and
+//*  limitations under the License.
+//***************************************************************************
+package com.talvish.tales.rigs.configuration.service;
+
+import com.talvish.tales.contracts.data.DataContract;
+import com.talvish.tales.contracts.data.DataMember;
+
+/**
+ * Identifies a block, accessible from a profile, when asking for the
+ * settings of several blocks at once.
+ * @author jmolnar
+ *
+ */
+@DataContract( name="com.talvish.tales.configuration.block_reference")
+public class BlockReference {
+	@DataMember( name="profile" )
+	private String profile;
+	
+	@DataMember( name="block" )
+	private String block;
+	
+	/**
+	 * A simple constructor needed for serialization.
+	 */
+	protected BlockReference( ) {
+	}
+	
+	/**
+	 * The name of the profile.
+	 * @return the profile name
+	 */
+	public String getProfile( ) {
+		return profile;
+	}
+	
+	/**
+	 * The name of the block, accessible from the profile.
+	 * @return the block name
+	 */
+	public String getBlock( ) {
+		return block;
+	}
+}
@@ -0,0 +1,284 @@
+//***************************************************************************
+//*  Copyright 2016 Joseph Molnar
+//*
+//*  Licensed under the Apache License, Version 2.0 (the "License");
+//*  you may not use this file except in compliance with the License.
+//*  You may obtain a copy of the License at
+//*
+//*      http://www.apache.org/licenses/LICENSE-2.0
+//*
+//*  Unless required by applicable law or agreed to in writing, software
+//*  distributed under the License is distributed on an "AS IS" BASIS,
+//*  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//*  See the License for the specific language governing permissions and
+//*  limitations under the License.
+//***************************************************************************
+package com.talvish.tales.rigs.configuration.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * The settings served for a single profile and block, along with an 
+ * entity tag based on their contents. These are created when the 
+ * settings file is loaded so requests don't need to compute them.
+ * A bounded history of the previous versions of the settings is kept
+ * so callers can be sent only what changed since their version. Versions
+ * are only counted within a process, so a restarted service, or another 
+ * instance behind the same endpoint, can use the same version for other
+ * contents. A version is only trusted when the caller's entity tag, which
+ * is based on contents, matches too.
+ * @author jmolnar
+ *
+ */
+final class BlockSettings {
+	private final String profile;
+	private final String block;
+	private final List<Setting> settings;
+	private final String entityTag;
+	private final long version;
+	private final Map<String,Setting> settingsByName;
+	private final List<Revision> history; // previous versions, newest first
+	
+	/**
+	 * A previous version of the settings, kept to compute deltas. Only the
+	 * settings are kept, not the previous BlockSettings, so the history
+	 * doesn't chain back through every version.
+	 */
+	private static final class Revision {
+		private final long version;
+		private final String entityTag;
+		private final Map<String,Setting> settings;
+		
+		private Revision( long theVersion, String theEntityTag, Map<String,Setting> theSettings ) {
+			version = theVersion;
+			entityTag = theEntityTag;
+			settings = theSettings;
+		}
+	}
+	
+	/**
+	 * Constructor taking the settings for the profile and block.
+	 * @param theProfile the name of the profile
+	 * @param theBlock the name of the block
+	 * @param theSettings the settings, which must not be changed afterwards
+	 * @param theVersion the version of the settings index the settings were loaded in
+	 */
+	BlockSettings( String theProfile, String theBlock, List<Setting> theSettings, long theVersion ) {
+		this( theProfile, theBlock, theSettings, theVersion, null, 0 );
+	}
+	
+	/**
+	 * Constructor taking the settings for the profile and block, and the settings they replace. 
+	 * @param theProfile the name of the profile
+	 * @param theBlock the name of the block
+	 * @param theSettings the settings, which must not be changed afterwards
+	 * @param theVersion the version of the settings index the settings were loaded in
+	 * @param thePrevious the settings being replaced, which may be null
+	 * @param theHistoryDepth the number of previous versions to keep
+	 */
+	BlockSettings( String theProfile, String theBlock, List<Setting> theSettings, long theVersion, BlockSettings thePrevious, int theHistoryDepth ) {
+		Preconditions.checkNotNull( theSettings, "need settings" );
+		Preconditions.checkArgument( theHistoryDepth >= 0, "the history depth cannot be negative" );
+		
+		profile = theProfile;
+		block = theBlock;
+		settings = theSettings;
+		version = theVersion;
+		entityTag = createEntityTag( theSettings );
+		
+		Map<String,Setting> namedSettings = new HashMap<>( theSettings.size( ) );
+		for( Setting setting : theSettings ) {
+			namedSettings.put( setting.getName( ), setting );
+		}
+		settingsByName = Collections.unmodifiableMap( namedSettings );
+		
+		if( thePrevious == null || theHistoryDepth == 0 ) {
+			history = Collections.emptyList( );
+		} else {
+			List<Revision> revisions = new ArrayList<>( Math.min( theHistoryDepth, thePrevious.history.size( ) + 1 ) );
+			revisions.add( new Revision( thePrevious.version, thePrevious.entityTag, thePrevious.settingsByName ) );
+			for( Revision revision : thePrevious.history ) {
+				if( revisions.size( ) >= theHistoryDepth ) {
+					break;
+				}
+				revisions.add( revision );
+			}
+			history = Collections.unmodifiableList( revisions );
+		}
+	}
+	
+	/**
+	 * Helper method that creates an entity tag from a hash of each part of each 
+	 * setting. Values are hashed by the digest of their serialized form, so a 
+	 * change in how a value is written, like 1 becoming 1.0, changes the entity
+	 * tag.
+	 * @param theSettings the settings to create the entity tag for
+	 * @return the entity tag, quoted as needed for an ETag header
+	 */
+	private static String createEntityTag( List<Setting> theSettings ) {
+		Hasher hasher = Hashing.sha256( ).newHasher( );
+		
+		for( Setting setting : theSettings ) {
+			putString( hasher, setting.getName( ) );
+			setting.putValueDigest( hasher );
+			putString( hasher, setting.getDescription( ) );
+			hasher.putBoolean( setting.isSensitive( ) );
+			putString( hasher, setting.getSourceName( ) );
+		}
+		return "\"" + hasher.hash( ).toString( ).substring( 0, 32 ) + "\"";
+	}
+	
+	/**
+	 * Helper method that adds a string to a hash, prefixed by its length so 
+	 * adjacent strings can't run together and null differs from empty.
+	 */
+	private static void putString( Hasher theHasher, String theString ) {
+		if( theString == null ) {
+			theHasher.putInt( -1 );
+		} else {
+			theHasher.putInt( theString.length( ) ).putString( theString, StandardCharsets.UTF_8 );
+		}
+	}
+	
+	/**
+	 * The name of the profile the settings are for.
+	 * @return the profile name
+	 */
+	String getProfile( ) {
+		return profile;
+	}
+
+	/**
+	 * The name of the block the settings are for.
+	 * @return the block name
+	 */
+	String getBlock( ) {
+		return block;
+	}
+	
+	/**
+	 * The settings, ordered by name.
+	 * @return the settings
+	 */
+	List<Setting> getSettings( ) {
+		return settings;
+	}
+	
+	/**
+	 * Gets a single setting by name.
+	 * @param theName the name of the setting
+	 * @return the setting, or null if the block doesn't have the setting
+	 */
+	Setting getSetting( String theName ) {
+		return settingsByName.get( theName );
+	}
+	
+	/**
+	 * The strong entity tag for the settings, which is a hash of their contents.
+	 * @return the entity tag, quoted as needed for an ETag header
+	 */
+	String getEntityTag( ) {
+		return entityTag;
+	}
+	
+	/**
+	 * The version of the settings index in which these settings last changed.
+	 * @return the version
+	 */
+	long getVersion( ) {
+		return version;
+	}
+	
+	/**
+	 * Indicates if the caller has these settings, which requires both the version 
+	 * and the entity tag to match since versions alone aren't unique.
+	 * @param theVersion the version the caller has
+	 * @param theEntityTag the entity tag the caller has, which may be null or weak
+	 * @return true if the caller has these settings, false otherwise
+	 */
+	boolean isCurrent( long theVersion, String theEntityTag ) {
+		return theVersion == version && entityTag.equals( toStrongEntityTag( theEntityTag ) );
+	}
+	
+	/**
+	 * Creates the delta between a version of the settings the caller has and these
+	 * settings. If the version isn't in the history, or the entity tag the caller
+	 * has doesn't match the version's, the delta is a full snapshot.
+	 * @param theVersion the version the caller has
+	 * @param theEntityTag the entity tag the caller has, which may be null or weak
+	 * @return the delta
+	 */
+	SettingsDelta createDelta( long theVersion, String theEntityTag ) {
+		String strongEntityTag = toStrongEntityTag( theEntityTag );
+		Map<String,Setting> previousSettings = null;
+		
+		if( theVersion == version ) {
+			if( entityTag.equals( strongEntityTag ) ) {
+				previousSettings = settingsByName;
+			}
+		} else {
+			for( Revision revision : history ) {
+				if( revision.version == theVersion ) {
+					if( revision.entityTag.equals( strongEntityTag ) ) {
+						previousSettings = revision.settings;
+					}
+					break;
+				}
+			}
+		}
+		if( previousSettings == null ) {
+			return new SettingsDelta( theVersion, version, settings );
+		} else {
+			List<Setting> addedSettings = new ArrayList<>( );
+			List<Setting> changedSettings = new ArrayList<>( );
+			List<String> removedSettings = new ArrayList<>( );
+			
+			for( Setting setting : settings ) {
+				Setting previousSetting = previousSettings.get( setting.getName( ) );
+				if( previousSetting == null ) {
+					addedSettings.add( setting );
+				} else if( !previousSetting.equals( setting ) ) {
+					changedSettings.add( setting );
+				}
+			}
+			for( String name : previousSettings.keySet( ) ) {
+				if( !settingsByName.containsKey( name ) ) {
+					removedSettings.add( name );
+				}
+			}
+			return new SettingsDelta( theVersion, version, addedSettings, changedSettings, removedSettings );
+		}
+	}
+	
+	/**
+	 * Helper method that turns an entity tag from a caller into the strong form
+	 * used here, since tags are weakened when responses are compressed.
+	 * @param theEntityTag the entity tag, which may be null or weak
+	 * @return the strong entity tag, or null if none was given
+	 */
+	static String toStrongEntityTag( String theEntityTag ) {
+		if( theEntityTag == null ) {
+			return null;
+		} else {
+			String entityTag = theEntityTag.trim( );
+			return entityTag.startsWith( "W/" ) ? entityTag.substring( 2 ) : entityTag;
+		}
+	}
+	
+	/**
+	 * The number of previous versions of the settings kept.
+	 * @return the number of versions in the history
+	 */
+	int getHistorySize( ) {
+		return history.size( );
+	}
+}
@@ -0,0 +1,80 @@
+//***************************************************************************
+//*  Copyright 2016 Joseph Molnar
+//*
+//*  Licensed under the Apache License, Version 2.0 (the "License");
+//*  you may not use this file except in compliance with the License.
+//*  You may obtain a copy of the License at
+//*
+//*      http://www.apache.org/licenses/LICENSE-2.0
+//*
+//*  Unless required by applicable law or agreed to in writing, software
+//*  distributed under the License is distributed on an "AS IS" BASIS,
+//*  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//*  See the License for the specific language governing permissions and
+//*  limitations under the License.
+//***************************************************************************
+package com.talvish.tales.rigs.configuration.service;
+
+import com.google.common.base.Preconditions;
+import com.talvish.tales.system.configuration.annotated.Setting;
+import com.talvish.tales.system.configuration.annotated.Settings;
+
+/**
+ * The configuration for compressing responses from the configuration service.
+ * @author jmolnar
+ *
+ */
+@Settings( prefix="configuration_compression" )
+public class CompressionConfiguration {
+	@Setting( name="{prefix}.enabled" )
+	private boolean enabled = true;
+	
+	@Setting( name="{prefix}.threshold" )
+	private int threshold = 2048;
+	
+	@Setting( name="{prefix}.cache_size" )
+	private int cacheSize = 256;
+
+	/**
+	 * Indicates if responses are compressed when the caller accepts it.
+	 * @return true if compression is enabled, false otherwise
+	 */
+	public boolean isEnabled( ) {
+		return enabled;
+	}
+	
+	public CompressionConfiguration setEnabled( boolean isEnabled ) {
+		enabled = isEnabled;
+		return this;
+	}
+
+	/**
+	 * The size, in bytes, a response must be before it is compressed, 
+	 * since small responses gain little and cost time to compress.
+	 * @return the compression threshold, in bytes
+	 */
+	public int getThreshold( ) {
+		return threshold;
+	}
+	
+	public CompressionConfiguration setThreshold( int theThreshold ) {
+		Preconditions.checkArgument( theThreshold >= 0, "the threshold cannot be negative" );
+		threshold = theThreshold;
+		return this;
+	}
+
+	/**
+	 * The number of compressed responses to keep, so responses that 
+	 * are sent repeatedly, like settings, are only compressed once.
+	 * @return the number of compressed responses kept
+	 */
+	public int getCacheSize( ) {
+		return cacheSize;
+	}
+	
+	public CompressionConfiguration setCacheSize( int theCacheSize ) {
+		Preconditions.checkArgument( theCacheSize >= 0, "the cache size cannot be negative" );
+		cacheSize = theCacheSize;
+		return this;
+	}
+}
@@ -0,0 +1,383 @@
+//***************************************************************************
+//*  Copyright 2016 Joseph Molnar
+//*
+//*  Licensed under the Apache License, Version 2.0 (the "License");
+//*  you may not use this file except in compliance with the License.
+//*  You may obtain a copy of the License at
+//*
+//*      http://www.apache.org/licenses/LICENSE-2.0
+//*
+//*  Unless required by applicable law or agreed to in writing, software
+//*  distributed under the License is distributed on an "AS IS" BASIS,
+//*  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//*  See the License for the specific language governing permissions and
+//*  limitations under the License.
+//***************************************************************************
+package com.talvish.tales.rigs.configuration.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.hash.Hashing;
+import com.talvish.tales.system.status.MonitorableStatusValue;
+
+/**
+ * A filter that compresses responses, using gzip or deflate as negotiated 
+ * with the caller's Accept-Encoding header, when they are over a size 
+ * threshold. Responses are buffered so their size is known, and compressed 
+ * responses are cached by a hash of their content, so the same settings
+ * sent to many callers, as happens when a fleet starts, are compressed once.
+ * Compressed responses are a different representation than uncompressed 
+ * ones, so a strong entity tag on a response is made weak when compressed.
+ * <p>
+ * Responses written asynchronously, after the request leaves the filter,
+ * cannot be buffered, so the paths serving them, such as the settings long
+ * poll, are excluded and passed through untouched.
+ * @author jmolnar
+ *
+ */
+public class CompressionFilter implements Filter {
+	private static final String ACCEPT_ENCODING_HEADER = "Accept-Encoding";
+	private static final String CONTENT_ENCODING_HEADER = "Content-Encoding";
+	private static final String VARY_HEADER = "Vary";
+	private static final String ENTITY_TAG_HEADER = "ETag";
+	private static final String WEAK_ENTITY_TAG_PREFIX = "W/";
+	private static final String GZIP_ENCODING = "gzip";
+	private static final String DEFLATE_ENCODING = "deflate";
+	
+	private final int threshold;
+	private final Set<String> excludedPaths;
+	private final Map<String,byte[]> compressedCache; // encoding and content hash, to compressed content
+	
+	private final AtomicLong compressedResponses = new AtomicLong( );
+	private final AtomicLong cacheHits = new AtomicLong( );
+	private final AtomicLong uncompressedBytes = new AtomicLong( );
+	private final AtomicLong compressedBytes = new AtomicLong( );
+	
+	/**
+	 * Constructor taking the configuration for the filter and the paths it shouldn't compress.
+	 * @param theConfiguration the configuration
+	 * @param theExcludedPaths the paths, not including the context path, whose responses are never compressed
+	 */
+	public CompressionFilter( CompressionConfiguration theConfiguration, Collection<String> theExcludedPaths ) {
+		Preconditions.checkNotNull( theConfiguration, "need configuration" );
+		Preconditions.checkNotNull( theExcludedPaths, "need the excluded paths, even if empty" );
+		
+		final int cacheSize = theConfiguration.getCacheSize( );
+		threshold = theConfiguration.getThreshold( );
+		excludedPaths = Collections.unmodifiableSet( new HashSet<>( theExcludedPaths ) );
+		compressedCache = new LinkedHashMap<String,byte[]>( 16, 0.75f, true ) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry( Map.Entry<String,byte[]> theEldest ) {
+				return size( ) > cacheSize;
+			}
+		};
+	}
+
+	@Override
+	public void init( FilterConfig theConfig ) throws ServletException {
+	}
+
+	@Override
+	public void doFilter( ServletRequest theRequest, ServletResponse theResponse, FilterChain theChain ) throws IOException, ServletException {
+		String encoding = theRequest instanceof HttpServletRequest && !isExcluded( ( HttpServletRequest )theRequest ) ? selectEncoding( ( ( HttpServletRequest )theRequest ).getHeader( ACCEPT_ENCODING_HEADER ) ) : null;
+		
+		if( encoding == null || !( theResponse instanceof HttpServletResponse ) ) {
+			theChain.doFilter( theRequest, theResponse );
+		} else {
+			HttpServletResponse response = ( HttpServletResponse )theResponse;
+			BufferedResponse bufferedResponse = new BufferedResponse( response );
+			
+			theChain.doFilter( theRequest, bufferedResponse );
+			
+			byte[] content = bufferedResponse.getContent( );
+			response.addHeader( VARY_HEADER, ACCEPT_ENCODING_HEADER );
+			if( content.length < threshold || response.containsHeader( CONTENT_ENCODING_HEADER ) ) {
+				response.setContentLength( content.length );
+				response.getOutputStream( ).write( content );
+			} else {
+				byte[] compressedContent = compress( encoding, content );
+				String entityTag = response.getHeader( ENTITY_TAG_HEADER );
+				
+				compressedResponses.incrementAndGet( );
+				uncompressedBytes.addAndGet( content.length );
+				compressedBytes.addAndGet( compressedContent.length );
+				if( entityTag != null && !entityTag.startsWith( WEAK_ENTITY_TAG_PREFIX ) ) {
+					// the strong tag belongs to the uncompressed bytes
+					response.setHeader( ENTITY_TAG_HEADER, WEAK_ENTITY_TAG_PREFIX + entityTag );
+				}
+				response.setHeader( CONTENT_ENCODING_HEADER, encoding );
+				response.setContentLength( compressedContent.length );
+				response.getOutputStream( ).write( compressedContent );
+			}
+		}
+	}
+
+	@Override
+	public void destroy( ) {
+	}
+	
+	/**
+	 * Helper method that determines if the path of a request is excluded from compression.
+	 * @param theRequest the request
+	 * @return true if the response must not be compressed, false otherwise
+	 */
+	private boolean isExcluded( HttpServletRequest theRequest ) {
+		String path = theRequest.getRequestURI( );
+		String contextPath = theRequest.getContextPath( );
+		
+		if( path != null && !Strings.isNullOrEmpty( contextPath ) && path.startsWith( contextPath ) ) {
+			path = path.substring( contextPath.length( ) );
+		}
+		return path != null && excludedPaths.contains( path );
+	}
+	
+	/**
+	 * Helper method that picks the encoding to use from an Accept-Encoding header,
+	 * preferring gzip, and skipping encodings given a quality of zero. An encoding
+	 * named explicitly takes precedence over '*', wherever each appears.
+	 * @param theAcceptEncoding the value of the Accept-Encoding header, which may be null
+	 * @return the encoding to use, or null if the response shouldn't be compressed
+	 */
+	static String selectEncoding( String theAcceptEncoding ) {
+		Boolean acceptsGzip = null; // null until named
+		Boolean acceptsDeflate = null;
+		Boolean acceptsAny = null;
+		
+		if( !Strings.isNullOrEmpty( theAcceptEncoding ) ) {
+			for( String acceptedEncoding : theAcceptEncoding.split( "," ) ) {
+				String[] parts = acceptedEncoding.split( ";" );
+				String name = parts[ 0 ].trim( ).toLowerCase( );
+				boolean accepted = true;
+				
+				for( int index = 1; index < parts.length; index += 1 ) {
+					String parameter = parts[ index ].trim( );
+					if( parameter.startsWith( "q=" ) ) {
+						try {
+							accepted = Double.parseDouble( parameter.substring( 2 ) ) > 0;
+						} catch( NumberFormatException e ) {
+							accepted = false;
+						}
+					}
+				}
+				if( name.equals( GZIP_ENCODING ) ) {
+					acceptsGzip = accepted;
+				} else if( name.equals( DEFLATE_ENCODING ) ) {
+					acceptsDeflate = accepted;
+				} else if( name.equals( "*" ) ) {
+					acceptsAny = accepted;
+				}
+			}
+		}
+		if( acceptsGzip == null ? Boolean.TRUE.equals( acceptsAny ) : acceptsGzip ) {
+			return GZIP_ENCODING;
+		} else if( acceptsDeflate == null ? Boolean.TRUE.equals( acceptsAny ) : acceptsDeflate ) {
+			return DEFLATE_ENCODING;
+		} else {
+			return null;
+		}
+	}
+	
+	/**
+	 * Helper method that compresses content, using the cache when the 
+	 * same content was compressed before.
+	 * @param theEncoding the encoding to compress with
+	 * @param theContent the content to compress
+	 * @return the compressed content
+	 * @throws IOException thrown if the content cannot be compressed
+	 */
+	private byte[] compress( String theEncoding, byte[] theContent ) throws IOException {
+		String key = theEncoding + ":" + Hashing.murmur3_128( ).hashBytes( theContent ).toString( );
+		byte[] compressedContent;
+		
+		synchronized( compressedCache ) {
+			compressedContent = compressedCache.get( key );
+		}
+		if( compressedContent != null ) {
+			cacheHits.incrementAndGet( );
+		} else {
+			ByteArrayOutputStream compressedStream = new ByteArrayOutputStream( theContent.length / 4 );
+			
+			try( OutputStream compressingStream = theEncoding.equals( GZIP_ENCODING ) ? new GZIPOutputStream( compressedStream ) : new DeflaterOutputStream( compressedStream ) ) {
+				compressingStream.write( theContent );
+			}
+			compressedContent = compressedStream.toByteArray( );
+			synchronized( compressedCache ) {
+				compressedCache.put( key, compressedContent );
+			}
+		}
+		return compressedContent;
+	}
+	
+	/**
+	 * The number of responses that were compressed.
+	 * @return the number of compressed responses
+	 */
+	@MonitorableStatusValue( name = "compressed_responses", description = "The number of responses that were compressed." )
+	public long getCompressedResponses( ) {
+		return compressedResponses.get( );
+	}
+	
+	/**
+	 * The number of compressed responses taken from the cache.
+	 * @return the number of cache hits
+	 */
+	@MonitorableStatusValue( name = "compression_cache_hits", description = "The number of compressed responses taken from the cache instead of being compressed again." )
+	public long getCacheHits( ) {
+		return cacheHits.get( );
+	}
+	
+	/**
+	 * The number of bytes in responses before they were compressed.
+	 * @return the number of uncompressed bytes
+	 */
+	@MonitorableStatusValue( name = "uncompressed_bytes", description = "The number of bytes in compressed responses before they were compressed." )
+	public long getUncompressedBytes( ) {
+		return uncompressedBytes.get( );
+	}
+	
+	/**
+	 * The number of bytes in responses after they were compressed.
+	 * @return the number of compressed bytes
+	 */
+	@MonitorableStatusValue( name = "compressed_bytes", description = "The number of bytes sent for compressed responses." )
+	public long getCompressedBytes( ) {
+		return compressedBytes.get( );
+	}
+	
+	/**
+	 * A response that buffers its content, rather than sending it, 
+	 * so the filter can decide whether to compress it. Since nothing
+	 * is sent until the filter finishes, the response is only treated
+	 * as committed once flushed, and until then it can be reset.
+	 */
+	private static final class BufferedResponse extends HttpServletResponseWrapper {
+		private final ByteArrayOutputStream content = new ByteArrayOutputStream( );
+		private ServletOutputStream outputStream;
+		private PrintWriter writer;
+		private boolean committed = false;
+		
+		private BufferedResponse( HttpServletResponse theResponse ) {
+			super( theResponse );
+		}
+		
+		@Override
+		public ServletOutputStream getOutputStream( ) throws IOException {
+			Preconditions.checkState( writer == null, "the writer was already requested" );
+			if( outputStream == null ) {
+				outputStream = new ServletOutputStream( ) {
+					@Override
+					public void write( int theByte ) throws IOException {
+						content.write( theByte );
+					}
+					
+					@Override
+					public void write( byte[] theBytes, int theOffset, int theLength ) throws IOException {
+						content.write( theBytes, theOffset, theLength );
+					}
+
+					@Override
+					public boolean isReady( ) {
+						return true;
+					}
+
+					@Override
+					public void setWriteListener( WriteListener theListener ) {
+						throw new IllegalStateException( "buffered responses do not support asynchronous writes" );
+					}
+				};
+			}
+			return outputStream;
+		}
+		
+		@Override
+		public PrintWriter getWriter( ) throws IOException {
+			Preconditions.checkState( outputStream == null, "the output stream was already requested" );
+			if( writer == null ) {
+				String characterEncoding = getCharacterEncoding( );
+				Charset charset = characterEncoding == null ? StandardCharsets.ISO_8859_1 : Charset.forName( characterEncoding ); 
+				writer = new PrintWriter( new OutputStreamWriter( content, charset ) );
+			}
+			return writer;
+		}
+		
+		@Override
+		public void setContentLength( int theLength ) {
+			// the filter sets the length of what is actually sent
+		}
+		
+		@Override
+		public void setContentLengthLong( long theLength ) {
+			// the filter sets the length of what is actually sent
+		}
+		
+		@Override
+		public void flushBuffer( ) throws IOException {
+			if( writer != null ) {
+				writer.flush( );
+			}
+			committed = true;
+		}
+		
+		@Override
+		public boolean isCommitted( ) {
+			return committed || super.isCommitted( );
+		}
+		
+		@Override
+		public void reset( ) {
+			resetBuffer( );
+			super.reset( );
+		}
+		
+		@Override
+		public void resetBuffer( ) {
+			Preconditions.checkState( !isCommitted( ), "the response has already been committed" );
+			if( writer != null ) {
+				writer.flush( ); // so characters the writer holds are dropped with the rest
+			}
+			content.reset( );
+		}
+		
+		/**
+		 * The content written to the response.
+		 * @return the buffered content
+		 */
+		private byte[] getContent( ) {
+			if( writer != null ) {
+				writer.flush( );
+			}
+			return content.toByteArray( );
+		}
+	}
+}
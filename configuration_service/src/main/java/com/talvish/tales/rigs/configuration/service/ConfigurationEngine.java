@@ -15,19 +15,18 @@
 //***************************************************************************
 package com.talvish.tales.rigs.configuration.service;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
 
-import com.talvish.tales.contracts.data.DataContractTypeSource;
-import com.talvish.tales.serialization.json.JsonTranslationFacility;
-import com.talvish.tales.system.configuration.hierarchical.ProfileDescriptor;
-import com.talvish.tales.system.configuration.hierarchical.SourceManager;
 
 // TODO: consider an expiration in the LoadedSettings in the config settings which will cause a removal of
 //       a setting so it can be refreshed (though it may require a larger set to rest)
@@ -36,34 +35,277 @@ import com.talvish.tales.system.configuration.hierarchical.SourceManager;
 public class ConfigurationEngine {
 	private static final Logger logger = LoggerFactory.getLogger( ConfigurationEngine.class );
 
-	private final SourceManager settingsSource;
+	private final String settingsFilename;
+	private final SettingsLoader settingsLoader;
+	private volatile SettingsIndex settingsIndex; // swapped, as a whole, when the settings are loaded
+	private final SettingsFileWatcher settingsWatcher;
+	private final SettingsChangeNotifier changeNotifier;
+	private final long maximumWait;
+	private final int historyDepth;
+	
+	private final AtomicLong reloads = new AtomicLong( );
+	private final AtomicLong failedReloads = new AtomicLong( );
+	private final ConfigurationEngineStatus status = new ConfigurationEngineStatus( this );
 	
 	public ConfigurationEngine( ConfigurationEngineConfiguration theConfig ) {
 		Preconditions.checkNotNull( theConfig, "need configuration" );
 		
-		// so we need a json translation facility
-		// and we need a source manager
-		logger.info( "Serving configuration from file '{}'", theConfig.getSettingsFilename( ) );
-		settingsSource = new SourceManager( theConfig.getSettingsFilename(), new JsonTranslationFacility( new DataContractTypeSource( ) ) );
+		settingsFilename = theConfig.getSettingsFilename( );
+		logger.info( "Serving configuration from '{}'", settingsFilename );
+		settingsLoader = new SettingsLoader( Paths.get( settingsFilename ), theConfig.getSettingsLoadThreads( ) );
+		maximumWait = theConfig.getMaximumWait( );
+		historyDepth = theConfig.getHistoryDepth( );
+		changeNotifier = new SettingsChangeNotifier( theConfig.getMaximumWaiters( ) );
+		loadSettings( );
+		
+		if( theConfig.shouldWatchSettings( ) ) {
+			try {
+				settingsWatcher = new SettingsFileWatcher( SettingsFileWatcher.findSettingsFiles( Paths.get( settingsFilename ) ), theConfig.getSettingsReloadDelay( ), this::reloadSettings );
+			} catch( IOException e ) {
+				throw new IllegalStateException( String.format( "Unable to watch settings file '%s' for changes.", settingsFilename ), e );
+			}
+		} else {
+			settingsWatcher = null;
+		}
 	}
 	
-	public void getSetting( String theProfile, String theBlock, String theSetting ) {
+	/**
+	 * Loads the settings file, or directory of settings files, and indexes every 
+	 * accessible profile and block, swapping the new index in once it is complete. 
+	 * If the settings cannot be loaded an exception is thrown and the current 
+	 * settings are kept.
+	 */
+	public synchronized void loadSettings( ) {
+		SettingsIndex newIndex = settingsLoader.load( settingsIndex, historyDepth );
 		
+		settingsIndex = newIndex;
+		changeNotifier.update( newIndex );
+		logger.info( "Indexed {} profiles with {} accessible blocks from '{}' as version {}", newIndex.getProfileCount( ), newIndex.getBlockCount( ), settingsFilename, newIndex.getVersion( ) );
 	}
 	
-	public List<Setting> getSettings( String theProfile, String theBlock ) {
-		ArrayList<Setting> returnSettings = null;
-		ProfileDescriptor profile = settingsSource.getProfile( theProfile );
-		if( profile != null ) {
-			if( profile.hasAccessibleBlock( theBlock ) ) {
-				Map<String,com.talvish.tales.system.configuration.hierarchical.Setting> extractedSettings = settingsSource.extractSettings(theProfile, theBlock);
-				returnSettings = new ArrayList<>( extractedSettings.size( ) );
-				
-				for( com.talvish.tales.system.configuration.hierarchical.Setting setting : extractedSettings.values() ) {
-					returnSettings.add( new Setting( setting ) );
+	/**
+	 * Helper method, called by the watcher when settings files change, that loads
+	 * the settings again, keeping the current settings if the files are bad, and
+	 * then watches the files the settings now include.
+	 */
+	private void reloadSettings( ) {
+		try {
+			loadSettings( );
+			reloads.incrementAndGet( );
+		} catch( RuntimeException e ) {
+			failedReloads.incrementAndGet( );
+			logger.error( "Unable to reload settings from '{}', so continuing to serve version {}.", settingsFilename, settingsIndex.getVersion( ), e );
+		}
+		try {
+			settingsWatcher.watch( SettingsFileWatcher.findSettingsFiles( Paths.get( settingsFilename ) ) );
+		} catch( IOException | RuntimeException e ) {
+			logger.warn( "Unable to determine the settings files in, or included by, '{}', so watching the same files.", settingsFilename, e );
+		}
+	}
+	
+	/**
+	 * Stops watching the settings file for changes and completes any requests 
+	 * waiting for settings to change.
+	 */
+	public void close( ) {
+		changeNotifier.close( );
+		settingsLoader.close( );
+		if( settingsWatcher != null ) {
+			try {
+				settingsWatcher.close( );
+			} catch( IOException e ) {
+				logger.warn( "Unable to stop watching settings file '{}'.", settingsFilename, e );
+			}
+		}
+	}
+	
+	/**
+	 * The version of the settings being served, which increases each time
+	 * the settings file is successfully loaded.
+	 * @return the settings version
+	 */
+	public long getVersion( ) {
+		return settingsIndex.getVersion( );
+	}
+	
+	/**
+	 * The status of the engine, for monitoring.
+	 * @return the engine status
+	 */
+	public ConfigurationEngineStatus getStatus( ) {
+		return status;
+	}
+	
+	/**
+	 * The number of profiles in the settings being served.
+	 * @return the number of profiles
+	 */
+	int getProfileCount( ) {
+		return settingsIndex.getProfileCount( );
+	}
+	
+	/**
+	 * The number of accessible profile and block pairs in the settings being served.
+	 * @return the number of profile and block pairs
+	 */
+	int getBlockCount( ) {
+		return settingsIndex.getBlockCount( );
+	}
+	
+	/**
+	 * The number of settings in all blocks, counting a shared setting once for each block.
+	 * @return the number of settings across all blocks
+	 */
+	long getSettingCount( ) {
+		return settingsIndex.getSettingReferences( );
+	}
+	
+	/**
+	 * The number of settings across all blocks that are shared instead of copied.
+	 * @return the number of shared settings
+	 */
+	long getSharedSettings( ) {
+		return settingsIndex.getSharedSettings( );
+	}
+	
+	/**
+	 * The number of setting values that are shared instead of copied.
+	 * @return the number of shared values
+	 */
+	long getSharedValues( ) {
+		return settingsIndex.getSharedValues( );
+	}
+	
+	/**
+	 * The estimated memory saved by sharing settings and values.
+	 * @return the estimated bytes saved
+	 */
+	long getEstimatedBytesSaved( ) {
+		return settingsIndex.getEstimatedBytesSaved( );
+	}
+	
+	/**
+	 * The number of times the settings were reloaded because the files changed.
+	 * @return the number of reloads
+	 */
+	long getReloads( ) {
+		return reloads.get( );
+	}
+
+	/**
+	 * The number of times the settings files changed but could not be loaded.
+	 * @return the number of failed reloads
+	 */
+	long getFailedReloads( ) {
+		return failedReloads.get( );
+	}
+	
+	/**
+	 * The number of requests waiting for settings to change.
+	 * @return the number of waiting requests
+	 */
+	int getWaitingRequests( ) {
+		return changeNotifier.getWaiterCount( );
+	}
+	
+	/**
+	 * The number of waiting requests completed because settings changed.
+	 * @return the number of change notifications
+	 */
+	long getChangeNotifications( ) {
+		return changeNotifier.getNotifications( );
+	}
+	
+	/**
+	 * The number of waiting requests completed because they timed out.
+	 * @return the number of timed out waits
+	 */
+	long getWaitTimeouts( ) {
+		return changeNotifier.getTimeouts( );
+	}
+	
+	/**
+	 * Gets a single setting for a profile and block. Settings are indexed
+	 * by name when loaded so this is a lookup.
+	 * @param theProfile the name of the profile
+	 * @param theBlock the name of the block
+	 * @param theSetting the name of the setting
+	 * @return the setting, or null if the block isn't accessible from the profile or doesn't have the setting
+	 */
+	public Setting getSetting( String theProfile, String theBlock, String theSetting ) {
+		BlockSettings blockSettings = settingsIndex.getSettings( theProfile, theBlock );
+		
+		return blockSettings == null ? null : blockSettings.getSetting( theSetting );
+	}
+	
+	/**
+	 * Gets the named settings for a profile and block. Names the block
+	 * doesn't have a setting for are skipped.
+	 * @param theProfile the name of the profile
+	 * @param theBlock the name of the block
+	 * @param theSettings the names of the settings
+	 * @return the settings found, in the order of the names, or null if the profile doesn't exist or the block isn't accessible from it
+	 */
+	public List<Setting> getSettings( String theProfile, String theBlock, List<String> theSettings ) {
+		Preconditions.checkNotNull( theSettings, "need setting names" );
+		BlockSettings blockSettings = settingsIndex.getSettings( theProfile, theBlock );
+		
+		if( blockSettings == null ) {
+			return null;
+		} else {
+			List<Setting> foundSettings = new ArrayList<>( theSettings.size( ) );
+			for( String name : theSettings ) {
+				Setting setting = blockSettings.getSetting( name );
+				if( setting != null ) {
+					foundSettings.add( setting );
 				}
 			}
+			return foundSettings;
 		}
-		return returnSettings;
+	}
+	
+	/**
+	 * Gets the settings for a profile and block.
+	 * @param theProfile the name of the profile
+	 * @param theBlock the name of the block
+	 * @return the settings, or null if the profile doesn't exist or the block isn't accessible from it
+	 */
+	public List<Setting> getSettings( String theProfile, String theBlock ) {
+		BlockSettings blockSettings = settingsIndex.getSettings( theProfile, theBlock );
+		
+		return blockSettings == null ? null : blockSettings.getSettings( );
+	}
+
+	/**
+	 * Gets the settings for a profile and block, along with their entity tag.
+	 * @param theProfile the name of the profile
+	 * @param theBlock the name of the block
+	 * @return the settings, or null if the profile doesn't exist or the block isn't accessible from it
+	 */
+	BlockSettings getBlockSettings( String theProfile, String theBlock ) {
+		return settingsIndex.getSettings( theProfile, theBlock );
+	}
+
+	/**
+	 * Gets the index of the settings currently being served. Callers needing
+	 * several blocks from the same version of the settings should use one index.
+	 * @return the current settings index
+	 */
+	SettingsIndex getSettingsIndex( ) {
+		return settingsIndex;
+	}
+
+	/**
+	 * Waits for the settings for a profile and block to change from the version and 
+	 * entity tag the caller has. The wait doesn't use a thread, the future is completed 
+	 * when new settings are loaded or when the configured maximum wait is reached.
+	 * @param theProfile the name of the profile
+	 * @param theBlock the name of the block
+	 * @param theVersion the version of the settings the caller has
+	 * @param theEntityTag the entity tag of the settings the caller has, which may be null
+	 * @return a future completed with the current settings, which are null if the block isn't accessible, or null if too many requests are waiting
+	 */
+	CompletableFuture<BlockSettings> waitForSettings( String theProfile, String theBlock, long theVersion, String theEntityTag ) {
+		return changeNotifier.waitForChange( theProfile, theBlock, theVersion, theEntityTag, maximumWait );
 	}
 }
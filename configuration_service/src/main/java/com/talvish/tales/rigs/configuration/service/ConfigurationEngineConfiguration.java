@@ -25,11 +25,34 @@ public class ConfigurationEngineConfiguration {
 	@Setting( name="{prefix}.settings.file", required=true )
 	private String settingsFilename;
 	
+	@Setting( name="{prefix}.settings.watch" )
+	private boolean watchSettings = true;
+	
+	@Setting( name="{prefix}.settings.reload_delay" )
+	private long settingsReloadDelay = 500;
+	
+	@Setting( name="{prefix}.settings.load_threads" )
+	private int settingsLoadThreads = Runtime.getRuntime( ).availableProcessors( );
+	
+	@Setting( name="{prefix}.settings.history_depth" )
+	private int historyDepth = 10;
+	
+	@Setting( name="{prefix}.settings.maximum_wait" )
+	private long maximumWait = 30000;
+	
+	@Setting( name="{prefix}.settings.maximum_waiters" )
+	private int maximumWaiters = 10000;
+	
 	//@Setting( name="{prefix}.settings.profile", required=true )
 	//private String settingsProfile;
 
 
 	
+	/**
+	 * The settings file to serve, or a directory of settings files, such 
+	 * as one per profile or team, that are loaded in parallel and merged.
+	 * @return the settings file or directory
+	 */
 	public String getSettingsFilename( ) {
 		return settingsFilename;
 	}
@@ -40,6 +63,94 @@ public class ConfigurationEngineConfiguration {
 		return this;
 	}
 	
+	/**
+	 * Indicates if the settings file, and the files it includes, are watched 
+	 * and reloaded when they change.
+	 * @return true if the settings are reloaded on change, false otherwise
+	 */
+	public boolean shouldWatchSettings( ) {
+		return watchSettings;
+	}
+	
+	public ConfigurationEngineConfiguration setWatchSettings( boolean shouldWatch ) {
+		watchSettings = shouldWatch;
+		return this;
+	}
+	
+	/**
+	 * How long, in milliseconds, to wait after the settings files change before 
+	 * reloading, so that files written in several steps are loaded once complete.
+	 * @return the reload delay, in milliseconds
+	 */
+	public long getSettingsReloadDelay( ) {
+		return settingsReloadDelay;
+	}
+	
+	public ConfigurationEngineConfiguration setSettingsReloadDelay( long theDelay ) {
+		Preconditions.checkArgument( theDelay >= 0, "the reload delay cannot be negative" );
+		settingsReloadDelay = theDelay;
+		return this;
+	}
+	
+	/**
+	 * The number of threads used to load the files in a settings directory.
+	 * @return the number of threads loading settings
+	 */
+	public int getSettingsLoadThreads( ) {
+		return settingsLoadThreads;
+	}
+	
+	public ConfigurationEngineConfiguration setSettingsLoadThreads( int theThreads ) {
+		Preconditions.checkArgument( theThreads > 0, "need at least one thread to load settings" );
+		settingsLoadThreads = theThreads;
+		return this;
+	}
+	
+	/**
+	 * The number of previous versions of each block's settings to keep 
+	 * so callers can be sent only what changed since their version.
+	 * @return the number of previous versions kept
+	 */
+	public int getHistoryDepth( ) {
+		return historyDepth;
+	}
+	
+	public ConfigurationEngineConfiguration setHistoryDepth( int theDepth ) {
+		Preconditions.checkArgument( theDepth >= 0, "the history depth cannot be negative" );
+		historyDepth = theDepth;
+		return this;
+	}
+	
+	/**
+	 * How long, in milliseconds, a request waiting for settings to change 
+	 * is held before returning that the settings haven't changed.
+	 * @return the maximum wait, in milliseconds
+	 */
+	public long getMaximumWait( ) {
+		return maximumWait;
+	}
+	
+	public ConfigurationEngineConfiguration setMaximumWait( long theWait ) {
+		Preconditions.checkArgument( theWait > 0, "the maximum wait must be greater than 0" );
+		maximumWait = theWait;
+		return this;
+	}
+	
+	/**
+	 * The number of requests that may wait for settings to change at once,
+	 * beyond which requests are told to retry later.
+	 * @return the maximum number of waiting requests
+	 */
+	public int getMaximumWaiters( ) {
+		return maximumWaiters;
+	}
+	
+	public ConfigurationEngineConfiguration setMaximumWaiters( int theMaximum ) {
+		Preconditions.checkArgument( theMaximum > 0, "the maximum number of waiting requests must be greater than 0" );
+		maximumWaiters = theMaximum;
+		return this;
+	}
+	
 //	public String getSettingsProfile( ) {
 //		return settingsProfile;
 //	}
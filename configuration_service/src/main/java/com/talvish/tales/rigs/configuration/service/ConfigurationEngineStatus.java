@@ -0,0 +1,147 @@
+//***************************************************************************
+//*  Copyright 2016 Joseph Molnar
+//*
+//*  Licensed under the Apache License, Version 2.0 (the "License");
+//*  you may not use this file except in compliance with the License.
+//*  You may obtain a copy of the License at
+//*
+//*      http://www.apache.org/licenses/LICENSE-2.0
+//*
+//*  Unless required by applicable law or agreed to in writing, software
+//*  distributed under the License is distributed on an "AS IS" BASIS,
+//*  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//*  See the License for the specific language governing permissions and
+//*  limitations under the License.
+//***************************************************************************
+package com.talvish.tales.rigs.configuration.service;
+
+import com.google.common.base.Preconditions;
+
+import com.talvish.tales.system.status.MonitorableStatusValue;
+
+/**
+ * The status of the configuration engine, which shows the version of 
+ * the settings being served and how reloading the settings is going.
+ * @author jmolnar
+ *
+ */
+public class ConfigurationEngineStatus {
+	private final ConfigurationEngine engine;
+	
+	/**
+	 * Constructor taking the engine to report on.
+	 * @param theEngine the engine
+	 */
+	ConfigurationEngineStatus( ConfigurationEngine theEngine ) {
+		Preconditions.checkNotNull( theEngine, "need an engine" );
+		engine = theEngine;
+	}
+	
+	/**
+	 * The version of the settings being served.
+	 * @return the settings version
+	 */
+	@MonitorableStatusValue( name = "settings_version", description = "The version of the settings being served, which increases each time the settings file is loaded." )
+	public long getSettingsVersion( ) {
+		return engine.getVersion( );
+	}
+
+	/**
+	 * The number of profiles being served.
+	 * @return the number of profiles
+	 */
+	@MonitorableStatusValue( name = "profiles", description = "The number of profiles in the settings being served." )
+	public int getProfiles( ) {
+		return engine.getProfileCount( );
+	}
+
+	/**
+	 * The number of profile and block pairs being served.
+	 * @return the number of profile and block pairs
+	 */
+	@MonitorableStatusValue( name = "blocks", description = "The number of accessible profile and block pairs in the settings being served." )
+	public int getBlocks( ) {
+		return engine.getBlockCount( );
+	}
+
+	/**
+	 * The number of settings in all blocks being served.
+	 * @return the number of settings
+	 */
+	@MonitorableStatusValue( name = "settings", description = "The number of settings in all blocks being served, counting a shared setting once for each block it is in." )
+	public long getSettings( ) {
+		return engine.getSettingCount( );
+	}
+
+	/**
+	 * The number of settings shared between blocks.
+	 * @return the number of shared settings
+	 */
+	@MonitorableStatusValue( name = "shared_settings", description = "The number of settings that are shared with other profiles and blocks rather than copied." )
+	public long getSharedSettings( ) {
+		return engine.getSharedSettings( );
+	}
+
+	/**
+	 * The number of setting values shared between settings.
+	 * @return the number of shared values
+	 */
+	@MonitorableStatusValue( name = "shared_values", description = "The number of setting values that are shared with other settings rather than copied." )
+	public long getSharedValues( ) {
+		return engine.getSharedValues( );
+	}
+
+	/**
+	 * The estimated memory saved by sharing settings and values.
+	 * @return the estimated bytes saved
+	 */
+	@MonitorableStatusValue( name = "estimated_bytes_saved", description = "The estimated heap, in bytes, saved by sharing identical settings and values instead of copying them." )
+	public long getEstimatedBytesSaved( ) {
+		return engine.getEstimatedBytesSaved( );
+	}
+
+	/**
+	 * The number of times the settings were reloaded.
+	 * @return the number of reloads
+	 */
+	@MonitorableStatusValue( name = "reloads", description = "The number of times the settings were reloaded because the settings files changed." )
+	public long getReloads( ) {
+		return engine.getReloads( );
+	}
+
+	/**
+	 * The number of times the settings could not be reloaded.
+	 * @return the number of failed reloads
+	 */
+	@MonitorableStatusValue( name = "failed_reloads", description = "The number of times the settings files changed but could not be loaded, so the previous settings were kept." )
+	public long getFailedReloads( ) {
+		return engine.getFailedReloads( );
+	}
+
+	/**
+	 * The number of requests waiting for settings to change.
+	 * @return the number of waiting requests
+	 */
+	@MonitorableStatusValue( name = "waiting_requests", description = "The number of requests currently waiting for settings to change." )
+	public int getWaitingRequests( ) {
+		return engine.getWaitingRequests( );
+	}
+
+	/**
+	 * The number of waiting requests completed because settings changed.
+	 * @return the number of change notifications
+	 */
+	@MonitorableStatusValue( name = "change_notifications", description = "The number of waiting requests completed because the settings they were waiting on changed." )
+	public long getChangeNotifications( ) {
+		return engine.getChangeNotifications( );
+	}
+
+	/**
+	 * The number of waiting requests that timed out.
+	 * @return the number of timed out waits
+	 */
+	@MonitorableStatusValue( name = "wait_timeouts", description = "The number of waiting requests completed because they reached the maximum wait without the settings changing." )
+	public long getWaitTimeouts( ) {
+		return engine.getWaitTimeouts( );
+	}
+}
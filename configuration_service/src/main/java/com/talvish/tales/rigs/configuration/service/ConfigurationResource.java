@@ -15,16 +15,34 @@
 // ***************************************************************************
 package com.talvish.tales.rigs.configuration.service;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.talvish.tales.communication.Status;
+import com.talvish.tales.contracts.services.http.HeaderParam;
 import com.talvish.tales.contracts.services.http.RequestParam;
 import com.talvish.tales.contracts.services.http.ResourceContract;
 import com.talvish.tales.contracts.services.http.ResourceOperation;
+import com.talvish.tales.contracts.services.http.ResourceResult;
+import com.talvish.tales.validation.Conditions;
+import com.talvish.tales.validation.constraints.Min;
 import com.talvish.tales.validation.constraints.NotEmpty;
 
+/**
+ * HTTP resource contract for getting settings. The long poll for settings
+ * changes, 'wait_for_settings', is served by {@link SettingsChangesServlet}
+ * since it completes requests asynchronously.
+ * @author jmolnar
+ *
+ */
 @ResourceContract( name="com.tales.configuration_contract", versions={ "20160701" } )
 public class ConfigurationResource {
+	private static final String ENTITY_TAG_HEADER = "ETag";
+	private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+	private static final String SETTINGS_VERSION_HEADER = "X-Settings-Version";
+
 	private final ConfigurationEngine engine;
 	
 	/**
@@ -37,21 +55,171 @@ public class ConfigurationResource {
 	}
 
 	/**
-	 * Gets the settings for the specific profile and block.
-	 * @param theProfile
-	 * @param theBlock
-	 * @return
+	 * Gets the settings for the specific profile and block. If the caller 
+	 * already has the current settings, as indicated by If-None-Match, the
+	 * settings are not sent and the status is OPERATION_NOT_MODIFIED. The 
+	 * version in which the settings last changed is sent as a header.
+	 * @param theProfile the profile to get settings from
+	 * @param theBlock the block, accessible from the profile, to get settings from
+	 * @param theEntityTags the entity tags, from If-None-Match, the caller already has
+	 * @return the settings
 	 */
 	@ResourceOperation( name="get_settings", path="GET : settings" )
-	public List<Setting> getSettings( 
+	public ResourceResult<List<Setting>> getSettings( 
+			@NotEmpty @RequestParam( name="profile" ) String theProfile, 
+			@NotEmpty @RequestParam( name="block" ) String theBlock,
+			@HeaderParam( name=IF_NONE_MATCH_HEADER ) String theEntityTags ) {
+		ResourceResult<List<Setting>> result = new ResourceResult<List<Setting>>( );
+		BlockSettings blockSettings = engine.getBlockSettings( theProfile,  theBlock );
+
+		Conditions.checkFound( blockSettings != null, theProfile + "/" + theBlock, "Could not find block '%s' accessible from profile '%s'.", theBlock, theProfile );
+		if( matches( blockSettings.getEntityTag( ), theEntityTags ) ) {
+			result.setResult( null, Status.OPERATION_NOT_MODIFIED );
+		} else {
+			result.setResult( blockSettings.getSettings( ), Status.OPERATION_COMPLETED );
+		}
+		result.setHeader( ENTITY_TAG_HEADER, blockSettings.getEntityTag( ) );
+		result.setHeader( SETTINGS_VERSION_HEADER, Long.toString( blockSettings.getVersion( ) ) );
+		
+		return result;
+	}
+	
+	/**
+	 * Gets a single setting for the specific profile and block, so callers 
+	 * needing one value don't need to get the whole block. The version in 
+	 * which the block's settings last changed is sent as a header.
+	 * @param theProfile the profile to get the setting from
+	 * @param theBlock the block, accessible from the profile, to get the setting from
+	 * @param theName the name of the setting
+	 * @return the setting
+	 */
+	@ResourceOperation( name="get_setting", path="GET : setting" )
+	public ResourceResult<Setting> getSetting( 
+			@NotEmpty @RequestParam( name="profile" ) String theProfile, 
+			@NotEmpty @RequestParam( name="block" ) String theBlock,
+			@NotEmpty @RequestParam( name="name" ) String theName ) {
+		ResourceResult<Setting> result = new ResourceResult<Setting>( );
+		BlockSettings blockSettings = engine.getBlockSettings( theProfile,  theBlock );
+
+		Conditions.checkFound( blockSettings != null, theProfile + "/" + theBlock, "Could not find block '%s' accessible from profile '%s'.", theBlock, theProfile );
+		Setting setting = blockSettings.getSetting( theName );
+		Conditions.checkFound( setting != null, theProfile + "/" + theBlock + "/" + theName, "Could not find setting '%s' in block '%s' accessible from profile '%s'.", theName, theBlock, theProfile );
+		result.setResult( setting, Status.OPERATION_COMPLETED );
+		result.setHeader( SETTINGS_VERSION_HEADER, Long.toString( blockSettings.getVersion( ) ) );
+		
+		return result;
+	}
+
+	/**
+	 * Gets the named settings for the specific profile and block in one call. 
+	 * Names the block doesn't have a setting for are skipped, so callers can
+	 * tell which settings are missing by those not returned. 
+	 * @param theProfile the profile to get the settings from
+	 * @param theBlock the block, accessible from the profile, to get the settings from
+	 * @param theNames the names of the settings
+	 * @return the settings found, in the order of the names
+	 */
+	@ResourceOperation( name="get_named_settings", path="POST : settings/named" )
+	public ResourceResult<List<Setting>> getNamedSettings( 
+			@NotEmpty @RequestParam( name="profile" ) String theProfile, 
+			@NotEmpty @RequestParam( name="block" ) String theBlock,
+			@RequestParam( name="names" ) List<String> theNames ) {
+		Conditions.checkParameter( theNames != null && !theNames.isEmpty( ), "at least one setting name must be given" );
+
+		ResourceResult<List<Setting>> result = new ResourceResult<List<Setting>>( );
+		List<Setting> settings = engine.getSettings( theProfile, theBlock, theNames );
+		
+		Conditions.checkFound( settings != null, theProfile + "/" + theBlock, "Could not find block '%s' accessible from profile '%s'.", theBlock, theProfile );
+		result.setResult( settings, Status.OPERATION_COMPLETED );
+		
+		return result;
+	}
+
+	/**
+	 * Gets the settings for several profiles and blocks in one call. All of the 
+	 * settings come from the same version of the settings, which is returned, 
+	 * and each block has the version and entity tag it would have if asked for 
+	 * on its own. If any of the blocks cannot be found the call fails.
+	 * @param theBlocks the profiles and blocks to get settings for
+	 * @return the settings for each profile and block, in the order requested
+	 */
+	@ResourceOperation( name="get_settings_batch", path="POST : settings/batch" )
+	public ResourceResult<SettingsBatch> getSettingsBatch( 
+			@RequestParam( name="blocks" ) List<BlockReference> theBlocks ) {
+		Conditions.checkParameter( theBlocks != null && !theBlocks.isEmpty( ), "at least one block must be requested" );
+		
+		ResourceResult<SettingsBatch> result = new ResourceResult<SettingsBatch>( );
+		SettingsIndex settingsIndex = engine.getSettingsIndex( ); // all blocks come from this one version
+		List<BlockSettingsResult> blockResults = new ArrayList<>( theBlocks.size( ) );
+		
+		for( BlockReference block : theBlocks ) {
+			Conditions.checkParameter( block != null && !Strings.isNullOrEmpty( block.getProfile( ) ) && !Strings.isNullOrEmpty( block.getBlock( ) ), "each requested block needs a profile and block name" );
+
+			BlockSettings blockSettings = settingsIndex.getSettings( block.getProfile( ), block.getBlock( ) );
+			Conditions.checkFound( blockSettings != null, block.getProfile( ) + "/" + block.getBlock( ), "Could not find block '%s' accessible from profile '%s'.", block.getBlock( ), block.getProfile( ) );
+			blockResults.add( new BlockSettingsResult( blockSettings ) );
+		}
+		result.setResult( new SettingsBatch( settingsIndex.getVersion( ), blockResults ), Status.OPERATION_COMPLETED );
+		result.setHeader( SETTINGS_VERSION_HEADER, Long.toString( settingsIndex.getVersion( ) ) );
+		
+		return result;
+	}
+
+	/**
+	 * Gets the settings added, changed and removed for the specific profile and 
+	 * block since the version, taken from the X-Settings-Version header, the caller 
+	 * has. The version is sent as 'settings_version' since 'version' is the contract 
+	 * version. Versions are only counted within a process, so the caller also sends
+	 * the entity tag it has, as If-None-Match, and a delta is only computed when 
+	 * both match a version in the history, otherwise the delta is a full snapshot. 
+	 * If the caller has the current version and entity tag the status is 
+	 * OPERATION_NOT_MODIFIED.
+	 * @param theProfile the profile to get settings from
+	 * @param theBlock the block, accessible from the profile, to get settings from
+	 * @param theVersion the version of the settings the caller has
+	 * @param theEntityTag the entity tag, from If-None-Match, of the settings the caller has
+	 * @return the changes to the settings
+	 */
+	@ResourceOperation( name="get_settings_delta", path="GET : settings/delta" )
+	public ResourceResult<SettingsDelta> getSettingsDelta( 
 			@NotEmpty @RequestParam( name="profile" ) String theProfile, 
-			@NotEmpty @RequestParam( name="block" ) String theBlock ) {
-		List<Setting> settings = engine.getSettings( theProfile,  theBlock );
+			@NotEmpty @RequestParam( name="block" ) String theBlock,
+			@Min( 0 ) @RequestParam( name="settings_version" ) long theVersion,
+			@HeaderParam( name=IF_NONE_MATCH_HEADER ) String theEntityTag ) {
+		ResourceResult<SettingsDelta> result = new ResourceResult<SettingsDelta>( );
+		BlockSettings blockSettings = engine.getBlockSettings( theProfile,  theBlock );
 
-		if( settings != null ) {
-			return settings;
+		Conditions.checkFound( blockSettings != null, theProfile + "/" + theBlock, "Could not find block '%s' accessible from profile '%s'.", theBlock, theProfile );
+		if( blockSettings.isCurrent( theVersion, theEntityTag ) ) {
+			result.setResult( null, Status.OPERATION_NOT_MODIFIED );
 		} else {
-			return null; // TODO: need some errors 
+			result.setResult( blockSettings.createDelta( theVersion, theEntityTag ), Status.OPERATION_COMPLETED );
+		}
+		result.setHeader( ENTITY_TAG_HEADER, blockSettings.getEntityTag( ) );
+		result.setHeader( SETTINGS_VERSION_HEADER, Long.toString( blockSettings.getVersion( ) ) );
+		
+		return result;
+	}
+
+	/**
+	 * Helper method that determines if an entity tag is in the list from an If-None-Match
+	 * header. As required for If-None-Match, weak tags match their strong equivalent.
+	 * @param theEntityTag the current entity tag
+	 * @param theEntityTags the comma separated entity tags the caller has, which may be null
+	 * @return true if the caller has the current version, false otherwise
+	 */
+	private static boolean matches( String theEntityTag, String theEntityTags ) {
+		if( !Strings.isNullOrEmpty( theEntityTags ) ) {
+			for( String entityTag : theEntityTags.split( "," ) ) {
+				entityTag = entityTag.trim( );
+				if( entityTag.startsWith( "W/" ) ) {
+					entityTag = entityTag.substring( 2 );
+				}
+				if( entityTag.equals( "*" ) || entityTag.equals( theEntityTag ) ) {
+					return true;
+				}
+			}
 		}
+		return false;
 	}
 }
@@ -15,6 +15,8 @@
 //***************************************************************************
 package com.talvish.tales.rigs.configuration.service;
 
+import java.util.Collections;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,6 +32,7 @@ import com.talvish.tales.services.http.ServiceConstants;
 *
 */
 public class ConfigurationService extends Service {
+	private static final String SETTINGS_CHANGES_PATH = "/configuration/settings/changes";
 	private static final Logger logger = LoggerFactory.getLogger( ConfigurationEngine.class );
 
 	private ConfigurationEngine engine;
@@ -43,7 +46,26 @@ public class ConfigurationService extends Service {
 		super.onStart();
 		
 		engine = new ConfigurationEngine( this.getConfigurationManager().getValues( ConfigurationEngineConfiguration.class ) );
-		this.interfaceManager.getInterface( ServiceConstants.INTERNAL_INTERFACE_NAME, HttpInterface.class ).bind( new ConfigurationResource( engine ), "/configuration" );
+		HttpInterface httpInterface = this.interfaceManager.getInterface( ServiceConstants.INTERNAL_INTERFACE_NAME, HttpInterface.class );
+		httpInterface.bind( new ConfigurationResource( engine ), "/configuration" );
+		httpInterface.bind( new SettingsChangesServlet( engine ), SETTINGS_CHANGES_PATH );
+		this.statusManager.register( "configuration_engine_status", engine.getStatus( ) );
+		
+		CompressionConfiguration compressionConfiguration = this.getConfigurationManager().getValues( CompressionConfiguration.class );
+		if( compressionConfiguration.isEnabled( ) ) {
+			// the long poll writes its response asynchronously so it cannot be buffered and compressed
+			CompressionFilter compressionFilter = new CompressionFilter( compressionConfiguration, Collections.singleton( SETTINGS_CHANGES_PATH ) );
+			httpInterface.bind( compressionFilter, "/configuration/*" );
+			this.statusManager.register( "compression_status", compressionFilter );
+		}
+	}
+	
+	@Override
+	protected void onStop() {
+		if( engine != null ) {
+			engine.close( );
+		}
+		super.onStop();
 	}
 }
 
@@ -15,7 +15,13 @@ package com.talvish.tales.rigs.configuration.service;
 //*  limitations under the License.
 //***************************************************************************
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
 import com.google.common.base.Preconditions;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.gson.JsonElement;
 import com.talvish.tales.contracts.data.DataContract;
 import com.talvish.tales.contracts.data.DataMember;
@@ -38,6 +44,11 @@ import com.talvish.tales.serialization.json.UnmappedValue;
 
 @DataContract( name="com.talvish.tales.configuration.setting")
 public class Setting {
+	/**
+	 * The bytes kept per setting for the digest of its value.
+	 */
+	static final int VALUE_DIGEST_BYTES = 16;
+	
 	@UnmappedName
 	@DataMember( name="name" )
 	private String name;
@@ -55,9 +66,14 @@ public class Setting {
 	@DataMember( name="source_name" )
 	private String sourceName;
 	
+	// a digest of the serialized value, not part of the wire form, so values
+	// can be compared without keeping a serialized copy of each of them
+	private long valueDigestHigh;
+	private long valueDigestLow;
 	
 	/**
-	 * A simple constructor needed for serialization.
+	 * A simple constructor needed for serialization. Settings created this 
+	 * way have no value digest, so are only written, never indexed.
 	 */
 	protected Setting( ) {
 	}
@@ -75,6 +91,31 @@ public class Setting {
 		value = theSetting.getValue();
 		sensitive = theSetting.isSensitive( );
 		sourceName = theSetting.getSourceName( );
+		
+		if( value != null ) {
+			// some values JSON considers equal, like 1 and 1.0, are not sent 
+			// the same way, so the serialized form is what we digest
+			ByteBuffer digest = ByteBuffer.wrap( Hashing.sha256( ).hashString( value.toString( ), StandardCharsets.UTF_8 ).asBytes( ) );
+			valueDigestHigh = digest.getLong( );
+			valueDigestLow = digest.getLong( );
+		}
+	}
+
+	/**
+	 * Constructor that copies a setting but uses a different, though 
+	 * identically serialized, value so that identical values can be shared.
+	 * @param theSetting the setting to copy
+	 * @param theValue the value to use
+	 */
+	Setting( Setting theSetting, JsonElement theValue ) {
+		Preconditions.checkArgument( theSetting != null, "Attempting to copy a setting without a setting." );
+		name = theSetting.name;
+		description = theSetting.description;
+		value = theValue;
+		sensitive = theSetting.sensitive;
+		sourceName = theSetting.sourceName;
+		valueDigestHigh = theSetting.valueDigestHigh;
+		valueDigestLow = theSetting.valueDigestLow;
 	}
 
 	/**
@@ -102,6 +143,34 @@ public class Setting {
 		return value;
 	}
 	
+	/**
+	 * Indicates if this setting's value serializes the same way as another 
+	 * setting's value, based on the digest taken when the setting was created.
+	 * @param theSetting the other setting
+	 * @return true if the values are the same, false otherwise
+	 */
+	boolean hasSameValue( Setting theSetting ) {
+		return ( value == null ) == ( theSetting.value == null ) &&
+				valueDigestHigh == theSetting.valueDigestHigh &&
+				valueDigestLow == theSetting.valueDigestLow;
+	}
+	
+	/**
+	 * Adds the digest of the value to a hash, such as for an entity tag.
+	 * @param theHasher the hash to add to
+	 */
+	void putValueDigest( Hasher theHasher ) {
+		theHasher.putBoolean( value != null ).putLong( valueDigestHigh ).putLong( valueDigestLow );
+	}
+	
+	/**
+	 * A hash code for the value, based on its digest.
+	 * @return the hash code
+	 */
+	int valueHashCode( ) {
+		return Long.hashCode( valueDigestHigh );
+	}
+	
 	/**
 	 * Indicates if this setting is consider sensitive. If sensitive the intention is for the setting value to
 	 * not be dumped into log files or be made generally visible.
@@ -119,4 +188,29 @@ public class Setting {
 	public String getSourceName( ) {
 		return sourceName;
 	}	
+	
+	/**
+	 * Settings are equal if all of their parts, including the source, are equal.
+	 * Values are compared on a digest of their serialized form, see {@link #hasSameValue(Setting)}.
+	 */
+	@Override
+	public boolean equals( Object theObject ) {
+		if( this == theObject ) {
+			return true;
+		} else if( !( theObject instanceof Setting ) ) {
+			return false;
+		} else {
+			Setting otherSetting = ( Setting )theObject;
+			return sensitive == otherSetting.sensitive &&
+					Objects.equals( name, otherSetting.name ) &&
+					hasSameValue( otherSetting ) &&
+					Objects.equals( description, otherSetting.description ) &&
+					Objects.equals( sourceName, otherSetting.sourceName );
+		}
+	}
+	
+	@Override
+	public int hashCode( ) {
+		return Objects.hash( name, valueHashCode( ), description, sensitive, sourceName );
+	}
 }
\ No newline at end of file
@@ -0,0 +1,71 @@
+//***************************************************************************
+//*  Copyright 2016 Joseph Molnar
+//*
+//*  Licensed under the Apache License, Version 2.0 (the "License");
+//*  you may not use this file except in compliance with the License.
+//*  You may obtain a copy of the License at
+//*
+//*      http://www.apache.org/licenses/LICENSE-2.0
+//*
+//*  Unless required by applicable law or agreed to in writing, software
+//*  distributed under the License is distributed on an "AS IS" BASIS,
+//*  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//*  See the License for the specific language governing permissions and
+//*  limitations under the License.
+//***************************************************************************
+package com.talvish.tales.rigs.configuration.service;
+
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.talvish.tales.contracts.data.DataContract;
+import com.talvish.tales.contracts.data.DataMember;
+
+/**
+ * The settings for several profiles and blocks, all taken from the
+ * same version of the settings.
+ * @author jmolnar
+ *
+ */
+@DataContract( name="com.talvish.tales.configuration.settings_batch")
+public class SettingsBatch {
+	@DataMember( name="version" )
+	private long version;
+	
+	@DataMember( name="blocks" )
+	private List<BlockSettingsResult> blocks;
+	
+	/**
+	 * A simple constructor needed for serialization.
+	 */
+	protected SettingsBatch( ) {
+	}
+	
+	/**
+	 * Constructor taking the settings to return.
+	 * @param theVersion the version of the settings the blocks were taken from
+	 * @param theBlocks the settings for each profile and block, in the order requested
+	 */
+	SettingsBatch( long theVersion, List<BlockSettingsResult> theBlocks ) {
+		Preconditions.checkNotNull( theBlocks, "need blocks" );
+		
+		version = theVersion;
+		blocks = theBlocks;
+	}
+	
+	/**
+	 * The version of the settings all of the blocks were taken from.
+	 * @return the version
+	 */
+	public long getVersion( ) {
+		return version;
+	}
+	
+	/**
+	 * The settings for each profile and block, in the order requested.
+	 * @return the settings for the blocks
+	 */
+	public List<BlockSettingsResult> getBlocks( ) {
+		return blocks;
+	}
+}
@@ -0,0 +1,203 @@
+//***************************************************************************
+//*  Copyright 2016 Joseph Molnar
+//*
+//*  Licensed under the Apache License, Version 2.0 (the "License");
+//*  you may not use this file except in compliance with the License.
+//*  You may obtain a copy of the License at
+//*
+//*      http://www.apache.org/licenses/LICENSE-2.0
+//*
+//*  Unless required by applicable law or agreed to in writing, software
+//*  distributed under the License is distributed on an "AS IS" BASIS,
+//*  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//*  See the License for the specific language governing permissions and
+//*  limitations under the License.
+//***************************************************************************
+package com.talvish.tales.rigs.configuration.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Tracks requests waiting for the settings of a profile and block to change.
+ * Waiting requests are futures, completed when a new index is swapped in with
+ * different settings for the block, or when they time out, so no thread is
+ * needed per waiting request. A single timer thread handles timeouts.
+ * @author jmolnar
+ *
+ */
+final class SettingsChangeNotifier {
+	private final int maximumWaiters;
+	private final Map<String,Map<String,List<Waiter>>> waiters = new HashMap<>( ); // profile name, then block name
+	private final ScheduledThreadPoolExecutor timer;
+	private SettingsIndex settingsIndex;
+	private int waiterCount = 0;
+	
+	private final AtomicLong notifications = new AtomicLong( );
+	private final AtomicLong timeouts = new AtomicLong( );
+	
+	/**
+	 * A request waiting on a block, along with the timeout that ends the wait.
+	 */
+	private static final class Waiter {
+		private final BlockSettings settings; // the settings the caller has
+		private final CompletableFuture<BlockSettings> future = new CompletableFuture<>( );
+		private ScheduledFuture<?> timeout;
+		
+		private Waiter( BlockSettings theSettings ) {
+			settings = theSettings;
+		}
+	}
+	
+	/**
+	 * Constructor taking the number of requests allowed to wait at once.
+	 * @param theMaximumWaiters the maximum number of waiting requests
+	 */
+	SettingsChangeNotifier( int theMaximumWaiters ) {
+		Preconditions.checkArgument( theMaximumWaiters > 0, "the maximum number of waiters must be greater than 0" );
+		maximumWaiters = theMaximumWaiters;
+		timer = new ScheduledThreadPoolExecutor( 1, runnable -> {
+			Thread thread = new Thread( runnable, "settings-change-timer" );
+			thread.setDaemon( true );
+			return thread;
+		} );
+		timer.setRemoveOnCancelPolicy( true ); // completed waits shouldn't leave their timeouts behind
+	}
+	
+	/**
+	 * Waits for the settings of a profile and block to differ from the version the caller has.
+	 * Versions are only counted within a process, so the caller only waits if its entity tag
+	 * matches too. If the settings already differ, or the block is no longer accessible, the 
+	 * future is already complete.
+	 * @param theProfile the name of the profile
+	 * @param theBlock the name of the block
+	 * @param theVersion the version of the settings the caller has
+	 * @param theEntityTag the entity tag of the settings the caller has, which may be null
+	 * @param theTimeout how long, in milliseconds, to wait before completing with the current settings
+	 * @return a future completed with the current settings, which may be null if the block is no longer accessible, or null if too many requests are waiting 
+	 */
+	synchronized CompletableFuture<BlockSettings> waitForChange( String theProfile, String theBlock, long theVersion, String theEntityTag, long theTimeout ) {
+		Preconditions.checkState( settingsIndex != null, "settings have not been loaded" );
+		BlockSettings currentSettings = settingsIndex.getSettings( theProfile, theBlock );
+		
+		if( currentSettings == null || !currentSettings.isCurrent( theVersion, theEntityTag ) ) {
+			return CompletableFuture.completedFuture( currentSettings );
+		} else if( waiterCount >= maximumWaiters ) {
+			return null;
+		} else {
+			Waiter waiter = new Waiter( currentSettings );
+			
+			waiters.computeIfAbsent( theProfile, profile -> new HashMap<>( ) ).computeIfAbsent( theBlock, block -> new ArrayList<>( ) ).add( waiter );
+			waiterCount += 1;
+			waiter.timeout = timer.schedule( ( ) -> expire( theProfile, theBlock, waiter ), theTimeout, TimeUnit.MILLISECONDS );
+			return waiter.future;
+		}
+	}
+
+	/**
+	 * Called when a new index is swapped in, completing the requests waiting
+	 * on blocks whose settings changed or are no longer accessible.
+	 * @param theIndex the index now being served
+	 */
+	synchronized void update( SettingsIndex theIndex ) {
+		Preconditions.checkNotNull( theIndex, "need an index" );
+		
+		settingsIndex = theIndex;
+		Iterator<Map.Entry<String,Map<String,List<Waiter>>>> profileIterator = waiters.entrySet( ).iterator( );
+		while( profileIterator.hasNext( ) ) {
+			Map.Entry<String,Map<String,List<Waiter>>> profileEntry = profileIterator.next( );
+			Iterator<Map.Entry<String,List<Waiter>>> blockIterator = profileEntry.getValue( ).entrySet( ).iterator( );
+			
+			while( blockIterator.hasNext( ) ) {
+				Map.Entry<String,List<Waiter>> blockEntry = blockIterator.next( );
+				BlockSettings currentSettings = theIndex.getSettings( profileEntry.getKey( ), blockEntry.getKey( ) );
+				
+				// everyone waiting on a block has the same version, since
+				// only those with the current version wait
+				if( currentSettings == null || currentSettings.getVersion( ) != blockEntry.getValue( ).get( 0 ).settings.getVersion( ) ) {
+					for( Waiter waiter : blockEntry.getValue( ) ) {
+						waiter.timeout.cancel( false );
+						waiter.future.complete( currentSettings );
+					}
+					notifications.addAndGet( blockEntry.getValue( ).size( ) );
+					waiterCount -= blockEntry.getValue( ).size( );
+					blockIterator.remove( );
+				}
+			}
+			if( profileEntry.getValue( ).isEmpty( ) ) {
+				profileIterator.remove( );
+			}
+		}
+	}
+	
+	/**
+	 * Helper method, run by the timer, that ends a wait that has timed out.
+	 */
+	private synchronized void expire( String theProfile, String theBlock, Waiter theWaiter ) {
+		Map<String,List<Waiter>> blockWaiters = waiters.get( theProfile );
+		List<Waiter> waiterList = blockWaiters == null ? null : blockWaiters.get( theBlock );
+		
+		if( waiterList != null && waiterList.remove( theWaiter ) ) {
+			waiterCount -= 1;
+			if( waiterList.isEmpty( ) ) {
+				blockWaiters.remove( theBlock );
+				if( blockWaiters.isEmpty( ) ) {
+					waiters.remove( theProfile );
+				}
+			}
+			timeouts.incrementAndGet( );
+			theWaiter.future.complete( settingsIndex.getSettings( theProfile, theBlock ) );
+		}
+	}
+	
+	/**
+	 * Stops the timer and completes all waiting requests with the current settings.
+	 */
+	synchronized void close( ) {
+		timer.shutdownNow( );
+		for( Map.Entry<String,Map<String,List<Waiter>>> profileEntry : waiters.entrySet( ) ) {
+			for( Map.Entry<String,List<Waiter>> blockEntry : profileEntry.getValue( ).entrySet( ) ) {
+				BlockSettings currentSettings = settingsIndex.getSettings( profileEntry.getKey( ), blockEntry.getKey( ) );
+				for( Waiter waiter : blockEntry.getValue( ) ) {
+					waiter.future.complete( currentSettings );
+				}
+			}
+		}
+		waiters.clear( );
+		waiterCount = 0;
+	}
+	
+	/**
+	 * The number of requests currently waiting for settings to change.
+	 * @return the number of waiting requests
+	 */
+	synchronized int getWaiterCount( ) {
+		return waiterCount;
+	}
+	
+	/**
+	 * The number of waiting requests completed because settings changed.
+	 * @return the number of notifications
+	 */
+	long getNotifications( ) {
+		return notifications.get( );
+	}
+	
+	/**
+	 * The number of waiting requests completed because they timed out.
+	 * @return the number of timeouts
+	 */
+	long getTimeouts( ) {
+		return timeouts.get( );
+	}
+}
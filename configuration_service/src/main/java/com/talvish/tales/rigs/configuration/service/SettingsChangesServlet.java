@@ -0,0 +1,162 @@
+//***************************************************************************
+//*  Copyright 2016 Joseph Molnar
+//*
+//*  Licensed under the Apache License, Version 2.0 (the "License");
+//*  you may not use this file except in compliance with the License.
+//*  You may obtain a copy of the License at
+//*
+//*      http://www.apache.org/licenses/LICENSE-2.0
+//*
+//*  Unless required by applicable law or agreed to in writing, software
+//*  distributed under the License is distributed on an "AS IS" BASIS,
+//*  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//*  See the License for the specific language governing permissions and
+//*  limitations under the License.
+//***************************************************************************
+package com.talvish.tales.rigs.configuration.service;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.gson.reflect.TypeToken;
+import com.talvish.tales.communication.Status;
+import com.talvish.tales.contracts.data.DataContractTypeSource;
+import com.talvish.tales.serialization.json.JsonTranslationFacility;
+import com.talvish.tales.services.http.ResponseHelper;
+
+/**
+ * Serves the 'wait_for_settings' long poll, which holds a request until the 
+ * settings for a profile and block change from the version and entity tag the
+ * caller has, or until the configured maximum wait, returning that they haven't
+ * changed. Versions alone aren't unique across service instances or restarts, 
+ * so callers whose entity tag doesn't match are answered right away.
+ * <p>
+ * Resource operations must return their result, so holding the request in 
+ * an operation holds a thread for the whole wait. Instead this servlet puts 
+ * the request into asynchronous mode and writes the response when the engine
+ * completes the wait, so waiting requests don't use a thread at all. The 
+ * servlet, and any filters in front of it, must be bound as supporting 
+ * asynchronous requests.
+ * @author jmolnar
+ *
+ */
+public class SettingsChangesServlet extends HttpServlet {
+	private static final long serialVersionUID = 1L;
+	
+	private static final String ENTITY_TAG_HEADER = "ETag";
+	private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+	private static final String SETTINGS_VERSION_HEADER = "X-Settings-Version";
+	private static final String RETRY_AFTER_HEADER = "Retry-After";
+	private static final String CACHE_CONTROL_HEADER = "Cache-Control";
+	private static final String SETTINGS_VERSION_PARAMETER = "settings_version";
+	private static final Type SETTINGS_TYPE = new TypeToken<List<Setting>>( ) { }.getType( );
+
+	private final transient ConfigurationEngine engine;
+	private final transient JsonTranslationFacility translationFacility = new JsonTranslationFacility( new DataContractTypeSource( ) );
+	
+	/**
+	 * Constructor taking the engine needed by the servlet.
+	 * @param theEngine the engine to use
+	 */
+	public SettingsChangesServlet( ConfigurationEngine theEngine ) {
+		Preconditions.checkArgument( theEngine != null, "need an engine" );
+		engine = theEngine;
+	}
+
+	/**
+	 * Waits for the settings given by the 'profile' and 'block' parameters to change 
+	 * from the version given by the 'settings_version' parameter, which isn't named 
+	 * 'version' since requests use that for the contract version, and the entity tag 
+	 * given by If-None-Match. If the caller's version or entity tag is already out of 
+	 * date the settings are returned immediately. If too many requests are waiting 
+	 * the caller is told to retry later.
+	 */
+	@Override
+	protected void doGet( HttpServletRequest theRequest, HttpServletResponse theResponse ) throws ServletException, IOException {
+		String profile = theRequest.getParameter( "profile" );
+		String block = theRequest.getParameter( "block" );
+		long version = parseVersion( theRequest.getParameter( SETTINGS_VERSION_PARAMETER ) );
+		String entityTag = theRequest.getHeader( IF_NONE_MATCH_HEADER );
+		
+		if( Strings.isNullOrEmpty( profile ) || Strings.isNullOrEmpty( block ) || version < 0 ) {
+			ResponseHelper.writeFailure( theRequest, theResponse, Status.CALLER_BAD_INPUT, null, "A profile, block and a settings_version of at least zero must be given.", null );
+		} else {
+			CompletableFuture<BlockSettings> waitingSettings = engine.waitForSettings( profile, block, version, entityTag );
+			
+			if( waitingSettings == null ) {
+				theResponse.setHeader( RETRY_AFTER_HEADER, "1" );
+				ResponseHelper.writeFailure( theRequest, theResponse, Status.OPERATION_RETRY, "too_many_waiting", "Too many requests are waiting for settings to change, try again later.", null );
+			} else if( waitingSettings.isDone( ) ) {
+				writeSettings( theRequest, theResponse, profile, block, version, entityTag, waitingSettings.join( ) );
+			} else {
+				AsyncContext asyncContext = theRequest.startAsync( );
+				
+				asyncContext.setTimeout( 0 ); // the engine always ends the wait, either by a change or its own timeout
+				// the wait is completed on the engine's threads, while they hold its locks, 
+				// so the response is written on one of the container's threads instead
+				waitingSettings.thenAccept( blockSettings -> asyncContext.start( ( ) -> {
+					try {
+						writeSettings( ( HttpServletRequest )asyncContext.getRequest( ), ( HttpServletResponse )asyncContext.getResponse( ), profile, block, version, entityTag, blockSettings );
+					} catch( IOException e ) {
+						// the caller went away, nothing more can be sent
+					} finally {
+						asyncContext.complete( );
+					}
+				} ) );
+			}
+		}
+	}
+	
+	/**
+	 * Helper method that writes the response for a completed wait.
+	 * @param theRequest the request
+	 * @param theResponse the response to write to
+	 * @param theProfile the profile the settings are for
+	 * @param theBlock the block the settings are for
+	 * @param theVersion the version of the settings the caller has
+	 * @param theEntityTag the entity tag of the settings the caller has, which may be null
+	 * @param theSettings the current settings, which are null if the block isn't accessible 
+	 * @throws IOException thrown if the response cannot be written
+	 */
+	private void writeSettings( HttpServletRequest theRequest, HttpServletResponse theResponse, String theProfile, String theBlock, long theVersion, String theEntityTag, BlockSettings theSettings ) throws IOException {
+		if( theSettings == null ) {
+			ResponseHelper.writeFailure( theRequest, theResponse, Status.CALLER_NOT_FOUND, null, String.format( "Could not find block '%s' accessible from profile '%s'.", theBlock, theProfile ), null );
+		} else {
+			theResponse.setHeader( ENTITY_TAG_HEADER, theSettings.getEntityTag( ) );
+			theResponse.setHeader( SETTINGS_VERSION_HEADER, Long.toString( theSettings.getVersion( ) ) );
+			theResponse.setHeader( CACHE_CONTROL_HEADER, "no-cache" );
+			if( theSettings.isCurrent( theVersion, theEntityTag ) ) {
+				theResponse.setStatus( HttpServletResponse.SC_NOT_MODIFIED );
+				theResponse.flushBuffer( );
+			} else {
+				ResponseHelper.writeSuccess( theRequest, theResponse, translationFacility.toJsonElement( theSettings.getSettings( ), SETTINGS_TYPE ) );
+			}
+		}
+	}
+	
+	/**
+	 * Helper method that parses the version parameter.
+	 * @param theVersion the version parameter, which may be null
+	 * @return the version, or -1 if it isn't given or isn't a number
+	 */
+	private static long parseVersion( String theVersion ) {
+		if( !Strings.isNullOrEmpty( theVersion ) ) {
+			try {
+				return Long.parseLong( theVersion.trim( ) );
+			} catch( NumberFormatException e ) {
+				// treated as not given
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,145 @@
+//***************************************************************************
+//*  Copyright 2016 Joseph Molnar
+//*
+//*  Licensed under the Apache License, Version 2.0 (the "License");
+//*  you may not use this file except in compliance with the License.
+//*  You may obtain a copy of the License at
+//*
+//*      http://www.apache.org/licenses/LICENSE-2.0
+//*
+//*  Unless required by applicable law or agreed to in writing, software
+//*  distributed under the License is distributed on an "AS IS" BASIS,
+//*  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//*  See the License for the specific language governing permissions and
+//*  limitations under the License.
+//***************************************************************************
+package com.talvish.tales.rigs.configuration.service;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.talvish.tales.contracts.data.DataContract;
+import com.talvish.tales.contracts.data.DataMember;
+
+/**
+ * The changes to the settings of a profile and block between the version
+ * a caller has and the current version. If the caller's version is too old
+ * to be in the history the delta is a full snapshot, with every setting 
+ * listed as added, and the caller should replace the settings it has.
+ * @author jmolnar
+ *
+ */
+@DataContract( name="com.talvish.tales.configuration.settings_delta")
+public class SettingsDelta {
+	@DataMember( name="from_version" )
+	private long fromVersion;
+	
+	@DataMember( name="to_version" )
+	private long toVersion;
+
+	@DataMember( name="full" )
+	private boolean full;
+
+	@DataMember( name="added" )
+	private List<Setting> added;
+
+	@DataMember( name="changed" )
+	private List<Setting> changed;
+
+	@DataMember( name="removed" )
+	private List<String> removed;
+	
+	/**
+	 * A simple constructor needed for serialization.
+	 */
+	protected SettingsDelta( ) {
+	}
+	
+	/**
+	 * Constructor for a delta containing only the changes.
+	 * @param theFromVersion the version the caller has
+	 * @param theToVersion the current version
+	 * @param theAdded the settings added since the caller's version
+	 * @param theChanged the settings changed since the caller's version
+	 * @param theRemoved the names of the settings removed since the caller's version
+	 */
+	SettingsDelta( long theFromVersion, long theToVersion, List<Setting> theAdded, List<Setting> theChanged, List<String> theRemoved ) {
+		Preconditions.checkNotNull( theAdded, "need added settings" );
+		Preconditions.checkNotNull( theChanged, "need changed settings" );
+		Preconditions.checkNotNull( theRemoved, "need removed settings" );
+		
+		fromVersion = theFromVersion;
+		toVersion = theToVersion;
+		full = false;
+		added = theAdded;
+		changed = theChanged;
+		removed = theRemoved;
+	}
+	
+	/**
+	 * Constructor for a delta that is a full snapshot of the settings.
+	 * @param theFromVersion the version the caller has
+	 * @param theToVersion the current version
+	 * @param theSettings all of the current settings
+	 */
+	SettingsDelta( long theFromVersion, long theToVersion, List<Setting> theSettings ) {
+		Preconditions.checkNotNull( theSettings, "need settings" );
+		
+		fromVersion = theFromVersion;
+		toVersion = theToVersion;
+		full = true;
+		added = theSettings;
+		changed = Collections.emptyList( );
+		removed = Collections.emptyList( );
+	}
+	
+	/**
+	 * The version of the settings the caller has.
+	 * @return the version the delta is from
+	 */
+	public long getFromVersion( ) {
+		return fromVersion;
+	}
+	
+	/**
+	 * The version of the settings the delta brings the caller to.
+	 * @return the version the delta is to
+	 */
+	public long getToVersion( ) {
+		return toVersion;
+	}
+	
+	/**
+	 * Indicates if the delta is a full snapshot, in which case the added 
+	 * settings are all of the settings and should replace those the caller has.
+	 * @return true if a full snapshot, false if only changes
+	 */
+	public boolean isFull( ) {
+		return full;
+	}
+	
+	/**
+	 * The settings added since the caller's version.
+	 * @return the added settings
+	 */
+	public List<Setting> getAdded( ) {
+		return added;
+	}
+
+	/**
+	 * The settings whose value, or other parts, changed since the caller's version.
+	 * @return the changed settings
+	 */
+	public List<Setting> getChanged( ) {
+		return changed;
+	}
+
+	/**
+	 * The names of the settings removed since the caller's version.
+	 * @return the names of the removed settings
+	 */
+	public List<String> getRemoved( ) {
+		return removed;
+	}
+}
@@ -0,0 +1,232 @@
+//***************************************************************************
+//*  Copyright 2016 Joseph Molnar
+//*
+//*  Licensed under the Apache License, Version 2.0 (the "License");
+//*  you may not use this file except in compliance with the License.
+//*  You may obtain a copy of the License at
+//*
+//*      http://www.apache.org/licenses/LICENSE-2.0
+//*
+//*  Unless required by applicable law or agreed to in writing, software
+//*  distributed under the License is distributed on an "AS IS" BASIS,
+//*  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//*  See the License for the specific language governing permissions and
+//*  limitations under the License.
+//***************************************************************************
+package com.talvish.tales.rigs.configuration.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Watches a settings file, and the files it includes, for changes and lets
+ * a listener know, on the watcher's thread, once changes settle. Since the 
+ * files included can change with each edit, the owner tells the watcher 
+ * which files to watch after each change.
+ * @author jmolnar
+ *
+ */
+final class SettingsFileWatcher implements Closeable {
+	private static final Logger logger = LoggerFactory.getLogger( SettingsFileWatcher.class );
+	private static final String INCLUDES = "includes";
+
+	private final WatchService watchService;
+	private final long settleDelay;
+	private final Runnable listener;
+	private final Thread thread;
+	
+	private final Map<Path,WatchKey> watchedDirectories = new HashMap<>( ); // guarded by this
+	private volatile Set<Path> watchedFiles = Collections.emptySet( );
+	private volatile Set<Path> watchedSettingsDirectories = Collections.emptySet( ); // where any settings file counts
+	private volatile boolean closed = false;
+
+	/**
+	 * Constructor taking the files to watch and who to tell when they change.
+	 * @param theFiles the files to watch
+	 * @param theSettleDelay how long, in milliseconds, to wait for changes to settle before letting the listener know
+	 * @param theListener the listener to run when files change
+	 * @throws IOException thrown if the files cannot be watched
+	 */
+	SettingsFileWatcher( Collection<Path> theFiles, long theSettleDelay, Runnable theListener ) throws IOException {
+		Preconditions.checkArgument( theFiles != null && theFiles.size( ) > 0, "need files to watch" );
+		Preconditions.checkArgument( theSettleDelay >= 0, "the settle delay cannot be negative" );
+		Preconditions.checkNotNull( theListener, "need a listener" );
+		
+		watchService = FileSystems.getDefault( ).newWatchService( );
+		settleDelay = theSettleDelay;
+		listener = theListener;
+		watch( theFiles );
+		
+		thread = new Thread( this::run, "settings-file-watcher" );
+		thread.setDaemon( true );
+		thread.start( );
+	}
+	
+	/**
+	 * Changes the files being watched. Directories are watched, so watching 
+	 * starts for any new directories while existing directories are kept.
+	 * If a settings directory is given, rather than a file, changes to any 
+	 * settings file in the directory, including new ones, are reported.
+	 * @param theFiles the files, or settings directories, to watch
+	 * @throws IOException thrown if a directory cannot be watched
+	 */
+	synchronized void watch( Collection<Path> theFiles ) throws IOException {
+		Set<Path> newFiles = new HashSet<>( );
+		Set<Path> newSettingsDirectories = new HashSet<>( );
+		for( Path file : theFiles ) {
+			Path normalizedFile = file.toAbsolutePath( ).normalize( );
+			Path directory;
+			
+			if( Files.isDirectory( normalizedFile ) ) {
+				directory = normalizedFile;
+				newSettingsDirectories.add( directory );
+			} else {
+				directory = normalizedFile.getParent( );
+				newFiles.add( normalizedFile );
+			}
+			if( !watchedDirectories.containsKey( directory ) ) {
+				watchedDirectories.put( directory, directory.register( 
+						watchService, 
+						StandardWatchEventKinds.ENTRY_CREATE, 
+						StandardWatchEventKinds.ENTRY_MODIFY, 
+						StandardWatchEventKinds.ENTRY_DELETE ) );
+				logger.info( "Watching directory '{}' for settings file changes.", directory );
+			}
+		}
+		watchedFiles = Collections.unmodifiableSet( newFiles );
+		watchedSettingsDirectories = Collections.unmodifiableSet( newSettingsDirectories );
+	}
+	
+	/**
+	 * Stops watching for changes.
+	 */
+	@Override
+	public void close( ) throws IOException {
+		closed = true;
+		watchService.close( );
+	}
+	
+	/**
+	 * Helper method, run on the watcher's thread, that waits for changes.
+	 */
+	private void run( ) {
+		try {
+			while( !closed ) {
+				if( isWatchedFileChanged( watchService.take( ) ) ) {
+					// editors and deployment tools often write files in several 
+					// steps, so we wait for things to settle before reacting
+					Thread.sleep( settleDelay );
+					WatchKey key;
+					while( ( key = watchService.poll( ) ) != null ) {
+						isWatchedFileChanged( key );
+					}
+					try {
+						listener.run( );
+					} catch( RuntimeException e ) {
+						logger.error( "Settings file change listener failed.", e );
+					}
+				}
+			}
+		} catch( InterruptedException | ClosedWatchServiceException e ) {
+			// this is how we are told to stop
+		}
+		logger.info( "Stopped watching for settings file changes." );
+	}
+	
+	/**
+	 * Helper method that consumes the events on a key and determines if any were for watched files.
+	 * @param theKey the key with events
+	 * @return true if a watched file may have changed, false otherwise
+	 */
+	private boolean isWatchedFileChanged( WatchKey theKey ) {
+		boolean changed = false;
+		Path directory = ( Path )theKey.watchable( );
+		Set<Path> files = watchedFiles;
+		boolean isSettingsDirectory = watchedSettingsDirectories.contains( directory.toAbsolutePath( ).normalize( ) );
+		
+		for( WatchEvent<?> event : theKey.pollEvents( ) ) {
+			if( event.kind( ) == StandardWatchEventKinds.OVERFLOW ) {
+				changed = true; // we lost track, so presume the worst
+			} else if( files.contains( directory.resolve( ( Path )event.context( ) ).toAbsolutePath( ).normalize( ) ) ) {
+				changed = true;
+			} else if( isSettingsDirectory && SettingsLoader.isSettingsFile( ( Path )event.context( ) ) ) {
+				changed = true;
+			}
+		}
+		theKey.reset( );
+		return changed;
+	}
+	
+	/**
+	 * Finds a settings file and, recursively, all of the files it includes.
+	 * Includes are relative to the directory of the including file. If given
+	 * a settings directory, the directory and the files in it, and the files
+	 * they include, are returned.
+	 * @param theFile the settings file or directory
+	 * @return the settings file, or directory and its files, and the files included
+	 * @throws IOException thrown if a file cannot be read
+	 */
+	static Set<Path> findSettingsFiles( Path theFile ) throws IOException {
+		Set<Path> files = new LinkedHashSet<>( );
+		Path normalizedFile = theFile.toAbsolutePath( ).normalize( );
+		
+		if( Files.isDirectory( normalizedFile ) ) {
+			files.add( normalizedFile );
+			for( Path file : SettingsLoader.listSettingsFiles( normalizedFile ) ) {
+				findSettingsFiles( file, files );
+			}
+		} else {
+			findSettingsFiles( normalizedFile, files );
+		}
+		return files;
+	}
+
+	/**
+	 * Helper method that recursively finds a settings file and the files it includes.
+	 * @param theFile the settings file
+	 * @param theFiles the files found so far
+	 * @throws IOException thrown if a file cannot be read
+	 */
+	@SuppressWarnings( "deprecation" ) // older versions of gson only have the instance method
+	private static void findSettingsFiles( Path theFile, Set<Path> theFiles ) throws IOException {
+		if( theFiles.add( theFile ) && Files.exists( theFile ) ) {
+			JsonElement root;
+			try( Reader reader = Files.newBufferedReader( theFile, StandardCharsets.UTF_8 ) ) {
+				root = new JsonParser( ).parse( reader );
+			}
+			if( root.isJsonObject( ) ) {
+				JsonObject rootObject = root.getAsJsonObject( );
+				if( rootObject.has( INCLUDES ) && rootObject.get( INCLUDES ).isJsonArray( ) ) {
+					for( JsonElement include : rootObject.getAsJsonArray( INCLUDES ) ) {
+						findSettingsFiles( theFile.resolveSibling( include.getAsString( ) ).normalize( ), theFiles );
+					}
+				}
+			}
+		}
+	}
+}
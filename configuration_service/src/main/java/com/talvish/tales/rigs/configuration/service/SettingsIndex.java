@@ -0,0 +1,262 @@
+//***************************************************************************
+//*  Copyright 2016 Joseph Molnar
+//*
+//*  Licensed under the Apache License, Version 2.0 (the "License");
+//*  you may not use this file except in compliance with the License.
+//*  You may obtain a copy of the License at
+//*
+//*      http://www.apache.org/licenses/LICENSE-2.0
+//*
+//*  Unless required by applicable law or agreed to in writing, software
+//*  distributed under the License is distributed on an "AS IS" BASIS,
+//*  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//*  See the License for the specific language governing permissions and
+//*  limitations under the License.
+//***************************************************************************
+package com.talvish.tales.rigs.configuration.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.Preconditions;
+import com.google.gson.JsonElement;
+
+import com.talvish.tales.system.configuration.hierarchical.BlockDescriptor;
+import com.talvish.tales.system.configuration.hierarchical.ProfileDescriptor;
+import com.talvish.tales.system.configuration.hierarchical.SourceManager;
+
+/**
+ * An immutable index of the settings for every accessible profile and block
+ * in the settings files. The hierarchy of profiles and blocks is walked once,
+ * when the file is loaded, so serving settings is a lookup. A new index is
+ * built, and swapped in, when the file is loaded again. Each index has a
+ * version one higher than the index it replaces and blocks whose settings
+ * didn't change are carried over, keeping the version they changed in.
+ * Identical settings, and values, are shared across profiles and blocks.
+ * @author jmolnar
+ *
+ */
+final class SettingsIndex {
+	private final long version;
+	private final Map<String,Map<String,BlockSettings>> settings; // profile name, then block name
+	private final int blockCount;
+	
+	private final long settingReferences; // how many settings all blocks have, counting shared settings for each block
+	private final long sharedSettings;
+	private final long sharedValues;
+	private final long estimatedBytesSaved;
+	
+	/**
+	 * Constructor taking the settings to index.
+	 */
+	private SettingsIndex( long theVersion, Map<String,Map<String,BlockSettings>> theSettings, int theBlockCount ) {
+		version = theVersion;
+		settings = theSettings;
+		blockCount = theBlockCount;
+		
+		// we measure how much sharing settings and values saves compared 
+		// to each block having its own copy of each setting and value
+		Set<Setting> distinctSettings = Collections.newSetFromMap( new IdentityHashMap<>( ) );
+		Set<JsonElement> distinctValues = Collections.newSetFromMap( new IdentityHashMap<>( ) );
+		long references = 0;
+		long valueReferences = 0;
+		long unsharedSize = 0;
+		long sharedSize = 0;
+		
+		for( Map<String,BlockSettings> blockSettings : theSettings.values( ) ) {
+			for( BlockSettings block : blockSettings.values( ) ) {
+				for( Setting setting : block.getSettings( ) ) {
+					long settingSize = SettingsInterner.estimateSize( setting );
+					long valueSize = SettingsInterner.estimateSize( setting.getValue( ) );
+					
+					references += 1;
+					valueReferences += setting.getValue( ) == null ? 0 : 1;
+					unsharedSize += settingSize + valueSize;
+					if( distinctSettings.add( setting ) ) {
+						sharedSize += settingSize;
+						if( setting.getValue( ) != null && distinctValues.add( setting.getValue( ) ) ) {
+							sharedSize += valueSize;
+						}
+					}
+				}
+			}
+		}
+		settingReferences = references;
+		sharedSettings = references - distinctSettings.size( );
+		sharedValues = valueReferences - distinctValues.size( );
+		estimatedBytesSaved = unsharedSize - sharedSize;
+	}
+	
+	/**
+	 * Resolves the settings for all of the profiles and blocks in a source. 
+	 * @param theSource the source to resolve
+	 * @return the settings, ordered by name, by profile name and then block name
+	 */
+	static Map<String,Map<String,List<Setting>>> extract( SourceManager theSource ) {
+		return extract( theSource, Collections.emptySet( ) );
+	}
+
+	/**
+	 * Resolves the settings for the profiles and blocks in a source, other
+	 * than the profiles to skip, which are typically resolved elsewhere.
+	 * @param theSource the source to resolve
+	 * @param theSkippedProfiles the names of the profiles not to resolve
+	 * @return the settings, ordered by name, by profile name and then block name
+	 */
+	static Map<String,Map<String,List<Setting>>> extract( SourceManager theSource, Set<String> theSkippedProfiles ) {
+		Preconditions.checkNotNull( theSource, "need a source" );
+		Preconditions.checkNotNull( theSkippedProfiles, "need the profiles to skip" );
+
+		// blocks can be accessible from profiles other than the one defining 
+		// them, so we gather all the block names and ask each profile
+		Set<String> blockNames = new LinkedHashSet<>( );
+		for( ProfileDescriptor profile : theSource.getProfiles( ) ) {
+			for( BlockDescriptor block : profile.getBlocks( ) ) {
+				blockNames.add( block.getName( ) );
+			}
+		}
+		
+		Map<String,Map<String,List<Setting>>> profileSettings = new HashMap<>( );
+		for( ProfileDescriptor profile : theSource.getProfiles( ) ) {
+			if( theSkippedProfiles.contains( profile.getName( ) ) ) {
+				continue;
+			}
+			Map<String,List<Setting>> blockSettings = new HashMap<>( );
+			
+			for( String blockName : blockNames ) {
+				if( profile.hasAccessibleBlock( blockName ) ) {
+					Map<String,com.talvish.tales.system.configuration.hierarchical.Setting> extractedSettings = theSource.extractSettings( profile.getName( ), blockName );
+					List<Setting> returnSettings = new ArrayList<>( extractedSettings.size( ) );
+					
+					for( com.talvish.tales.system.configuration.hierarchical.Setting setting : extractedSettings.values() ) {
+						returnSettings.add( new Setting( setting ) );
+					}
+					// ordered so the response, and therefore entity tag, is stable
+					returnSettings.sort( Comparator.comparing( Setting::getName ) );
+					blockSettings.put( blockName, Collections.unmodifiableList( returnSettings ) );
+				}
+			}
+			profileSettings.put( profile.getName( ), blockSettings );
+		}
+		return profileSettings;
+	}
+
+	/**
+	 * Builds the index for resolved settings. 
+	 * @param theSettings the settings to index, by profile name and then block name
+	 * @param thePrevious the index being replaced, which may be null
+	 * @param theHistoryDepth the number of previous versions of each block to keep
+	 * @return the index
+	 */
+	static SettingsIndex build( Map<String,Map<String,List<Setting>>> theSettings, SettingsIndex thePrevious, int theHistoryDepth ) {
+		Preconditions.checkNotNull( theSettings, "need settings" );
+		Preconditions.checkArgument( theHistoryDepth >= 0, "the history depth cannot be negative" );
+		
+		long version = thePrevious == null ? 1 : thePrevious.version + 1;
+		SettingsInterner interner = new SettingsInterner( );
+		if( thePrevious != null ) {
+			// settings that didn't change keep sharing the instances already being served
+			for( Map<String,BlockSettings> previousBlocks : thePrevious.settings.values( ) ) {
+				for( BlockSettings previousSettings : previousBlocks.values( ) ) {
+					interner.intern( previousSettings.getSettings( ) );
+				}
+			}
+		}
+		
+		Map<String,Map<String,BlockSettings>> profileSettings = new HashMap<>( );
+		int blockCount = 0;
+		for( Map.Entry<String,Map<String,List<Setting>>> profileEntry : theSettings.entrySet( ) ) {
+			Map<String,BlockSettings> blockSettings = new HashMap<>( );
+			
+			for( Map.Entry<String,List<Setting>> blockEntry : profileEntry.getValue( ).entrySet( ) ) {
+				BlockSettings previousSettings = thePrevious == null ? null : thePrevious.getSettings( profileEntry.getKey( ), blockEntry.getKey( ) );
+				BlockSettings newSettings = new BlockSettings( profileEntry.getKey( ), blockEntry.getKey( ), interner.intern( blockEntry.getValue( ) ), version, previousSettings, theHistoryDepth );
+				if( previousSettings != null && previousSettings.getEntityTag( ).equals( newSettings.getEntityTag( ) ) ) {
+					// unchanged, so clients that have these are still current
+					newSettings = previousSettings;
+				}
+				blockSettings.put( blockEntry.getKey( ), newSettings );
+				blockCount += 1;
+			}
+			profileSettings.put( profileEntry.getKey( ), Collections.unmodifiableMap( blockSettings ) );
+		}
+		return new SettingsIndex( version, Collections.unmodifiableMap( profileSettings ), blockCount );
+	}
+	
+	/**
+	 * Gets the settings for a profile and block.
+	 * @param theProfile the name of the profile
+	 * @param theBlock the name of the block
+	 * @return the settings, or null if the profile doesn't exist or the block isn't accessible from it
+	 */
+	BlockSettings getSettings( String theProfile, String theBlock ) {
+		Map<String,BlockSettings> blockSettings = settings.get( theProfile );
+		
+		return blockSettings == null ? null : blockSettings.get( theBlock );
+	}
+	
+	/**
+	 * The version of the index, which increases each time the settings file is loaded.
+	 * @return the version
+	 */
+	long getVersion( ) {
+		return version;
+	}
+	
+	/**
+	 * The number of profiles in the index.
+	 * @return the number of profiles
+	 */
+	int getProfileCount( ) {
+		return settings.size( );
+	}
+	
+	/**
+	 * The number of accessible profile and block pairs in the index.
+	 * @return the number of profile and block pairs
+	 */
+	int getBlockCount( ) {
+		return blockCount;
+	}
+	
+	/**
+	 * The number of settings in all blocks, counting a shared setting once for each block.
+	 * @return the number of settings across all blocks
+	 */
+	long getSettingReferences( ) {
+		return settingReferences;
+	}
+	
+	/**
+	 * The number of settings across all blocks that are shared instances 
+	 * rather than copies, compared to each block having its own settings.
+	 * @return the number of shared settings
+	 */
+	long getSharedSettings( ) {
+		return sharedSettings;
+	}
+	
+	/**
+	 * The number of setting values across all blocks that are shared 
+	 * instances rather than copies, compared to each setting having its own value.
+	 * @return the number of shared values
+	 */
+	long getSharedValues( ) {
+		return sharedValues;
+	}
+
+	/**
+	 * The estimated memory saved by sharing settings and values.
+	 * @return the estimated bytes saved
+	 */
+	long getEstimatedBytesSaved( ) {
+		return estimatedBytesSaved;
+	}
+}
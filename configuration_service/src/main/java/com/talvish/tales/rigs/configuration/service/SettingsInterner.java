@@ -0,0 +1,149 @@
+//***************************************************************************
+//*  Copyright 2016 Joseph Molnar
+//*
+//*  Licensed under the Apache License, Version 2.0 (the "License");
+//*  you may not use this file except in compliance with the License.
+//*  You may obtain a copy of the License at
+//*
+//*      http://www.apache.org/licenses/LICENSE-2.0
+//*
+//*  Unless required by applicable law or agreed to in writing, software
+//*  distributed under the License is distributed on an "AS IS" BASIS,
+//*  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//*  See the License for the specific language governing permissions and
+//*  limitations under the License.
+//***************************************************************************
+package com.talvish.tales.rigs.configuration.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Deduplicates settings, and their values, as settings are indexed. Profiles
+ * extending the same base resolve to identical settings for the values they
+ * inherit, so sharing one instance means memory grows with the number of 
+ * distinct settings rather than with profiles times blocks times settings.
+ * Values are matched on a digest of their serialized form, since some JSON
+ * values considered equal, like 1 and 1.0, are not serialized the same way. 
+ * @author jmolnar
+ *
+ */
+final class SettingsInterner {
+	private final Map<Setting,Setting> settings = new HashMap<>( );
+	private final Map<ValueKey,JsonElement> values = new HashMap<>( );
+	
+	/**
+	 * Matches settings on their values alone, using the value digests.
+	 */
+	private static final class ValueKey {
+		private final Setting setting;
+		
+		private ValueKey( Setting theSetting ) {
+			setting = theSetting;
+		}
+		
+		@Override
+		public boolean equals( Object theObject ) {
+			if( this == theObject ) {
+				return true;
+			} else if( !( theObject instanceof ValueKey ) ) {
+				return false;
+			} else {
+				return setting.hasSameValue( ( ( ValueKey )theObject ).setting );
+			}
+		}
+		
+		@Override
+		public int hashCode( ) {
+			return setting.valueHashCode( );
+		}
+	}
+	
+	/**
+	 * Returns the shared instance of a setting, which is the setting given if
+	 * it is the first of its kind. The value of a new setting is shared with 
+	 * other settings having the same value.
+	 * @param theSetting the setting to intern
+	 * @return the shared setting
+	 */
+	Setting intern( Setting theSetting ) {
+		Setting sharedSetting = settings.get( theSetting );
+		
+		if( sharedSetting == null ) {
+			sharedSetting = theSetting;
+			if( theSetting.getValue( ) != null ) {
+				JsonElement sharedValue = values.putIfAbsent( new ValueKey( theSetting ), theSetting.getValue( ) );
+				if( sharedValue != null && sharedValue != theSetting.getValue( ) ) {
+					sharedSetting = new Setting( theSetting, sharedValue );
+				}
+			}
+			settings.put( sharedSetting, sharedSetting );
+		}
+		return sharedSetting;
+	}
+	
+	/**
+	 * Interns each setting in a list.
+	 * @param theSettings the settings to intern
+	 * @return an unmodifiable list, in the same order, of the shared settings
+	 */
+	List<Setting> intern( List<Setting> theSettings ) {
+		List<Setting> sharedSettings = new ArrayList<>( theSettings.size( ) );
+		
+		for( Setting setting : theSettings ) {
+			sharedSettings.add( intern( setting ) );
+		}
+		return Collections.unmodifiableList( sharedSettings );
+	}
+	
+	/**
+	 * Estimates the memory used by a setting, including the digest of its value
+	 * but not the value itself. This is a rough estimate, based on object and 
+	 * string layouts on a 64-bit JVM. 
+	 * @param theSetting the setting
+	 * @return the estimated size, in bytes
+	 */
+	static long estimateSize( Setting theSetting ) {
+		return 32 + Setting.VALUE_DIGEST_BYTES + estimateSize( theSetting.getName( ) ) + estimateSize( theSetting.getDescription( ) ) + estimateSize( theSetting.getSourceName( ) );
+	}
+	
+	/**
+	 * Estimates the memory used by a JSON value, including what it contains. 
+	 * This is a rough estimate, based on object and string layouts on a 64-bit JVM.
+	 * @param theValue the value, which may be null
+	 * @return the estimated size, in bytes
+	 */
+	static long estimateSize( JsonElement theValue ) {
+		if( theValue == null || theValue.isJsonNull( ) ) {
+			return 0; // null is a shared instance already
+		} else if( theValue.isJsonPrimitive( ) ) {
+			return 16 + ( theValue.getAsJsonPrimitive( ).isString( ) ? estimateSize( theValue.getAsString( ) ) : 24 );
+		} else if( theValue.isJsonArray( ) ) {
+			long size = 40 + 4L * theValue.getAsJsonArray( ).size( );
+			for( JsonElement element : theValue.getAsJsonArray( ) ) {
+				size += estimateSize( element );
+			}
+			return size;
+		} else {
+			JsonObject object = theValue.getAsJsonObject( );
+			long size = 64;
+			for( Map.Entry<String,JsonElement> entry : object.entrySet( ) ) {
+				size += 40 + estimateSize( entry.getKey( ) ) + estimateSize( entry.getValue( ) );
+			}
+			return size;
+		}
+	}
+	
+	/**
+	 * Helper method that estimates the memory used by a string.
+	 */
+	private static long estimateSize( String theString ) {
+		return theString == null ? 0 : 40 + 2L * theString.length( );
+	}
+}
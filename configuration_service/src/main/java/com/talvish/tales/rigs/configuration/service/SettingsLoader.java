@@ -0,0 +1,325 @@
+//***************************************************************************
+//*  Copyright 2016 Joseph Molnar
+//*
+//*  Licensed under the Apache License, Version 2.0 (the "License");
+//*  you may not use this file except in compliance with the License.
+//*  You may obtain a copy of the License at
+//*
+//*      http://www.apache.org/licenses/LICENSE-2.0
+//*
+//*  Unless required by applicable law or agreed to in writing, software
+//*  distributed under the License is distributed on an "AS IS" BASIS,
+//*  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//*  See the License for the specific language governing permissions and
+//*  limitations under the License.
+//***************************************************************************
+package com.talvish.tales.rigs.configuration.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import com.talvish.tales.contracts.data.DataContractTypeSource;
+import com.talvish.tales.serialization.json.JsonTranslationFacility;
+import com.talvish.tales.system.configuration.hierarchical.SourceManager;
+
+/**
+ * Loads the settings to serve, from either a single settings file or a 
+ * directory of settings files, such as one per profile or team. Each file
+ * in a directory is loaded, with the files it includes, and resolved on
+ * its own thread, and the results are then merged into one index. Files 
+ * may include the same files, so each profile is resolved by only the 
+ * first file, in name order, that can see the file declaring it. Profiles
+ * with the same name declared in different files must resolve to the 
+ * same settings.
+ * @author jmolnar
+ *
+ */
+final class SettingsLoader {
+	private static final Logger logger = LoggerFactory.getLogger( SettingsLoader.class );
+	private static final String SETTINGS_FILE_EXTENSION = ".json";
+	private static final String INCLUDES = "includes";
+	private static final String PROFILES = "profiles";
+	private static final String NAME = "name";
+
+	private final Path settingsPath;
+	private final ExecutorService executor;
+	
+	/**
+	 * The settings resolved from one settings file.
+	 */
+	private static final class LoadedFile {
+		private final Path file;
+		private final Map<String,Map<String,List<Setting>>> settings;
+		
+		private LoadedFile( Path theFile, Map<String,Map<String,List<Setting>>> theSettings ) {
+			file = theFile;
+			settings = theSettings;
+		}
+	}
+	
+	/**
+	 * The files a settings file includes and the profiles it declares itself.
+	 */
+	private static final class DeclaredFile {
+		private final List<Path> includes;
+		private final Set<String> profiles;
+		
+		private DeclaredFile( List<Path> theIncludes, Set<String> theProfiles ) {
+			includes = theIncludes;
+			profiles = theProfiles;
+		}
+	}
+
+	/**
+	 * Constructor taking where to load settings from.
+	 * @param theSettingsPath the settings file or directory of settings files
+	 * @param theThreads the number of threads used to load the files in a directory
+	 */
+	SettingsLoader( Path theSettingsPath, int theThreads ) {
+		Preconditions.checkNotNull( theSettingsPath, "need a settings path" );
+		Preconditions.checkArgument( theThreads > 0, "need at least one thread to load settings" );
+		
+		settingsPath = theSettingsPath;
+		AtomicInteger threadCount = new AtomicInteger( );
+		executor = Executors.newFixedThreadPool( theThreads, runnable -> {
+			Thread thread = new Thread( runnable, "settings-loader-" + threadCount.incrementAndGet( ) );
+			thread.setDaemon( true );
+			return thread;
+		} );
+	}
+	
+	/**
+	 * Loads the settings and builds the index to serve.
+	 * @param thePrevious the index being replaced, which may be null
+	 * @param theHistoryDepth the number of previous versions of each block to keep
+	 * @return the new index
+	 */
+	SettingsIndex load( SettingsIndex thePrevious, int theHistoryDepth ) {
+		long loadStart = System.nanoTime( );
+		List<Path> files;
+		
+		try {
+			files = Files.isDirectory( settingsPath ) ? listSettingsFiles( settingsPath ) : Collections.singletonList( settingsPath );
+		} catch( IOException e ) {
+			throw new IllegalStateException( String.format( "Unable to list the settings files in '%s'.", settingsPath ), e );
+		}
+		Preconditions.checkState( !files.isEmpty( ), "No settings files were found in '%s'.", settingsPath );
+
+		List<LoadedFile> loadedFiles = new ArrayList<>( files.size( ) );
+		if( files.size( ) == 1 ) {
+			loadedFiles.add( loadFile( files.get( 0 ), Collections.emptySet( ) ) );
+		} else {
+			// files often include the same base files, so before resolving we
+			// find which file declares each profile and have only the first 
+			// file, in name order, that can see that declaration resolve it
+			Map<Path,DeclaredFile> declaredFiles = new HashMap<>( );
+			Map<Path,Set<String>> claimedProfiles = new HashMap<>( ); // by the file declaring them
+			List<Callable<LoadedFile>> tasks = new ArrayList<>( files.size( ) );
+			
+			for( Path file : files ) {
+				Set<String> skippedProfiles = new HashSet<>( );
+				for( Map.Entry<String,Path> profileEntry : findDeclaringFiles( file, declaredFiles ).entrySet( ) ) {
+					if( !claimedProfiles.computeIfAbsent( profileEntry.getValue( ), key -> new HashSet<>( ) ).add( profileEntry.getKey( ) ) ) {
+						skippedProfiles.add( profileEntry.getKey( ) );
+					}
+				}
+				tasks.add( ( ) -> loadFile( file, skippedProfiles ) );
+			}
+			try {
+				List<Future<LoadedFile>> futures = executor.invokeAll( tasks );
+				for( int index = 0; index < futures.size( ); index += 1 ) {
+					try {
+						loadedFiles.add( futures.get( index ).get( ) );
+					} catch( ExecutionException e ) {
+						if( e.getCause( ) instanceof RuntimeException ) {
+							throw ( RuntimeException )e.getCause( );
+						} else {
+							throw new IllegalStateException( String.format( "Unable to load settings file '%s'.", files.get( index ) ), e.getCause( ) );
+						}
+					}
+				}
+			} catch( InterruptedException e ) {
+				Thread.currentThread( ).interrupt( );
+				throw new IllegalStateException( String.format( "Interrupted while loading the settings files in '%s'.", settingsPath ), e );
+			}
+		}
+		SettingsIndex index = SettingsIndex.build( merge( loadedFiles ), thePrevious, theHistoryDepth );
+		logger.info( "Loaded {} settings files from '{}' in {} ms.", files.size( ), settingsPath, TimeUnit.NANOSECONDS.toMillis( System.nanoTime( ) - loadStart ) );
+		return index;
+	}
+	
+	/**
+	 * Stops the threads used to load settings.
+	 */
+	void close( ) {
+		executor.shutdownNow( );
+	}
+	
+	/**
+	 * Helper method that loads, and resolves, the settings from one settings file.
+	 * The source manager loads the file, and the files it includes, on its own
+	 * so shared files are still parsed for each file loaded, but profiles 
+	 * resolved by another file are skipped.
+	 * @param theFile the file to load
+	 * @param theSkippedProfiles the profiles resolved by another file
+	 * @return the settings from the file
+	 */
+	private static LoadedFile loadFile( Path theFile, Set<String> theSkippedProfiles ) {
+		long fileStart = System.nanoTime( );
+		// so we need a json translation facility
+		// and we need a source manager
+		SourceManager settingsSource = new SourceManager( theFile.toString( ), new JsonTranslationFacility( new DataContractTypeSource( ) ) );
+		LoadedFile loadedFile = new LoadedFile( theFile, SettingsIndex.extract( settingsSource, theSkippedProfiles ) );
+
+		logger.info( "Loaded settings file '{}', with {} profiles, in {} ms.", theFile, loadedFile.settings.size( ), TimeUnit.NANOSECONDS.toMillis( System.nanoTime( ) - fileStart ) );
+		return loadedFile;
+	}
+	
+	/**
+	 * Helper method that merges the settings from each file, making sure any 
+	 * profile resolved by more than one file has the same settings. Since 
+	 * profiles declared in shared files are resolved once, this only happens
+	 * when different files declare profiles with the same name, or when the
+	 * file declaring a profile couldn't be found ahead of time.
+	 * @param theLoadedFiles the settings from each file
+	 * @return the merged settings
+	 */
+	private static Map<String,Map<String,List<Setting>>> merge( List<LoadedFile> theLoadedFiles ) {
+		if( theLoadedFiles.size( ) == 1 ) {
+			return theLoadedFiles.get( 0 ).settings;
+		} else {
+			Map<String,Map<String,List<Setting>>> mergedSettings = new HashMap<>( );
+			Map<String,Path> profileFiles = new HashMap<>( ); // the first file each profile came from, for errors
+			
+			for( LoadedFile loadedFile : theLoadedFiles ) {
+				for( Map.Entry<String,Map<String,List<Setting>>> profileEntry : loadedFile.settings.entrySet( ) ) {
+					Map<String,List<Setting>> mergedBlocks = mergedSettings.get( profileEntry.getKey( ) );
+					
+					if( mergedBlocks == null ) {
+						mergedSettings.put( profileEntry.getKey( ), profileEntry.getValue( ) );
+						profileFiles.put( profileEntry.getKey( ), loadedFile.file );
+					} else if( !mergedBlocks.equals( profileEntry.getValue( ) ) ) {
+						throw new IllegalStateException( String.format( "Profile '%s' resolves differently in settings file '%s' than in settings file '%s'.", profileEntry.getKey( ), loadedFile.file, profileFiles.get( profileEntry.getKey( ) ) ) );
+					}
+				}
+			}
+			return mergedSettings;
+		}
+	}
+	
+	/**
+	 * Helper method that finds, for each profile declared in a settings file or
+	 * the files it includes, recursively, the file declaring it. Includes are 
+	 * relative to the directory of the including file. Only the top-level 
+	 * includes and profile names are read, and each file is read once across
+	 * calls. Files that don't exist are left for the source manager to report.
+	 * @param theFile the settings file
+	 * @param theDeclaredFiles the files read so far, which is added to
+	 * @return the file declaring each profile, by profile name
+	 */
+	private static Map<String,Path> findDeclaringFiles( Path theFile, Map<Path,DeclaredFile> theDeclaredFiles ) {
+		Map<String,Path> declaringFiles = new LinkedHashMap<>( );
+		findDeclaringFiles( theFile.toAbsolutePath( ).normalize( ), theDeclaredFiles, new HashSet<>( ), declaringFiles );
+		return declaringFiles;
+	}
+
+	/**
+	 * Helper method that recursively finds the file declaring each profile.
+	 * @param theFile the normalized settings file
+	 * @param theDeclaredFiles the files read so far, which is added to
+	 * @param theVisitedFiles the files visited for this call, to stop include cycles
+	 * @param theDeclaringFiles the file declaring each profile found so far, which is added to
+	 */
+	@SuppressWarnings( "deprecation" ) // older versions of gson only have the instance method
+	private static void findDeclaringFiles( Path theFile, Map<Path,DeclaredFile> theDeclaredFiles, Set<Path> theVisitedFiles, Map<String,Path> theDeclaringFiles ) {
+		if( theVisitedFiles.add( theFile ) && Files.exists( theFile ) ) {
+			DeclaredFile declaredFile = theDeclaredFiles.get( theFile );
+			
+			if( declaredFile == null ) {
+				JsonElement root;
+				try( Reader reader = Files.newBufferedReader( theFile, StandardCharsets.UTF_8 ) ) {
+					root = new JsonParser( ).parse( reader );
+				} catch( IOException e ) {
+					throw new IllegalStateException( String.format( "Unable to read settings file '%s'.", theFile ), e );
+				}
+				List<Path> includes = new ArrayList<>( );
+				Set<String> profiles = new HashSet<>( );
+				if( root.isJsonObject( ) ) {
+					JsonObject rootObject = root.getAsJsonObject( );
+					if( rootObject.has( INCLUDES ) && rootObject.get( INCLUDES ).isJsonArray( ) ) {
+						for( JsonElement include : rootObject.getAsJsonArray( INCLUDES ) ) {
+							includes.add( theFile.resolveSibling( include.getAsString( ) ).normalize( ) );
+						}
+					}
+					if( rootObject.has( PROFILES ) && rootObject.get( PROFILES ).isJsonArray( ) ) {
+						for( JsonElement profile : rootObject.getAsJsonArray( PROFILES ) ) {
+							if( profile.isJsonObject( ) && profile.getAsJsonObject( ).has( NAME ) ) {
+								profiles.add( profile.getAsJsonObject( ).get( NAME ).getAsString( ) );
+							}
+						}
+					}
+				}
+				declaredFile = new DeclaredFile( includes, profiles );
+				theDeclaredFiles.put( theFile, declaredFile );
+			}
+			for( String profile : declaredFile.profiles ) {
+				theDeclaringFiles.putIfAbsent( profile, theFile );
+			}
+			for( Path include : declaredFile.includes ) {
+				findDeclaringFiles( include, theDeclaredFiles, theVisitedFiles, theDeclaringFiles );
+			}
+		}
+	}
+	
+	/**
+	 * Determines, by its name, if a file is a settings file.
+	 * @param theFile the file
+	 * @return true if a settings file, false otherwise
+	 */
+	static boolean isSettingsFile( Path theFile ) {
+		return theFile.getFileName( ).toString( ).endsWith( SETTINGS_FILE_EXTENSION );
+	}
+	
+	/**
+	 * Lists the settings files in a directory, in name order.
+	 * @param theDirectory the directory
+	 * @return the settings files
+	 * @throws IOException thrown if the directory cannot be read
+	 */
+	static List<Path> listSettingsFiles( Path theDirectory ) throws IOException {
+		try( Stream<Path> paths = Files.list( theDirectory ) ) {
+			return paths
+					.filter( path -> isSettingsFile( path ) && Files.isRegularFile( path ) )
+					.sorted( )
+					.collect( Collectors.toList( ) );
+		}
+	}
+}
@@ -0,0 +1,112 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler enabled, so allocation rates are 
+ * reported alongside throughput. Standard JMH command-line options are
+ * supported. If a thread count isn't given, the selected benchmarks are run
+ * at 1, 2, 4 and so on threads up to the number of available processors.
+ * <p>
+ * The packed path of the generator is meant to be allocation free, so once 
+ * the runs complete the normalized allocation rate of that benchmark is 
+ * checked and the runner fails if it is above {@link #MAXIMUM_PACKED_ALLOCATION}.
+ * The packed benchmarks of the managers are not checked since refills, 
+ * amortized over the ids in a block, are expected to allocate.
+ * @author jmolnar
+ *
+ */
+public class BenchmarkRunner {
+	/**
+	 * The benchmark expected to be allocation free.
+	 */
+	private static final String PACKED_BENCHMARK = ObjectIdGeneratorBenchmark.class.getName( ) + ".generatePackedObjectId";
+	/**
+	 * The GC profiler result holding the bytes allocated per operation.
+	 */
+	private static final String ALLOCATION_RESULT = "gc.alloc.rate.norm";
+	/**
+	 * The most bytes per id the packed path can report and still be considered 
+	 * allocation free, since the profiler's measurement isn't exact.
+	 */
+	private static final double MAXIMUM_PACKED_ALLOCATION = 1.0;
+	
+	public static void main( String[ ] theArgs ) throws Exception {
+		CommandLineOptions commandLineOptions = new CommandLineOptions( theArgs );
+		List<RunResult> results = new ArrayList<>( );
+		
+		if( commandLineOptions.getThreads( ).hasValue( ) ) {
+			results.addAll( run( commandLineOptions, commandLineOptions.getThreads( ).get( ) ) );
+		} else {
+			int maximumThreads = Runtime.getRuntime( ).availableProcessors( );
+			for( int threads = 1; threads < maximumThreads; threads *= 2 ) {
+				results.addAll( run( commandLineOptions, threads ) );
+			}
+			results.addAll( run( commandLineOptions, maximumThreads ) );
+		}
+		verifyPackedAllocation( results );
+	}
+	
+	/**
+	 * Helper method that makes sure the packed benchmark, if it was run, 
+	 * didn't allocate.
+	 * @param theResults the results of the runs
+	 */
+	private static void verifyPackedAllocation( Collection<RunResult> theResults ) {
+		for( RunResult result : theResults ) {
+			if( PACKED_BENCHMARK.equals( result.getParams( ).getBenchmark( ) ) ) {
+				for( Map.Entry<String, Result> entry : result.getSecondaryResults( ).entrySet( ) ) {
+					// older versions of jmh prefix the label with a separator, so we match the end
+					if( entry.getKey( ).endsWith( ALLOCATION_RESULT ) ) {
+						double allocation = entry.getValue( ).getScore( );
+						if( allocation > MAXIMUM_PACKED_ALLOCATION ) {
+							throw new IllegalStateException( String.format( "Benchmark '%s' allocated %.3f bytes per id, but is expected to be allocation free.", PACKED_BENCHMARK, allocation ) );
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Helper method that runs the benchmarks at a particular thread count.
+	 * @param theOptions the options given on the command-line
+	 * @param theThreads the number of threads to run with
+	 * @return the results of the run
+	 * @throws Exception thrown if the benchmarks fail to run
+	 */
+	private static Collection<RunResult> run( Options theOptions, int theThreads ) throws Exception {
+		Options options = new OptionsBuilder( )
+				.parent( theOptions )
+				.threads( theThreads )
+				.addProfiler( GCProfiler.class )
+				.build( );
+		return new Runner( options ).run( );
+	}
+}
@@ -0,0 +1,151 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.talvish.tales.rigs.objectid.client.HttpIdBlockSource;
+import com.talvish.tales.rigs.objectid.client.IdBlock;
+import com.talvish.tales.rigs.objectid.client.IdBlockSource;
+import com.talvish.tales.rigs.objectid.client.IdSourceResult;
+import com.talvish.tales.rigs.objectid.client.ObjectIdConfiguration;
+import com.talvish.tales.rigs.objectid.service.EmbeddedIdBlockSource;
+import com.talvish.tales.rigs.objectid.service.ObjectIdEngine;
+import com.talvish.tales.system.configuration.ConfigurationManager;
+import com.talvish.tales.system.configuration.MapSource;
+
+/**
+ * Compares the latency of getting a block of ids from an engine running 
+ * in the same process against getting one from a running object id service.
+ * The embedded engine uses a temporary data directory, so it includes the
+ * cost of persisting the last value. The HTTP source needs a service, set 
+ * up with the 'benchmark' type, running at the endpoint parameter.
+ * @author jmolnar
+ *
+ */
+@BenchmarkMode( Mode.SampleTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class IdBlockSourceBenchmark {
+	private static final String TYPE_NAME = "benchmark";
+	
+	/**
+	 * The source to get blocks from, either 'embedded' or 'http'.
+	 */
+	@Param( { "embedded", "http" } )
+	public String source;
+	
+	/**
+	 * The endpoint of the service used by the 'http' source.
+	 */
+	@Param( { "http://localhost:8000" } )
+	public String endpoint;
+
+	/**
+	 * The number of values requested in each block.
+	 */
+	@Param( { "100" } )
+	public long requestAmount;
+	
+	private IdBlockSource blockSource;
+	private File dataDirectory;
+	
+	/**
+	 * Creates the source being measured.
+	 * @throws IOException thrown if the data directory cannot be created
+	 */
+	@Setup( Level.Trial )
+	public void setup( ) throws IOException {
+		switch( source ) {
+		case "embedded":
+			dataDirectory = Files.createTempDirectory( "object_id_benchmark" ).toFile( );
+			
+			Map<String,String> settings = new HashMap<>( );
+			settings.put( "object_id_engine.source", "benchmark" );
+			settings.put( "object_id_engine.sources.benchmark.id", Long.toString( StubIdBlockSource.SOURCE_ID ) );
+			settings.put( "object_id_engine.data_directory", dataDirectory.getPath( ) );
+			settings.put( "object_id_engine.types", "[ \"" + TYPE_NAME + "\" ]" );
+			settings.put( "object_id_engine.types." + TYPE_NAME, "{ \"name\" : \"" + TYPE_NAME + "\", \"description\" : \"A type used for benchmarking.\", \"id\" : \"1\" }" );
+			
+			ConfigurationManager configurationManager = new ConfigurationManager( );
+			configurationManager.addSource( new MapSource( "benchmark", settings ) );
+
+			ObjectIdEngine engine = new ObjectIdEngine( configurationManager );
+			engine.setupTypes( ); // the data directory is new, so the type files need creating
+			blockSource = new EmbeddedIdBlockSource( engine );
+			break;
+			
+		case "http":
+			blockSource = new HttpIdBlockSource( new ObjectIdConfiguration( ).setEndpoint( endpoint ), "ObjectIdBenchmark/1.0" );
+			break;
+			
+		default:
+			throw new IllegalArgumentException( String.format( "Source '%s' is not supported.", source ) );
+		}
+	}
+	
+	/**
+	 * Removes the data directory used by the embedded engine.
+	 */
+	@TearDown( Level.Trial )
+	public void tearDown( ) {
+		if( dataDirectory != null ) {
+			File[ ] files = dataDirectory.listFiles( );
+			if( files != null ) {
+				for( File file : files ) {
+					file.delete( );
+				}
+			}
+			dataDirectory.delete( );
+		}
+	}
+	
+	/**
+	 * Gets a block of ids from the source.
+	 * @return the result of getting the block
+	 * @throws InterruptedException thrown if the thread is interrupted
+	 */
+	@Benchmark
+	public IdSourceResult<IdBlock> generateIds( ) throws InterruptedException {
+		IdSourceResult<IdBlock> result = blockSource.generateIds( TYPE_NAME, requestAmount );
+		if( !result.isSuccess( ) ) {
+			throw new IllegalStateException( String.format( "Getting a block from the '%s' source failed with '%s': %s", source, result.getStatus( ), result.getMessage( ) ) );
+		}
+		return result;
+	}
+}
@@ -0,0 +1,102 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.talvish.tales.businessobjects.ObjectId;
+import com.talvish.tales.rigs.objectid.client.IdBlock;
+import com.talvish.tales.rigs.objectid.client.ObjectIdGenerator;
+import com.talvish.tales.rigs.objectid.client.PackedObjectId;
+
+/**
+ * Benchmarks for the ObjectIdGenerator, which is on the path of every
+ * generated id. The generator is shared by all benchmark threads so 
+ * running at different thread counts shows lock contention. Comparing
+ * the ObjectId and packed variants with the GC profiler shows the 
+ * allocation the packed form avoids.
+ * @author jmolnar
+ *
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class ObjectIdGeneratorBenchmark {
+	private static final String TYPE_NAME = "benchmark";
+	private static final int TYPE_ID = 1;
+	
+	private ObjectIdGenerator generator;
+	private ObjectIdGenerator emptyGenerator;
+	private IdBlock singleValueBlock;
+	
+	/**
+	 * Creates generators for each iteration so the large 
+	 * block never runs out regardless of throughput.
+	 */
+	@Setup( Level.Iteration )
+	public void setup( ) {
+		generator = new ObjectIdGenerator( TYPE_NAME, TYPE_ID );
+		generator.addValues( new IdBlock( StubIdBlockSource.SOURCE_ID, TYPE_NAME, TYPE_ID, 1, PackedObjectId.MAXIMUM_VALUE ) );
+		
+		emptyGenerator = new ObjectIdGenerator( TYPE_NAME, TYPE_ID );
+		singleValueBlock = new IdBlock( StubIdBlockSource.SOURCE_ID, TYPE_NAME, TYPE_ID, 1, 1 );
+	}
+	
+	/**
+	 * Generates an ObjectId from a generator that always has values.
+	 * @return the generated id
+	 */
+	@Benchmark
+	public ObjectId generateObjectId( ) {
+		return generator.generateObjectId( );
+	}
+
+	/**
+	 * Generates a packed ObjectId from a generator that always has values.
+	 * @return the generated id
+	 */
+	@Benchmark
+	public long generatePackedObjectId( ) {
+		return generator.generatePackedObjectId( );
+	}
+	
+	/**
+	 * Adds a block and takes the value from it, which is the worst case for 
+	 * adding values since every value comes from a new block. Each thread 
+	 * adds before it takes so the generator never runs dry.
+	 * @return the generated id
+	 */
+	@Benchmark
+	public long addValues( ) {
+		emptyGenerator.addValues( singleValueBlock );
+		return emptyGenerator.generatePackedObjectId( );
+	}
+}
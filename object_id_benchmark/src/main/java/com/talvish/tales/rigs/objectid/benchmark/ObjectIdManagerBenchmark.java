@@ -0,0 +1,117 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.talvish.tales.businessobjects.ObjectId;
+import com.talvish.tales.rigs.objectid.client.ObjectIdConfiguration;
+import com.talvish.tales.rigs.objectid.client.ObjectIdManager;
+
+/**
+ * Benchmarks for the ObjectIdManager, getting values from an in-memory 
+ * source that takes a configurable amount of time to respond. With a
+ * slow source and small request amounts, callers end up waiting on 
+ * refills, which shows up as lower throughput. 
+ * @author jmolnar
+ *
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class ObjectIdManagerBenchmark {
+	private static final String TYPE_NAME = "benchmark";
+
+	/**
+	 * The time, in microseconds, the source takes to respond.
+	 */
+	@Param( { "0", "1000", "10000" } )
+	public long refillLatency;
+	
+	/**
+	 * The number of values requested, which is the starting amount if adaptive.
+	 */
+	@Param( { "100", "10000" } )
+	public long requestAmount;
+	
+	/**
+	 * Whether the request amount and threshold adapt to demand.
+	 */
+	@Param( { "false", "true" } )
+	public boolean adaptiveRequests;
+	
+	private ObjectIdManager manager;
+	
+	/**
+	 * Creates the manager and makes sure the type is ready before measuring.
+	 * @throws InterruptedException thrown if the thread is interrupted
+	 */
+	@Setup( Level.Trial )
+	public void setup( ) throws InterruptedException {
+		ObjectIdConfiguration configuration = new ObjectIdConfiguration( )
+				.setRequestAmount( requestAmount )
+				.setRequestThreshold( Math.max( 1, requestAmount / 5 ) )
+				.setAdaptiveRequests( adaptiveRequests );
+		
+		manager = new ObjectIdManager( configuration, new StubIdBlockSource( refillLatency, TYPE_NAME ) );
+		manager.prepare( TYPE_NAME );
+	}
+	
+	/**
+	 * Closes the manager.
+	 */
+	@TearDown( Level.Trial )
+	public void tearDown( ) {
+		manager.close( );
+	}
+	
+	/**
+	 * Generates an ObjectId through the manager.
+	 * @return the generated id
+	 * @throws InterruptedException thrown if the thread is interrupted
+	 */
+	@Benchmark
+	public ObjectId generateObjectId( ) throws InterruptedException {
+		return manager.generateObjectId( TYPE_NAME );
+	}
+
+	/**
+	 * Generates a packed ObjectId through the manager.
+	 * @return the generated id
+	 * @throws InterruptedException thrown if the thread is interrupted
+	 */
+	@Benchmark
+	public long generatePackedObjectId( ) throws InterruptedException {
+		return manager.generatePackedObjectId( TYPE_NAME );
+	}
+}
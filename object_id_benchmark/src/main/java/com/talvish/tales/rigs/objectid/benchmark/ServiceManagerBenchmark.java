@@ -0,0 +1,156 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.talvish.tales.rigs.objectid.client.ObjectIdConfiguration;
+import com.talvish.tales.rigs.objectid.client.ObjectIdManager;
+import com.talvish.tales.rigs.objectid.client.TypeStatisticsSnapshot;
+
+/**
+ * Measures id throughput through the ObjectIdManager talking over HTTP to 
+ * a service, normally the stand-in service configured to misbehave. Ids that
+ * couldn't be generated in time, or calls that failed fast, don't fail the 
+ * benchmark. Since failed calls return quickly, the primary score counts calls 
+ * rather than ids, so the successful and failed calls are reported separately
+ * as the 'ids' and 'failures' counters, and 'ids' is the id throughput. Once 
+ * the trial ends the manager's statistics are logged to show how long callers
+ * stalled and why refills failed.
+ * @author jmolnar
+ *
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 5 )
+@Measurement( iterations = 5, time = 5 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class ServiceManagerBenchmark {
+	/**
+	 * The per-thread counts of successful and failed calls, which 
+	 * JMH reports as rates alongside the primary score.
+	 */
+	@AuxCounters( AuxCounters.Type.OPERATIONS )
+	@State( Scope.Thread )
+	public static class Counters {
+		public long ids;
+		public long failures;
+		
+		/**
+		 * Resets the counts for each iteration.
+		 */
+		@Setup( Level.Iteration )
+		public void reset( ) {
+			ids = 0;
+			failures = 0;
+		}
+	}
+	
+	private static final Logger logger = LoggerFactory.getLogger( ServiceManagerBenchmark.class );
+	private static final String TYPE_NAME = "benchmark";
+
+	/**
+	 * The endpoint of the service to get ids from.
+	 */
+	@Param( { "http://localhost:8000" } )
+	public String endpoint;
+	
+	/**
+	 * The number of values requested, which is the starting amount if adaptive.
+	 */
+	@Param( { "100", "10000" } )
+	public long requestAmount;
+	
+	/**
+	 * The time, in milliseconds, a caller waits for an id before giving up.
+	 */
+	@Param( { "100" } )
+	public long timeout;
+	
+	private ObjectIdManager manager;
+	
+	/**
+	 * Creates the manager.
+	 */
+	@Setup( Level.Trial )
+	public void setup( ) {
+		ObjectIdConfiguration configuration = new ObjectIdConfiguration( )
+				.setRequestAmount( requestAmount )
+				.setRequestThreshold( Math.max( 1, requestAmount / 5 ) )
+				.setEndpoint( endpoint );
+		
+		manager = new ObjectIdManager( configuration, "ObjectIdBenchmark/1.0" );
+	}
+	
+	/**
+	 * Logs the statistics for the trial and closes the manager.
+	 */
+	@TearDown( Level.Trial )
+	public void tearDown( ) {
+		TypeStatisticsSnapshot statistics = manager.getStatistics( ).get( TYPE_NAME );
+		if( statistics != null ) {
+			logger.info( 
+					"Generated {} ids using {} refills ({} failed: {} by status, {} by exception); callers blocked {} times for a total of {} ms; refills averaged {} ms.",
+					statistics.getIdsGenerated( ),
+					statistics.getRefillsIssued( ),
+					statistics.getRefillsFailed( ),
+					statistics.getFailedRefillsByStatus( ),
+					statistics.getFailedRefillsByException( ),
+					statistics.getBlockedCalls( ),
+					statistics.getBlockedTime( ),
+					statistics.getAverageRefillLatency( ) );
+		}
+		manager.close( );
+	}
+	
+	/**
+	 * Generates an id through the manager, giving up after the timeout.
+	 * @param theCounters the counts of successful and failed calls for the thread
+	 * @return the generated id, or zero if one wasn't available
+	 * @throws InterruptedException thrown if the thread is interrupted
+	 */
+	@Benchmark
+	public long generatePackedObjectId( Counters theCounters ) throws InterruptedException {
+		try {
+			long id = manager.generatePackedObjectId( TYPE_NAME, timeout, TimeUnit.MILLISECONDS );
+			theCounters.ids += 1;
+			return id;
+		} catch( TimeoutException | RuntimeException e ) {
+			// the reasons for failures are captured by the manager's statistics
+			theCounters.failures += 1;
+			return 0;
+		}
+	}
+}
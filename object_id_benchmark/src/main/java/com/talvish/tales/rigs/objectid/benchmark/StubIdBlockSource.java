@@ -0,0 +1,100 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.benchmark;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+
+import com.talvish.tales.communication.Status;
+import com.talvish.tales.rigs.objectid.client.IdBlock;
+import com.talvish.tales.rigs.objectid.client.IdBlockSource;
+import com.talvish.tales.rigs.objectid.client.IdSourceResult;
+import com.talvish.tales.rigs.objectid.client.IdType;
+
+/**
+ * An in-memory id block source that takes a fixed amount of time to respond,
+ * used to benchmark the ObjectIdManager without a running service.
+ * @author jmolnar
+ *
+ */
+public class StubIdBlockSource implements IdBlockSource {
+	public static final long SOURCE_ID = 1;
+	
+	private final long latency;
+	private final List<IdType> types;
+	private final Map<String,IdType> typesByName = new HashMap<>( );
+	private final Map<String,AtomicLong> lastValues = new HashMap<>( );
+	
+	/**
+	 * Constructor taking the latency and the types to support.
+	 * Type ids are assigned in the order the names are given, starting at 1.
+	 * @param theLatency the time, in microseconds, each request takes
+	 * @param theTypeNames the names of the types to support
+	 */
+	public StubIdBlockSource( long theLatency, String ... theTypeNames ) {
+		Preconditions.checkArgument( theLatency >= 0, "the latency cannot be negative" );
+		Preconditions.checkArgument( theTypeNames != null && theTypeNames.length > 0, "need at least one type name" );
+		
+		List<IdType> newTypes = new ArrayList<>( theTypeNames.length );
+		for( int index = 0; index < theTypeNames.length; index += 1 ) {
+			IdType type = new IdType( theTypeNames[ index ], "A type used for benchmarking.", index + 1, SOURCE_ID, 0 );
+			newTypes.add( type );
+			typesByName.put( type.getName( ), type );
+			lastValues.put( type.getName( ), new AtomicLong( ) );
+		}
+		latency = theLatency;
+		types = Collections.unmodifiableList( newTypes );
+	}
+	
+	/**
+	 * The time, in microseconds, each request takes.
+	 * @return the latency in microseconds
+	 */
+	public long getLatency( ) {
+		return latency;
+	}
+	
+	@Override
+	public IdSourceResult<List<IdType>> getTypes( ) throws InterruptedException {
+		TimeUnit.MICROSECONDS.sleep( latency );
+		return new IdSourceResult<>( types, Status.OPERATION_COMPLETED, null, LocalDateTime.now( ).plusDays( 1 ) );
+	}
+
+	@Override
+	public IdSourceResult<IdBlock> generateIds( String theTypeName, long theAmount ) throws InterruptedException {
+		Preconditions.checkArgument( !Strings.isNullOrEmpty( theTypeName ), "need a type name" );
+		Preconditions.checkArgument( theAmount > 0, "the amount must be greater than zero" );
+		
+		TimeUnit.MICROSECONDS.sleep( latency );
+		
+		IdType type = typesByName.get( theTypeName );
+		if( type == null ) {
+			return new IdSourceResult<>( null, Status.CALLER_NOT_FOUND, String.format( "Could not find the type identified by the name '%s'.", theTypeName ), null );
+		} else {
+			long endValue = lastValues.get( theTypeName ).addAndGet( theAmount );
+			return new IdSourceResult<>( new IdBlock( SOURCE_ID, type.getName( ), type.getId( ), endValue - theAmount + 1, endValue ), Status.OPERATION_COMPLETED, null, null );
+		}
+	}
+}
@@ -0,0 +1,192 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.benchmark.simulator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+
+/**
+ * A sequence of id allocations, by type, over time. Traces are either 
+ * loaded from a file or synthesized. The file format is one allocation
+ * per line as 'offset_in_milliseconds,type_name,amount', where lines
+ * starting with '#' are ignored.
+ * @author jmolnar
+ *
+ */
+public class AllocationTrace {
+	/**
+	 * A single allocation in the trace.
+	 */
+	public static final class Allocation {
+		private final long offset;
+		private final String typeName;
+		private final int amount;
+		
+		Allocation( long theOffset, String theTypeName, int theAmount ) {
+			offset = theOffset;
+			typeName = theTypeName;
+			amount = theAmount;
+		}
+		
+		/**
+		 * When the allocation happens, relative to the start of the trace.
+		 * @return the offset, in nanoseconds
+		 */
+		public long getOffset( ) {
+			return offset;
+		}
+		
+		/**
+		 * The type ids are allocated for.
+		 * @return the type name
+		 */
+		public String getTypeName( ) {
+			return typeName;
+		}
+		
+		/**
+		 * The number of ids allocated.
+		 * @return the amount
+		 */
+		public int getAmount( ) {
+			return amount;
+		}
+	}
+	
+	private final List<Allocation> allocations;
+	private final List<String> typeNames;
+	private final long duration;
+	
+	/**
+	 * Constructor taking the allocations, which must be ordered by offset.
+	 * @param theAllocations the allocations
+	 */
+	AllocationTrace( List<Allocation> theAllocations ) {
+		Preconditions.checkArgument( theAllocations != null && theAllocations.size( ) > 0, "need allocations" );
+		
+		List<String> foundTypeNames = new ArrayList<>( );
+		for( Allocation allocation : theAllocations ) {
+			if( !foundTypeNames.contains( allocation.getTypeName( ) ) ) {
+				foundTypeNames.add( allocation.getTypeName( ) );
+			}
+		}
+		allocations = Collections.unmodifiableList( theAllocations );
+		typeNames = Collections.unmodifiableList( foundTypeNames );
+		duration = theAllocations.get( theAllocations.size( ) - 1 ).getOffset( );
+	}
+	
+	/**
+	 * Loads a trace from a file.
+	 * @param theFile the file to load
+	 * @return the loaded trace
+	 * @throws IOException thrown if the file cannot be read
+	 */
+	public static AllocationTrace load( String theFile ) throws IOException {
+		Preconditions.checkArgument( !Strings.isNullOrEmpty( theFile ), "need a file" );
+
+		List<Allocation> allocations = new ArrayList<>( );
+		try( BufferedReader reader = Files.newBufferedReader( Paths.get( theFile ), StandardCharsets.UTF_8 ) ) {
+			String line;
+			int lineNumber = 0;
+			while( ( line = reader.readLine( ) ) != null ) {
+				lineNumber += 1;
+				line = line.trim( );
+				if( line.isEmpty( ) || line.startsWith( "#" ) ) {
+					continue;
+				}
+				String[ ] parts = line.split( "," );
+				Preconditions.checkArgument( parts.length == 3, "Line %s of trace file '%s' does not have three values.", lineNumber, theFile );
+				allocations.add( new Allocation( 
+						TimeUnit.MILLISECONDS.toNanos( Long.parseLong( parts[ 0 ].trim( ) ) ), 
+						parts[ 1 ].trim( ), 
+						Integer.parseInt( parts[ 2 ].trim( ) ) ) );
+			}
+		}
+		allocations.sort( Comparator.comparingLong( Allocation::getOffset ) );
+		return new AllocationTrace( allocations );
+	}
+	
+	/**
+	 * Synthesizes a trace where single id allocations for each type arrive randomly 
+	 * at the rate given. Every so often a type bursts, allocating at a multiple of 
+	 * its usual rate for a second, which is where small blocks tend to stall.
+	 * @param theTypeNames the types to allocate ids for
+	 * @param theRate the average number of ids, per second, allocated for each type
+	 * @param theBurstFactor how much the rate increases during a burst, one for no bursts
+	 * @param theDuration the length of the trace, in seconds
+	 * @param theRandom the source of randomness
+	 * @return the synthesized trace
+	 */
+	public static AllocationTrace synthesize( List<String> theTypeNames, double theRate, double theBurstFactor, long theDuration, Random theRandom ) {
+		Preconditions.checkArgument( theTypeNames != null && theTypeNames.size( ) > 0, "need type names" );
+		Preconditions.checkArgument( theRate > 0, "the rate must be greater than zero" );
+		Preconditions.checkArgument( theBurstFactor >= 1, "the burst factor must be at least one" );
+		Preconditions.checkArgument( theDuration > 0, "the duration must be greater than zero" );
+		
+		long second = TimeUnit.SECONDS.toNanos( 1 );
+		List<Allocation> allocations = new ArrayList<>( );
+		
+		for( String typeName : theTypeNames ) {
+			for( long secondStart = 0; secondStart < theDuration * second; secondStart += second ) {
+				// one in ten seconds, on average, is a burst
+				double rate = theBurstFactor > 1 && theRandom.nextInt( 10 ) == 0 ? theRate * theBurstFactor : theRate;
+				double offset = secondStart - Math.log( 1 - theRandom.nextDouble( ) ) / rate * second;
+				while( offset < secondStart + second ) {
+					allocations.add( new Allocation( ( long )offset, typeName, 1 ) );
+					offset += -Math.log( 1 - theRandom.nextDouble( ) ) / rate * second;
+				}
+			}
+		}
+		allocations.sort( Comparator.comparingLong( Allocation::getOffset ) );
+		return new AllocationTrace( allocations );
+	}
+	
+	/**
+	 * The allocations, ordered by offset.
+	 * @return the allocations
+	 */
+	public List<Allocation> getAllocations( ) {
+		return allocations;
+	}
+
+	/**
+	 * The types ids are allocated for.
+	 * @return the type names
+	 */
+	public List<String> getTypeNames( ) {
+		return typeNames;
+	}
+	
+	/**
+	 * The offset of the last allocation.
+	 * @return the duration, in nanoseconds
+	 */
+	public long getDuration( ) {
+		return duration;
+	}
+}
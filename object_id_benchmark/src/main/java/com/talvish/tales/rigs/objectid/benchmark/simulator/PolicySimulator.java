@@ -0,0 +1,188 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.benchmark.simulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.talvish.tales.parts.ArgumentParser;
+import com.talvish.tales.rigs.objectid.client.ObjectIdManager;
+import com.talvish.tales.rigs.objectid.client.TypeStatisticsSnapshot;
+import com.talvish.tales.system.configuration.ConfigurationManager;
+import com.talvish.tales.system.configuration.MapSource;
+
+/**
+ * Replays an allocation trace through an ObjectIdManager, once for each 
+ * block-size policy, against a simulated service and reports what each 
+ * policy costs. For each policy it reports the chance a caller stalls 
+ * waiting for ids, the round-trips (and therefore durable writes) the 
+ * service sees per trace second and how much of the id space is burned.
+ * The trace is replayed, on a single thread, faster than real time and 
+ * the service latency is compressed by the same amount. Settings, 
+ * described by {@link SimulatorConfiguration}, are given on the command 
+ * line, e.g. '--simulator.policies=100/20,adaptive/10/100000'.
+ * <p>
+ * Progress is logged, but the final comparison is a table written to 
+ * standard out, deliberately, so it can be read or redirected on its own.
+ * @author jmolnar
+ *
+ */
+public class PolicySimulator {
+	private static final Logger logger = LoggerFactory.getLogger( PolicySimulator.class );
+	
+	/**
+	 * The results of replaying the trace with a policy.
+	 */
+	private static final class PolicyResult {
+		private final String policy;
+		private final long idsUsed;
+		private final long idsAllocated;
+		private final long roundTrips;
+		private final long blockedCalls;
+		private final long blockedTime;
+		
+		PolicyResult( String thePolicy, long theIdsUsed, long theIdsAllocated, long theRoundTrips, long theBlockedCalls, long theBlockedTime ) {
+			policy = thePolicy;
+			idsUsed = theIdsUsed;
+			idsAllocated = theIdsAllocated;
+			roundTrips = theRoundTrips;
+			blockedCalls = theBlockedCalls;
+			blockedTime = theBlockedTime;
+		}
+	}
+	
+	private final SimulatorConfiguration configuration;
+	private final AllocationTrace trace;
+	
+	/**
+	 * Constructor taking the configuration and the trace to replay.
+	 * @param theConfiguration the simulator configuration
+	 * @param theTrace the trace to replay
+	 */
+	public PolicySimulator( SimulatorConfiguration theConfiguration, AllocationTrace theTrace ) {
+		configuration = theConfiguration;
+		trace = theTrace;
+	}
+	
+	/**
+	 * Replays the trace for each policy and prints a comparison.
+	 * @throws InterruptedException thrown if the calling thread is interrupted
+	 */
+	public void run( ) throws InterruptedException {
+		List<PolicyResult> results = new ArrayList<>( );
+		
+		for( String policy : configuration.getPolicies( ) ) {
+			logger.info( "Replaying {} allocations, over {} seconds, with policy '{}'.", trace.getAllocations( ).size( ), TimeUnit.NANOSECONDS.toSeconds( trace.getDuration( ) ), policy );
+			results.add( simulate( RequestPolicy.parse( policy ) ) );
+		}
+		report( results );
+	}
+	
+	/**
+	 * Replays the trace with a single policy.
+	 * @param thePolicy the policy to use
+	 * @return the results of the replay
+	 * @throws InterruptedException thrown if the calling thread is interrupted
+	 */
+	private PolicyResult simulate( RequestPolicy thePolicy ) throws InterruptedException {
+		double speed = configuration.getSpeed( );
+		SimulatedIdBlockSource source = new SimulatedIdBlockSource( 
+				trace.getTypeNames( ), 
+				configuration.getLatencyDistribution( ), 
+				configuration.getLatencyMean( ) / speed, 
+				configuration.getLatencyMaximum( ) / speed, 
+				new Random( configuration.getSeed( ) ) );
+		ObjectIdManager manager = new ObjectIdManager( thePolicy.createConfiguration( speed ), source );
+		long idsUsed = 0;
+		
+		try {
+			long start = System.nanoTime( );
+			for( AllocationTrace.Allocation allocation : trace.getAllocations( ) ) {
+				long wait = start + ( long )( allocation.getOffset( ) / speed ) - System.nanoTime( );
+				if( wait > 0 ) {
+					LockSupport.parkNanos( wait );
+				}
+				for( int count = 0; count < allocation.getAmount( ); count += 1 ) {
+					manager.generatePackedObjectId( allocation.getTypeName( ) );
+				}
+				idsUsed += allocation.getAmount( );
+			}
+			
+			long blockedCalls = 0;
+			long blockedTime = 0;
+			for( TypeStatisticsSnapshot statistics : manager.getStatistics( ).values( ) ) {
+				blockedCalls += statistics.getBlockedCalls( );
+				blockedTime += statistics.getBlockedTime( );
+			}
+			// blocked time is scaled back up to trace time
+			return new PolicyResult( thePolicy.getName( ), idsUsed, source.getIdsAllocated( ), source.getRoundTrips( ), blockedCalls, ( long )( blockedTime * speed ) );
+		} finally {
+			manager.close( );
+		}
+	}
+	
+	/**
+	 * Prints the results for each policy to standard out.
+	 * @param theResults the results to print
+	 */
+	private void report( List<PolicyResult> theResults ) {
+		double traceSeconds = Math.max( 1, trace.getDuration( ) ) / ( double )TimeUnit.SECONDS.toNanos( 1 );
+		
+		System.out.println( );
+		System.out.println( String.format( "%-24s %14s %16s %14s %16s %16s %12s", "policy", "stall chance", "stall time (ms)", "round trips/s", "ids allocated/s", "ids used/s", "burned" ) );
+		for( PolicyResult result : theResults ) {
+			System.out.println( String.format( "%-24s %14.6f %16d %14.2f %16.1f %16.1f %11.1f%%", 
+					result.policy,
+					result.idsUsed == 0 ? 0 : ( double )result.blockedCalls / result.idsUsed,
+					result.blockedTime,
+					result.roundTrips / traceSeconds,
+					result.idsAllocated / traceSeconds,
+					result.idsUsed / traceSeconds,
+					result.idsAllocated == 0 ? 0 : 100.0 * ( result.idsAllocated - result.idsUsed ) / result.idsAllocated ) );
+		}
+		System.out.println( );
+	}
+	
+	/**
+	 * Runs the simulator.
+	 * @param theArgs the command line settings
+	 * @throws Exception thrown if the trace cannot be loaded or the simulation fails
+	 */
+	public static void main( String[ ] theArgs ) throws Exception {
+		ConfigurationManager configurationManager = new ConfigurationManager( );
+		configurationManager.addSource( new MapSource( "command-line", ArgumentParser.parse( theArgs ) ) );
+		SimulatorConfiguration configuration = configurationManager.getValues( SimulatorConfiguration.class );
+		
+		AllocationTrace trace;
+		if( configuration.getTraceFile( ) != null ) {
+			trace = AllocationTrace.load( configuration.getTraceFile( ) );
+		} else {
+			trace = AllocationTrace.synthesize( 
+					configuration.getSyntheticTypes( ), 
+					configuration.getSyntheticRate( ), 
+					configuration.getSyntheticBurstFactor( ), 
+					configuration.getSyntheticDuration( ), 
+					new Random( configuration.getSeed( ) ) );
+		}
+		new PolicySimulator( configuration, trace ).run( );
+	}
+}
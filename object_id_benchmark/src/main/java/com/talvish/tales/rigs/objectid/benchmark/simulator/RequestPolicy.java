@@ -0,0 +1,131 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.benchmark.simulator;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+
+import com.talvish.tales.rigs.objectid.client.ObjectIdConfiguration;
+
+/**
+ * A block-size policy to simulate. Policies are written as either 
+ * 'amount/threshold' for a fixed request amount and threshold, or
+ * 'adaptive/minimum/maximum' for amounts that adapt to demand within
+ * the bounds given.
+ * @author jmolnar
+ *
+ */
+public class RequestPolicy {
+	private static final String ADAPTIVE = "adaptive";
+	
+	private final String name;
+	private final boolean adaptive;
+	private final long first; // request amount, or minimum if adaptive
+	private final long second; // threshold, or maximum if adaptive
+	
+	/**
+	 * Constructor taking the parts of the policy.
+	 */
+	private RequestPolicy( String theName, boolean isAdaptive, long theFirst, long theSecond ) {
+		name = theName;
+		adaptive = isAdaptive;
+		first = theFirst;
+		second = theSecond;
+	}
+	
+	/**
+	 * Parses a policy.
+	 * @param thePolicy the policy to parse
+	 * @return the parsed policy
+	 */
+	public static RequestPolicy parse( String thePolicy ) {
+		Preconditions.checkArgument( !Strings.isNullOrEmpty( thePolicy ), "need a policy" );
+		
+		String[ ] parts = thePolicy.trim( ).split( "/" );
+		try {
+			if( parts[ 0 ].equalsIgnoreCase( ADAPTIVE ) ) {
+				Preconditions.checkArgument( parts.length == 3, "Adaptive policy '%s' must be written as 'adaptive/minimum/maximum'.", thePolicy );
+				long minimum = Long.parseLong( parts[ 1 ] );
+				long maximum = Long.parseLong( parts[ 2 ] );
+				Preconditions.checkArgument( minimum > 0 && maximum >= minimum, "Adaptive policy '%s' needs a minimum greater than zero and a maximum at least the minimum.", thePolicy );
+				return new RequestPolicy( thePolicy.trim( ), true, minimum, maximum );
+			} else {
+				Preconditions.checkArgument( parts.length == 2, "Policy '%s' must be written as 'amount/threshold'.", thePolicy );
+				long amount = Long.parseLong( parts[ 0 ] );
+				long threshold = Long.parseLong( parts[ 1 ] );
+				Preconditions.checkArgument( threshold > 0 && amount > threshold, "Policy '%s' needs a threshold greater than zero and an amount greater than the threshold.", thePolicy );
+				return new RequestPolicy( thePolicy.trim( ), false, amount, threshold );
+			}
+		} catch( NumberFormatException e ) {
+			throw new IllegalArgumentException( String.format( "Policy '%s' contains a value that is not a number.", thePolicy ), e );
+		}
+	}
+	
+	/**
+	 * The policy as it was written.
+	 * @return the name of the policy
+	 */
+	public String getName( ) {
+		return name;
+	}
+	
+	/**
+	 * Creates a client configuration that uses the policy. The time based 
+	 * settings, which are the target refill interval, refill latency budget, 
+	 * endpoint unhealthy duration, circuit breaker open duration, retry delays 
+	 * and warm up timeout, are 
+	 * divided by the speed-up since the simulation runs faster than real time. 
+	 * Settings are kept at a minimum of one millisecond, so at very high 
+	 * speed-ups short settings run slower, relative to the trace, than they would.
+	 * @param theSpeedUp how many times faster than real time the simulation runs
+	 * @return the configuration
+	 */
+	public ObjectIdConfiguration createConfiguration( double theSpeedUp ) {
+		ObjectIdConfiguration configuration = new ObjectIdConfiguration( );
+		
+		configuration.setAdaptiveRequests( adaptive );
+		configuration
+			.setTargetRefillInterval( scale( configuration.getTargetRefillInterval( ), theSpeedUp ) )
+			.setRefillLatencyBudget( scale( configuration.getRefillLatencyBudget( ), theSpeedUp ) )
+			.setEndpointUnhealthyDuration( scale( configuration.getEndpointUnhealthyDuration( ), theSpeedUp ) )
+			.setCircuitBreakerOpenDuration( scale( configuration.getCircuitBreakerOpenDuration( ), theSpeedUp ) )
+			.setRetryInitialDelay( scale( configuration.getRetryInitialDelay( ), theSpeedUp ) )
+			.setRetryMaximumDelay( scale( configuration.getRetryMaximumDelay( ), theSpeedUp ) )
+			.setWarmUpTimeout( scale( configuration.getWarmUpTimeout( ), theSpeedUp ) );
+		if( adaptive ) {
+			configuration
+				.setMinimumRequestAmount( first )
+				.setMaximumRequestAmount( second )
+				.setRequestAmount( Math.max( first, Math.min( second, configuration.getRequestAmount( ) ) ) );
+			configuration.setRequestThreshold( Math.max( 1, configuration.getRequestAmount( ) / 5 ) );
+		} else {
+			configuration
+				.setRequestAmount( first )
+				.setRequestThreshold( second );
+		}
+		return configuration;
+	}
+	
+	/**
+	 * Helper method that compresses a time, in milliseconds, by the speed-up.
+	 * @param theTime the time, in milliseconds, in trace time
+	 * @param theSpeedUp how many times faster than real time the simulation runs
+	 * @return the time, in milliseconds, in simulation time
+	 */
+	private static long scale( long theTime, double theSpeedUp ) {
+		return Math.max( 1, ( long )( theTime / theSpeedUp ) );
+	}
+}
@@ -0,0 +1,125 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.benchmark.simulator;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+
+import com.talvish.tales.communication.Status;
+import com.talvish.tales.rigs.objectid.benchmark.standin.LatencyDistribution;
+import com.talvish.tales.rigs.objectid.client.IdBlock;
+import com.talvish.tales.rigs.objectid.client.IdBlockSource;
+import com.talvish.tales.rigs.objectid.client.IdSourceResult;
+import com.talvish.tales.rigs.objectid.client.IdType;
+
+/**
+ * A simulated object id service that responds after a latency drawn from a 
+ * distribution and counts the round-trips made and ids handed out. Each 
+ * round-trip corresponds to one durable write by the real service.
+ * @author jmolnar
+ *
+ */
+public class SimulatedIdBlockSource implements IdBlockSource {
+	private static final long SOURCE_ID = 1;
+	
+	private final LatencyDistribution latencyDistribution;
+	private final double latencyMean;
+	private final double latencyMaximum;
+	private final Random random; // guarded by itself
+	
+	private final List<IdType> types;
+	private final Map<String,IdType> typesByName = new HashMap<>( );
+	private final Map<String,AtomicLong> lastValues = new HashMap<>( );
+	
+	private final AtomicLong roundTrips = new AtomicLong( );
+	private final AtomicLong idsAllocated = new AtomicLong( );
+	
+	/**
+	 * Constructor taking the types to serve and how long responses take.
+	 * @param theTypeNames the names of the types to serve
+	 * @param theLatencyDistribution the distribution latencies are drawn from
+	 * @param theLatencyMean the mean latency, in milliseconds
+	 * @param theLatencyMaximum the maximum latency, in milliseconds
+	 * @param theRandom the source of randomness
+	 */
+	public SimulatedIdBlockSource( List<String> theTypeNames, LatencyDistribution theLatencyDistribution, double theLatencyMean, double theLatencyMaximum, Random theRandom ) {
+		Preconditions.checkArgument( theTypeNames != null && theTypeNames.size( ) > 0, "need type names" );
+		Preconditions.checkNotNull( theLatencyDistribution, "need a latency distribution" );
+		Preconditions.checkNotNull( theRandom, "need a source of randomness" );
+		
+		List<IdType> newTypes = new ArrayList<>( theTypeNames.size( ) );
+		for( String typeName : theTypeNames ) {
+			IdType type = new IdType( typeName, "A type used for simulation.", newTypes.size( ) + 1, SOURCE_ID, 0 );
+			newTypes.add( type );
+			typesByName.put( typeName, type );
+			lastValues.put( typeName, new AtomicLong( ) );
+		}
+		types = Collections.unmodifiableList( newTypes );
+		latencyDistribution = theLatencyDistribution;
+		latencyMean = theLatencyMean;
+		latencyMaximum = theLatencyMaximum;
+		random = theRandom;
+	}
+	
+	/**
+	 * The number of requests for blocks made.
+	 * @return the number of round-trips
+	 */
+	public long getRoundTrips( ) {
+		return roundTrips.get( );
+	}
+	
+	/**
+	 * The number of ids handed out in blocks.
+	 * @return the number of ids allocated
+	 */
+	public long getIdsAllocated( ) {
+		return idsAllocated.get( );
+	}
+
+	@Override
+	public IdSourceResult<List<IdType>> getTypes( ) throws InterruptedException {
+		return new IdSourceResult<>( types, Status.OPERATION_COMPLETED, null, LocalDateTime.now( ).plusDays( 1 ) );
+	}
+
+	@Override
+	public IdSourceResult<IdBlock> generateIds( String theTypeName, long theAmount ) throws InterruptedException {
+		long latency;
+		synchronized( random ) {
+			latency = latencyDistribution.sample( random, latencyMean, latencyMaximum );
+		}
+		TimeUnit.NANOSECONDS.sleep( latency );
+		
+		IdType type = typesByName.get( theTypeName );
+		if( type == null ) {
+			return new IdSourceResult<>( null, Status.CALLER_NOT_FOUND, String.format( "Could not find the type identified by the name '%s'.", theTypeName ), null );
+		} else {
+			long endValue = lastValues.get( theTypeName ).addAndGet( theAmount );
+			roundTrips.incrementAndGet( );
+			idsAllocated.addAndGet( theAmount );
+			return new IdSourceResult<>( new IdBlock( SOURCE_ID, type.getName( ), type.getId( ), endValue - theAmount + 1, endValue ), Status.OPERATION_COMPLETED, null, null );
+		}
+	}
+}
@@ -0,0 +1,275 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.benchmark.simulator;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+
+import com.talvish.tales.rigs.objectid.benchmark.standin.LatencyDistribution;
+import com.talvish.tales.system.configuration.annotated.Setting;
+import com.talvish.tales.system.configuration.annotated.Settings;
+
+/**
+ * The configuration for the block-size policy simulator, which controls 
+ * the trace replayed, the latency of the simulated service and the 
+ * policies compared. If a trace file isn't given a trace is synthesized.
+ * @author jmolnar
+ *
+ */
+@Settings( prefix="simulator" )
+public class SimulatorConfiguration {
+	@Setting( name="{prefix}.trace_file" )
+	private String traceFile = null;
+
+	@Setting( name="{prefix}.synthetic.types" )
+	private List<String> syntheticTypes = Arrays.asList( "simulated" );
+
+	@Setting( name="{prefix}.synthetic.rate" )
+	private double syntheticRate = 1000;
+
+	@Setting( name="{prefix}.synthetic.burst_factor" )
+	private double syntheticBurstFactor = 10;
+
+	@Setting( name="{prefix}.synthetic.duration" )
+	private long syntheticDuration = 60;
+
+	@Setting( name="{prefix}.speed" )
+	private double speed = 10;
+
+	@Setting( name="{prefix}.seed" )
+	private long seed = 0;
+
+	@Setting( name="{prefix}.latency.distribution" )
+	private String latencyDistribution = LatencyDistribution.EXPONENTIAL.name( );
+
+	@Setting( name="{prefix}.latency.mean" )
+	private double latencyMean = 20;
+
+	@Setting( name="{prefix}.latency.maximum" )
+	private double latencyMaximum = 2000;
+
+	@Setting( name="{prefix}.policies" )
+	private List<String> policies = Arrays.asList( "100/20", "1000/200", "10000/2000", "adaptive/10/100000" );
+	
+	/**
+	 * The file holding the trace to replay, or null to synthesize one.
+	 * @return the trace file
+	 */
+	public String getTraceFile( ) {
+		return traceFile;
+	}
+	
+	/**
+	 * Sets the file holding the trace to replay.
+	 * @param theTraceFile the trace file, or null to synthesize one
+	 * @return the configuration object so setters can be chained
+	 */
+	public SimulatorConfiguration setTraceFile( String theTraceFile ) {
+		traceFile = theTraceFile;
+		return this;
+	}
+
+	/**
+	 * The names of the types in a synthesized trace.
+	 * @return the type names
+	 */
+	public List<String> getSyntheticTypes( ) {
+		return syntheticTypes;
+	}
+	
+	/**
+	 * Sets the names of the types in a synthesized trace.
+	 * @param theTypes the type names
+	 * @return the configuration object so setters can be chained
+	 */
+	public SimulatorConfiguration setSyntheticTypes( List<String> theTypes ) {
+		Preconditions.checkArgument( theTypes != null && theTypes.size( ) > 0, "at least one type must be provided" );
+		syntheticTypes = theTypes;
+		return this;
+	}
+
+	/**
+	 * The average number of ids, per second, allocated for each type in a synthesized trace.
+	 * @return the rate
+	 */
+	public double getSyntheticRate( ) {
+		return syntheticRate;
+	}
+	
+	/**
+	 * Sets the average number of ids, per second, allocated for each type in a synthesized trace.
+	 * @param theRate the rate
+	 * @return the configuration object so setters can be chained
+	 */
+	public SimulatorConfiguration setSyntheticRate( double theRate ) {
+		Preconditions.checkArgument( theRate > 0, "the rate must be greater than zero" );
+		syntheticRate = theRate;
+		return this;
+	}
+
+	/**
+	 * How much the rate increases during bursts in a synthesized trace.
+	 * @return the burst factor
+	 */
+	public double getSyntheticBurstFactor( ) {
+		return syntheticBurstFactor;
+	}
+	
+	/**
+	 * Sets how much the rate increases during bursts in a synthesized trace, one for no bursts.
+	 * @param theBurstFactor the burst factor
+	 * @return the configuration object so setters can be chained
+	 */
+	public SimulatorConfiguration setSyntheticBurstFactor( double theBurstFactor ) {
+		Preconditions.checkArgument( theBurstFactor >= 1, "the burst factor must be at least one" );
+		syntheticBurstFactor = theBurstFactor;
+		return this;
+	}
+
+	/**
+	 * The length, in seconds, of a synthesized trace.
+	 * @return the duration
+	 */
+	public long getSyntheticDuration( ) {
+		return syntheticDuration;
+	}
+	
+	/**
+	 * Sets the length, in seconds, of a synthesized trace.
+	 * @param theDuration the duration
+	 * @return the configuration object so setters can be chained
+	 */
+	public SimulatorConfiguration setSyntheticDuration( long theDuration ) {
+		Preconditions.checkArgument( theDuration > 0, "the duration must be greater than zero" );
+		syntheticDuration = theDuration;
+		return this;
+	}
+
+	/**
+	 * How many times faster than real time the trace is replayed.
+	 * @return the speed
+	 */
+	public double getSpeed( ) {
+		return speed;
+	}
+	
+	/**
+	 * Sets how many times faster than real time the trace is replayed.
+	 * @param theSpeed the speed
+	 * @return the configuration object so setters can be chained
+	 */
+	public SimulatorConfiguration setSpeed( double theSpeed ) {
+		Preconditions.checkArgument( theSpeed > 0, "the speed must be greater than zero" );
+		speed = theSpeed;
+		return this;
+	}
+
+	/**
+	 * The seed for the random numbers used to synthesize traces and latencies.
+	 * @return the seed
+	 */
+	public long getSeed( ) {
+		return seed;
+	}
+	
+	/**
+	 * Sets the seed for the random numbers used to synthesize traces and latencies.
+	 * @param theSeed the seed
+	 * @return the configuration object so setters can be chained
+	 */
+	public SimulatorConfiguration setSeed( long theSeed ) {
+		seed = theSeed;
+		return this;
+	}
+
+	/**
+	 * The distribution the simulated service's latencies are drawn from.
+	 * @return the latency distribution
+	 */
+	public LatencyDistribution getLatencyDistribution( ) {
+		return LatencyDistribution.valueOf( latencyDistribution.toUpperCase( ) );
+	}
+	
+	/**
+	 * Sets the distribution the simulated service's latencies are drawn from.
+	 * @param theDistribution the latency distribution
+	 * @return the configuration object so setters can be chained
+	 */
+	public SimulatorConfiguration setLatencyDistribution( LatencyDistribution theDistribution ) {
+		Preconditions.checkNotNull( theDistribution, "a distribution must be provided" );
+		latencyDistribution = theDistribution.name( );
+		return this;
+	}
+
+	/**
+	 * The mean latency of the simulated service, in trace milliseconds.
+	 * @return the mean latency
+	 */
+	public double getLatencyMean( ) {
+		return latencyMean;
+	}
+	
+	/**
+	 * Sets the mean latency of the simulated service, in trace milliseconds.
+	 * @param theMean the mean latency
+	 * @return the configuration object so setters can be chained
+	 */
+	public SimulatorConfiguration setLatencyMean( double theMean ) {
+		Preconditions.checkArgument( theMean >= 0, "the mean latency cannot be negative" );
+		latencyMean = theMean;
+		return this;
+	}
+
+	/**
+	 * The maximum latency of the simulated service, in trace milliseconds.
+	 * @return the maximum latency
+	 */
+	public double getLatencyMaximum( ) {
+		return latencyMaximum;
+	}
+	
+	/**
+	 * Sets the maximum latency of the simulated service, in trace milliseconds.
+	 * @param theMaximum the maximum latency
+	 * @return the configuration object so setters can be chained
+	 */
+	public SimulatorConfiguration setLatencyMaximum( double theMaximum ) {
+		Preconditions.checkArgument( theMaximum >= 0, "the maximum latency cannot be negative" );
+		latencyMaximum = theMaximum;
+		return this;
+	}
+
+	/**
+	 * The block-size policies to compare, as described by {@link RequestPolicy}.
+	 * @return the policies
+	 */
+	public List<String> getPolicies( ) {
+		return policies;
+	}
+	
+	/**
+	 * Sets the block-size policies to compare.
+	 * @param thePolicies the policies
+	 * @return the configuration object so setters can be chained
+	 */
+	public SimulatorConfiguration setPolicies( List<String> thePolicies ) {
+		Preconditions.checkArgument( thePolicies != null && thePolicies.size( ) > 0, "at least one policy must be provided" );
+		policies = thePolicies;
+		return this;
+	}
+}
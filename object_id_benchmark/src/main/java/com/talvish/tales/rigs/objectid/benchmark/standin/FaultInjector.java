@@ -0,0 +1,177 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.benchmark.standin;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+
+import com.talvish.tales.communication.Status;
+import com.talvish.tales.system.status.MonitorableStatusValue;
+
+/**
+ * Decides, for each request to the stand-in service, how long the request
+ * takes and whether it fails or is throttled. Decisions are drawn from one
+ * seeded random sequence so a run can be repeated.
+ * @author jmolnar
+ *
+ */
+public class FaultInjector {
+	private final LatencyDistribution latencyDistribution;
+	private final double latencyMean;
+	private final double latencyMaximum;
+	private final double failureRate;
+	private final Status[ ] failureStatuses;
+	private final double throttleRate;
+	private final Status throttleStatus;
+	
+	private final Random random; // guarded by this
+	private double throttleTokens; // guarded by this
+	private long throttleRefillTime; // guarded by this
+	
+	private final AtomicLong requests = new AtomicLong( );
+	private final AtomicLong failures = new AtomicLong( );
+	private final AtomicLong throttles = new AtomicLong( );
+	private final AtomicLong injectedLatency = new AtomicLong( ); // nanos
+	
+	/**
+	 * The outcome decided for a request.
+	 */
+	public static final class Fault {
+		private final long latency;
+		private final Status status;
+		
+		private Fault( long theLatency, Status theStatus ) {
+			latency = theLatency;
+			status = theStatus;
+		}
+		
+		/**
+		 * How long the request should take.
+		 * @return the latency, in nanoseconds
+		 */
+		public long getLatency( ) {
+			return latency;
+		}
+		
+		/**
+		 * The failure status the request should return.
+		 * @return the status, or null if the request should succeed
+		 */
+		public Status getStatus( ) {
+			return status;
+		}
+	}
+	
+	/**
+	 * Constructor taking the configuration describing the faults to inject.
+	 * @param theConfiguration the configuration to use
+	 */
+	public FaultInjector( StandInConfiguration theConfiguration ) {
+		Preconditions.checkNotNull( theConfiguration, "need a configuration" );
+		
+		latencyDistribution = theConfiguration.getLatencyDistribution( );
+		latencyMean = theConfiguration.getLatencyMean( );
+		latencyMaximum = theConfiguration.getLatencyMaximum( );
+		failureRate = theConfiguration.getFailureRate( );
+		failureStatuses = theConfiguration.getFailureStatuses( );
+		throttleRate = theConfiguration.getThrottleRate( );
+		throttleStatus = theConfiguration.getThrottleStatus( );
+		
+		random = new Random( theConfiguration.getSeed( ) );
+		throttleTokens = Math.max( 1, throttleRate );
+		throttleRefillTime = System.nanoTime( );
+	}
+	
+	/**
+	 * Decides the outcome of the next request.
+	 * @return the fault to apply
+	 */
+	public synchronized Fault next( ) {
+		long latency = latencyDistribution.sample( random, latencyMean, latencyMaximum );
+		Status status = null;
+
+		requests.incrementAndGet( );
+		injectedLatency.addAndGet( latency );
+		if( !takeThrottleToken( ) ) {
+			status = throttleStatus;
+			throttles.incrementAndGet( );
+		} else if( failureRate > 0 && random.nextDouble( ) < failureRate ) {
+			status = failureStatuses[ random.nextInt( failureStatuses.length ) ];
+			failures.incrementAndGet( );
+		}
+		return new Fault( latency, status );
+	}
+	
+	/**
+	 * Helper method that takes a token from the throttle's bucket, 
+	 * which is refilled at the throttle rate.
+	 * @return true if a token was available, false if the request is to be throttled
+	 */
+	private boolean takeThrottleToken( ) {
+		if( throttleRate <= 0 ) {
+			return true;
+		} else {
+			long now = System.nanoTime( );
+			throttleTokens = Math.min( Math.max( 1, throttleRate ), throttleTokens + ( ( now - throttleRefillTime ) / 1e9d ) * throttleRate );
+			throttleRefillTime = now;
+			if( throttleTokens >= 1 ) {
+				throttleTokens -= 1;
+				return true;
+			} else {
+				return false;
+			}
+		}
+	}
+	
+	/**
+	 * The number of requests the injector has made decisions for.
+	 * @return the number of requests
+	 */
+	@MonitorableStatusValue( name = "requests", description = "The number of requests the stand-in has received." )
+	public long getRequests( ) {
+		return requests.get( );
+	}
+
+	/**
+	 * The number of requests that were failed.
+	 * @return the number of failed requests
+	 */
+	@MonitorableStatusValue( name = "failures", description = "The number of requests the stand-in failed on purpose." )
+	public long getFailures( ) {
+		return failures.get( );
+	}
+
+	/**
+	 * The number of requests that were throttled.
+	 * @return the number of throttled requests
+	 */
+	@MonitorableStatusValue( name = "throttles", description = "The number of requests the stand-in throttled." )
+	public long getThrottles( ) {
+		return throttles.get( );
+	}
+
+	/**
+	 * The average latency, in milliseconds, added to requests.
+	 * @return the average injected latency
+	 */
+	@MonitorableStatusValue( name = "average_injected_latency", description = "The average latency, in milliseconds, the stand-in added to requests." )
+	public double getAverageInjectedLatency( ) {
+		long requestCount = requests.get( );
+		return requestCount == 0 ? 0 : ( injectedLatency.get( ) / 1e6d ) / requestCount;
+	}
+}
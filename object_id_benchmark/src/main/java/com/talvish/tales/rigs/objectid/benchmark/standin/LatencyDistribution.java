@@ -0,0 +1,87 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.benchmark.standin;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The distributions the stand-in service can draw response latencies from.
+ * @author jmolnar
+ *
+ */
+public enum LatencyDistribution {
+	/**
+	 * Every response takes the mean.
+	 */
+	FIXED {
+		@Override
+		double sample( Random theRandom, double theMean ) {
+			return theMean;
+		}
+	},
+	/**
+	 * Responses are spread evenly between zero and twice the mean.
+	 */
+	UNIFORM {
+		@Override
+		double sample( Random theRandom, double theMean ) {
+			return theRandom.nextDouble( ) * 2 * theMean;
+		}
+	},
+	/**
+	 * Most responses are quick but some are much slower than the mean.
+	 */
+	EXPONENTIAL {
+		@Override
+		double sample( Random theRandom, double theMean ) {
+			return -Math.log( 1 - theRandom.nextDouble( ) ) * theMean;
+		}
+	},
+	/**
+	 * Like exponential, but with a much longer tail, similar to a service
+	 * that occasionally stalls on garbage collection or disk.
+	 */
+	PARETO {
+		private static final double SHAPE = 1.5d; // must be greater than 1 for the mean to exist
+
+		@Override
+		double sample( Random theRandom, double theMean ) {
+			double scale = theMean * ( SHAPE - 1 ) / SHAPE;
+			return scale / Math.pow( 1 - theRandom.nextDouble( ), 1 / SHAPE );
+		}
+	};
+	
+	/**
+	 * Draws a latency from the distribution.
+	 * @param theRandom the source of randomness
+	 * @param theMean the mean latency, in milliseconds
+	 * @return the latency, in milliseconds
+	 */
+	abstract double sample( Random theRandom, double theMean );
+	
+	/**
+	 * Draws a latency from the distribution, capped at the maximum given.
+	 * @param theRandom the source of randomness
+	 * @param theMean the mean latency, in milliseconds
+	 * @param theMaximum the maximum latency, in milliseconds
+	 * @return the latency, in nanoseconds
+	 */
+	public long sample( Random theRandom, double theMean, double theMaximum ) {
+		double latency = Math.min( sample( theRandom, theMean ), theMaximum );
+		return ( long )( latency * TimeUnit.MILLISECONDS.toNanos( 1 ) );
+	}
+}
@@ -0,0 +1,268 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.benchmark.standin;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+
+import com.talvish.tales.communication.Status;
+import com.talvish.tales.system.configuration.annotated.Setting;
+import com.talvish.tales.system.configuration.annotated.Settings;
+
+/**
+ * The configuration for the stand-in object id service, which controls
+ * the types it serves and the faults it injects. The same seed, 
+ * configuration and request order gives the same faults.
+ * @author jmolnar
+ *
+ */
+@Settings( prefix="stand_in" )
+public class StandInConfiguration {
+	@Setting( name="{prefix}.source_id" )
+	private long sourceId = 1;
+
+	@Setting( name="{prefix}.types" )
+	private List<String> types = Arrays.asList( "benchmark" );
+
+	@Setting( name="{prefix}.seed" )
+	private long seed = 0;
+
+	@Setting( name="{prefix}.latency.distribution" )
+	private String latencyDistribution = LatencyDistribution.FIXED.name( );
+
+	@Setting( name="{prefix}.latency.mean" )
+	private double latencyMean = 0;
+
+	@Setting( name="{prefix}.latency.maximum" )
+	private double latencyMaximum = 10000;
+
+	@Setting( name="{prefix}.failure_rate" )
+	private double failureRate = 0;
+
+	@Setting( name="{prefix}.failure_statuses" )
+	private List<String> failureStatuses = Arrays.asList( 
+			Status.LOCAL_ERROR.name( ), 
+			Status.LOCAL_TIMEOUT.name( ), 
+			Status.LOCAL_UNAVAILABLE.name( ), 
+			Status.DEPENDENCY_TIMEOUT.name( ), 
+			Status.DEPENDENCY_UNAVAILABLE.name( ) );
+
+	@Setting( name="{prefix}.throttle.requests_per_second" )
+	private double throttleRate = 0;
+
+	@Setting( name="{prefix}.throttle.status" )
+	private String throttleStatus = Status.LOCAL_UNAVAILABLE.name( );
+	
+	/**
+	 * The source id put on generated blocks.
+	 * @return the source id
+	 */
+	public long getSourceId( ) {
+		return sourceId;
+	}
+	
+	/**
+	 * Sets the source id put on generated blocks.
+	 * @param theSourceId the source id
+	 * @return the configuration object so setters can be chained
+	 */
+	public StandInConfiguration setSourceId( long theSourceId ) {
+		Preconditions.checkArgument( theSourceId > 0, "the source id must be greater than zero" );
+		sourceId = theSourceId;
+		return this;
+	}
+
+	/**
+	 * The names of the types served, which get ids in the order listed, starting at 1.
+	 * @return the type names
+	 */
+	public List<String> getTypes( ) {
+		return types;
+	}
+	
+	/**
+	 * Sets the names of the types served.
+	 * @param theTypes the type names
+	 * @return the configuration object so setters can be chained
+	 */
+	public StandInConfiguration setTypes( List<String> theTypes ) {
+		Preconditions.checkArgument( theTypes != null && theTypes.size( ) > 0, "at least one type must be provided" );
+		types = theTypes;
+		return this;
+	}
+
+	/**
+	 * The seed for the random numbers used to inject faults.
+	 * @return the seed
+	 */
+	public long getSeed( ) {
+		return seed;
+	}
+	
+	/**
+	 * Sets the seed for the random numbers used to inject faults.
+	 * @param theSeed the seed
+	 * @return the configuration object so setters can be chained
+	 */
+	public StandInConfiguration setSeed( long theSeed ) {
+		seed = theSeed;
+		return this;
+	}
+
+	/**
+	 * The distribution response latencies are drawn from.
+	 * @return the latency distribution
+	 */
+	public LatencyDistribution getLatencyDistribution( ) {
+		return LatencyDistribution.valueOf( latencyDistribution.toUpperCase( ) );
+	}
+	
+	/**
+	 * Sets the distribution response latencies are drawn from.
+	 * @param theDistribution the latency distribution
+	 * @return the configuration object so setters can be chained
+	 */
+	public StandInConfiguration setLatencyDistribution( LatencyDistribution theDistribution ) {
+		Preconditions.checkNotNull( theDistribution, "a distribution must be provided" );
+		latencyDistribution = theDistribution.name( );
+		return this;
+	}
+
+	/**
+	 * The mean response latency, in milliseconds.
+	 * @return the mean latency
+	 */
+	public double getLatencyMean( ) {
+		return latencyMean;
+	}
+	
+	/**
+	 * Sets the mean response latency, in milliseconds.
+	 * @param theMean the mean latency
+	 * @return the configuration object so setters can be chained
+	 */
+	public StandInConfiguration setLatencyMean( double theMean ) {
+		Preconditions.checkArgument( theMean >= 0, "the mean latency cannot be negative" );
+		latencyMean = theMean;
+		return this;
+	}
+
+	/**
+	 * The maximum response latency, in milliseconds, which caps long tails.
+	 * @return the maximum latency
+	 */
+	public double getLatencyMaximum( ) {
+		return latencyMaximum;
+	}
+	
+	/**
+	 * Sets the maximum response latency, in milliseconds.
+	 * @param theMaximum the maximum latency
+	 * @return the configuration object so setters can be chained
+	 */
+	public StandInConfiguration setLatencyMaximum( double theMaximum ) {
+		Preconditions.checkArgument( theMaximum >= 0, "the maximum latency cannot be negative" );
+		latencyMaximum = theMaximum;
+		return this;
+	}
+
+	/**
+	 * The fraction, between 0 and 1, of requests that fail.
+	 * @return the failure rate
+	 */
+	public double getFailureRate( ) {
+		return failureRate;
+	}
+	
+	/**
+	 * Sets the fraction, between 0 and 1, of requests that fail.
+	 * @param theRate the failure rate
+	 * @return the configuration object so setters can be chained
+	 */
+	public StandInConfiguration setFailureRate( double theRate ) {
+		Preconditions.checkArgument( theRate >= 0 && theRate <= 1, "the failure rate must be between 0 and 1" );
+		failureRate = theRate;
+		return this;
+	}
+
+	/**
+	 * The statuses failed requests return, one picked at random for each failure.
+	 * @return the failure statuses
+	 */
+	public Status[ ] getFailureStatuses( ) {
+		Status[ ] statuses = new Status[ failureStatuses.size( ) ];
+		for( int index = 0; index < statuses.length; index += 1 ) {
+			statuses[ index ] = Status.valueOf( failureStatuses.get( index ) );
+		}
+		return statuses;
+	}
+	
+	/**
+	 * Sets the statuses failed requests return.
+	 * @param theStatuses the failure statuses
+	 * @return the configuration object so setters can be chained
+	 */
+	public StandInConfiguration setFailureStatuses( Status ... theStatuses ) {
+		Preconditions.checkArgument( theStatuses != null && theStatuses.length > 0, "at least one status must be provided" );
+		String[ ] statusNames = new String[ theStatuses.length ];
+		for( int index = 0; index < theStatuses.length; index += 1 ) {
+			Preconditions.checkArgument( !theStatuses[ index ].isSuccess( ), "status '%s' is not a failure", theStatuses[ index ] );
+			statusNames[ index ] = theStatuses[ index ].name( );
+		}
+		failureStatuses = Arrays.asList( statusNames );
+		return this;
+	}
+
+	/**
+	 * The number of requests per second served before requests are throttled, zero for no throttling.
+	 * @return the throttle rate
+	 */
+	public double getThrottleRate( ) {
+		return throttleRate;
+	}
+	
+	/**
+	 * Sets the number of requests per second served before requests are throttled.
+	 * @param theRate the throttle rate, zero for no throttling
+	 * @return the configuration object so setters can be chained
+	 */
+	public StandInConfiguration setThrottleRate( double theRate ) {
+		Preconditions.checkArgument( theRate >= 0, "the throttle rate cannot be negative" );
+		throttleRate = theRate;
+		return this;
+	}
+
+	/**
+	 * The status throttled requests return.
+	 * @return the throttle status
+	 */
+	public Status getThrottleStatus( ) {
+		return Status.valueOf( throttleStatus );
+	}
+	
+	/**
+	 * Sets the status throttled requests return.
+	 * @param theStatus the throttle status
+	 * @return the configuration object so setters can be chained
+	 */
+	public StandInConfiguration setThrottleStatus( Status theStatus ) {
+		Preconditions.checkArgument( theStatus != null && !theStatus.isSuccess( ), "the throttle status must be a failure" );
+		throttleStatus = theStatus.name( );
+		return this;
+	}
+}
@@ -0,0 +1,174 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.benchmark.standin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import com.google.common.base.Preconditions;
+
+import com.talvish.tales.communication.Status;
+import com.talvish.tales.contracts.services.http.PathParam;
+import com.talvish.tales.contracts.services.http.RequestParam;
+import com.talvish.tales.contracts.services.http.ResourceContract;
+import com.talvish.tales.contracts.services.http.ResourceOperation;
+import com.talvish.tales.contracts.services.http.ResourceResult;
+import com.talvish.tales.rigs.objectid.client.IdBlock;
+import com.talvish.tales.rigs.objectid.client.IdType;
+import com.talvish.tales.validation.Conditions;
+import com.talvish.tales.validation.constraints.Min;
+import com.talvish.tales.validation.constraints.NotEmpty;
+
+/**
+ * A stand-in for the object id service's resource that serves the same contract, 
+ * and the operations the ObjectIdClient uses, from memory. Every request goes
+ * through a FaultInjector first, so it may be delayed, failed or throttled.
+ * @author jmolnar
+ *
+ */
+@ResourceContract( name="com.tales.object_id_contract", versions={ "20141001", "20161101" } )
+public class StandInObjectIdResource {
+	private static final int MAXIMUM_CACHE_AGE = 300; // seconds, short since restarts reset values
+	
+	private final FaultInjector faultInjector;
+	private final long sourceId;
+	private final List<IdType> types;
+	private final Map<Integer,IdType> typesById = new HashMap<>( );
+	private final Map<String,IdType> typesByName = new HashMap<>( );
+	private final Map<String,AtomicLong> lastValues = new HashMap<>( );
+	
+	/**
+	 * Constructor taking the configuration and the fault injector to use.
+	 * @param theConfiguration the configuration describing the types to serve
+	 * @param theFaultInjector the fault injector to apply to requests
+	 */
+	public StandInObjectIdResource( StandInConfiguration theConfiguration, FaultInjector theFaultInjector ) {
+		Preconditions.checkNotNull( theConfiguration, "need a configuration" );
+		Preconditions.checkNotNull( theFaultInjector, "need a fault injector" );
+		
+		faultInjector = theFaultInjector;
+		sourceId = theConfiguration.getSourceId( );
+		
+		List<IdType> newTypes = new ArrayList<>( );
+		for( String typeName : theConfiguration.getTypes( ) ) {
+			IdType type = new IdType( typeName, "A type served by the stand-in service.", newTypes.size( ) + 1, sourceId, 0 );
+			newTypes.add( type );
+			typesById.put( type.getId( ), type );
+			typesByName.put( type.getName( ), type );
+			lastValues.put( type.getName( ), new AtomicLong( ) );
+		}
+		types = Collections.unmodifiableList( newTypes );
+	}
+	
+	/**
+	 * Does nothing since types are always ready, but may still fault.
+	 * @return the result of the operation
+	 */
+	@ResourceOperation( name="setup_types", path="GET | POST : types/setup" )
+	public ResourceResult<Void> setupTypes( ) {
+		return respond( ( ) -> null, false );
+	}
+
+	/**
+	 * Returns the list of id types served.
+	 * @return the list of available IdTypes
+	 */
+	@ResourceOperation( name="get_id_types", path="GET : types" )
+	public ResourceResult<List<IdType>> getTypes( ) {
+		return respond( ( ) -> types, true );
+	}
+
+	/**
+	 * Returns a specific id type.
+	 * @param theTypeId the type id to retrieve information for
+	 * @return the information regarding the specified type id
+	 */
+	@ResourceOperation( name="get_id_type_by_id", path="GET : types/{type_id : [0-9]+}" )
+	public ResourceResult<IdType> getType( @Min( 1 ) @PathParam( name="type_id" )int theTypeId ) { 
+		return respond( ( ) -> {
+			IdType idType = typesById.get( theTypeId );
+			Conditions.checkFound( idType != null, Integer.toString( theTypeId ), "Could not find the type identified by the id '%s'.", theTypeId );
+			return idType;
+		}, true );
+	}
+
+	/**
+	 * Returns a specific id type.
+	 * @param theTypeName the type name to retrieve information for
+	 * @return the information regarding the specified type name
+	 */
+	@ResourceOperation( name="get_id_type_by_name", path="GET : types/{type_name : [a-zA-Z_].*}" )
+	public ResourceResult<IdType> getType( @NotEmpty @PathParam( name="type_name" )String theTypeName ) { 
+		return respond( ( ) -> {
+			IdType idType = typesByName.get( theTypeName );
+			Conditions.checkFound( idType != null, theTypeName, "Could not find the type identified by the name '%s'.", theTypeName );
+			return idType;
+		}, true );
+	}
+
+	/**
+	 * A request to generate a block of values for a particular type.
+	 * @param theTypeName the type name to generate a block of values for
+	 * @param theAmount the number of values to generate within the block
+	 * @return returns the generated block
+	 */
+	@ResourceOperation( name="generate_ids", path="POST : types/{type_name}/generate_ids" )
+	public ResourceResult<IdBlock> generateIds( 
+			@NotEmpty @PathParam( name="type_name" )String theTypeName,
+			@Min( 1 ) @RequestParam( name="amount")int theAmount ) { 
+		return respond( ( ) -> {
+			IdType idType = typesByName.get( theTypeName );
+			Conditions.checkFound( idType != null, theTypeName, "Could not find the type identified by the name '%s'.", theTypeName );
+			long endValue = lastValues.get( theTypeName ).addAndGet( theAmount );
+			return new IdBlock( sourceId, idType.getName( ), idType.getId( ), endValue - theAmount + 1, endValue );
+		}, false );
+	}
+	
+	/**
+	 * Helper method that applies the next fault and, unless the fault is 
+	 * a failure, returns the value from the supplier given.
+	 * @param theSupplier supplies the value for a successful response
+	 * @param isCacheable whether successful responses may be cached
+	 * @return the result to send back
+	 */
+	private <T> ResourceResult<T> respond( Supplier<T> theSupplier, boolean isCacheable ) {
+		FaultInjector.Fault fault = faultInjector.next( );
+		ResourceResult<T> result = new ResourceResult<T>( );
+		
+		if( fault.getLatency( ) > 0 ) {
+			try {
+				TimeUnit.NANOSECONDS.sleep( fault.getLatency( ) );
+			} catch( InterruptedException e ) {
+				Thread.currentThread( ).interrupt( );
+			}
+		}
+		if( fault.getStatus( ) != null ) {
+			result.setResult( null, fault.getStatus( ), "stand_in_fault", String.format( "The stand-in service injected a '%s' failure.", fault.getStatus( ) ) );
+		} else {
+			result.setResult( theSupplier.get( ), Status.OPERATION_COMPLETED );
+			if( isCacheable ) {
+				result.setCachingEnabled( MAXIMUM_CACHE_AGE );
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,46 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.benchmark.standin;
+
+import com.talvish.tales.services.Service;
+import com.talvish.tales.services.http.HttpInterface;
+import com.talvish.tales.services.http.ServiceConstants;
+
+/**
+ * A stand-in for the object id service that serves ids from memory while
+ * injecting latency, failures and throttling, so clients can be measured
+ * against a misbehaving service on a single machine. It is hosted, and 
+ * bound, the same way as the real service.
+ * @author jmolnar
+ *
+ */
+public class StandInObjectIdService extends Service {
+	private FaultInjector faultInjector;
+
+	public StandInObjectIdService( ) {
+		super( "stand_in_object_id_service", "Stand-in Object Id Service", "A stand-in for the object id service that injects faults." );
+	}
+	
+	@Override
+	protected void onStart() {
+		super.onStart();
+		
+		StandInConfiguration configuration = this.getConfigurationManager( ).getValues( StandInConfiguration.class );
+		faultInjector = new FaultInjector( configuration );
+		this.interfaceManager.getInterface( ServiceConstants.INTERNAL_INTERFACE_NAME, HttpInterface.class ).bind( new StandInObjectIdResource( configuration, faultInjector ), "/id" );
+		this.statusManager.register( "fault_injector_status", faultInjector );
+	}
+}
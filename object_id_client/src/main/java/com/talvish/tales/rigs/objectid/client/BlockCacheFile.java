@@ -0,0 +1,213 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+
+/**
+ * A local file that holds id blocks that were not used before a process shut down,
+ * so they can be used when the process starts again instead of being lost. This
+ * is a helper class for the ObjectIdManager.
+ * <p>
+ * Since handing out the same values twice would create duplicate ObjectIds, the 
+ * file is claimed, by renaming it, and then deleted before any of its values are 
+ * returned. If the file cannot be claimed and deleted, or it fails its checksum, 
+ * or it is older than the maximum age, the values are discarded. Discarding 
+ * values wastes them but is always safe.
+ * @author jmolnar
+ *
+ */
+public class BlockCacheFile {
+	private static final Logger logger = LoggerFactory.getLogger( BlockCacheFile.class );
+
+	private static final int FILE_MARKER = 0x4F494442; // "OIDB"
+	private static final int FILE_VERSION = 1;
+	private static final String CLAIMED_SUFFIX = ".claimed";
+	private static final String WRITING_SUFFIX = ".writing";
+	
+	private final Path file;
+	private final long maximumAge;
+
+	/**
+	 * Constructor taking the location of the file and how old it can be.
+	 * @param theFilename the name of the file to read from and write to
+	 * @param theMaximumAge the maximum age, in seconds, of a file that will be loaded
+	 */
+	public BlockCacheFile( String theFilename, long theMaximumAge ) {
+		Preconditions.checkArgument( !Strings.isNullOrEmpty( theFilename ), "need a file name for the block cache" );
+		Preconditions.checkArgument( theMaximumAge > 0, "the maximum age of block cache '%s' must be greater than 0", theFilename );
+		
+		file = Paths.get( theFilename );
+		maximumAge = theMaximumAge;
+	}
+	
+	/**
+	 * The file this cache reads from and writes to.
+	 * @return the file location
+	 */
+	public Path getFile( ) {
+		return file;
+	}
+
+	/**
+	 * Claims and loads the blocks in the cache file, if there is one. The file is 
+	 * removed as part of loading so the values can never be loaded twice.
+	 * Problems with the file are logged and result in no blocks being returned.
+	 * @return the blocks that can be safely used, which may be empty
+	 */
+	public List<IdBlock> load( ) {
+		Path claimedFile = file.resolveSibling( file.getFileName( ) + CLAIMED_SUFFIX );
+		byte[] contents;
+
+		// first we claim the file so no other process, or later start, can
+		// see it and then we remove it before we consider using any values
+		try {
+			Files.move( file, claimedFile, StandardCopyOption.ATOMIC_MOVE );
+		} catch( NoSuchFileException e ) {
+			logger.info( "No block cache file '{}' to load values from.", file );
+			return Collections.emptyList( );
+		} catch( IOException e ) {
+			logger.warn( "Unable to claim block cache file '{}', so its values will not be used.", file, e );
+			return Collections.emptyList( );
+		}
+		try {
+			contents = Files.readAllBytes( claimedFile );
+			Files.delete( claimedFile );
+		} catch( IOException e ) {
+			logger.warn( "Unable to read and remove claimed block cache file '{}', so its values will not be used.", claimedFile, e );
+			return Collections.emptyList( );
+		}
+		
+		try {
+			return readBlocks( contents );
+		} catch( IOException | IllegalArgumentException | IllegalStateException e ) {
+			logger.warn( "Block cache file '{}' could not be used, so its values will not be used.", file, e );
+			return Collections.emptyList( );
+		}
+	}
+	
+	/**
+	 * Saves the blocks given into the cache file, replacing any file that may exist.
+	 * The file is written to a temporary location first and then moved into place
+	 * so a partially written file is never loaded.
+	 * @param theBlocks the blocks to save
+	 */
+	public void save( List<IdBlock> theBlocks ) {
+		Preconditions.checkNotNull( theBlocks, "need blocks to save" );
+		
+		Path writingFile = file.resolveSibling( file.getFileName( ) + WRITING_SUFFIX );
+		try {
+			Files.write( writingFile, writeBlocks( theBlocks ) );
+			try {
+				Files.move( writingFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+			} catch( AtomicMoveNotSupportedException e ) {
+				Files.move( writingFile, file, StandardCopyOption.REPLACE_EXISTING );
+			}
+			logger.info( "Saved {} unused blocks to block cache file '{}'.", theBlocks.size( ), file );
+		} catch( IOException e ) {
+			throw new IllegalStateException( String.format( "Had trouble writing block cache file '%s'.", file ), e );
+		}
+	}
+	
+	/**
+	 * Helper method that turns blocks into the bytes for the file, ending with a checksum.
+	 * @param theBlocks the blocks to write
+	 * @return the bytes to write
+	 * @throws IOException thrown if the bytes could not be written
+	 */
+	private byte[] writeBlocks( List<IdBlock> theBlocks ) throws IOException {
+		ByteArrayOutputStream byteStream = new ByteArrayOutputStream( );
+		DataOutputStream dataStream = new DataOutputStream( byteStream );
+		
+		dataStream.writeInt( FILE_MARKER );
+		dataStream.writeInt( FILE_VERSION );
+		dataStream.writeLong( System.currentTimeMillis( ) );
+		dataStream.writeInt( theBlocks.size( ) );
+		for( IdBlock block : theBlocks ) {
+			dataStream.writeUTF( block.getTypeName( ) );
+			dataStream.writeInt( block.getTypeId( ) );
+			dataStream.writeLong( block.getSourceId( ) );
+			dataStream.writeLong( block.getStartValue( ) );
+			dataStream.writeLong( block.getEndValue( ) );
+		}
+		dataStream.flush( );
+		
+		CRC32 checksum = new CRC32( );
+		checksum.update( byteStream.toByteArray( ) );
+		dataStream.writeLong( checksum.getValue( ) );
+		dataStream.flush( );
+		
+		return byteStream.toByteArray( );
+	}
+	
+	/**
+	 * Helper method that verifies and reads the blocks from the bytes of the file.
+	 * @param theContents the contents of the file
+	 * @return the blocks in the file
+	 * @throws IOException thrown if the contents are not in the right form
+	 */
+	private List<IdBlock> readBlocks( byte[] theContents ) throws IOException {
+		Preconditions.checkState( theContents.length > 8, "the file is too short to contain blocks" );
+		
+		CRC32 checksum = new CRC32( );
+		checksum.update( theContents, 0, theContents.length - 8 );
+		DataInputStream checksumStream = new DataInputStream( new ByteArrayInputStream( theContents, theContents.length - 8, 8 ) );
+		Preconditions.checkState( checksum.getValue( ) == checksumStream.readLong( ), "the checksum does not match the contents" );
+		
+		DataInputStream dataStream = new DataInputStream( new ByteArrayInputStream( theContents, 0, theContents.length - 8 ) );
+		Preconditions.checkState( dataStream.readInt( ) == FILE_MARKER, "the file is not a block cache file" );
+		int version = dataStream.readInt( );
+		Preconditions.checkState( version == FILE_VERSION, "the file is version %s but only version %s is supported", version, FILE_VERSION );
+		long ageSeconds = ( System.currentTimeMillis( ) - dataStream.readLong( ) ) / 1000l;
+		Preconditions.checkState( ageSeconds >= 0 && ageSeconds <= maximumAge, "the file is %s seconds old but the maximum age is %s seconds", ageSeconds, maximumAge );
+		
+		int blockCount = dataStream.readInt( );
+		Preconditions.checkState( blockCount >= 0, "the file claims to have %s blocks", blockCount );
+		List<IdBlock> blocks = new ArrayList<>( blockCount );
+		for( int count = 0; count < blockCount; count += 1 ) {
+			String typeName = dataStream.readUTF( );
+			int typeId = dataStream.readInt( );
+			long sourceId = dataStream.readLong( );
+			long startValue = dataStream.readLong( );
+			long endValue = dataStream.readLong( );
+			
+			blocks.add( new IdBlock( sourceId, typeName, typeId, startValue, endValue ) ); // this validates the values
+		}
+		Preconditions.checkState( dataStream.available( ) == 0, "the file contains more than the %s blocks it claims", blockCount );
+		
+		return blocks;
+	}
+}
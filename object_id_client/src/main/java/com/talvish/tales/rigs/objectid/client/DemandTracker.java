@@ -0,0 +1,170 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.client;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+
+/**
+ * A class that tracks how quickly ids for a particular type are being used
+ * and how long it takes to get more, and from that decides how many values
+ * to request and when to request them. This is a helper class for the 
+ * ObjectIdManager.
+ * <p>
+ * The threshold is sized so that, at the current consumption rate, a refill
+ * completes well before the pool runs dry. The request amount is sized to 
+ * cover the target refill interval. Both are kept within the configured bounds.
+ * <p>
+ * The threshold is read on every id generated, so the calculated values are
+ * published through volatile fields and only refills take the lock.
+ * @author jmolnar
+ *
+ */
+public class DemandTracker {
+	private static final double SMOOTHING_FACTOR = 0.3d; // weight given to the newest sample
+	private static final double LATENCY_HEADROOM = 2.0d; // how many refill latencies worth of ids to keep around
+	private static final double NANOS_PER_SECOND = 1000000000d;
+	
+	private final String typeName;
+	private final boolean adaptive;
+	private final long minimumAmount;
+	private final long maximumAmount;
+	private final double refillIntervalSeconds;
+	
+	private volatile long requestAmount;
+	private volatile long requestThreshold;
+	
+	private volatile double consumptionRate = -1; // ids per second, negative until measured
+	private volatile double refillLatency = -1; // seconds, negative until measured
+	private long lastRefillNanos = -1;
+	private long lastGeneratedValues = 0;
+	
+	/**
+	 * Constructor taking the type and the configuration to pull bounds from.
+	 * @param theTypeName the name of the type being tracked
+	 * @param theConfiguration the configuration containing the starting values and bounds
+	 */
+	public DemandTracker( String theTypeName, ObjectIdConfiguration theConfiguration ) {
+		Preconditions.checkArgument( !Strings.isNullOrEmpty( theTypeName ), "cannot track demand without a type name" );
+		Preconditions.checkNotNull( theConfiguration, "cannot track demand for type '%s' without configuration", theTypeName );
+		
+		typeName = theTypeName;
+		adaptive = theConfiguration.isAdaptiveRequests( );
+		minimumAmount = theConfiguration.getMinimumRequestAmount( );
+		maximumAmount = theConfiguration.getMaximumRequestAmount( );
+		refillIntervalSeconds = theConfiguration.getTargetRefillInterval( ) / 1000d;
+		
+		requestAmount = theConfiguration.getRequestAmount( );
+		requestThreshold = theConfiguration.getRequestThreshold( );
+	}
+	
+	/**
+	 * The name of the type this tracker is for.
+	 * @return the name of the associated type
+	 */
+	public String getTypeName( ) {
+		return typeName;
+	}
+
+	/**
+	 * The number of values to request on the next refill.
+	 * @return the number of values to request
+	 */
+	public long getRequestAmount( ) {
+		return requestAmount;
+	}
+	
+	/**
+	 * The number of values that, once reached, should cause a refill.
+	 * @return the number of values left that triggers a refill
+	 */
+	public long getRequestThreshold( ) {
+		return requestThreshold;
+	}
+	
+	/**
+	 * The smoothed rate, in ids per second, the type is being consumed.
+	 * @return the consumption rate, or a negative value if not yet known
+	 */
+	public double getConsumptionRate( ) {
+		return consumptionRate;
+	}
+	
+	/**
+	 * The smoothed time, in seconds, a refill takes to complete.
+	 * @return the refill latency, or a negative value if not yet known
+	 */
+	public double getRefillLatency( ) {
+		return refillLatency;
+	}
+
+	/**
+	 * Records that a refill completed, which updates the consumption rate
+	 * and refill latency and recalculates the request amount and threshold.
+	 * @param theLatencyNanos how long, in nanoseconds, the refill took
+	 * @param theGeneratedValues the total number of values the type's generator has handed out
+	 */
+	public synchronized void recordRefill( long theLatencyNanos, long theGeneratedValues ) {
+		long now = System.nanoTime( );
+		
+		refillLatency = smooth( refillLatency, theLatencyNanos / NANOS_PER_SECOND );
+		if( lastRefillNanos >= 0 ) {
+			double elapsedSeconds = ( now - lastRefillNanos ) / NANOS_PER_SECOND;
+			if( elapsedSeconds > 0 ) {
+				consumptionRate = smooth( consumptionRate, ( theGeneratedValues - lastGeneratedValues ) / elapsedSeconds );
+			}
+		}
+		lastRefillNanos = now;
+		lastGeneratedValues = theGeneratedValues;
+		
+		if( adaptive && consumptionRate >= 0 ) {
+			recalculate( );
+		}
+	}
+	
+	/**
+	 * Helper method that sizes the request amount and threshold based 
+	 * on the current consumption rate and refill latency.
+	 */
+	private void recalculate( ) {
+		long threshold = clamp( ( long )Math.ceil( consumptionRate * refillLatency * LATENCY_HEADROOM ), 1, maximumAmount );
+		long amount = clamp( Math.max( ( long )Math.ceil( consumptionRate * refillIntervalSeconds ), threshold * 2 ), minimumAmount, maximumAmount );
+		
+		requestAmount = amount;
+		requestThreshold = Math.min( threshold, amount );
+	}
+	
+	/**
+	 * Helper method that blends a new sample into a smoothed value.
+	 * @param theCurrent the current smoothed value, negative if there isn't one
+	 * @param theSample the new sample
+	 * @return the new smoothed value
+	 */
+	private static double smooth( double theCurrent, double theSample ) {
+		if( theCurrent < 0 ) {
+			return theSample;
+		} else {
+			return ( SMOOTHING_FACTOR * theSample ) + ( ( 1d - SMOOTHING_FACTOR ) * theCurrent );
+		}
+	}
+	
+	/**
+	 * Helper method that keeps a value within the bounds given.
+	 */
+	private static long clamp( long theValue, long theMinimum, long theMaximum ) {
+		return Math.max( theMinimum, Math.min( theMaximum, theValue ) );
+	}
+}
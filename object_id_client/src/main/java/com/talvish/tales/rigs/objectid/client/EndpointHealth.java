@@ -0,0 +1,135 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.client;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Tracks the latency and health of a single object id service endpoint
+ * for the FailoverIdBlockSource. An endpoint that fails the configured 
+ * number of times in a row is considered unhealthy for the configured 
+ * period of time, after which it will be tried again.
+ * @author jmolnar
+ *
+ */
+final class EndpointHealth {
+	private static final double SMOOTHING_FACTOR = 0.3d; // weight given to the newest sample
+	
+	private final String endpoint;
+	private final HttpIdBlockSource source;
+	private final int failureLimit; // consecutive failures before an endpoint is unhealthy
+	private final long unhealthyDuration; // nanos
+	
+	private long latency = 0; // nanos, zero means unmeasured, which makes an endpoint attractive to try
+	private int consecutiveFailures = 0;
+	private long unhealthyUntil = 0;
+	private long sourceId = 0;
+	
+	/**
+	 * Constructor taking the endpoint, the source used to talk to it and when it is considered unhealthy.
+	 * @param theEndpoint the endpoint
+	 * @param theSource the source talking to the endpoint
+	 * @param theFailureLimit the number of failures in a row before the endpoint is unhealthy
+	 * @param theUnhealthyDuration how long, in milliseconds, the endpoint is unhealthy before it is tried again
+	 */
+	EndpointHealth( String theEndpoint, HttpIdBlockSource theSource, int theFailureLimit, long theUnhealthyDuration ) {
+		Preconditions.checkNotNull( theSource, "need a source" );
+		Preconditions.checkArgument( theFailureLimit > 0, "the failure limit has to be greater than zero" );
+		Preconditions.checkArgument( theUnhealthyDuration > 0, "the unhealthy duration has to be greater than zero" );
+		endpoint = theEndpoint;
+		source = theSource;
+		failureLimit = theFailureLimit;
+		unhealthyDuration = TimeUnit.MILLISECONDS.toNanos( theUnhealthyDuration );
+	}
+	
+	/**
+	 * The endpoint being tracked.
+	 * @return the endpoint
+	 */
+	String getEndpoint( ) {
+		return endpoint;
+	}
+	
+	/**
+	 * The source used to talk to the endpoint.
+	 * @return the source
+	 */
+	HttpIdBlockSource getSource( ) {
+		return source;
+	}
+	
+	/**
+	 * The smoothed latency of calls to the endpoint.
+	 * @return the latency in nanoseconds, zero if not yet measured
+	 */
+	synchronized long getLatency( ) {
+		return latency;
+	}
+	
+	/**
+	 * The source id the endpoint generates blocks with.
+	 * @return the source id, zero if not known yet
+	 */
+	synchronized long getSourceId( ) {
+		return sourceId;
+	}
+	
+	/**
+	 * Indicates if the endpoint is healthy enough to send requests to.
+	 * @param theNow the current time, in nanoseconds
+	 * @return true if healthy, false otherwise
+	 */
+	synchronized boolean isHealthy( long theNow ) {
+		return consecutiveFailures < failureLimit || theNow - unhealthyUntil >= 0;
+	}
+	
+	/**
+	 * Records a successful call to the endpoint.
+	 * @param theLatency how long the call took, in nanoseconds
+	 * @param theSourceId the source id of the block returned, or zero if the call didn't return a block
+	 * @return true if the source id of the endpoint was learned or changed, false otherwise
+	 */
+	synchronized boolean recordSuccess( long theLatency, long theSourceId ) {
+		latency = latency == 0 ? theLatency : ( long )( ( SMOOTHING_FACTOR * theLatency ) + ( ( 1d - SMOOTHING_FACTOR ) * latency ) );
+		consecutiveFailures = 0;
+		if( theSourceId != 0 && theSourceId != sourceId ) {
+			sourceId = theSourceId;
+			return true;
+		} else {
+			return false;
+		}
+	}
+	
+	/**
+	 * Records a failed call to the endpoint, which may make the endpoint unhealthy.
+	 * @param theLatency how long the call took, in nanoseconds
+	 * @return true if the endpoint just became unhealthy, false otherwise
+	 */
+	synchronized boolean recordFailure( long theLatency ) {
+		// failures count towards latency too, since slow failures are still slow
+		latency = latency == 0 ? theLatency : ( long )( ( SMOOTHING_FACTOR * theLatency ) + ( ( 1d - SMOOTHING_FACTOR ) * latency ) );
+		consecutiveFailures += 1;
+		if( consecutiveFailures >= failureLimit ) {
+			// each failure while unhealthy pushes the next attempt out again
+			unhealthyUntil = System.nanoTime( ) + unhealthyDuration;
+			return consecutiveFailures == failureLimit;
+		} else {
+			return false;
+		}
+	}
+}
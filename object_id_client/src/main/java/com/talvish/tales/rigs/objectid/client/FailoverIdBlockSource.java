@@ -0,0 +1,313 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import com.talvish.tales.communication.CommunicationException;
+
+/**
+ * An id block source that spreads requests over several object id service 
+ * endpoints, each of which must use a different source id. Requests go to 
+ * the fastest healthy endpoint and fail over to the others if it fails. If 
+ * a request for ids takes longer than the latency budget a second, hedged, 
+ * request is sent to the next best endpoint and the first successful block
+ * is used. Since blocks from different sources never collide this is safe;
+ * the cost is that the slower block is never used.
+ * @author jmolnar
+ *
+ */
+public class FailoverIdBlockSource implements IdBlockSource {
+	private static final Logger logger = LoggerFactory.getLogger( FailoverIdBlockSource.class );
+
+	private final List<EndpointHealth> endpoints;
+	private final long latencyBudget;
+	private final ExecutorService executorService = Executors.newCachedThreadPool( 
+			new ThreadFactoryBuilder( ).setDaemon( true ).setNameFormat( "object-id-failover-%d" ).build( ) ); 
+
+	/**
+	 * Constructor taking the configuration, which contains the endpoints and latency budget, 
+	 * and the user agent needed to talk to the services.
+	 * @param theConfiguration the configuration to use to talk to the services
+	 * @param theUserAgent the user agent to use while talking to the services
+	 */
+	public FailoverIdBlockSource( ObjectIdConfiguration theConfiguration, String theUserAgent ) {
+		Preconditions.checkNotNull( theConfiguration, "need the configuration" );
+		Preconditions.checkArgument( theConfiguration.getEndpoints( ) != null && theConfiguration.getEndpoints( ).size( ) > 0, "need at least one endpoint" );
+		Preconditions.checkArgument( !Strings.isNullOrEmpty( theUserAgent ), "the user agent must be specified" );
+		
+		List<EndpointHealth> foundEndpoints = new ArrayList<>( theConfiguration.getEndpoints( ).size( ) );
+		for( String endpoint : theConfiguration.getEndpoints( ) ) {
+			// each endpoint gets the caller's settings, timeouts included, with only the endpoint changed
+			ObjectIdConfiguration endpointConfiguration = theConfiguration.copyForEndpoint( endpoint );
+			foundEndpoints.add( new EndpointHealth( 
+					endpoint, 
+					new HttpIdBlockSource( endpointConfiguration, theUserAgent ),
+					theConfiguration.getEndpointFailureLimit( ),
+					theConfiguration.getEndpointUnhealthyDuration( ) ) );
+		}
+		endpoints = Collections.unmodifiableList( foundEndpoints );
+		latencyBudget = TimeUnit.MILLISECONDS.toNanos( theConfiguration.getRefillLatencyBudget( ) );
+		
+		logger.info( "Using {} object id service endpoints with a refill latency budget of {} ms.", endpoints.size( ), theConfiguration.getRefillLatencyBudget( ) );
+	}
+
+	/**
+	 * Returns the list of id types, trying each endpoint, best first, until one succeeds.
+	 * @return the result containing the list of available IdTypes
+	 * @throws InterruptedException thrown if the calling thread is interrupted
+	 */
+	@Override
+	public IdSourceResult<List<IdType>> getTypes( ) throws InterruptedException {
+		return getTypes( null );
+	}
+
+	/**
+	 * Returns the list of id types, unless unchanged since the entity tag given, 
+	 * trying each endpoint, best first, until one succeeds. Entity tags are based
+	 * on the types so endpoints with the same types return the same tag.
+	 * @param theEntityTag the entity tag from the previous result, which may be null
+	 * @return the result containing the list of available IdTypes
+	 * @throws InterruptedException thrown if the calling thread is interrupted
+	 */
+	@Override
+	public IdSourceResult<List<IdType>> getTypes( String theEntityTag ) throws InterruptedException {
+		IdSourceResult<List<IdType>> result = null;
+		RuntimeException lastException = null;
+		
+		for( EndpointHealth endpoint : rankEndpoints( ) ) {
+			long start = System.nanoTime( );
+			try {
+				result = endpoint.getSource( ).getTypes( theEntityTag );
+				if( result.isSuccess( ) ) {
+					endpoint.recordSuccess( System.nanoTime( ) - start, 0 );
+					return result;
+				} else {
+					recordFailure( endpoint, System.nanoTime( ) - start );
+				}
+			} catch( RuntimeException e ) {
+				recordFailure( endpoint, System.nanoTime( ) - start );
+				lastException = e;
+			}
+		}
+		if( result != null ) {
+			return result;
+		} else {
+			throw new CommunicationException( "Unable to get type information from any object id service endpoint.", lastException );
+		}
+	}
+
+	/**
+	 * A request to generate a block of values for a particular type. The request goes to
+	 * the best endpoint and is hedged if it exceeds the latency budget. If it fails the
+	 * remaining endpoints are tried.
+	 * @param theTypeName the type name to generate ids for
+	 * @param theAmount the number of values to generate within the block
+	 * @return the result containing the generated block
+	 * @throws InterruptedException thrown if the calling thread is interrupted
+	 */
+	@Override
+	public IdSourceResult<IdBlock> generateIds( String theTypeName, long theAmount ) throws InterruptedException {
+		List<EndpointHealth> rankedEndpoints = rankEndpoints( );
+		IdSourceResult<IdBlock> result = null;
+		RuntimeException lastException = null;
+		int index = 0;
+		
+		while( index < rankedEndpoints.size( ) ) {
+			EndpointHealth primary = rankedEndpoints.get( index );
+			EndpointHealth secondary = index + 1 < rankedEndpoints.size( ) ? rankedEndpoints.get( index + 1 ) : null;
+			
+			try {
+				result = generateIds( theTypeName, theAmount, primary, secondary );
+				if( result.isSuccess( ) ) {
+					return result;
+				}
+			} catch( RuntimeException e ) {
+				lastException = e;
+			}
+			// the secondary, if there was one, was part of the attempt
+			index += secondary == null ? 1 : 2;
+		}
+		if( result != null ) {
+			return result;
+		} else {
+			throw new CommunicationException( String.format( "Unable to generate ids for type '%s' from any object id service endpoint.", theTypeName ), lastException );
+		}
+	}
+	
+	/**
+	 * Helper method that sends the request to the primary endpoint and, if the primary
+	 * doesn't respond within the latency budget, hedges the request to the secondary.
+	 * @param theTypeName the type name to generate ids for
+	 * @param theAmount the number of values to generate within the block
+	 * @param thePrimary the endpoint to try first
+	 * @param theSecondary the endpoint to hedge to, which may be null
+	 * @return the first successful result, or a failed result if both failed
+	 * @throws InterruptedException thrown if the calling thread is interrupted
+	 */
+	private IdSourceResult<IdBlock> generateIds( String theTypeName, long theAmount, EndpointHealth thePrimary, EndpointHealth theSecondary ) throws InterruptedException {
+		CompletableFuture<IdSourceResult<IdBlock>> primaryRequest = request( theTypeName, theAmount, thePrimary );
+		
+		if( theSecondary == null ) {
+			return waitFor( primaryRequest );
+		}
+		try {
+			IdSourceResult<IdBlock> result = primaryRequest.get( latencyBudget, TimeUnit.NANOSECONDS );
+			if( result.isSuccess( ) ) {
+				return result;
+			} else {
+				// failed quickly so fail over rather than hedge
+				return waitFor( request( theTypeName, theAmount, theSecondary ) );
+			}
+		} catch( TimeoutException e ) {
+			logger.info( "Request for ids of type '{}' from '{}' exceeded the latency budget so hedging to '{}'.", theTypeName, thePrimary.getEndpoint( ), theSecondary.getEndpoint( ) );
+			return waitFor( firstSuccess( primaryRequest, request( theTypeName, theAmount, theSecondary ) ) );
+		} catch( ExecutionException e ) {
+			// failed quickly so fail over rather than hedge
+			return waitFor( request( theTypeName, theAmount, theSecondary ) );
+		}
+	}
+	
+	/**
+	 * Helper method that sends a request in the background and records how the endpoint did.
+	 * @param theTypeName the type name to generate ids for
+	 * @param theAmount the number of values to generate within the block
+	 * @param theEndpoint the endpoint to send to
+	 * @return the future completing with the result
+	 */
+	private CompletableFuture<IdSourceResult<IdBlock>> request( String theTypeName, long theAmount, EndpointHealth theEndpoint ) {
+		return CompletableFuture.supplyAsync( ( ) -> {
+			long start = System.nanoTime( );
+			try {
+				IdSourceResult<IdBlock> result = theEndpoint.getSource( ).generateIds( theTypeName, theAmount );
+				if( result.isSuccess( ) ) {
+					if( theEndpoint.recordSuccess( System.nanoTime( ) - start, result.getResult( ).getSourceId( ) ) ) {
+						checkSourceId( theEndpoint );
+					}
+				} else {
+					recordFailure( theEndpoint, System.nanoTime( ) - start );
+				}
+				return result;
+			} catch( InterruptedException e ) {
+				Thread.currentThread( ).interrupt( );
+				throw new CompletionException( e );
+			} catch( RuntimeException e ) {
+				recordFailure( theEndpoint, System.nanoTime( ) - start );
+				throw e;
+			}
+		}, executorService );
+	}
+	
+	/**
+	 * Helper method returning a future that completes with the first successful
+	 * result, or, if neither is successful, with the result of the second to complete.
+	 * @param theFirst the first request
+	 * @param theSecond the second request
+	 * @return the combined future
+	 */
+	private static CompletableFuture<IdSourceResult<IdBlock>> firstSuccess( CompletableFuture<IdSourceResult<IdBlock>> theFirst, CompletableFuture<IdSourceResult<IdBlock>> theSecond ) {
+		CompletableFuture<IdSourceResult<IdBlock>> winner = new CompletableFuture<>( );
+		AtomicInteger remaining = new AtomicInteger( 2 );
+		
+		for( CompletableFuture<IdSourceResult<IdBlock>> request : Arrays.asList( theFirst, theSecond ) ) {
+			request.whenComplete( ( result, exception ) -> {
+				boolean last = remaining.decrementAndGet( ) == 0;
+				if( exception == null && result.isSuccess( ) ) {
+					winner.complete( result );
+				} else if( last ) {
+					if( exception != null ) {
+						winner.completeExceptionally( exception );
+					} else {
+						winner.complete( result );
+					}
+				}
+			} );
+		}
+		return winner;
+	}
+	
+	/**
+	 * Helper method that returns the endpoints ordered by preference, healthy 
+	 * endpoints first and then by latency.
+	 * @return the ordered endpoints
+	 */
+	private List<EndpointHealth> rankEndpoints( ) {
+		long now = System.nanoTime( );
+		List<EndpointHealth> rankedEndpoints = new ArrayList<>( endpoints );
+		
+		rankedEndpoints.sort( Comparator
+				.comparing( ( EndpointHealth endpoint ) -> !endpoint.isHealthy( now ) )
+				.thenComparingLong( EndpointHealth::getLatency ) );
+		return rankedEndpoints;
+	}
+	
+	/**
+	 * Helper method that records a failure and logs if the endpoint became unhealthy.
+	 */
+	private static void recordFailure( EndpointHealth theEndpoint, long theLatency ) {
+		if( theEndpoint.recordFailure( theLatency ) ) {
+			logger.warn( "Object id service endpoint '{}' has failed repeatedly and is considered unhealthy.", theEndpoint.getEndpoint( ) );
+		}
+	}
+	
+	/**
+	 * Helper method, called when an endpoint's source id is learned, that warns if the endpoint 
+	 * is using the same source id as another, which means the endpoints are not independent.
+	 */
+	private void checkSourceId( EndpointHealth theEndpoint ) {
+		long sourceId = theEndpoint.getSourceId( );
+		for( EndpointHealth endpoint : endpoints ) {
+			if( endpoint != theEndpoint && endpoint.getSourceId( ) == sourceId ) {
+				logger.warn( "Object id service endpoints '{}' and '{}' are both using source id {}.", endpoint.getEndpoint( ), theEndpoint.getEndpoint( ), sourceId );
+			}
+		}
+	}
+	
+	/**
+	 * Helper method that waits on a request and turns failures back into the exceptions that caused them.
+	 */
+	private static IdSourceResult<IdBlock> waitFor( CompletableFuture<IdSourceResult<IdBlock>> theRequest ) throws InterruptedException {
+		try {
+			return theRequest.get( );
+		} catch( ExecutionException e ) {
+			Throwable cause = e.getCause( ) instanceof CompletionException && e.getCause( ).getCause( ) != null ? e.getCause( ).getCause( ) : e.getCause( );
+			if( cause instanceof RuntimeException ) {
+				throw ( RuntimeException )cause;
+			} else {
+				throw new CommunicationException( "Ran into trouble generating ids.", cause );
+			}
+		}
+	}
+}
@@ -0,0 +1,70 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.client;
+
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * An id block source that gets blocks from a single object id service.
+ * @author jmolnar
+ *
+ */
+public class HttpIdBlockSource implements IdBlockSource {
+	private final ObjectIdClient client;
+	
+	/**
+	 * Constructor taking the configuration and user agent needed to talk to the service.
+	 * @param theConfiguration the configuration to use to talk to the service
+	 * @param theUserAgent the user agent to use while talking to the service
+	 */
+	public HttpIdBlockSource( ObjectIdConfiguration theConfiguration, String theUserAgent ) {
+		this( new ObjectIdClient( theConfiguration, theUserAgent ) );
+	}
+
+	/**
+	 * Constructor taking the client to use to talk to the service.
+	 * @param theClient the client to use
+	 */
+	public HttpIdBlockSource( ObjectIdClient theClient ) {
+		Preconditions.checkNotNull( theClient, "need a client" );
+		client = theClient;
+	}
+	
+	/**
+	 * The client used to talk to the service.
+	 * @return the client
+	 */
+	public ObjectIdClient getClient( ) {
+		return client;
+	}
+
+	@Override
+	public IdSourceResult<List<IdType>> getTypes( ) throws InterruptedException {
+		return IdSourceResult.from( client.getTypes( ) );
+	}
+
+	@Override
+	public IdSourceResult<List<IdType>> getTypes( String theEntityTag ) throws InterruptedException {
+		return IdSourceResult.from( client.getTypes( theEntityTag ) );
+	}
+
+	@Override
+	public IdSourceResult<IdBlock> generateIds( String theTypeName, long theAmount ) throws InterruptedException {
+		return IdSourceResult.from( client.generateIds( theTypeName, theAmount ) );
+	}
+}
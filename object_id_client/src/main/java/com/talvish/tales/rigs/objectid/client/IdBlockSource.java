@@ -0,0 +1,56 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.client;
+
+import java.util.List;
+
+/**
+ * A source of id blocks, and the type information that goes with them,
+ * used by the ObjectIdManager. Implementations may talk to one or more
+ * object id services or may generate the blocks themselves.
+ * @author jmolnar
+ *
+ */
+public interface IdBlockSource {
+	/**
+	 * Returns the list of id types the source supports.
+	 * @return the result containing the list of available IdTypes
+	 * @throws InterruptedException thrown if the calling thread is interrupted
+	 */
+	IdSourceResult<List<IdType>> getTypes( ) throws InterruptedException;
+
+	/**
+	 * Returns the list of id types the source supports, unless they haven't 
+	 * changed since the entity tag given was returned, in which case the 
+	 * result has the status OPERATION_NOT_MODIFIED and no types. Sources
+	 * that cannot tell if types changed always return the types.
+	 * @param theEntityTag the entity tag from the previous result, which may be null
+	 * @return the result containing the list of available IdTypes
+	 * @throws InterruptedException thrown if the calling thread is interrupted
+	 */
+	default IdSourceResult<List<IdType>> getTypes( String theEntityTag ) throws InterruptedException {
+		return getTypes( );
+	}
+	
+	/**
+	 * A request to generate a block of values for a particular type.
+	 * @param theTypeName the type name to generate ids for
+	 * @param theAmount the number of values to generate within the block
+	 * @return the result containing the generated block
+	 * @throws InterruptedException thrown if the calling thread is interrupted
+	 */
+	IdSourceResult<IdBlock> generateIds( String theTypeName, long theAmount ) throws InterruptedException;
+}
@@ -0,0 +1,186 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.client;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+
+import com.talvish.tales.client.http.ResourceResult;
+import com.talvish.tales.communication.Status;
+
+/**
+ * The result of a call to an {@link IdBlockSource}. This mirrors the parts of
+ * a ResourceResult the ObjectIdManager needs so that sources do not have to
+ * be HTTP based.
+ * @author jmolnar
+ *
+ * @param <T> the type of the value returned
+ */
+public class IdSourceResult<T> {
+	private static final String RETRY_AFTER_HEADER = "Retry-After";
+	private static final String ENTITY_TAG_HEADER = "ETag";
+
+	private final T result;
+	private final Status status;
+	private final String message;
+	private final LocalDateTime expiration;
+	private final long retryAfter;
+	private final String entityTag;
+	
+	/**
+	 * Constructor taking the elements of the result, for results without a retry hint.
+	 * @param theResult the value returned, which may be null if not successful
+	 * @param theStatus the status of the call
+	 * @param theMessage a message describing the status, which may be null
+	 * @param theExpiration when the value can no longer be cached, which may be null if unknown
+	 */
+	public IdSourceResult( T theResult, Status theStatus, String theMessage, LocalDateTime theExpiration ) {
+		this( theResult, theStatus, theMessage, theExpiration, 0 );
+	}
+
+	/**
+	 * Constructor taking all of the elements of the result.
+	 * @param theResult the value returned, which may be null if not successful
+	 * @param theStatus the status of the call
+	 * @param theMessage a message describing the status, which may be null
+	 * @param theExpiration when the value can no longer be cached, which may be null if unknown
+	 * @param theRetryAfter how long, in milliseconds, the source asked callers to wait before trying again, zero if not given
+	 */
+	public IdSourceResult( T theResult, Status theStatus, String theMessage, LocalDateTime theExpiration, long theRetryAfter ) {
+		this( theResult, theStatus, theMessage, theExpiration, theRetryAfter, null );
+	}
+
+	/**
+	 * Constructor taking all of the elements of the result.
+	 * @param theResult the value returned, which may be null if not successful
+	 * @param theStatus the status of the call
+	 * @param theMessage a message describing the status, which may be null
+	 * @param theExpiration when the value can no longer be cached, which may be null if unknown
+	 * @param theRetryAfter how long, in milliseconds, the source asked callers to wait before trying again, zero if not given
+	 * @param theEntityTag the entity tag identifying the version of the value, which may be null if not given
+	 */
+	public IdSourceResult( T theResult, Status theStatus, String theMessage, LocalDateTime theExpiration, long theRetryAfter, String theEntityTag ) {
+		Preconditions.checkNotNull( theStatus, "need a status" );
+		Preconditions.checkArgument( theRetryAfter >= 0, "the retry after cannot be negative" );
+		
+		result = theResult;
+		status = theStatus;
+		message = theMessage;
+		expiration = theExpiration;
+		retryAfter = theRetryAfter;
+		entityTag = theEntityTag;
+	}
+	
+	/**
+	 * Creates a result from the result of calling a service.
+	 * @param theResult the service result
+	 * @return the source result
+	 */
+	public static <T> IdSourceResult<T> from( ResourceResult<T> theResult ) {
+		Preconditions.checkNotNull( theResult, "need a result" );
+		
+		return new IdSourceResult<T>( 
+				theResult.getResult( ), 
+				theResult.getStatus( ).getCode( ), 
+				theResult.getStatus( ).getMessage( ), 
+				theResult.getStatus( ).getCode( ).isSuccess( ) ? theResult.calculateExpiration( ) : null,
+				extractRetryAfter( theResult ),
+				theResult.getHeaders( ) == null ? null : theResult.getHeaders( ).get( ENTITY_TAG_HEADER ) );
+	}
+	
+	/**
+	 * Helper method that gets the 'Retry-After' header, which is in seconds, from a result.
+	 * @param theResult the service result
+	 * @return the time to wait, in milliseconds, or zero if the header wasn't given or isn't a number
+	 */
+	private static long extractRetryAfter( ResourceResult<?> theResult ) {
+		Map<String,String> headers = theResult.getHeaders( );
+		String retryAfter = headers == null ? null : headers.get( RETRY_AFTER_HEADER );
+		
+		if( Strings.isNullOrEmpty( retryAfter ) ) {
+			return 0;
+		} else {
+			try {
+				return TimeUnit.SECONDS.toMillis( Math.max( 0, Long.parseLong( retryAfter.trim( ) ) ) );
+			} catch( NumberFormatException e ) {
+				// http dates are allowed, but the service only sends seconds
+				return 0;
+			}
+		}
+	}
+	
+	/**
+	 * The value returned.
+	 * @return the value, which may be null if not successful
+	 */
+	public T getResult( ) {
+		return result;
+	}
+	
+	/**
+	 * The status of the call.
+	 * @return the status
+	 */
+	public Status getStatus( ) {
+		return status;
+	}
+	
+	/**
+	 * Indicates if the call was successful.
+	 * @return true if successful, false otherwise
+	 */
+	public boolean isSuccess( ) {
+		return status.isSuccess( );
+	}
+	
+	/**
+	 * A message describing the status.
+	 * @return the message, which may be null
+	 */
+	public String getMessage( ) {
+		return message;
+	}
+	
+	/**
+	 * When the value can no longer be cached.
+	 * @return the expiration, which may be null if not known
+	 */
+	public LocalDateTime getExpiration( ) {
+		return expiration;
+	}
+	
+	/**
+	 * How long the source asked callers to wait before trying again, 
+	 * which is given when the source is overloaded.
+	 * @return the time to wait, in milliseconds, or zero if not given
+	 */
+	public long getRetryAfter( ) {
+		return retryAfter;
+	}
+	
+	/**
+	 * The entity tag identifying the version of the value, which can be 
+	 * given to the source later to find out if the value changed.
+	 * @return the entity tag, or null if not given
+	 */
+	public String getEntityTag( ) {
+		return entityTag;
+	}
+}
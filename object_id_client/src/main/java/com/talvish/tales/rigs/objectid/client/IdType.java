@@ -15,6 +15,9 @@
 // ***************************************************************************
 package com.talvish.tales.rigs.objectid.client;
 
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+
 import com.talvish.tales.businessobjects.TimestampedBase;
 import com.talvish.tales.contracts.data.DataContract;
 import com.talvish.tales.contracts.data.DataMember;
@@ -33,6 +36,7 @@ public class IdType extends TimestampedBase {
 
 	// we don't expose these two since they aren't relevant from the client's perspective
 	// but we leave it on this class since it can be look at for debugging purposes
+	// the last value is only sent by the original, 20141001, version of the contract
 	@DataMember( name="source")private long source; 
 	@DataMember( name="last_value" )private long lastValue;
 
@@ -43,6 +47,26 @@ public class IdType extends TimestampedBase {
 		
 	}
 	
+	/**
+	 * Constructor used by id block sources that do not get 
+	 * type information through serialization.
+	 * @param theName the name of the type
+	 * @param theDescription the description of the type
+	 * @param theId the id of the type
+	 * @param theSource the source that generates values for the type
+	 * @param theLastValue the last value handed out for the type
+	 */
+	public IdType( String theName, String theDescription, int theId, long theSource, long theLastValue ) {
+		Preconditions.checkArgument( !Strings.isNullOrEmpty( theName ), "need a name" );
+		Preconditions.checkArgument( theId > 0, "type '%s' needs an id greater than zero", theName );
+		
+		name = theName;
+		description = theDescription;
+		id = theId;
+		source = theSource;
+		lastValue = theLastValue;
+	}
+	
 	/**
 	 * Returns the name for the type.
 	 * @return the name
@@ -0,0 +1,175 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.client;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * An immutable set of type information retrieved from the service. The
+ * ObjectIdManager swaps in a new snapshot when types are reloaded so 
+ * lookups never need a lock. Since type ids are small and dense, types 
+ * are indexed by id in an array.
+ * @author jmolnar
+ *
+ */
+final class IdTypeSnapshot {
+	private static final IdType[] NO_TYPES = new IdType[ 0 ];
+	
+	private final Map<String,IdType> idTypesByName;
+	private final IdType[] idTypesById;
+	private final String entityTag;
+	private final LocalDateTime expiration;
+	private final LocalDateTime refreshTime;
+	
+	/**
+	 * Constructor taking the types and the time they may be cached until.
+	 * The types will be refreshed once the refresh ratio of the time until
+	 * expiration has passed.
+	 * @param theIdTypes the types to hold on to
+	 * @param theEntityTag the entity tag the service gave the types, which may be null
+	 * @param theExpiration when the types should no longer be considered current
+	 * @param theRefreshRatio how far, from 0 to 1, into the time until expiration a refresh should happen 
+	 */
+	IdTypeSnapshot( Collection<IdType> theIdTypes, String theEntityTag, LocalDateTime theExpiration, double theRefreshRatio ) {
+		Preconditions.checkNotNull( theIdTypes, "need types" );
+		Preconditions.checkNotNull( theExpiration, "need an expiration" );
+		Preconditions.checkArgument( theRefreshRatio >= 0 && theRefreshRatio <= 1, "the refresh ratio must be between 0 and 1" );
+		
+		Map<String,IdType> byName = new HashMap<>( theIdTypes.size( ) );
+		int maximumId = -1;
+		for( IdType type : theIdTypes ) {
+			byName.put( type.getName( ), type );
+			maximumId = Math.max( maximumId, type.getId( ) );
+		}
+		IdType[] byId = maximumId < 0 ? NO_TYPES : new IdType[ maximumId + 1 ];
+		for( IdType type : theIdTypes ) {
+			byId[ type.getId( ) ] = type;
+		}
+		
+		idTypesByName = Collections.unmodifiableMap( byName );
+		idTypesById = byId;
+		entityTag = theEntityTag;
+		expiration = theExpiration;
+		refreshTime = calculateRefreshTime( theExpiration, theRefreshRatio );
+	}
+	
+	/**
+	 * Private constructor used to create a copy with different times.
+	 */
+	private IdTypeSnapshot( IdTypeSnapshot theSnapshot, LocalDateTime theExpiration, LocalDateTime theRefreshTime ) {
+		idTypesByName = theSnapshot.idTypesByName;
+		idTypesById = theSnapshot.idTypesById;
+		entityTag = theSnapshot.entityTag;
+		expiration = theExpiration;
+		refreshTime = theRefreshTime;
+	}
+	
+	/**
+	 * Helper method that calculates when a refresh should happen.
+	 * @param theExpiration when the types should no longer be considered current
+	 * @param theRefreshRatio how far, from 0 to 1, into the time until expiration a refresh should happen
+	 * @return the time to refresh
+	 */
+	private static LocalDateTime calculateRefreshTime( LocalDateTime theExpiration, double theRefreshRatio ) {
+		LocalDateTime now = LocalDateTime.now( );
+		long lifetime = Math.max( 0, Duration.between( now, theExpiration ).toMillis( ) );
+		
+		return now.plus( Duration.ofMillis( ( long )( lifetime * theRefreshRatio ) ) );
+	}
+
+	/**
+	 * Gets type information by the type name.
+	 * @param theTypeName the type name to get information for
+	 * @return the type information, or null if not found
+	 */
+	IdType getType( String theTypeName ) {
+		return idTypesByName.get( theTypeName );
+	}
+
+	/**
+	 * Gets type information by the type id.
+	 * @param theTypeId the type id to get information for
+	 * @return the type information, or null if not found
+	 */
+	IdType getType( int theTypeId ) {
+		return theTypeId < idTypesById.length ? idTypesById[ theTypeId ] : null;
+	}
+	
+	/**
+	 * All of the types in the snapshot.
+	 * @return the types
+	 */
+	Collection<IdType> getTypes( ) {
+		return idTypesByName.values( );
+	}
+	
+	/**
+	 * The entity tag the service gave the types, used to ask the service 
+	 * to only send the types if they changed.
+	 * @return the entity tag, or null if the service didn't give one
+	 */
+	String getEntityTag( ) {
+		return entityTag;
+	}
+	
+	/**
+	 * The time the service indicated the types may be cached until.
+	 * @return the expiration time
+	 */
+	LocalDateTime getExpiration( ) {
+		return expiration;
+	}
+	
+	/**
+	 * Indicates if the snapshot should be refreshed, which happens before expiration.
+	 * @param theNow the current time
+	 * @return true if a refresh should start, false otherwise
+	 */
+	boolean needsRefresh( LocalDateTime theNow ) {
+		return !refreshTime.isAfter( theNow );
+	}
+	
+	/**
+	 * Creates a copy of this snapshot that should next be refreshed at the time given.
+	 * This is used to delay retries when a refresh fails.
+	 * @param theRefreshTime the time to next refresh 
+	 * @return the new snapshot
+	 */
+	IdTypeSnapshot deferRefresh( LocalDateTime theRefreshTime ) {
+		return new IdTypeSnapshot( this, expiration, theRefreshTime );
+	}
+
+	/**
+	 * Creates a copy of this snapshot, with the same types, that may be cached until 
+	 * the time given. This is used when the service says the types haven't changed.
+	 * @param theExpiration when the types should no longer be considered current
+	 * @param theRefreshRatio how far, from 0 to 1, into the time until expiration a refresh should happen 
+	 * @return the new snapshot
+	 */
+	IdTypeSnapshot revalidate( LocalDateTime theExpiration, double theRefreshRatio ) {
+		Preconditions.checkNotNull( theExpiration, "need an expiration" );
+		Preconditions.checkArgument( theRefreshRatio >= 0 && theRefreshRatio <= 1, "the refresh ratio must be between 0 and 1" );
+		
+		return new IdTypeSnapshot( this, theExpiration, calculateRefreshTime( theExpiration, theRefreshRatio ) );
+	}
+}
@@ -0,0 +1,49 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.client;
+
+import com.talvish.tales.communication.CommunicationException;
+
+/**
+ * Thrown when the ObjectIdManager has no ids for a type and will not ask 
+ * the service for more because recent requests have failed. Callers can 
+ * treat this as a signal to shed load instead of waiting.
+ * @author jmolnar
+ *
+ */
+public class IdsUnavailableException extends CommunicationException {
+	private static final long serialVersionUID = 1L;
+	
+	private final String typeName;
+	
+	/**
+	 * Constructor taking the type and a message.
+	 * @param theTypeName the type ids are not available for
+	 * @param theMessage the message describing the issue
+	 */
+	public IdsUnavailableException( String theTypeName, String theMessage ) {
+		super( theMessage );
+		typeName = theTypeName;
+	}
+
+	/**
+	 * The type ids are not available for.
+	 * @return the type name
+	 */
+	public String getTypeName( ) {
+		return typeName;
+	}
+}
@@ -0,0 +1,161 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.client;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+
+/**
+ * The state the ObjectIdManager keeps for each type it generates ids for.
+ * The generator is only available once the first block of values arrives,
+ * since that is when the type id is known.
+ * @author jmolnar
+ *
+ */
+final class ManagedType {
+	private final String typeName;
+	private final DemandTracker demandTracker;
+	private final TypeStatistics statistics = new TypeStatistics( );
+	private final RefillCircuitBreaker circuitBreaker;
+	
+	private volatile ObjectIdGenerator generator;
+	private CompletableFuture<ObjectIdGenerator> refill; // guarded by this
+	
+	/**
+	 * Constructor taking the type name and configuration.
+	 * @param theTypeName the name of the type being managed
+	 * @param theConfiguration the configuration to use for requesting values
+	 */
+	ManagedType( String theTypeName, ObjectIdConfiguration theConfiguration ) {
+		Preconditions.checkArgument( !Strings.isNullOrEmpty( theTypeName ), "need a type name" );
+		
+		typeName = theTypeName;
+		demandTracker = new DemandTracker( theTypeName, theConfiguration );
+		circuitBreaker = new RefillCircuitBreaker( theConfiguration.getCircuitBreakerFailureThreshold( ), theConfiguration.getCircuitBreakerOpenDuration( ) );
+	}
+	
+	/**
+	 * The name of the type being managed.
+	 * @return the type name
+	 */
+	String getTypeName( ) {
+		return typeName;
+	}
+	
+	/**
+	 * The tracker deciding how many values to request and when.
+	 * @return the demand tracker
+	 */
+	DemandTracker getDemandTracker( ) {
+		return demandTracker;
+	}
+	
+	/**
+	 * The circuit breaker deciding if refills should be attempted.
+	 * @return the circuit breaker
+	 */
+	RefillCircuitBreaker getCircuitBreaker( ) {
+		return circuitBreaker;
+	}
+	
+	/**
+	 * The statistics kept for the type.
+	 * @return the statistics
+	 */
+	TypeStatistics getStatistics( ) {
+		return statistics;
+	}
+	
+	/**
+	 * Creates an immutable copy of the statistics for the type.
+	 * @return the statistics snapshot
+	 */
+	TypeStatisticsSnapshot getStatisticsSnapshot( ) {
+		ObjectIdGenerator currentGenerator = generator;
+		return statistics.snapshot( 
+				typeName, 
+				currentGenerator == null ? 0 : currentGenerator.getGeneratedValues( ), 
+				currentGenerator == null ? 0 : currentGenerator.getAvailableValues( ) );
+	}
+
+	/**
+	 * The generator for the type, which may not exist if values 
+	 * have never been received.
+	 * @return the generator, or null if not created yet
+	 */
+	ObjectIdGenerator getGenerator( ) {
+		return generator;
+	}
+
+	/**
+	 * Adds a block of values to the generator, creating the generator if needed.
+	 * @param theBlock the block to add
+	 * @return the generator the values were added to
+	 */
+	synchronized ObjectIdGenerator addValues( IdBlock theBlock ) {
+		if( generator == null ) {
+			generator = new ObjectIdGenerator( typeName, theBlock.getTypeId( ) );
+		}
+		generator.addValues( theBlock );
+		return generator;
+	}
+	
+	/**
+	 * The number of values currently available.
+	 * @return the available values, zero if there is no generator
+	 */
+	long getAvailableValues( ) {
+		ObjectIdGenerator currentGenerator = generator;
+		return currentGenerator == null ? 0 : currentGenerator.getAvailableValues( );
+	}
+	
+	/**
+	 * Indicates if the type is at or below the threshold where more values should be requested.
+	 * @return true if a refill should happen, false otherwise
+	 */
+	boolean needsRefill( ) {
+		ObjectIdGenerator currentGenerator = generator;
+		return currentGenerator == null || currentGenerator.getAvailableValues( ) <= demandTracker.getRequestThreshold( );
+	}
+	
+	/**
+	 * The refill currently running for the type.
+	 * @return the running refill, or null if one isn't running
+	 */
+	synchronized CompletableFuture<ObjectIdGenerator> getRefill( ) {
+		return refill;
+	}
+
+	/**
+	 * Sets the refill currently running for the type.
+	 * @param theRefill the running refill
+	 */
+	synchronized void setRefill( CompletableFuture<ObjectIdGenerator> theRefill ) {
+		refill = theRefill;
+	}
+	
+	/**
+	 * Clears the refill, if it is still the current one.
+	 * @param theRefill the refill that has completed
+	 */
+	synchronized void clearRefill( CompletableFuture<ObjectIdGenerator> theRefill ) {
+		if( refill == theRefill ) {
+			refill = null;
+		}
+	}
+}
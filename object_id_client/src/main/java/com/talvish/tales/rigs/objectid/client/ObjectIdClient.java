@@ -34,6 +34,8 @@ import com.talvish.tales.validation.Conditions;
  *
  */
 public class ObjectIdClient extends ResourceClient {
+	private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+
     @SuppressWarnings("unused")
 	private static List<IdType> idTypes; // this is for reflection to pick up to get all type information
     
@@ -43,7 +45,7 @@ public class ObjectIdClient extends ResourceClient {
      * @param theUserAgent the user agent to use while talking to the service
      */
 	public ObjectIdClient( ObjectIdConfiguration theConfiguration, String theUserAgent ) {
-		super( theConfiguration, "/id", "20141001", theUserAgent ); 
+		super( theConfiguration, "/id", "20161101", theUserAgent ); // the version serving type metadata with entity tags
 
 		// we need to retrieve some type information using a bit of a hack
 		// due to Java's lack of full type information for generics
@@ -61,7 +63,8 @@ public class ObjectIdClient extends ResourceClient {
 		
 		this.methods[ 0 ] = this.defineMethod( "setup_types", Void.class, HttpVerb.POST, "types/setup" );
 
-		this.methods[ 1 ] = this.defineMethod( "get_id_types", TypeUtility.extractFieldType( this.getClass( ), "idTypes" ), HttpVerb.GET, "types" );
+		this.methods[ 1 ] = this.defineMethod( "get_id_types", TypeUtility.extractFieldType( this.getClass( ), "idTypes" ), HttpVerb.GET, "types" )
+				.defineHeaderParameter( IF_NONE_MATCH_HEADER, String.class );
 
 		this.methods[ 2 ] = this.defineMethod( "get_id_type_by_id", IdType.class, HttpVerb.GET, "types/{type_id}" )
 				.definePathParameter( "type_id", Integer.class );
@@ -91,6 +94,24 @@ public class ObjectIdClient extends ResourceClient {
 	public ResourceResult<List<IdType>> getTypes( ) throws InterruptedException {
 		return this.createRequest( this.methods[ 1 ] ).call();
 	}
+
+	/**
+	 * Returns the list of id types in the system, unless they haven't changed
+	 * since the entity tag given was returned, in which case the status is 
+	 * OPERATION_NOT_MODIFIED and no types are returned.
+	 * @param theEntityTag the entity tag from a previous result, which may be null to always get the types
+	 * @return the list of available IdTypes
+	 * @throws InterruptedException thrown if the calling thread is interrupted
+	 */
+	public ResourceResult<List<IdType>> getTypes( String theEntityTag ) throws InterruptedException {
+		if( Strings.isNullOrEmpty( theEntityTag ) ) {
+			return getTypes( );
+		} else {
+			return this.createRequest( this.methods[ 1 ] )
+					.setHeaderParameter( IF_NONE_MATCH_HEADER, theEntityTag )
+					.call();
+		}
+	}
 	
 	/**
 	 * Returns a specific id type.
@@ -15,6 +15,10 @@
 // ***************************************************************************
 package com.talvish.tales.rigs.objectid.client;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.List;
+
 import com.talvish.tales.client.http.ResourceConfigurationBase;
 import com.talvish.tales.system.configuration.annotated.Setting;
 import com.talvish.tales.system.configuration.annotated.Settings;
@@ -33,6 +37,60 @@ public class ObjectIdConfiguration extends ResourceConfigurationBase<ObjectIdCon
 
 	@Setting( name="{prefix}.request_threshold" )
 	private long thresholdAmount = 20;
+
+	@Setting( name="{prefix}.adaptive_requests" )
+	private boolean adaptiveRequests = true;
+
+	@Setting( name="{prefix}.minimum_request_amount" )
+	private long minimumRequestAmount = 10;
+
+	@Setting( name="{prefix}.maximum_request_amount" )
+	private long maximumRequestAmount = 100000;
+
+	@Setting( name="{prefix}.target_refill_interval" )
+	private long targetRefillInterval = 5000;
+
+	@Setting( name="{prefix}.endpoints" )
+	private List<String> endpoints = null;
+
+	@Setting( name="{prefix}.refill_latency_budget" )
+	private long refillLatencyBudget = 250;
+
+	@Setting( name="{prefix}.endpoint_health.failure_limit" )
+	private int endpointFailureLimit = 3;
+
+	@Setting( name="{prefix}.endpoint_health.unhealthy_duration" )
+	private long endpointUnhealthyDuration = 10000;
+
+	@Setting( name="{prefix}.block_cache.file" )
+	private String blockCacheFile = null;
+
+	@Setting( name="{prefix}.block_cache.maximum_age" )
+	private long blockCacheMaximumAge = 3600;
+
+	@Setting( name="{prefix}.circuit_breaker.failure_threshold" )
+	private int circuitBreakerFailureThreshold = 5;
+
+	@Setting( name="{prefix}.circuit_breaker.open_duration" )
+	private long circuitBreakerOpenDuration = 10000;
+
+	@Setting( name="{prefix}.retry.maximum_attempts" )
+	private int retryMaximumAttempts = 3;
+
+	@Setting( name="{prefix}.retry.initial_delay" )
+	private long retryInitialDelay = 100;
+
+	@Setting( name="{prefix}.retry.maximum_delay" )
+	private long retryMaximumDelay = 5000;
+
+	@Setting( name="{prefix}.warm_up.types" )
+	private List<String> warmUpTypes = null;
+
+	@Setting( name="{prefix}.warm_up.all_types" )
+	private boolean warmUpAllTypes = false;
+
+	@Setting( name="{prefix}.warm_up.timeout" )
+	private long warmUpTimeout = 30000;
 	
 	/**
 	 * Default constructor for serialization.
@@ -40,6 +98,34 @@ public class ObjectIdConfiguration extends ResourceConfigurationBase<ObjectIdCon
 	public ObjectIdConfiguration( ) {
 	}
 	
+	/**
+	 * Creates a copy of this configuration, including the settings from the base 
+	 * configuration such as timeouts, that talks to a different endpoint. This is
+	 * used to talk to each of several endpoints with the same settings.
+	 * @param theEndpoint the endpoint the copy uses
+	 * @return the copy of the configuration
+	 */
+	public ObjectIdConfiguration copyForEndpoint( String theEndpoint ) {
+		ObjectIdConfiguration copy = new ObjectIdConfiguration( );
+		
+		// the fields are copied reflectively so settings of the base 
+		// class, which is not ours, are copied along with our own
+		for( Class<?> type = ObjectIdConfiguration.class; type != Object.class; type = type.getSuperclass( ) ) {
+			for( Field field : type.getDeclaredFields( ) ) {
+				if( !Modifier.isStatic( field.getModifiers( ) ) ) {
+					try {
+						field.setAccessible( true );
+						field.set( copy, field.get( this ) );
+					} catch( IllegalAccessException e ) {
+						throw new IllegalStateException( String.format( "Unable to copy configuration field '%s'.", field.getName( ) ), e );
+					}
+				}
+			}
+		}
+		copy.setEndpoint( theEndpoint );
+		return copy;
+	}
+	
 	/**
 	 * The number of values that will be requested when new values are needed.
 	 * @return the number of values that will be requested from the service
@@ -77,6 +163,365 @@ public class ObjectIdConfiguration extends ResourceConfigurationBase<ObjectIdCon
 		return this;
 	}
 
+	/**
+	 * Indicates if the request amount and threshold are adjusted, per type, based on how quickly
+	 * ids are used and how long it takes to get more. If not adaptive the request amount and 
+	 * threshold are used as-is for all types, otherwise they are the starting values.
+	 * @return true if request amounts and thresholds adapt to usage, false otherwise
+	 */
+	public boolean isAdaptiveRequests( ) {
+		return adaptiveRequests;
+	}
+	
+	/**
+	 * Sets whether the request amount and threshold adapt to usage.
+	 * @param isAdaptive true if they should adapt, false otherwise
+	 * @return the configuration object so setters can be chained
+	 */
+	public ObjectIdConfiguration setAdaptiveRequests( boolean isAdaptive ) {
+		adaptiveRequests = isAdaptive;
+		return this;
+	}
+	
+	/**
+	 * The smallest number of values that will be requested when adapting to usage.
+	 * @return the minimum number of values requested at one time
+	 */
+	public long getMinimumRequestAmount( ) {
+		return minimumRequestAmount;
+	}
+	
+	/**
+	 * Sets the smallest number of values that will be requested when adapting to usage.
+	 * @param theAmount the minimum number of values to request at a time
+	 * @return the configuration object so setters can be chained
+	 */
+	public ObjectIdConfiguration setMinimumRequestAmount( long theAmount ) {
+		Conditions.checkConfiguration( theAmount > 0, "the minimum request amount has to be greater than zero" );
+		minimumRequestAmount = theAmount;
+		return this;
+	}
+
+	/**
+	 * The largest number of values that will be requested when adapting to usage.
+	 * @return the maximum number of values requested at one time
+	 */
+	public long getMaximumRequestAmount( ) {
+		return maximumRequestAmount;
+	}
+	
+	/**
+	 * Sets the largest number of values that will be requested when adapting to usage.
+	 * @param theAmount the maximum number of values to request at a time
+	 * @return the configuration object so setters can be chained
+	 */
+	public ObjectIdConfiguration setMaximumRequestAmount( long theAmount ) {
+		Conditions.checkConfiguration( theAmount > 0, "the maximum request amount has to be greater than zero" );
+		maximumRequestAmount = theAmount;
+		return this;
+	}
+
+	/**
+	 * The amount of time, in milliseconds, a single request should supply ids for 
+	 * when adapting to usage. Longer intervals mean fewer, larger requests.
+	 * @return the target time between refills, in milliseconds
+	 */
+	public long getTargetRefillInterval( ) {
+		return targetRefillInterval;
+	}
+	
+	/**
+	 * Sets the amount of time, in milliseconds, a single request should supply ids for.
+	 * @param theInterval the target time between refills, in milliseconds
+	 * @return the configuration object so setters can be chained
+	 */
+	public ObjectIdConfiguration setTargetRefillInterval( long theInterval ) {
+		Conditions.checkConfiguration( theInterval > 0, "the target refill interval has to be greater than zero" );
+		targetRefillInterval = theInterval;
+		return this;
+	}
+
+	/**
+	 * The set of object id service endpoints to spread requests over. Each endpoint must
+	 * use a different source id. If not set, the single endpoint is used.
+	 * @return the endpoints, or null if the single endpoint is used
+	 */
+	public List<String> getEndpoints( ) {
+		return endpoints;
+	}
+	
+	/**
+	 * Sets the object id service endpoints to spread requests over.
+	 * @param theEndpoints the endpoints to use, or null to use the single endpoint
+	 * @return the configuration object so setters can be chained
+	 */
+	public ObjectIdConfiguration setEndpoints( List<String> theEndpoints ) {
+		endpoints = theEndpoints;
+		return this;
+	}
+	
+	/**
+	 * The amount of time, in milliseconds, a request for ids may take, when multiple 
+	 * endpoints are used, before a second request is sent to another endpoint. 
+	 * @return the refill latency budget, in milliseconds
+	 */
+	public long getRefillLatencyBudget( ) {
+		return refillLatencyBudget;
+	}
+	
+	/**
+	 * Sets the amount of time, in milliseconds, a request for ids may take before it is hedged.
+	 * @param theBudget the refill latency budget, in milliseconds
+	 * @return the configuration object so setters can be chained
+	 */
+	public ObjectIdConfiguration setRefillLatencyBudget( long theBudget ) {
+		Conditions.checkConfiguration( theBudget > 0, "the refill latency budget has to be greater than zero" );
+		refillLatencyBudget = theBudget;
+		return this;
+	}
+
+	/**
+	 * The number of requests, in a row, to an endpoint that must fail before the
+	 * endpoint is considered unhealthy, when multiple endpoints are used.
+	 * @return the endpoint failure limit
+	 */
+	public int getEndpointFailureLimit( ) {
+		return endpointFailureLimit;
+	}
+	
+	/**
+	 * Sets the number of requests, in a row, to an endpoint that must fail before 
+	 * the endpoint is considered unhealthy.
+	 * @param theLimit the endpoint failure limit
+	 * @return the configuration object so setters can be chained
+	 */
+	public ObjectIdConfiguration setEndpointFailureLimit( int theLimit ) {
+		Conditions.checkConfiguration( theLimit > 0, "the endpoint failure limit has to be greater than zero" );
+		endpointFailureLimit = theLimit;
+		return this;
+	}
+
+	/**
+	 * The amount of time, in milliseconds, an unhealthy endpoint is avoided 
+	 * before it is tried again, when multiple endpoints are used.
+	 * @return the endpoint unhealthy duration, in milliseconds
+	 */
+	public long getEndpointUnhealthyDuration( ) {
+		return endpointUnhealthyDuration;
+	}
+	
+	/**
+	 * Sets the amount of time, in milliseconds, an unhealthy endpoint is avoided.
+	 * @param theDuration the endpoint unhealthy duration, in milliseconds
+	 * @return the configuration object so setters can be chained
+	 */
+	public ObjectIdConfiguration setEndpointUnhealthyDuration( long theDuration ) {
+		Conditions.checkConfiguration( theDuration > 0, "the endpoint unhealthy duration has to be greater than zero" );
+		endpointUnhealthyDuration = theDuration;
+		return this;
+	}
+
+	/**
+	 * The file used to save unused ids on shutdown and load them on start-up.
+	 * If not set, unused ids are not saved.
+	 * @return the block cache file, or null if not used
+	 */
+	public String getBlockCacheFile( ) {
+		return blockCacheFile;
+	}
+	
+	/**
+	 * Sets the file used to save unused ids on shutdown and load them on start-up.
+	 * The file must not be shared by processes running at the same time.
+	 * @param theFile the block cache file, or null to not save unused ids
+	 * @return the configuration object so setters can be chained
+	 */
+	public ObjectIdConfiguration setBlockCacheFile( String theFile ) {
+		blockCacheFile = theFile;
+		return this;
+	}
+	
+	/**
+	 * The maximum age, in seconds, of a block cache file that will be loaded.
+	 * @return the maximum age of a loadable block cache file, in seconds
+	 */
+	public long getBlockCacheMaximumAge( ) {
+		return blockCacheMaximumAge;
+	}
+	
+	/**
+	 * Sets the maximum age, in seconds, of a block cache file that will be loaded.
+	 * @param theAge the maximum age of a loadable block cache file, in seconds
+	 * @return the configuration object so setters can be chained
+	 */
+	public ObjectIdConfiguration setBlockCacheMaximumAge( long theAge ) {
+		Conditions.checkConfiguration( theAge > 0, "the block cache maximum age has to be greater than zero" );
+		blockCacheMaximumAge = theAge;
+		return this;
+	}
+
+	/**
+	 * The number of requests for ids, in a row, that must fail before the 
+	 * manager stops asking the service for ids for the type.
+	 * @return the circuit breaker failure threshold
+	 */
+	public int getCircuitBreakerFailureThreshold( ) {
+		return circuitBreakerFailureThreshold;
+	}
+	
+	/**
+	 * Sets the number of requests for ids, in a row, that must fail before the 
+	 * manager stops asking the service for ids for the type.
+	 * @param theThreshold the circuit breaker failure threshold
+	 * @return the configuration object so setters can be chained
+	 */
+	public ObjectIdConfiguration setCircuitBreakerFailureThreshold( int theThreshold ) {
+		Conditions.checkConfiguration( theThreshold > 0, "the circuit breaker failure threshold has to be greater than zero" );
+		circuitBreakerFailureThreshold = theThreshold;
+		return this;
+	}
+
+	/**
+	 * The amount of time, in milliseconds, the manager stops asking the service
+	 * for ids for a type after the circuit breaker failure threshold is reached.
+	 * @return the circuit breaker open duration, in milliseconds
+	 */
+	public long getCircuitBreakerOpenDuration( ) {
+		return circuitBreakerOpenDuration;
+	}
+	
+	/**
+	 * Sets the amount of time, in milliseconds, the manager stops asking the service
+	 * for ids for a type after the circuit breaker failure threshold is reached.
+	 * @param theDuration the circuit breaker open duration, in milliseconds
+	 * @return the configuration object so setters can be chained
+	 */
+	public ObjectIdConfiguration setCircuitBreakerOpenDuration( long theDuration ) {
+		Conditions.checkConfiguration( theDuration > 0, "the circuit breaker open duration has to be greater than zero" );
+		circuitBreakerOpenDuration = theDuration;
+		return this;
+	}
+
+	/**
+	 * The number of times a request for ids is retried when the service says 
+	 * it is overloaded and asks the manager to try again later.
+	 * @return the maximum number of retries, zero if requests aren't retried
+	 */
+	public int getRetryMaximumAttempts( ) {
+		return retryMaximumAttempts;
+	}
+	
+	/**
+	 * Sets the number of times a request for ids is retried when the service 
+	 * says it is overloaded.
+	 * @param theAttempts the maximum number of retries, zero to not retry
+	 * @return the configuration object so setters can be chained
+	 */
+	public ObjectIdConfiguration setRetryMaximumAttempts( int theAttempts ) {
+		Conditions.checkConfiguration( theAttempts >= 0, "the retry maximum attempts cannot be negative" );
+		retryMaximumAttempts = theAttempts;
+		return this;
+	}
+
+	/**
+	 * The amount of time, in milliseconds, to wait before the first retry when 
+	 * the service says it is overloaded but doesn't say how long to wait. The
+	 * wait doubles with each retry.
+	 * @return the initial retry delay, in milliseconds
+	 */
+	public long getRetryInitialDelay( ) {
+		return retryInitialDelay;
+	}
+	
+	/**
+	 * Sets the amount of time, in milliseconds, to wait before the first retry when 
+	 * the service says it is overloaded but doesn't say how long to wait.
+	 * @param theDelay the initial retry delay, in milliseconds
+	 * @return the configuration object so setters can be chained
+	 */
+	public ObjectIdConfiguration setRetryInitialDelay( long theDelay ) {
+		Conditions.checkConfiguration( theDelay > 0, "the retry initial delay has to be greater than zero" );
+		retryInitialDelay = theDelay;
+		return this;
+	}
+
+	/**
+	 * The longest amount of time, in milliseconds, the manager will wait before 
+	 * retrying. If the service asks for a longer wait the request isn't retried.
+	 * @return the maximum retry delay, in milliseconds
+	 */
+	public long getRetryMaximumDelay( ) {
+		return retryMaximumDelay;
+	}
+	
+	/**
+	 * Sets the longest amount of time, in milliseconds, the manager will wait before retrying.
+	 * @param theDelay the maximum retry delay, in milliseconds
+	 * @return the configuration object so setters can be chained
+	 */
+	public ObjectIdConfiguration setRetryMaximumDelay( long theDelay ) {
+		Conditions.checkConfiguration( theDelay > 0, "the retry maximum delay has to be greater than zero" );
+		retryMaximumDelay = theDelay;
+		return this;
+	}
+
+	/**
+	 * The types to get ids for when the manager starts, so the first
+	 * request for each type doesn't wait on the service.
+	 * @return the types to warm up, or null if no specific types are warmed up
+	 */
+	public List<String> getWarmUpTypes( ) {
+		return warmUpTypes;
+	}
+	
+	/**
+	 * Sets the types to get ids for when the manager starts.
+	 * @param theTypes the types to warm up, or null to not warm up specific types
+	 * @return the configuration object so setters can be chained
+	 */
+	public ObjectIdConfiguration setWarmUpTypes( List<String> theTypes ) {
+		warmUpTypes = theTypes;
+		return this;
+	}
+
+	/**
+	 * Indicates if ids for every type the service reports are retrieved when the
+	 * manager starts. If true, the warm up types are ignored.
+	 * @return true if all types are warmed up, false otherwise
+	 */
+	public boolean isWarmUpAllTypes( ) {
+		return warmUpAllTypes;
+	}
+	
+	/**
+	 * Sets whether ids for every type the service reports are retrieved when the manager starts.
+	 * @param isAllTypes true if all types are warmed up, false otherwise
+	 * @return the configuration object so setters can be chained
+	 */
+	public ObjectIdConfiguration setWarmUpAllTypes( boolean isAllTypes ) {
+		warmUpAllTypes = isAllTypes;
+		return this;
+	}
+
+	/**
+	 * The amount of time, in milliseconds, the warm up may take before 
+	 * the manager gives up on being ready.
+	 * @return the warm up timeout, in milliseconds
+	 */
+	public long getWarmUpTimeout( ) {
+		return warmUpTimeout;
+	}
+	
+	/**
+	 * Sets the amount of time, in milliseconds, the warm up may take.
+	 * @param theTimeout the warm up timeout, in milliseconds
+	 * @return the configuration object so setters can be chained
+	 */
+	public ObjectIdConfiguration setWarmUpTimeout( long theTimeout ) {
+		Conditions.checkConfiguration( theTimeout > 0, "the warm up timeout has to be greater than zero" );
+		warmUpTimeout = theTimeout;
+		return this;
+	}
 
 	@Override
 	public void validate( ) {
@@ -84,5 +529,18 @@ public class ObjectIdConfiguration extends ResourceConfigurationBase<ObjectIdCon
 		Conditions.checkConfiguration( requestAmount > 0, "the request amount has to be greater than zero" );
 		Conditions.checkConfiguration( thresholdAmount > 0, "the threshold amount has to be greater than zero" );
 		Conditions.checkConfiguration( requestAmount > thresholdAmount, "the request amount '%s' has to be greater than the threshold amount '%s'", requestAmount, thresholdAmount );
+		Conditions.checkConfiguration( minimumRequestAmount > 0, "the minimum request amount has to be greater than zero" );
+		Conditions.checkConfiguration( maximumRequestAmount >= minimumRequestAmount, "the maximum request amount '%s' has to be at least the minimum request amount '%s'", maximumRequestAmount, minimumRequestAmount );
+		Conditions.checkConfiguration( targetRefillInterval > 0, "the target refill interval has to be greater than zero" );
+		Conditions.checkConfiguration( refillLatencyBudget > 0, "the refill latency budget has to be greater than zero" );
+		Conditions.checkConfiguration( endpointFailureLimit > 0, "the endpoint failure limit has to be greater than zero" );
+		Conditions.checkConfiguration( endpointUnhealthyDuration > 0, "the endpoint unhealthy duration has to be greater than zero" );
+		Conditions.checkConfiguration( blockCacheMaximumAge > 0, "the block cache maximum age has to be greater than zero" );
+		Conditions.checkConfiguration( circuitBreakerFailureThreshold > 0, "the circuit breaker failure threshold has to be greater than zero" );
+		Conditions.checkConfiguration( circuitBreakerOpenDuration > 0, "the circuit breaker open duration has to be greater than zero" );
+		Conditions.checkConfiguration( retryMaximumAttempts >= 0, "the retry maximum attempts cannot be negative" );
+		Conditions.checkConfiguration( retryInitialDelay > 0, "the retry initial delay has to be greater than zero" );
+		Conditions.checkConfiguration( retryMaximumDelay >= retryInitialDelay, "the retry maximum delay '%s' has to be at least the retry initial delay '%s'", retryMaximumDelay, retryInitialDelay );
+		Conditions.checkConfiguration( warmUpTimeout > 0, "the warm up timeout has to be greater than zero" );
 	}
 }
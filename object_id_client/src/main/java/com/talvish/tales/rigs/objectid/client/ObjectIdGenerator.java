@@ -15,6 +15,7 @@
 // ***************************************************************************
 package com.talvish.tales.rigs.objectid.client;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -37,7 +38,8 @@ public class ObjectIdGenerator {
 	
 	private final List<IdBlock> blocks = new LinkedList<>( ); // use a list since it is cheaper to add/remove values, and we always get the head
 	private long nextValue = 0;
-	private long availableValues = 0; // this is always associated to the first block
+	private volatile long availableValues = 0; // this is always associated to the first block
+	private volatile long generatedValues = 0; // the total handed out, used to measure demand
 	
 	/**
 	 * Constructor taking the name and numeric id for the type this generator is for.
@@ -73,29 +75,109 @@ public class ObjectIdGenerator {
 	 * @return a generated ObjectId
 	 */
 	public ObjectId generateObjectId( ) {
+		ObjectId objectId = tryGenerateObjectId( );
+		if( objectId == null ) {
+			throw new IllegalStateException( String.format( "Ran out of IdBlocks while attempting to get a value for type '%s'.", typeName ) );
+		}
+		return objectId;
+	}
+
+	/**
+	 * Generates ObjectIds for this type based on IdBlocks that have been added to the generator,
+	 * but unlike {@link #generateObjectId()} does not throw an exception if there are no values.
+	 * @return a generated ObjectId, or null if there are no values available
+	 */
+	public ObjectId tryGenerateObjectId( ) {
 		synchronized( this ) {
-			long currentValue = nextValue;
-			
-			IdBlock currentBlock;
-			
-			currentBlock = blocks.get( 0 );
-			if( currentBlock.getEndValue() == nextValue ) {
-				blocks.remove( 0 );
-				currentBlock = blocks.get( 0 );
+			if( blocks.isEmpty( ) ) {
+				return null;
+			} else {
+				long sourceId = currentSourceId( );
+				long value = takeValue( );
 				
-				if( currentBlock == null ) {
-					throw new IllegalStateException( String.format( "Ran out of IdBlocks while attempting to get a value for type '%s'.", typeName ) );
-				} else {
-					nextValue = currentBlock.getStartValue();
-				}
+				return new ObjectId( value, typeId, sourceId );
+			}
+		}
+	}
+
+	/**
+	 * Generates an ObjectId for this type but returns it in the packed form 
+	 * described by {@link PackedObjectId}. Unlike {@link #generateObjectId()}
+	 * this does not allocate, so is suitable for hot paths that immediately
+	 * store the id as a long. Only types whose blocks fit the ranges of
+	 * the packed form can be generated this way.
+	 * @return a generated ObjectId in packed form
+	 * @throws IllegalStateException if the block the next value comes from cannot be packed
+	 */
+	public long generatePackedObjectId( ) {
+		long packedId = tryGeneratePackedObjectId( );
+		if( packedId == 0 ) {
+			throw new IllegalStateException( String.format( "Ran out of IdBlocks while attempting to get a value for type '%s'.", typeName ) );
+		}
+		return packedId;
+	}
+	
+	/**
+	 * Generates an ObjectId for this type in packed form, but unlike {@link #generatePackedObjectId()} 
+	 * does not throw an exception if there are no values. Zero is never a valid packed id.
+	 * @return a generated ObjectId in packed form, or zero if there are no values available
+	 * @throws IllegalStateException if the block the next value comes from cannot be packed, the value is left unused
+	 */
+	public long tryGeneratePackedObjectId( ) {
+		synchronized( this ) {
+			if( blocks.isEmpty( ) ) {
+				return 0;
 			} else {
-				nextValue += 1;
+				// the whole block is checked before any value is taken so a block 
+				// that runs past the packed ranges is rejected up front rather 
+				// than failing part way through
+				IdBlock currentBlock = blocks.get( 0 );
+				if( !PackedObjectId.canPack( currentBlock ) ) {
+					throw new IllegalStateException( String.format( "Block %s-%s from source %s for type '%s' cannot be packed, packed ids support values up to %s, type ids up to %s and source ids up to %s.", currentBlock.getStartValue( ), currentBlock.getEndValue( ), currentBlock.getSourceId( ), typeName, PackedObjectId.MAXIMUM_VALUE, PackedObjectId.MAXIMUM_TYPE_ID, PackedObjectId.MAXIMUM_SOURCE_ID ) );
+				}
+				long packedId = PackedObjectId.pack( nextValue, typeId, currentBlock.getSourceId( ) );
+				takeValue( );
+				
+				return packedId;
 			}
-			availableValues -= 1;
-			
-			return new ObjectId( currentValue, typeId, currentBlock.getSourceId( ) );
 		}
 	}
+	
+	/**
+	 * Helper method that returns the source id of the block the next value 
+	 * will come from. This must be called while holding the lock.
+	 * @return the source id for the next value
+	 */
+	private long currentSourceId( ) {
+		if( blocks.isEmpty( ) ) {
+			throw new IllegalStateException( String.format( "Ran out of IdBlocks while attempting to get a value for type '%s'.", typeName ) );
+		}
+		return blocks.get( 0 ).getSourceId( );
+	}
+	
+	/**
+	 * Helper method that takes the next value and moves on to the next block
+	 * if the current block is exhausted. This must be called while holding 
+	 * the lock and after verifying there are blocks available.
+	 * @return the value taken
+	 */
+	private long takeValue( ) {
+		IdBlock currentBlock = blocks.get( 0 );
+		long currentValue = nextValue;
+		
+		if( currentBlock.getEndValue() == currentValue ) {
+			blocks.remove( 0 );
+			if( !blocks.isEmpty( ) ) {
+				nextValue = blocks.get( 0 ).getStartValue();
+			}
+		} else {
+			nextValue += 1;
+		}
+		availableValues -= 1;
+		generatedValues += 1;
+		
+		return currentValue;
+	}
 
 	/**
 	 * Adds a block of values to be used in the generation of ObjectIds.
@@ -122,6 +204,31 @@ public class ObjectIdGenerator {
 		}		
 	}
 	
+	/**
+	 * Removes all remaining values from the generator, returning them as blocks.
+	 * The first block returned will start at the next value that would have been
+	 * generated. After this call the generator has no values available.
+	 * @return the blocks of values that had not been used
+	 */
+	public List<IdBlock> drainValues( ) {
+		synchronized( this ) {
+			List<IdBlock> remainingBlocks = new ArrayList<>( blocks.size( ) );
+			
+			for( IdBlock block : blocks ) {
+				if( remainingBlocks.isEmpty( ) ) {
+					// the first block may be partially used
+					remainingBlocks.add( new IdBlock( block.getSourceId( ), typeName, typeId, nextValue, block.getEndValue( ) ) );
+				} else {
+					remainingBlocks.add( block );
+				}
+			}
+			blocks.clear( );
+			availableValues = 0;
+			
+			return remainingBlocks;
+		}
+	}
+
 	/**
 	 * This is used to determine if we should be adding more blocks.
 	 * @return returns the number of values available
@@ -129,4 +236,13 @@ public class ObjectIdGenerator {
 	public long getAvailableValues( ) {
 		return availableValues;
 	}
+
+	/**
+	 * The total number of values this generator has handed out.
+	 * This is used to determine how quickly values are being used.
+	 * @return the number of values generated
+	 */
+	public long getGeneratedValues( ) {
+		return generatedValues;
+	}
 }
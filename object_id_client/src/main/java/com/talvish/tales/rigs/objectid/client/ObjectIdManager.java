@@ -16,42 +16,77 @@
 package com.talvish.tales.rigs.objectid.client;
 
 import java.time.LocalDateTime;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import com.talvish.tales.businessobjects.ObjectId;
-import com.talvish.tales.client.http.ResourceResult;
 import com.talvish.tales.communication.CommunicationException;
+import com.talvish.tales.communication.Status;
 
 /**
  * This class is used to generate actual ObjectIds.
  * It handles all communication, block caching, etc.
+ * <p>
+ * Values are requested in the background once a type falls to its
+ * request threshold, so callers only wait on the service when a type
+ * has no values left. Each blocking method has an asynchronous variant
+ * that completes immediately when values are available locally and 
+ * otherwise completes once the in-flight request for more values does.
+ * Cancelling, or timing out, a future returned by an asynchronous method 
+ * only affects that caller, it never cancels the shared request, so the
+ * values requested are still available to other callers.
  * @author jmolnar
  *
  */
 public class ObjectIdManager {
 	private static final Logger logger = LoggerFactory.getLogger( ObjectIdManager.class );
 
-	private final Map<String,ObjectIdGenerator> generators = new HashMap<String,ObjectIdGenerator>( ); 
-	private final long requestAmount;
-	private final long requestThreshold;
-	private final ObjectIdClient client;
+	private static final double TYPE_REFRESH_RATIO = 0.8d; // how far into the cache lifetime types are refreshed 
+	private static final long TYPE_REFRESH_RETRY_SECONDS = 30l; // how long to wait after a failed refresh
+	private static final long CLOSE_WAIT_SECONDS = 10l; // how long close waits for running refills
+
+	private final ConcurrentMap<String,ManagedType> managedTypes = new ConcurrentHashMap<>( ); 
+	private final ObjectIdConfiguration configuration;
+	private final IdBlockSource blockSource;
+	private final BlockCacheFile blockCache;
+	private volatile boolean closed = false;
+	private final ObjectIdManagerStatus status;
+	private final CompletableFuture<Void> warmUp;
 	
-	private final Map<String,IdType> idTypesByName = new HashMap<String,IdType>( );
-	private final Map<Integer,IdType> idTypesById = new HashMap<Integer, IdType>( );
+	private final AtomicReference<IdTypeSnapshot> idTypes = new AtomicReference<>( );
+	private final AtomicBoolean idTypesRefreshing = new AtomicBoolean( false );
 	private final Object idTypeLock = new Object();
-	private volatile LocalDateTime cacheExpiration = LocalDateTime.now(); 
 	
-	// TODO: add async handling, which will be part of internalPrepare and may impact generateObjectId
-	//       (e.g. force requests, or what if some are outstanding, etc)
-	//private final ExecutorService executorService = Executors.newSingleThreadExecutor(); 
+	// the executor is used for all communication with the service, while the scheduler is only used for timeouts
+	private final ExecutorService executorService = Executors.newCachedThreadPool( 
+			new ThreadFactoryBuilder( ).setDaemon( true ).setNameFormat( "object-id-manager-%d" ).build( ) ); 
+	private final ScheduledThreadPoolExecutor timeoutService = createTimeoutService( ); 
 	
 	/**
 	 * Constructor taking the required elements to work
@@ -59,15 +94,210 @@ public class ObjectIdManager {
 	 * @param theUserAgent the user agent to use when communicating with other services
 	 */
 	public ObjectIdManager( ObjectIdConfiguration theConfiguration, String theUserAgent ) {
+		this( theConfiguration, createBlockSource( theConfiguration, theUserAgent ) );
+	}
+	
+	/**
+	 * Constructor taking the source to get blocks of values from. This allows
+	 * values to come from something other than the object id service, such
+	 * as an engine running in the same process.
+	 * @param theConfiguration the configuration to use to manage local caching
+	 * @param theBlockSource the source of blocks of values
+	 */
+	public ObjectIdManager( ObjectIdConfiguration theConfiguration, IdBlockSource theBlockSource ) {
 		Preconditions.checkNotNull( theConfiguration, "need the configuration" );
-		Preconditions.checkArgument( !Strings.isNullOrEmpty( theUserAgent ), "the user agent must be specified" );
+		Preconditions.checkNotNull( theBlockSource, "need a block source" );
+		
+		configuration = theConfiguration;
+		blockSource = theBlockSource;
+		
+		if( !Strings.isNullOrEmpty( theConfiguration.getBlockCacheFile( ) ) ) {
+			blockCache = new BlockCacheFile( theConfiguration.getBlockCacheFile( ), theConfiguration.getBlockCacheMaximumAge( ) );
+			loadBlockCache( );
+		} else {
+			blockCache = null;
+		}
+
+		status = new ObjectIdManagerStatus( this );
+
+		// start getting type information so it is likely there when first needed
+		refreshTypes( );
+		// and get ids for any types that should be ready before the first request
+		warmUp = startWarmUp( );
+	}
+	
+	/**
+	 * Indicates if the manager has finished warming up, which means type information 
+	 * and ids for the configured warm up types are available locally. If no warm up 
+	 * is configured the manager is always ready.
+	 * @return true if the manager is ready, false if still warming up or the warm up failed
+	 */
+	public boolean isReady( ) {
+		return warmUp.isDone( ) && !warmUp.isCompletedExceptionally( );
+	}
+	
+	/**
+	 * Waits for the manager to finish warming up. Warm up failures are logged rather
+	 * than thrown, since ids may still be retrieved on demand later.
+	 * @param theTimeout the maximum amount of time to wait
+	 * @param theUnit the unit of the timeout
+	 * @return true if the manager is ready, false if not ready in time or the warm up failed 
+	 * @throws InterruptedException thrown if thread was interrupted
+	 */
+	public boolean awaitReady( long theTimeout, TimeUnit theUnit ) throws InterruptedException {
+		Preconditions.checkArgument( theTimeout >= 0, "the timeout cannot be negative" );
+		Preconditions.checkNotNull( theUnit, "need a time unit" );
+
+		try {
+			warmUp.get( theTimeout, theUnit );
+		} catch( ExecutionException | CancellationException | TimeoutException e ) {
+			// the reason for failures is logged when the warm up completes
+		}
+		return isReady( );
+	}
+	
+	/**
+	 * Helper method that starts getting type information and ids for the configured 
+	 * warm up types, or all types, concurrently. 
+	 * @return a future that completes when the warm up is done
+	 */
+	private CompletableFuture<Void> startWarmUp( ) {
+		List<String> warmUpTypes = configuration.getWarmUpTypes( );
+		CompletableFuture<Void> preparation;
+		
+		if( configuration.isWarmUpAllTypes( ) ) {
+			preparation = getTypesAsync( ).thenCompose( snapshot -> {
+				List<String> typeNames = new ArrayList<>( snapshot.getTypes( ).size( ) );
+				for( IdType type : snapshot.getTypes( ) ) {
+					typeNames.add( type.getName( ) );
+				}
+				return prepareAsync( typeNames.toArray( new String[ typeNames.size( ) ] ) );
+			} );
+		} else if( warmUpTypes != null && warmUpTypes.size( ) > 0 ) {
+			preparation = CompletableFuture.allOf( 
+					getTypesAsync( ), 
+					prepareAsync( warmUpTypes.toArray( new String[ warmUpTypes.size( ) ] ) ) );
+		} else {
+			return CompletableFuture.completedFuture( null );
+		}
 		
-		requestAmount = theConfiguration.getRequestAmount();
-		requestThreshold = theConfiguration.getRequestThreshold();
+		long warmUpStart = System.nanoTime( );
+		CompletableFuture<Void> timedPreparation = withTimeout( preparation, configuration.getWarmUpTimeout( ), TimeUnit.MILLISECONDS );
+		timedPreparation.whenComplete( ( value, exception ) -> {
+			long warmUpTime = TimeUnit.NANOSECONDS.toMillis( System.nanoTime( ) - warmUpStart );
+			if( exception == null ) {
+				logger.info( "Warmed up {} types in {} ms.", managedTypes.size( ), warmUpTime );
+			} else {
+				logger.warn( "Unable to warm up within {} ms, ids will be retrieved as needed.", warmUpTime, exception );
+			}
+		} );
+		return timedPreparation;
+	}
+	
+	/**
+	 * Helper method that creates the block source for talking to the service, 
+	 * which fails over between endpoints if more than one is configured.
+	 * @param theConfiguration the configuration to use to connect to the service
+	 * @param theUserAgent the user agent to use when communicating with other services
+	 * @return the block source
+	 */
+	private static IdBlockSource createBlockSource( ObjectIdConfiguration theConfiguration, String theUserAgent ) {
+		Preconditions.checkNotNull( theConfiguration, "need the configuration" );
+		Preconditions.checkArgument( !Strings.isNullOrEmpty( theUserAgent ), "the user agent must be specified" );
+
+		if( theConfiguration.getEndpoints( ) != null && theConfiguration.getEndpoints( ).size( ) > 0 ) {
+			return new FailoverIdBlockSource( theConfiguration, theUserAgent );
+		} else {
+			return new HttpIdBlockSource( theConfiguration, theUserAgent );
+		}
+	}
+	
+	/**
+	 * Helper method that creates the scheduler used for timeouts. Most timeouts are
+	 * cancelled because the work finished first, so cancelled timeouts are removed 
+	 * right away instead of staying queued until they would have fired.
+	 * @return the scheduler for timeouts
+	 */
+	private static ScheduledThreadPoolExecutor createTimeoutService( ) {
+		ScheduledThreadPoolExecutor service = new ScheduledThreadPoolExecutor( 1, 
+				new ThreadFactoryBuilder( ).setDaemon( true ).setNameFormat( "object-id-manager-timeout-%d" ).build( ) );
+		service.setRemoveOnCancelPolicy( true );
+		return service;
+	}
+	
+	/**
+	 * Returns the status of the manager, which can be registered with a status manager
+	 * so the statistics for all types are available alongside a service's other status.
+	 * @return the status of the manager
+	 */
+	public ObjectIdManagerStatus getStatus( ) {
+		return status;
+	}
+	
+	/**
+	 * Returns a snapshot of the statistics for each type the manager has generated, or 
+	 * been asked to prepare, ids for. This is useful for tuning the request amount and 
+	 * threshold since it shows how often callers wait and how long refills take.
+	 * @return the statistics for each type, sorted by type name
+	 */
+	public Map<String,TypeStatisticsSnapshot> getStatistics( ) {
+		Map<String,TypeStatisticsSnapshot> statistics = new TreeMap<>( );
 		
-		client = new ObjectIdClient( theConfiguration, theUserAgent );
+		for( ManagedType managedType : managedTypes.values( ) ) {
+			statistics.put( managedType.getTypeName( ), managedType.getStatisticsSnapshot( ) );
+		}
+		return Collections.unmodifiableMap( statistics );
+	}
+	
+	/**
+	 * Shuts down the manager. If a block cache file is configured, the values that 
+	 * have not been used are saved so they can be used the next time the process 
+	 * starts. Refills that are running are given a short time to complete so the 
+	 * values they return are saved too. ObjectIds cannot be generated once the 
+	 * manager is closed.
+	 */
+	public void close( ) {
+		synchronized( managedTypes ) {
+			if( !closed ) {
+				closed = true;
+				executorService.shutdown( );
+				timeoutService.shutdown( );
+				if( blockCache != null ) {
+					// wait for running refills, otherwise the blocks they 
+					// add after the generators are drained would be lost
+					try {
+						if( !executorService.awaitTermination( CLOSE_WAIT_SECONDS, TimeUnit.SECONDS ) ) {
+							logger.warn( "Refills were still running after waiting {} seconds to close, so the values they get will not be saved to block cache file '{}'.", CLOSE_WAIT_SECONDS, blockCache.getFile( ) );
+						}
+					} catch( InterruptedException e ) {
+						Thread.currentThread( ).interrupt( );
+						logger.warn( "Interrupted while waiting for refills to complete, so the values they get will not be saved to block cache file '{}'.", blockCache.getFile( ) );
+					}
+					List<IdBlock> unusedBlocks = new ArrayList<>( );
+					for( ManagedType managedType : managedTypes.values( ) ) {
+						ObjectIdGenerator generator = managedType.getGenerator( );
+						if( generator != null ) {
+							unusedBlocks.addAll( generator.drainValues( ) );
+						}
+					}
+					blockCache.save( unusedBlocks );
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Helper method that loads any blocks saved by a previous clean shutdown.
+	 */
+	private void loadBlockCache( ) {
+		List<IdBlock> savedBlocks = blockCache.load( );
 		
-		// TODO: consider starting a thread to get type information
+		for( IdBlock block : savedBlocks ) {
+			getManagedType( block.getTypeName( ) ).addValues( block );
+		}
+		if( savedBlocks.size( ) > 0 ) {
+			logger.info( "Loaded {} unused blocks for {} types from block cache file '{}'.", savedBlocks.size( ), managedTypes.size( ), blockCache.getFile( ) );
+		}
 	}
 	
 	/**
@@ -77,7 +307,187 @@ public class ObjectIdManager {
 	 * @throws InterruptedException thrown if thread was interrupted
 	 */
 	public ObjectId generateObjectId( String theTypeName ) throws InterruptedException {
-		return internalPrepare( theTypeName ).generateObjectId( ); // this will validate the name
+		ManagedType managedType = internalPrepare( theTypeName, false ); // this will validate the name
+		ObjectId objectId;
+		
+		while( ( objectId = managedType.getGenerator( ).tryGenerateObjectId( ) ) == null ) {
+			// others took the values before we could, so wait for more
+			waitForRefill( managedType );
+		}
+		return objectId;
+	}
+
+	/**
+	 * Will generate an ObjectId for a particular type, returning it in the
+	 * packed form described by {@link PackedObjectId}. Unless a refill is
+	 * needed this does not allocate. The type's ids must fit the ranges
+	 * of the packed form.
+	 * @param theTypeName the type to generate an ObjectId for
+	 * @return the generated ObjectId, packed into a long
+	 * @throws InterruptedException thrown if thread was interrupted
+	 * @throws IllegalStateException thrown if the type's values cannot be packed
+	 */
+	public long generatePackedObjectId( String theTypeName ) throws InterruptedException {
+		ManagedType managedType = internalPrepare( theTypeName, false ); // this will validate the name
+		long packedId;
+		
+		while( ( packedId = managedType.getGenerator( ).tryGeneratePackedObjectId( ) ) == 0 ) {
+			// others took the values before we could, so wait for more
+			waitForRefill( managedType );
+		}
+		return packedId;
+	}
+	
+	/**
+	 * Will generate an ObjectId for a particular type, waiting no longer than the time given
+	 * for more values if none are available. If recent requests for values have failed this
+	 * fails immediately with an {@link IdsUnavailableException} rather than waiting.
+	 * @param theTypeName the type to generate an ObjectId for
+	 * @param theTimeout the maximum amount of time to wait
+	 * @param theUnit the unit of the timeout
+	 * @return the generated ObjectId
+	 * @throws InterruptedException thrown if thread was interrupted
+	 * @throws TimeoutException thrown if values were not available in time
+	 */
+	public ObjectId generateObjectId( String theTypeName, long theTimeout, TimeUnit theUnit ) throws InterruptedException, TimeoutException {
+		long deadline = deadlineFor( theTimeout, theUnit );
+		ManagedType managedType = startPrepare( theTypeName ); // this will validate the name
+		ObjectIdGenerator generator;
+		ObjectId objectId;
+		
+		while( ( generator = managedType.getGenerator( ) ) == null || ( objectId = generator.tryGenerateObjectId( ) ) == null ) {
+			waitForRefill( managedType, deadline );
+		}
+		return objectId;
+	}
+
+	/**
+	 * Will generate an ObjectId for a particular type, in packed form, waiting no longer 
+	 * than the time given for more values if none are available. If recent requests for 
+	 * values have failed this fails immediately with an {@link IdsUnavailableException} 
+	 * rather than waiting. The type's ids must fit the ranges of the packed form.
+	 * @param theTypeName the type to generate an ObjectId for
+	 * @param theTimeout the maximum amount of time to wait
+	 * @param theUnit the unit of the timeout
+	 * @return the generated ObjectId, packed into a long
+	 * @throws InterruptedException thrown if thread was interrupted
+	 * @throws TimeoutException thrown if values were not available in time
+	 * @throws IllegalStateException thrown if the type's values cannot be packed
+	 */
+	public long generatePackedObjectId( String theTypeName, long theTimeout, TimeUnit theUnit ) throws InterruptedException, TimeoutException {
+		long deadline = deadlineFor( theTimeout, theUnit );
+		ManagedType managedType = startPrepare( theTypeName ); // this will validate the name
+		ObjectIdGenerator generator;
+		long packedId;
+		
+		while( ( generator = managedType.getGenerator( ) ) == null || ( packedId = generator.tryGeneratePackedObjectId( ) ) == 0 ) {
+			waitForRefill( managedType, deadline );
+		}
+		return packedId;
+	}
+	
+	/**
+	 * Estimates how long until the ids available locally for a type run out, based on 
+	 * how quickly ids have been used. Load shedders can use this, along with 
+	 * {@link #isRefillSuspended(String)}, to act before ids actually run out.
+	 * @param theTypeName the type to estimate for
+	 * @param theUnit the unit to return the estimate in
+	 * @return the estimated time until no ids are available, zero if none are available now,
+	 * or Long.MAX_VALUE if usage hasn't been measured yet
+	 */
+	public long getTimeUntilExhaustion( String theTypeName, TimeUnit theUnit ) {
+		Preconditions.checkArgument( !Strings.isNullOrEmpty( theTypeName ), "need a type name" );
+		Preconditions.checkNotNull( theUnit, "need a time unit" );
+		
+		ManagedType managedType = managedTypes.get( theTypeName );
+		long availableValues = managedType == null ? 0 : managedType.getAvailableValues( );
+		
+		if( availableValues == 0 ) {
+			return 0;
+		} else {
+			double consumptionRate = managedType.getDemandTracker( ).getConsumptionRate( );
+			if( consumptionRate <= 0 ) {
+				return Long.MAX_VALUE;
+			} else {
+				return theUnit.convert( ( long )( ( availableValues / consumptionRate ) * TimeUnit.SECONDS.toNanos( 1 ) ), TimeUnit.NANOSECONDS );
+			}
+		}
+	}
+	
+	/**
+	 * Indicates if requests for more ids for a type are suspended because
+	 * recent requests have failed. While suspended, callers only get ids that 
+	 * are already available locally.
+	 * @param theTypeName the type to check
+	 * @return true if requests are suspended, false otherwise
+	 */
+	public boolean isRefillSuspended( String theTypeName ) {
+		Preconditions.checkArgument( !Strings.isNullOrEmpty( theTypeName ), "need a type name" );
+
+		ManagedType managedType = managedTypes.get( theTypeName );
+		return managedType != null && managedType.getCircuitBreaker( ).isOpen( System.nanoTime( ) );
+	}
+	
+	/**
+	 * Asynchronously generates an ObjectId for a particular type. If values are available 
+	 * locally the returned future is already complete, otherwise it completes once more 
+	 * values have been retrieved from the service. Cancelling the returned future does not 
+	 * cancel the request to the service, but no value is taken for the cancelled caller
+	 * once the values arrive.
+	 * @param theTypeName the type to generate an ObjectId for
+	 * @return a future that completes with the generated ObjectId
+	 */
+	public CompletableFuture<ObjectId> generateObjectIdAsync( String theTypeName ) {
+		ManagedType managedType;
+		try {
+			managedType = startPrepare( theTypeName ); // this will validate the name
+		} catch( RuntimeException e ) {
+			return failedFuture( e );
+		}
+		CompletableFuture<ObjectId> result = new CompletableFuture<>( );
+		generateObjectIdAsync( managedType, result );
+		return result;
+	}
+
+	/**
+	 * Asynchronously generates an ObjectId for a particular type, failing with a 
+	 * {@link TimeoutException} if the ObjectId isn't available within the time given.
+	 * Timing out does not cancel the request to the service, but no value is taken 
+	 * for the caller that timed out once the values arrive.
+	 * @param theTypeName the type to generate an ObjectId for
+	 * @param theTimeout the maximum amount of time to wait
+	 * @param theUnit the unit of the timeout
+	 * @return a future that completes with the generated ObjectId
+	 */
+	public CompletableFuture<ObjectId> generateObjectIdAsync( String theTypeName, long theTimeout, TimeUnit theUnit ) {
+		return withTimeout( generateObjectIdAsync( theTypeName ), theTimeout, theUnit );
+	}
+
+	/**
+	 * Helper method that generates an ObjectId right away if there are 
+	 * values, otherwise waits on a refill and tries again. If the caller's
+	 * future is already done, because it timed out or was cancelled, no 
+	 * value is taken so values aren't used up for callers that are gone.
+	 * @param theManagedType the type to generate an ObjectId for
+	 * @param theResult the future to complete with the generated ObjectId
+	 */
+	private void generateObjectIdAsync( ManagedType theManagedType, CompletableFuture<ObjectId> theResult ) {
+		if( !theResult.isDone( ) ) {
+			ObjectIdGenerator generator = theManagedType.getGenerator( );
+			ObjectId objectId = generator == null ? null : generator.tryGenerateObjectId( );
+			
+			if( objectId != null ) {
+				theResult.complete( objectId );
+			} else {
+				refill( theManagedType ).whenComplete( ( refilledGenerator, exception ) -> {
+					if( exception != null ) {
+						theResult.completeExceptionally( exception );
+					} else {
+						generateObjectIdAsync( theManagedType, theResult );
+					}
+				} );
+			}
+		}
 	}
 
 	/**
@@ -94,6 +504,8 @@ public class ObjectIdManager {
 	
 	/**
 	 * Gets type information by the type name.
+	 * Once type information has been retrieved once this will not
+	 * block, even if the information needs refreshing.
 	 * @param theTypeName the type name to get information for
 	 * @return the type information, or null if not found
 	 * @throws InterruptedException thrown if thread was interrupted
@@ -101,14 +513,13 @@ public class ObjectIdManager {
 	public IdType getType( String theTypeName ) throws InterruptedException {
 		Preconditions.checkArgument( !Strings.isNullOrEmpty( theTypeName ), "need a type name" );
 		
-		if( !cacheExpiration.isAfter( LocalDateTime.now() ) ) {
-			fetchTypes( ); // TODO: we aren't serving stale, we wait,but we could serve stale and background load
-		}
-		return idTypesByName.get( theTypeName );
+		return getTypes( ).getType( theTypeName );
 	}
 	
 	/**
 	 * Gets type information by the type id.
+	 * Once type information has been retrieved once this will not
+	 * block, even if the information needs refreshing.
 	 * @param theTypeId the type id to get information for
 	 * @return the type information, or null if not found
 	 * @throws InterruptedException thrown if thread was interrupted
@@ -116,54 +527,169 @@ public class ObjectIdManager {
 	public IdType getType( int theTypeId ) throws InterruptedException {
 		Preconditions.checkArgument( theTypeId >= 0, "need a type id greater than 0" );
 		
-		if( !cacheExpiration.isAfter( LocalDateTime.now() ) ) {
-			fetchTypes( ); // TODO: we aren't serving stale, we wait,but we could serve stale and background load
-		}
-		return idTypesById.get( theTypeId );
+		return getTypes( ).getType( theTypeId );
 	}
 	
 	/**
-	 * Helper method that grabs and caches all the type information
+	 * Asynchronously gets type information by the type name. The returned future 
+	 * is already complete unless type information has never been retrieved. 
+	 * @param theTypeName the type name to get information for
+	 * @return a future that completes with the type information, or null if not found
+	 */
+	public CompletableFuture<IdType> getTypeAsync( String theTypeName ) {
+		Preconditions.checkArgument( !Strings.isNullOrEmpty( theTypeName ), "need a type name" );
+
+		return getTypesAsync( ).thenApply( snapshot -> snapshot.getType( theTypeName ) );
+	}
+
+	/**
+	 * Asynchronously gets type information by the type id. The returned future 
+	 * is already complete unless type information has never been retrieved. 
+	 * @param theTypeId the type id to get information for
+	 * @return a future that completes with the type information, or null if not found
+	 */
+	public CompletableFuture<IdType> getTypeAsync( int theTypeId ) {
+		Preconditions.checkArgument( theTypeId >= 0, "need a type id greater than 0" );
+
+		return getTypesAsync( ).thenApply( snapshot -> snapshot.getType( theTypeId ) );
+	}
+
+	/**
+	 * Helper method that returns the current type information, if available, 
+	 * or retrieves it in the background if it never was.
+	 * @return a future that completes with the current type information
+	 */
+	private CompletableFuture<IdTypeSnapshot> getTypesAsync( ) {
+		IdTypeSnapshot snapshot = idTypes.get( );
+		
+		if( snapshot != null ) {
+			if( snapshot.needsRefresh( LocalDateTime.now( ) ) ) {
+				refreshTypes( );
+			}
+			return CompletableFuture.completedFuture( snapshot );
+		} else {
+			try {
+				return CompletableFuture.supplyAsync( ( ) -> {
+					try {
+						return getTypes( );
+					} catch( InterruptedException e ) {
+						Thread.currentThread( ).interrupt( );
+						throw new CompletionException( e );
+					}
+				}, executorService );
+			} catch( RejectedExecutionException e ) {
+				return failedFuture( new IllegalStateException( "the manager is closed so types cannot be retrieved", e ) );
+			}
+		}
+	}
+
+	/**
+	 * Helper method that returns the current type information. If the information is 
+	 * due for a refresh, the refresh happens in the background and the current, possibly 
+	 * stale, information is returned. Only if type information was never retrieved 
+	 * does this wait on the service.
+	 * @return the current type information
 	 * @throws InterruptedException thrown if thread was interrupted
 	 */
-	private void fetchTypes( ) throws InterruptedException {
-		synchronized( this.idTypeLock ) {
-			ResourceResult<List<IdType>> result = client.getTypes();
-			
-			if( result.getStatus().getCode( ).isSuccess() ) {
-				for( IdType type : result.getResult()) {
-					idTypesByName.put( type.getName(),  type );
-					idTypesById.put( type.getId(),  type );
-				}
-				LocalDateTime calculatedExpiration = result.calculateExpiration( );
-				if( calculatedExpiration != null  ) {
-					cacheExpiration = calculatedExpiration;
-				} else {
-					cacheExpiration = LocalDateTime.now( ).plusMinutes( 5l ); // at least make it cache for a few minutes
+	private IdTypeSnapshot getTypes( ) throws InterruptedException {
+		IdTypeSnapshot snapshot = idTypes.get( );
+		
+		if( snapshot == null ) {
+			synchronized( this.idTypeLock ) {
+				// someone else may have loaded while we waited
+				snapshot = idTypes.get( );
+				if( snapshot == null ) {
+					snapshot = fetchTypes( );
 				}
+			}
+		} else if( snapshot.needsRefresh( LocalDateTime.now( ) ) ) {
+			refreshTypes( );
+		}
+		return snapshot;
+	}
+	
+	/**
+	 * Helper method that starts a background refresh of the type information,
+	 * unless one is already running.
+	 */
+	private void refreshTypes( ) {
+		if( idTypesRefreshing.compareAndSet( false, true ) ) {
+			try {
+				executorService.execute( ( ) -> {
+					try {
+						synchronized( this.idTypeLock ) {
+							fetchTypes( );
+						}
+					} catch( InterruptedException e ) {
+						Thread.currentThread( ).interrupt( );
+					} catch( RuntimeException e ) {
+						IdTypeSnapshot snapshot = idTypes.get( );
+						LocalDateTime retryTime = LocalDateTime.now( ).plusSeconds( TYPE_REFRESH_RETRY_SECONDS );
+						if( snapshot != null ) {
+							// we keep serving what we have, but wait a bit before trying again
+							idTypes.compareAndSet( snapshot, snapshot.deferRefresh( retryTime ) );
+						}
+						logger.warn( "Unable to refresh type information, will try again after {}.", retryTime, e );
+					} finally {
+						idTypesRefreshing.set( false );
+					}
+				} );
+			} catch( RejectedExecutionException e ) {
+				// this happens if we are closed
+				idTypesRefreshing.set( false );
+			}
+		}
+	}
+	
+	/**
+	 * Helper method that grabs all the type information and swaps it in as the current information.
+	 * If type information was retrieved before, the service is asked to only send the types if they
+	 * changed, otherwise the current information is kept and just cached for longer.
+	 * Callers are expected to hold the type lock so only one fetch happens at a time.
+	 * @return the new type information
+	 * @throws InterruptedException thrown if thread was interrupted
+	 */
+	private IdTypeSnapshot fetchTypes( ) throws InterruptedException {
+		IdTypeSnapshot currentSnapshot = idTypes.get( );
+		IdSourceResult<List<IdType>> result = blockSource.getTypes( currentSnapshot == null ? null : currentSnapshot.getEntityTag( ) );
+		
+		if( result.isSuccess() ) {
+			LocalDateTime cacheExpiration = result.getExpiration( );
+			if( cacheExpiration == null  ) {
+				cacheExpiration = LocalDateTime.now( ).plusMinutes( 5l ); // at least make it cache for a few minutes
+			}
+			if( result.getStatus( ) == Status.OPERATION_NOT_MODIFIED && currentSnapshot != null ) {
+				IdTypeSnapshot snapshot = currentSnapshot.revalidate( cacheExpiration, TYPE_REFRESH_RATIO );
+				idTypes.set( snapshot );
 				
-				logger.info( "Retrieved {} types from the service and caching results until {}", idTypesByName.size(), cacheExpiration );
-				
-			} else {
-				// TODO: the above doesn't handle errors from the server
-				//       500 level errors we should throw back
-				//       400 level errors we should throw an IllegalArgument, if we can tell it is our type
-				//       200 level is fine
-				throw new CommunicationException( String.format( 
-						"Ran into trouble, '%s', trying to get type information", 
-						result.getStatus().getCode( ) ) );
+				logger.debug( "Types from the service have not changed, caching results until {}", cacheExpiration );
+				return snapshot;
 			}
+			IdTypeSnapshot snapshot = new IdTypeSnapshot( result.getResult( ), result.getEntityTag( ), cacheExpiration, TYPE_REFRESH_RATIO );
+			idTypes.set( snapshot );
+			
+			logger.info( "Retrieved {} types from the service and caching results until {}", snapshot.getTypes( ).size(), cacheExpiration );
+			return snapshot;
+			
+		} else {
+			// TODO: the above doesn't handle errors from the server
+			//       500 level errors we should throw back
+			//       400 level errors we should throw an IllegalArgument, if we can tell it is our type
+			//       200 level is fine
+			throw new CommunicationException( String.format( 
+					"Ran into trouble, '%s', trying to get type information", 
+					result.getStatus( ) ) );
 		}
 	}
 	
-
 	/**
-	 * Forces to manage to evaluate whether there are a enough values for a given type
+	 * Forces to manage to evaluate whether there are a enough values for a given type,
+	 * waiting for more values to be retrieved if the type is at or below its threshold.
 	 * @param theTypeName the name of the type to prepare
 	 * @throws InterruptedException thrown if thread was interrupted
 	 */
 	public void prepare( String theTypeName ) throws InterruptedException {
-		internalPrepare( theTypeName ); // this will validate the name
+		internalPrepare( theTypeName, true ); // this will validate the name
 	}
 	
 	/**
@@ -174,58 +700,378 @@ public class ObjectIdManager {
 	public void prepare( String ... theTypeNames ) throws InterruptedException {
 		Preconditions.checkNotNull( theTypeNames, "need type names to prepare" );
 
-		for( String typeName : theTypeNames ) {
-			internalPrepare( typeName );
-		}
+		waitFor( prepareAsync( theTypeNames ) );
 	}	
 
+	/**
+	 * Asynchronously forces the manager to evaluate whether there are enough values for 
+	 * a given type. The returned future is already complete if the type is above its threshold,
+	 * otherwise it completes once more values have been retrieved.
+	 * @param theTypeName the name of the type to prepare
+	 * @return a future that completes once the type is prepared
+	 */
+	public CompletableFuture<Void> prepareAsync( String theTypeName ) {
+		try {
+			ManagedType managedType = getManagedType( theTypeName ); // this will validate the name
+			
+			if( managedType.needsRefill( ) ) {
+				return refill( managedType ).thenApply( generator -> null );
+			} else {
+				return CompletableFuture.completedFuture( null );
+			}
+		} catch( RuntimeException e ) {
+			return failedFuture( e );
+		}
+	}
+
+	/**
+	 * Asynchronously forces the manager to evaluate whether there are enough values for the
+	 * specified types. The types are prepared concurrently.
+	 * @param theTypeNames the name of the types to prepare
+	 * @return a future that completes once all of the types are prepared
+	 */
+	public CompletableFuture<Void> prepareAsync( String ... theTypeNames ) {
+		Preconditions.checkNotNull( theTypeNames, "need type names to prepare" );
+
+		CompletableFuture<?>[] preparations = new CompletableFuture<?>[ theTypeNames.length ];
+		for( int index = 0; index < theTypeNames.length; index += 1 ) {
+			preparations[ index ] = prepareAsync( theTypeNames[ index ] );
+		}
+		return CompletableFuture.allOf( preparations );
+	}
+
 	/**
 	 * Forces the manager to evaluate whether there are enough values for a given type
-	 * and returns the generator to use in case an ObjectId is to be generated
+	 * and returns the managed type to use in case an ObjectId is to be generated.
+	 * If there are no values this waits for more.
 	 * @param theTypeName the name of the type to prepare
-	 * @return the generator for the given type
+	 * @param waitAtThreshold if true, waits for more values when at or below the threshold, not just when there are none
+	 * @return the managed type for the given type
 	 * @throws InterruptedException thrown if thread was interrupted
 	 */
-	private ObjectIdGenerator internalPrepare( String theTypeName ) throws InterruptedException {
-		Preconditions.checkArgument( !Strings.isNullOrEmpty( theTypeName ), "need a type name to prepare" );
+	private ManagedType internalPrepare( String theTypeName, boolean waitAtThreshold ) throws InterruptedException {
+		ManagedType managedType = startPrepare( theTypeName );
 		
-		ObjectIdGenerator generator = generators.get( theTypeName );
-		ResourceResult<IdBlock> result = null;
+		if( managedType.getAvailableValues( ) == 0 || ( waitAtThreshold && managedType.needsRefill( ) ) ) {
+			waitForRefill( managedType );
+		}
+		return managedType;
+	}
+	
+	/**
+	 * Helper method that gets the managed type and, if the type is at or below its 
+	 * threshold, starts getting more values without waiting for them.
+	 * @param theTypeName the name of the type to prepare
+	 * @return the managed type for the given type
+	 */
+	private ManagedType startPrepare( String theTypeName ) {
+		ManagedType managedType = getManagedType( theTypeName );
+		
+		if( managedType.needsRefill( ) ) {
+			refill( managedType );
+		}
+		return managedType;
+	}
+	
+	/**
+	 * Helper method that gets, or creates, the managed type for a type name.
+	 * @param theTypeName the name of the type
+	 * @return the managed type
+	 */
+	private ManagedType getManagedType( String theTypeName ) {
+		Preconditions.checkArgument( !Strings.isNullOrEmpty( theTypeName ), "need a type name to prepare" );
+		Preconditions.checkState( !closed, "the manager is closed so ObjectIds for type '%s' cannot be generated", theTypeName );
+
+		ManagedType managedType = managedTypes.get( theTypeName );
+		if( managedType == null ) {
+			managedType = managedTypes.computeIfAbsent( theTypeName, name -> new ManagedType( name, configuration ) );
+		}
+		return managedType;
+	}
+	
+	/**
+	 * Helper method that waits for more values for a type, recording how 
+	 * long the caller was blocked.
+	 * @param theManagedType the type to wait for values for
+	 * @throws InterruptedException thrown if thread was interrupted
+	 */
+	private void waitForRefill( ManagedType theManagedType ) throws InterruptedException {
+		long waitStart = System.nanoTime( );
+		try {
+			waitFor( refill( theManagedType ) );
+		} finally {
+			theManagedType.getStatistics( ).recordBlocked( System.nanoTime( ) - waitStart );
+		}
+	}
 
-		if( generator == null ) {
-			// if we don't have a generator we create some ids and
-			// later use the result to create and save the generator
-			result = client.generateIds( theTypeName, requestAmount );
+	/**
+	 * Helper method that waits, until the deadline given, for more values for 
+	 * a type, recording how long the caller was blocked.
+	 * @param theManagedType the type to wait for values for
+	 * @param theDeadline the time, from System.nanoTime, to stop waiting
+	 * @throws InterruptedException thrown if thread was interrupted
+	 * @throws TimeoutException thrown if the deadline passed before values were available
+	 */
+	private void waitForRefill( ManagedType theManagedType, long theDeadline ) throws InterruptedException, TimeoutException {
+		long waitStart = System.nanoTime( );
+		try {
+			waitFor( refill( theManagedType ), theDeadline );
+		} finally {
+			theManagedType.getStatistics( ).recordBlocked( System.nanoTime( ) - waitStart );
+		}
+	}
+	
+	/**
+	 * Helper method that starts getting more values for a type, unless a request
+	 * is already running in which case that request is returned. 
+	 * @param theManagedType the type to get more values for
+	 * @return the future that completes when the values have been added
+	 */
+	private CompletableFuture<ObjectIdGenerator> refill( ManagedType theManagedType ) {
+		synchronized( theManagedType ) {
+			CompletableFuture<ObjectIdGenerator> refill = theManagedType.getRefill( );
 			
-		} else if( generator.getAvailableValues() <= requestThreshold ) {
-			// we also generate ids if we are within threshold, we 
-			// could collapse code here, but we may be putting in 
-			// more logic in these two cases
-			result = client.generateIds( theTypeName, requestAmount );
-		}
-		
-		if( result != null ) { 
-			if( result.getStatus().getCode().isSuccess( ) ) {
-				// if the generator is null then we didn't create/save
-				// locally so we have to do that
-				if( generator == null ) {
-					generator = new ObjectIdGenerator( theTypeName, result.getResult().getTypeId() );
-					generators.put( theTypeName, generator );
+			if( refill == null ) {
+				long remainingOpenTime = theManagedType.getCircuitBreaker( ).getRemainingOpenTime( System.nanoTime( ) );
+				if( remainingOpenTime > 0 ) {
+					// recent requests failed, so fail fast instead of adding to the load on the service
+					return failedFuture( new IdsUnavailableException( 
+							theManagedType.getTypeName( ), 
+							String.format( "Ids for type '%s' are unavailable since requests for more keep failing, will try again in %s ms.", theManagedType.getTypeName( ), TimeUnit.NANOSECONDS.toMillis( remainingOpenTime ) ) ) );
+				}
+				try {
+					refill = CompletableFuture.supplyAsync( ( ) -> fetchValues( theManagedType ), executorService );
+				} catch( RejectedExecutionException e ) {
+					return failedFuture( new IllegalStateException( String.format( "the manager is closed so ObjectIds for type '%s' cannot be generated", theManagedType.getTypeName( ) ), e ) );
 				}
-				generator.addValues( result.getResult() );
+				theManagedType.setRefill( refill );
+				final CompletableFuture<ObjectIdGenerator> startedRefill = refill;
+				refill.whenComplete( ( generator, exception ) -> theManagedType.clearRefill( startedRefill ) );
+			}
+			return refill;
+		}
+	}
+	
+	/**
+	 * Helper method, run in the background, that gets more values from the service 
+	 * and adds them to the type's generator. If the service says it is overloaded
+	 * the request is retried, after the wait the service asked for, a limited 
+	 * number of times.
+	 * @param theManagedType the type to get more values for
+	 * @return the generator the values were added to 
+	 */
+	private ObjectIdGenerator fetchValues( ManagedType theManagedType ) {
+		String typeName = theManagedType.getTypeName( );
+		DemandTracker demandTracker = theManagedType.getDemandTracker( );
+		TypeStatistics statistics = theManagedType.getStatistics( );
+		IdSourceResult<IdBlock> result;
+		long retryDelay;
+		int attempt = 0;
+		
+		statistics.recordRefillIssued( theManagedType.getAvailableValues( ) );
+		long requestStart = System.nanoTime( );
+		try {
+			result = blockSource.generateIds( typeName, demandTracker.getRequestAmount( ) );
+			while( !result.isSuccess( ) && ( retryDelay = calculateRetryDelay( result, attempt ) ) > 0 ) {
+				attempt += 1;
+				logger.debug( "Service is overloaded, '{}', getting ids for type '{}', so retry {} will be made in {} ms.", result.getStatus( ), typeName, attempt, retryDelay );
+				TimeUnit.MILLISECONDS.sleep( retryDelay );
+				result = blockSource.generateIds( typeName, demandTracker.getRequestAmount( ) );
+			}
+		} catch( InterruptedException e ) {
+			statistics.recordRefillFailed( System.nanoTime( ) - requestStart );
+			Thread.currentThread( ).interrupt( );
+			throw new CompletionException( e );
+		} catch( RuntimeException e ) {
+			statistics.recordRefillFailed( System.nanoTime( ) - requestStart );
+			recordCircuitFailure( theManagedType );
+			throw e;
+		}
+		long requestLatency = System.nanoTime( ) - requestStart;
+		
+		if( result.isSuccess( ) ) {
+			ObjectIdGenerator generator = theManagedType.addValues( result.getResult() );
+			statistics.recordRefillSucceeded( requestLatency );
+			theManagedType.getCircuitBreaker( ).recordSuccess( );
+			// let the tracker know so the next request and threshold reflect current usage 
+			demandTracker.recordRefill( requestLatency, generator.getGeneratedValues( ) );
+			return generator;
 
-			} else {
-				// TODO: the above doesn't handle errors from the server
-				//       500 level errors we should throw back
-				//       400 level errors we should throw an IllegalArgument, if we can tell it is our type
-				//       200 level is fine
-				throw new CommunicationException( String.format( 
-						"Ran into trouble, '%s', trying to increase values for ObjectIds of type '%s'", 
-						result.getStatus().getCode(), 
-						theTypeName ) );
+		} else {
+			statistics.recordRefillFailed( result.getStatus( ), requestLatency );
+			recordCircuitFailure( theManagedType );
+			// TODO: the above doesn't handle errors from the server
+			//       500 level errors we should throw back
+			//       400 level errors we should throw an IllegalArgument, if we can tell it is our type
+			//       200 level is fine
+			throw new CommunicationException( String.format( 
+					"Ran into trouble, '%s', trying to increase values for ObjectIds of type '%s'", 
+					result.getStatus(), 
+					typeName ) );
+		}
+	}
+	
+	/**
+	 * Helper method that determines how long to wait before retrying a request
+	 * the service refused because it is overloaded. The wait the service asked
+	 * for is used, otherwise the wait doubles with each retry, and jitter is 
+	 * added so managers refused at the same time don't all come back together.
+	 * @param theResult the result of the failed request
+	 * @param theAttempt the number of retries already made
+	 * @return the time to wait, in milliseconds, or zero if the request should not be retried
+	 */
+	private long calculateRetryDelay( IdSourceResult<?> theResult, int theAttempt ) {
+		if( theAttempt >= configuration.getRetryMaximumAttempts( ) || ( theResult.getStatus( ) != Status.OPERATION_RETRY && theResult.getStatus( ) != Status.LOCAL_UNAVAILABLE ) ) {
+			return 0;
+		}
+		long delay;
+		if( theResult.getRetryAfter( ) > 0 ) {
+			delay = theResult.getRetryAfter( );
+			if( delay > configuration.getRetryMaximumDelay( ) ) {
+				// the service doesn't expect to recover soon enough to be worth waiting on
+				return 0;
 			}
+		} else {
+			delay = Math.min( configuration.getRetryInitialDelay( ) << Math.min( theAttempt, 16 ), configuration.getRetryMaximumDelay( ) );
 		}
+		return Math.min( delay + ThreadLocalRandom.current( ).nextLong( delay / 2 + 1 ), configuration.getRetryMaximumDelay( ) );
+	}
+	
+	/**
+	 * Helper method that records a failed refill with the type's circuit breaker,
+	 * logging if the failure means requests for the type are suspended.
+	 * @param theManagedType the type the refill failed for
+	 */
+	private void recordCircuitFailure( ManagedType theManagedType ) {
+		if( theManagedType.getCircuitBreaker( ).recordFailure( System.nanoTime( ) ) ) {
+			logger.warn( "Requests for ids of type '{}' keep failing, so no requests will be made for {} ms.", theManagedType.getTypeName( ), configuration.getCircuitBreakerOpenDuration( ) );
+		}
+	}
+	
+	/**
+	 * Helper method that waits for a future, for the blocking methods, and 
+	 * turns failures back into the exceptions that caused them.
+	 * @param theFuture the future to wait on
+	 * @return the value of the future
+	 * @throws InterruptedException thrown if thread was interrupted
+	 */
+	private static <T> T waitFor( CompletableFuture<T> theFuture ) throws InterruptedException {
+		try {
+			return theFuture.get( );
+		} catch( ExecutionException e ) {
+			throw unwrap( e );
+		} catch( CancellationException e ) {
+			throw new IllegalStateException( "The request for ObjectId values was cancelled.", e );
+		}
+	}
+
+	/**
+	 * Helper method that waits for a future, until the deadline given, for the 
+	 * blocking methods, and turns failures back into the exceptions that caused them.
+	 * @param theFuture the future to wait on
+	 * @param theDeadline the time, from System.nanoTime, to stop waiting
+	 * @return the value of the future
+	 * @throws InterruptedException thrown if thread was interrupted
+	 * @throws TimeoutException thrown if the deadline passed before the future completed
+	 */
+	private static <T> T waitFor( CompletableFuture<T> theFuture, long theDeadline ) throws InterruptedException, TimeoutException {
+		long remainingTime = theDeadline - System.nanoTime( );
+		try {
+			if( remainingTime <= 0 && !theFuture.isDone( ) ) {
+				throw new TimeoutException( "Ran out of time waiting for ObjectId values." );
+			}
+			return theFuture.get( Math.max( remainingTime, 0 ), TimeUnit.NANOSECONDS );
+		} catch( ExecutionException e ) {
+			throw unwrap( e );
+		} catch( CancellationException e ) {
+			throw new IllegalStateException( "The request for ObjectId values was cancelled.", e );
+		}
+	}
+	
+	/**
+	 * Helper method that turns the failure of a future back into the exception that caused it.
+	 * @param theException the exception from the future
+	 * @return the exception to throw
+	 * @throws InterruptedException thrown if the failure was due to an interruption
+	 */
+	private static RuntimeException unwrap( ExecutionException theException ) throws InterruptedException {
+		Throwable cause = theException.getCause( );
+		if( cause instanceof CompletionException && cause.getCause( ) != null ) {
+			cause = cause.getCause( );
+		}
+		if( cause instanceof InterruptedException ) {
+			throw new InterruptedException( cause.getMessage( ) );
+		} else if( cause instanceof RuntimeException ) {
+			return ( RuntimeException )cause;
+		} else {
+			return new CommunicationException( "Ran into trouble waiting for ObjectId values.", cause );
+		}
+	}
+	
+	/**
+	 * Helper method that turns a timeout into a deadline.
+	 * @param theTimeout the maximum amount of time to wait
+	 * @param theUnit the unit of the timeout
+	 * @return the deadline, based on System.nanoTime
+	 */
+	private static long deadlineFor( long theTimeout, TimeUnit theUnit ) {
+		Preconditions.checkArgument( theTimeout >= 0, "the timeout cannot be negative" );
+		Preconditions.checkNotNull( theUnit, "need a time unit" );
 		
-		return generator;
+		// capped so very long timeouts don't overflow when compared against System.nanoTime
+		return System.nanoTime( ) + Math.min( theUnit.toNanos( theTimeout ), Long.MAX_VALUE >> 1 );
+	}
+	
+	/**
+	 * Helper method that returns a future that fails with a {@link TimeoutException} if the
+	 * future given doesn't complete within the time given. If the returned future times out,
+	 * or is cancelled, the future given is cancelled so work waiting on it can stop, and
+	 * if the future given completes first the timeout is cancelled.
+	 * @param theFuture the future to apply a timeout to
+	 * @param theTimeout the maximum amount of time to wait
+	 * @param theUnit the unit of the timeout
+	 * @return a future that completes like the future given, or with a timeout
+	 */
+	private <T> CompletableFuture<T> withTimeout( CompletableFuture<T> theFuture, long theTimeout, TimeUnit theUnit ) {
+		Preconditions.checkArgument( theTimeout >= 0, "the timeout cannot be negative" );
+		Preconditions.checkNotNull( theUnit, "need a time unit" );
+		
+		if( theFuture.isDone( ) ) {
+			return theFuture;
+		} else {
+			CompletableFuture<T> timedFuture = new CompletableFuture<>( );
+			ScheduledFuture<?> timeout;
+			try {
+				timeout = timeoutService.schedule( ( ) -> timedFuture.completeExceptionally( new TimeoutException( String.format( "Did not complete within %s %s.", theTimeout, theUnit ) ) ), theTimeout, theUnit );
+			} catch( RejectedExecutionException e ) {
+				timedFuture.completeExceptionally( new IllegalStateException( "the manager is closed", e ) );
+				timeout = null;
+			}
+			final ScheduledFuture<?> scheduledTimeout = timeout;
+			theFuture.whenComplete( ( value, exception ) -> {
+				if( scheduledTimeout != null ) {
+					scheduledTimeout.cancel( false );
+				}
+				if( exception != null ) {
+					timedFuture.completeExceptionally( exception );
+				} else {
+					timedFuture.complete( value );
+				}
+			} );
+			// cancelling a future that already completed has no effect
+			timedFuture.whenComplete( ( value, exception ) -> theFuture.cancel( false ) );
+			return timedFuture;
+		}
+	}
+	
+	/**
+	 * Helper method that creates a future that has already failed.
+	 * @param theException the reason for the failure
+	 * @return the failed future
+	 */
+	private static <T> CompletableFuture<T> failedFuture( Throwable theException ) {
+		CompletableFuture<T> future = new CompletableFuture<>( );
+		future.completeExceptionally( theException );
+		return future;
 	}
 }
@@ -0,0 +1,123 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.client;
+
+import com.google.common.base.Preconditions;
+
+import com.talvish.tales.system.status.MonitorableStatusValue;
+
+/**
+ * Status for the ObjectIdManager, totalled across all types, that can be 
+ * registered with a service's status manager. Per-type statistics are 
+ * available from {@link ObjectIdManager#getStatistics()}.
+ * @author jmolnar
+ *
+ */
+public class ObjectIdManagerStatus {
+	private final ObjectIdManager manager;
+	
+	/**
+	 * Constructor taking the manager to report on.
+	 * @param theManager the manager to report on
+	 */
+	ObjectIdManagerStatus( ObjectIdManager theManager ) {
+		Preconditions.checkNotNull( theManager, "need a manager" );
+		manager = theManager;
+	}
+	
+	/**
+	 * Indicates if the manager has finished warming up.
+	 * @return true if ready, false otherwise
+	 */
+	@MonitorableStatusValue( name = "ready", description = "Indicates if the manager has finished warming up." )
+	public boolean isReady( ) {
+		return manager.isReady( );
+	}
+
+	/**
+	 * The number of types the manager is generating ids for.
+	 * @return the number of types
+	 */
+	@MonitorableStatusValue( name = "managed_types", description = "The number of types the manager is generating ids for." )
+	public int getManagedTypes( ) {
+		return manager.getStatistics( ).size( );
+	}
+
+	/**
+	 * The number of ids handed out across all types.
+	 * @return the number of ids generated
+	 */
+	@MonitorableStatusValue( name = "ids_generated", description = "The number of ids handed out across all types." )
+	public long getIdsGenerated( ) {
+		long total = 0;
+		for( TypeStatisticsSnapshot statistics : manager.getStatistics( ).values( ) ) {
+			total += statistics.getIdsGenerated( );
+		}
+		return total;
+	}
+
+	/**
+	 * The number of requests made to the service for more ids.
+	 * @return the number of refills issued
+	 */
+	@MonitorableStatusValue( name = "refills_issued", description = "The number of requests made to the service for more ids." )
+	public long getRefillsIssued( ) {
+		long total = 0;
+		for( TypeStatisticsSnapshot statistics : manager.getStatistics( ).values( ) ) {
+			total += statistics.getRefillsIssued( );
+		}
+		return total;
+	}
+
+	/**
+	 * The number of requests made to the service for more ids that failed.
+	 * @return the number of failed refills
+	 */
+	@MonitorableStatusValue( name = "refills_failed", description = "The number of requests made to the service for more ids that failed." )
+	public long getRefillsFailed( ) {
+		long total = 0;
+		for( TypeStatisticsSnapshot statistics : manager.getStatistics( ).values( ) ) {
+			total += statistics.getRefillsFailed( );
+		}
+		return total;
+	}
+
+	/**
+	 * The number of times callers had to wait on the service for ids.
+	 * @return the number of blocked calls
+	 */
+	@MonitorableStatusValue( name = "blocked_calls", description = "The number of times callers had to wait on the service for ids." )
+	public long getBlockedCalls( ) {
+		long total = 0;
+		for( TypeStatisticsSnapshot statistics : manager.getStatistics( ).values( ) ) {
+			total += statistics.getBlockedCalls( );
+		}
+		return total;
+	}
+
+	/**
+	 * The total time, in milliseconds, callers spent waiting on the service for ids.
+	 * @return the blocked time in milliseconds
+	 */
+	@MonitorableStatusValue( name = "blocked_time", description = "The total time, in milliseconds, callers spent waiting on the service for ids." )
+	public long getBlockedTime( ) {
+		long total = 0;
+		for( TypeStatisticsSnapshot statistics : manager.getStatistics( ).values( ) ) {
+			total += statistics.getBlockedTime( );
+		}
+		return total;
+	}
+}
@@ -0,0 +1,142 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.client;
+
+import com.google.common.base.Preconditions;
+
+import com.talvish.tales.businessobjects.ObjectId;
+
+/**
+ * Helper methods for working with ObjectIds that have been packed into a 
+ * single primitive long. The packed form keeps the same ordering of parts
+ * as an ObjectId, value then type id then source id, with the value in the 
+ * high bits and the source id in the low bits. The sign bit is never used
+ * so packed ids are always positive and sort by value.
+ * <p>
+ * Packing trades range for the ability to generate ids without allocation.
+ * The layout is specific to the packed form, an ObjectId itself allows a 
+ * full long value, int type id and long source id, so only ids whose values
+ * fit in {@link #VALUE_BITS} bits (at most {@link #MAXIMUM_VALUE}), whose type 
+ * ids fit in {@link #TYPE_ID_BITS} bits (at most {@link #MAXIMUM_TYPE_ID}) and 
+ * whose source ids fit in {@link #SOURCE_ID_BITS} bits (at most {@link #MAXIMUM_SOURCE_ID})
+ * can be packed. Ids outside these ranges are rejected, never truncated, 
+ * so types whose blocks may exceed them must use the ObjectId form.
+ * @author jmolnar
+ *
+ */
+public final class PackedObjectId {
+	public static final int SOURCE_ID_BITS = 12;
+	public static final int TYPE_ID_BITS = 12;
+	public static final int VALUE_BITS = 63 - TYPE_ID_BITS - SOURCE_ID_BITS;
+	
+	public static final long MAXIMUM_SOURCE_ID = ( 1l << SOURCE_ID_BITS ) - 1;
+	public static final int MAXIMUM_TYPE_ID = ( 1 << TYPE_ID_BITS ) - 1;
+	public static final long MAXIMUM_VALUE = ( 1l << VALUE_BITS ) - 1;
+	
+	private static final int TYPE_ID_SHIFT = SOURCE_ID_BITS;
+	private static final int VALUE_SHIFT = SOURCE_ID_BITS + TYPE_ID_BITS;
+
+	/**
+	 * Private constructor since this is only a holder of static helpers.
+	 */
+	private PackedObjectId( ) {
+	}
+	
+	/**
+	 * Indicates if the parts of an ObjectId fit in the packed form.
+	 * @param theValue the value portion of the id
+	 * @param theTypeId the type id portion of the id
+	 * @param theSourceId the source id portion of the id
+	 * @return true if the parts can be packed, false otherwise
+	 */
+	public static boolean canPack( long theValue, int theTypeId, long theSourceId ) {
+		return theValue > 0 && theValue <= MAXIMUM_VALUE && theTypeId > 0 && theTypeId <= MAXIMUM_TYPE_ID && theSourceId > 0 && theSourceId <= MAXIMUM_SOURCE_ID;
+	}
+
+	/**
+	 * Indicates if every value in a block can be packed.
+	 * @param theBlock the block to check
+	 * @return true if all of the block's values can be packed, false otherwise
+	 */
+	public static boolean canPack( IdBlock theBlock ) {
+		Preconditions.checkNotNull( theBlock, "need a block to check" );
+		return canPack( theBlock.getStartValue( ), theBlock.getTypeId( ), theBlock.getSourceId( ) ) && theBlock.getEndValue( ) <= MAXIMUM_VALUE;
+	}
+	
+	/**
+	 * Packs the parts of an ObjectId into a single long.
+	 * @param theValue the value portion of the id
+	 * @param theTypeId the type id portion of the id
+	 * @param theSourceId the source id portion of the id
+	 * @return the packed id
+	 * @throws IllegalArgumentException if any part is outside the range the packed form supports
+	 */
+	public static long pack( long theValue, int theTypeId, long theSourceId ) {
+		Preconditions.checkArgument( theValue > 0 && theValue <= MAXIMUM_VALUE, "value %s cannot be packed, it must be between 1 and %s", theValue, MAXIMUM_VALUE );
+		Preconditions.checkArgument( theTypeId > 0 && theTypeId <= MAXIMUM_TYPE_ID, "type id %s cannot be packed, it must be between 1 and %s", theTypeId, MAXIMUM_TYPE_ID );
+		Preconditions.checkArgument( theSourceId > 0 && theSourceId <= MAXIMUM_SOURCE_ID, "source id %s cannot be packed, it must be between 1 and %s", theSourceId, MAXIMUM_SOURCE_ID );
+		
+		return ( theValue << VALUE_SHIFT ) | ( ( long )theTypeId << TYPE_ID_SHIFT ) | theSourceId;
+	}
+
+	/**
+	 * Packs an existing ObjectId into a single long.
+	 * @param theId the id to pack
+	 * @return the packed id
+	 * @throws IllegalArgumentException if any part is outside the range the packed form supports
+	 */
+	public static long pack( ObjectId theId ) {
+		Preconditions.checkNotNull( theId, "need an id to pack" );
+		return pack( theId.getValue( ), theId.getTypeId( ), theId.getSourceId( ) );
+	}
+
+	/**
+	 * Extracts the value portion from a packed id.
+	 * @param thePackedId the packed id
+	 * @return the value
+	 */
+	public static long unpackValue( long thePackedId ) {
+		return thePackedId >>> VALUE_SHIFT;
+	}
+
+	/**
+	 * Extracts the type id portion from a packed id.
+	 * @param thePackedId the packed id
+	 * @return the type id
+	 */
+	public static int unpackTypeId( long thePackedId ) {
+		return ( int )( ( thePackedId >>> TYPE_ID_SHIFT ) & MAXIMUM_TYPE_ID );
+	}
+
+	/**
+	 * Extracts the source id portion from a packed id.
+	 * @param thePackedId the packed id
+	 * @return the source id
+	 */
+	public static long unpackSourceId( long thePackedId ) {
+		return thePackedId & MAXIMUM_SOURCE_ID;
+	}
+	
+	/**
+	 * Unpacks a packed id into a full ObjectId.
+	 * @param thePackedId the packed id
+	 * @return the ObjectId the packed id represents
+	 */
+	public static ObjectId unpack( long thePackedId ) {
+		Preconditions.checkArgument( thePackedId > 0, "packed id %s is not a valid packed id", thePackedId );
+		return new ObjectId( unpackValue( thePackedId ), unpackTypeId( thePackedId ), unpackSourceId( thePackedId ) );
+	}
+}
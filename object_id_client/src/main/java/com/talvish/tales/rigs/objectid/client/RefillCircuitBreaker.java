@@ -0,0 +1,92 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.client;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Tracks consecutive failed refills for a type so the ObjectIdManager can stop 
+ * calling a service that is down. Once enough refills in a row fail the circuit
+ * opens and refills are refused until the open duration has passed. After that
+ * the next refill is let through, and if it also fails the circuit opens again.
+ * @author jmolnar
+ *
+ */
+final class RefillCircuitBreaker {
+	private final int failureThreshold;
+	private final long openDuration; // nanos
+	
+	private int consecutiveFailures = 0;
+	private long openUntil = 0; // nanos, only meaningful when open 
+	private boolean open = false;
+	
+	/**
+	 * Constructor taking the configuration for the breaker.
+	 * @param theFailureThreshold the number of refills in a row that must fail to open the circuit
+	 * @param theOpenDuration how long, in milliseconds, the circuit stays open
+	 */
+	RefillCircuitBreaker( int theFailureThreshold, long theOpenDuration ) {
+		Preconditions.checkArgument( theFailureThreshold > 0, "the failure threshold must be greater than zero" );
+		Preconditions.checkArgument( theOpenDuration > 0, "the open duration must be greater than zero" );
+		
+		failureThreshold = theFailureThreshold;
+		openDuration = TimeUnit.MILLISECONDS.toNanos( theOpenDuration );
+	}
+	
+	/**
+	 * Indicates if refills are currently being refused.
+	 * @param theNow the current time, from System.nanoTime
+	 * @return true if the circuit is open, false otherwise
+	 */
+	synchronized boolean isOpen( long theNow ) {
+		return open && theNow - openUntil < 0;
+	}
+	
+	/**
+	 * How long until the circuit closes.
+	 * @param theNow the current time, from System.nanoTime
+	 * @return the time, in nanoseconds, until refills are allowed, zero if they are allowed now
+	 */
+	synchronized long getRemainingOpenTime( long theNow ) {
+		return isOpen( theNow ) ? openUntil - theNow : 0;
+	}
+
+	/**
+	 * Records a successful refill, which closes the circuit.
+	 */
+	synchronized void recordSuccess( ) {
+		consecutiveFailures = 0;
+		open = false;
+	}
+	
+	/**
+	 * Records a failed refill, which may open the circuit.
+	 * @param theNow the current time, from System.nanoTime
+	 * @return true if this failure opened the circuit, false otherwise
+	 */
+	synchronized boolean recordFailure( long theNow ) {
+		consecutiveFailures += 1;
+		if( consecutiveFailures >= failureThreshold ) {
+			openUntil = theNow + openDuration;
+			open = true;
+			return true;
+		} else {
+			return false;
+		}
+	}
+}
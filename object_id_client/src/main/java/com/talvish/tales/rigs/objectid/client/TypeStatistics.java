@@ -0,0 +1,148 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.client;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.talvish.tales.communication.Status;
+
+/**
+ * The live counters the ObjectIdManager keeps for a type. The counters
+ * are cheap to update and are turned into a {@link TypeStatisticsSnapshot}
+ * when someone wants to look at them.
+ * @author jmolnar
+ *
+ */
+final class TypeStatistics {
+	// upper bounds, in milliseconds, of the refill latency histogram buckets, there is a final bucket for anything larger
+	static final long[ ] LATENCY_BUCKETS = new long[ ] { 1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000 };
+	
+	private final AtomicLong refillsIssued = new AtomicLong( );
+	private final AtomicLong refillsFailed = new AtomicLong( );
+	private final AtomicLong refillLatency = new AtomicLong( ); // total nanos
+	private final AtomicLongArray refillLatencyHistogram = new AtomicLongArray( LATENCY_BUCKETS.length + 1 );
+	private final AtomicLong poolDepthAtRefill = new AtomicLong( ); // total, for averaging
+	private final AtomicLong lastPoolDepthAtRefill = new AtomicLong( );
+	private final AtomicLong blockedCalls = new AtomicLong( );
+	private final AtomicLong blockedTime = new AtomicLong( ); // total nanos
+	private final ConcurrentMap<Status,AtomicLong> failuresByStatus = new ConcurrentHashMap<>( );
+	private final AtomicLong failuresByException = new AtomicLong( );
+
+	/**
+	 * Records that a refill was started.
+	 * @param thePoolDepth the number of values available when the refill started
+	 */
+	void recordRefillIssued( long thePoolDepth ) {
+		refillsIssued.incrementAndGet( );
+		poolDepthAtRefill.addAndGet( thePoolDepth );
+		lastPoolDepthAtRefill.set( thePoolDepth );
+	}
+	
+	/**
+	 * Records that a refill succeeded.
+	 * @param theLatency how long the refill took, in nanoseconds
+	 */
+	void recordRefillSucceeded( long theLatency ) {
+		refillLatency.addAndGet( theLatency );
+		refillLatencyHistogram.incrementAndGet( bucketFor( theLatency ) );
+	}
+
+	/**
+	 * Records that a refill failed because the service returned a failure status.
+	 * @param theStatus the status returned
+	 * @param theLatency how long the refill took, in nanoseconds
+	 */
+	void recordRefillFailed( Status theStatus, long theLatency ) {
+		refillsFailed.incrementAndGet( );
+		refillLatency.addAndGet( theLatency );
+		refillLatencyHistogram.incrementAndGet( bucketFor( theLatency ) );
+		failuresByStatus.computeIfAbsent( theStatus, status -> new AtomicLong( ) ).incrementAndGet( );
+	}
+
+	/**
+	 * Records that a refill failed because of an exception, such as being unable to connect.
+	 * @param theLatency how long the refill took, in nanoseconds
+	 */
+	void recordRefillFailed( long theLatency ) {
+		refillsFailed.incrementAndGet( );
+		refillLatency.addAndGet( theLatency );
+		refillLatencyHistogram.incrementAndGet( bucketFor( theLatency ) );
+		failuresByException.incrementAndGet( );
+	}
+	
+	/**
+	 * Records that a caller was blocked waiting for values.
+	 * @param theTime how long the caller was blocked, in nanoseconds
+	 */
+	void recordBlocked( long theTime ) {
+		blockedCalls.incrementAndGet( );
+		blockedTime.addAndGet( theTime );
+	}
+	
+	/**
+	 * Creates an immutable copy of the current statistics.
+	 * @param theTypeName the name of the type the statistics are for
+	 * @param theGeneratedValues the number of ids the type's generator has handed out
+	 * @param theAvailableValues the number of ids currently available
+	 * @return the snapshot
+	 */
+	TypeStatisticsSnapshot snapshot( String theTypeName, long theGeneratedValues, long theAvailableValues ) {
+		long[ ] histogram = new long[ refillLatencyHistogram.length( ) ];
+		for( int index = 0; index < histogram.length; index += 1 ) {
+			histogram[ index ] = refillLatencyHistogram.get( index );
+		}
+		Map<Status,Long> failures = new EnumMap<>( Status.class );
+		for( Map.Entry<Status,AtomicLong> entry : failuresByStatus.entrySet( ) ) {
+			failures.put( entry.getKey( ), entry.getValue( ).get( ) );
+		}
+		long issued = refillsIssued.get( );
+		
+		return new TypeStatisticsSnapshot( 
+				theTypeName,
+				theGeneratedValues,
+				theAvailableValues,
+				issued,
+				refillsFailed.get( ),
+				issued == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis( refillLatency.get( ) ) / ( double )issued,
+				LATENCY_BUCKETS,
+				histogram,
+				issued == 0 ? 0 : poolDepthAtRefill.get( ) / ( double )issued,
+				lastPoolDepthAtRefill.get( ),
+				blockedCalls.get( ),
+				TimeUnit.NANOSECONDS.toMillis( blockedTime.get( ) ),
+				Collections.unmodifiableMap( failures ),
+				failuresByException.get( ) );
+	}
+	
+	/**
+	 * Helper method that finds the histogram bucket for a latency.
+	 */
+	private static int bucketFor( long theLatency ) {
+		long latencyMillis = TimeUnit.NANOSECONDS.toMillis( theLatency );
+		int bucket = 0;
+		while( bucket < LATENCY_BUCKETS.length && latencyMillis > LATENCY_BUCKETS[ bucket ] ) {
+			bucket += 1;
+		}
+		return bucket;
+	}
+}
@@ -0,0 +1,191 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.client;
+
+import java.util.Map;
+
+import com.talvish.tales.communication.Status;
+
+/**
+ * An immutable view of how the ObjectIdManager has been doing for a type,
+ * which can be used to tune the request amounts and thresholds.
+ * @author jmolnar
+ *
+ */
+public class TypeStatisticsSnapshot {
+	private final String typeName;
+	private final long idsGenerated;
+	private final long idsAvailable;
+	private final long refillsIssued;
+	private final long refillsFailed;
+	private final double averageRefillLatency;
+	private final long[ ] refillLatencyBuckets;
+	private final long[ ] refillLatencyHistogram;
+	private final double averagePoolDepthAtRefill;
+	private final long lastPoolDepthAtRefill;
+	private final long blockedCalls;
+	private final long blockedTime;
+	private final Map<Status,Long> failedRefillsByStatus;
+	private final long failedRefillsByException;
+	
+	/**
+	 * Constructor taking all of the statistics. 
+	 */
+	TypeStatisticsSnapshot( 
+			String theTypeName, 
+			long theIdsGenerated, 
+			long theIdsAvailable,
+			long theRefillsIssued,
+			long theRefillsFailed,
+			double theAverageRefillLatency,
+			long[ ] theRefillLatencyBuckets,
+			long[ ] theRefillLatencyHistogram,
+			double theAveragePoolDepthAtRefill,
+			long theLastPoolDepthAtRefill,
+			long theBlockedCalls,
+			long theBlockedTime,
+			Map<Status,Long> theFailedRefillsByStatus,
+			long theFailedRefillsByException ) {
+		typeName = theTypeName;
+		idsGenerated = theIdsGenerated;
+		idsAvailable = theIdsAvailable;
+		refillsIssued = theRefillsIssued;
+		refillsFailed = theRefillsFailed;
+		averageRefillLatency = theAverageRefillLatency;
+		refillLatencyBuckets = theRefillLatencyBuckets;
+		refillLatencyHistogram = theRefillLatencyHistogram;
+		averagePoolDepthAtRefill = theAveragePoolDepthAtRefill;
+		lastPoolDepthAtRefill = theLastPoolDepthAtRefill;
+		blockedCalls = theBlockedCalls;
+		blockedTime = theBlockedTime;
+		failedRefillsByStatus = theFailedRefillsByStatus;
+		failedRefillsByException = theFailedRefillsByException;
+	}
+
+	/**
+	 * The name of the type the statistics are for.
+	 * @return the type name
+	 */
+	public String getTypeName( ) {
+		return typeName;
+	}
+
+	/**
+	 * The number of ids handed out for the type.
+	 * @return the number of ids generated
+	 */
+	public long getIdsGenerated( ) {
+		return idsGenerated;
+	}
+	
+	/**
+	 * The number of ids available locally at the time of the snapshot.
+	 * @return the number of ids available
+	 */
+	public long getIdsAvailable( ) {
+		return idsAvailable;
+	}
+
+	/**
+	 * The number of requests made to get more ids.
+	 * @return the number of refills issued
+	 */
+	public long getRefillsIssued( ) {
+		return refillsIssued;
+	}
+
+	/**
+	 * The number of requests to get more ids that failed.
+	 * @return the number of failed refills
+	 */
+	public long getRefillsFailed( ) {
+		return refillsFailed;
+	}
+	
+	/**
+	 * The average time, in milliseconds, a request for more ids took.
+	 * @return the average refill latency in milliseconds
+	 */
+	public double getAverageRefillLatency( ) {
+		return averageRefillLatency;
+	}
+	
+	/**
+	 * The upper bounds, in milliseconds, of the refill latency histogram buckets.
+	 * The histogram has one more bucket than this for latencies above the last bound.
+	 * @return the bucket upper bounds in milliseconds
+	 */
+	public long[ ] getRefillLatencyBuckets( ) {
+		return refillLatencyBuckets.clone( );
+	}
+
+	/**
+	 * The number of refills that completed within each latency bucket.
+	 * @return the refill latency histogram
+	 */
+	public long[ ] getRefillLatencyHistogram( ) {
+		return refillLatencyHistogram.clone( );
+	}
+	
+	/**
+	 * The average number of ids that were available when refills were issued.
+	 * Values near zero suggest the threshold is too low.
+	 * @return the average pool depth at refill time
+	 */
+	public double getAveragePoolDepthAtRefill( ) {
+		return averagePoolDepthAtRefill;
+	}
+
+	/**
+	 * The number of ids that were available when the last refill was issued.
+	 * @return the pool depth at the last refill
+	 */
+	public long getLastPoolDepthAtRefill( ) {
+		return lastPoolDepthAtRefill;
+	}
+
+	/**
+	 * The number of times a caller had to wait on the service for ids.
+	 * @return the number of blocked calls
+	 */
+	public long getBlockedCalls( ) {
+		return blockedCalls;
+	}
+	
+	/**
+	 * The total time, in milliseconds, callers spent waiting on the service for ids.
+	 * @return the total blocked time in milliseconds
+	 */
+	public long getBlockedTime( ) {
+		return blockedTime;
+	}
+	
+	/**
+	 * The number of failed refills for each failure status returned by the service.
+	 * @return the failed refills by status
+	 */
+	public Map<Status,Long> getFailedRefillsByStatus( ) {
+		return failedRefillsByStatus;
+	}
+	
+	/**
+	 * The number of refills that failed due to an exception, such as not being able to connect.
+	 * @return the number of refills that failed from exceptions
+	 */
+	public long getFailedRefillsByException( ) {
+		return failedRefillsByException;
+	}
+}
@@ -0,0 +1,203 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+
+import com.talvish.tales.communication.Status;
+import com.talvish.tales.system.status.MonitorableStatusValue;
+
+/**
+ * Limits, per type, how many requests for ids may be outstanding against
+ * the engine so that a slow disk results in callers being told to come 
+ * back later instead of piling up on the type. Requests are refused if
+ * the type already has too many outstanding requests, or if recent 
+ * requests for the type have taken longer than the latency budget. In
+ * the latter case a single request is still let through so the type 
+ * can recover once the disk does.
+ * @author jmolnar
+ *
+ */
+public class AdmissionController {
+	private static final double LATENCY_WEIGHT = 0.2; // how much the latest request moves the average
+	private static final long MINIMUM_RETRY_AFTER = TimeUnit.SECONDS.toMillis( 1 ); // retry-after is sent in whole seconds
+	
+	/**
+	 * The admission state for a single type.
+	 */
+	private static final class TypeAdmission {
+		private final AtomicInteger outstanding = new AtomicInteger( );
+		private volatile long averageLatency = 0; // nanos
+		
+		/**
+		 * Folds the latency of a completed request into the average. Updates
+		 * can race, but the average only needs to be approximately right.
+		 * @param theLatency the latency of the request, in nanoseconds
+		 */
+		private void recordLatency( long theLatency ) {
+			long currentAverage = averageLatency;
+			averageLatency = currentAverage == 0 ? theLatency : ( long )( currentAverage + ( theLatency - currentAverage ) * LATENCY_WEIGHT );
+		}
+	}
+	
+	/**
+	 * The reason a request was refused and when it may be retried.
+	 */
+	public static final class Rejection {
+		private final Status status;
+		private final String subcode;
+		private final long retryAfter;
+		
+		private Rejection( Status theStatus, String theSubcode, long theRetryAfter ) {
+			status = theStatus;
+			subcode = theSubcode;
+			retryAfter = theRetryAfter;
+		}
+		
+		/**
+		 * The status to return to the caller.
+		 * @return the status
+		 */
+		public Status getStatus( ) {
+			return status;
+		}
+		
+		/**
+		 * A code describing why the request was refused.
+		 * @return the subcode
+		 */
+		public String getSubcode( ) {
+			return subcode;
+		}
+		
+		/**
+		 * How long the caller should wait before trying again.
+		 * @return the time to wait, in milliseconds
+		 */
+		public long getRetryAfter( ) {
+			return retryAfter;
+		}
+	}
+	
+	private final int queueLimit;
+	private final long latencyBudget; // nanos
+	private final Map<String,TypeAdmission> admissions = new ConcurrentHashMap<>( );
+	
+	private final AtomicLong admittedRequests = new AtomicLong( );
+	private final AtomicLong queueRejections = new AtomicLong( );
+	private final AtomicLong latencyRejections = new AtomicLong( );
+	
+	/**
+	 * Constructor taking the limits to enforce.
+	 * @param theQueueLimit the number of requests, per type, that may be outstanding
+	 * @param theLatencyBudget the average time, in milliseconds, requests for a type may take before requests are refused
+	 */
+	public AdmissionController( int theQueueLimit, long theLatencyBudget ) {
+		Preconditions.checkArgument( theQueueLimit > 0, "the queue limit must be greater than zero" );
+		Preconditions.checkArgument( theLatencyBudget > 0, "the latency budget must be greater than zero" );
+		
+		queueLimit = theQueueLimit;
+		latencyBudget = TimeUnit.MILLISECONDS.toNanos( theLatencyBudget );
+	}
+	
+	/**
+	 * Attempts to admit a request for ids for a type. If admitted, the caller
+	 * must call {@link #release(String, long)} once the request completes.
+	 * @param theTypeName the type the request is for
+	 * @return null if the request was admitted, otherwise the reason it was refused
+	 */
+	public Rejection tryAdmit( String theTypeName ) {
+		Preconditions.checkArgument( !Strings.isNullOrEmpty( theTypeName ), "the type name must not be null or empty" );
+		
+		TypeAdmission admission = admissions.computeIfAbsent( theTypeName, name -> new TypeAdmission( ) );
+		int outstanding = admission.outstanding.incrementAndGet( );
+		
+		if( outstanding > queueLimit ) {
+			admission.outstanding.decrementAndGet( );
+			queueRejections.incrementAndGet( );
+			return new Rejection( Status.OPERATION_RETRY, "queue_full", estimateRetryAfter( admission, outstanding ) );
+		
+		} else if( outstanding > 1 && admission.averageLatency > latencyBudget ) {
+			// the first outstanding request is always let through, otherwise 
+			// the average would never come back down once the disk recovers
+			admission.outstanding.decrementAndGet( );
+			latencyRejections.incrementAndGet( );
+			return new Rejection( Status.LOCAL_UNAVAILABLE, "latency_budget_exceeded", estimateRetryAfter( admission, outstanding ) );
+		
+		} else {
+			admittedRequests.incrementAndGet( );
+			return null;
+		}
+	}
+	
+	/**
+	 * Releases a request that was admitted, recording how long it took.
+	 * @param theTypeName the type the request was for
+	 * @param theLatency how long the request took, in nanoseconds
+	 */
+	public void release( String theTypeName, long theLatency ) {
+		TypeAdmission admission = admissions.get( theTypeName );
+		Preconditions.checkState( admission != null, "type '%s' was released without being admitted", theTypeName );
+		
+		admission.recordLatency( theLatency );
+		admission.outstanding.decrementAndGet( );
+	}
+	
+	/**
+	 * Helper method that estimates how long it will take for the requests 
+	 * ahead of a refused request to complete.
+	 * @param theAdmission the type's admission state
+	 * @param theOutstanding the number of requests outstanding, including the refused one
+	 * @return the time to wait, in milliseconds
+	 */
+	private static long estimateRetryAfter( TypeAdmission theAdmission, int theOutstanding ) {
+		return Math.max( MINIMUM_RETRY_AFTER, TimeUnit.NANOSECONDS.toMillis( theAdmission.averageLatency * theOutstanding ) );
+	}
+
+	/**
+	 * The number of requests that were admitted.
+	 * @return the number of admitted requests
+	 */
+	@MonitorableStatusValue( name = "admitted_requests", description = "The number of requests for ids that were admitted." )
+	public long getAdmittedRequests( ) {
+		return admittedRequests.get( );
+	}
+
+	/**
+	 * The number of requests refused because too many requests for the type were outstanding.
+	 * @return the number of refused requests
+	 */
+	@MonitorableStatusValue( name = "queue_rejections", description = "The number of requests for ids refused because too many requests for the type were outstanding." )
+	public long getQueueRejections( ) {
+		return queueRejections.get( );
+	}
+
+	/**
+	 * The number of requests refused because requests for the type were taking too long.
+	 * @return the number of refused requests
+	 */
+	@MonitorableStatusValue( name = "latency_rejections", description = "The number of requests for ids refused because requests for the type were over the latency budget." )
+	public long getLatencyRejections( ) {
+		return latencyRejections.get( );
+	}
+}
@@ -27,6 +27,11 @@ class ConfigurationConstants {
 	public static final String MAXIMUM_CACHE_AGE = "id_source.maximum_cache_age";
 	public static final int MAXIMUM_CACHE_AGE_DEFAULT = 86400;
 	
+	public static final String ADMISSION_QUEUE_LIMIT = "object_id_engine.admission.queue_limit";
+	public static final int ADMISSION_QUEUE_LIMIT_DEFAULT = 64;
+	public static final String ADMISSION_LATENCY_BUDGET = "object_id_engine.admission.latency_budget"; // in milliseconds
+	public static final int ADMISSION_LATENCY_BUDGET_DEFAULT = 500;
+	
 	public static final String DATA_DIRECTORY = "object_id_engine.data_directory";
 	public static final String SUPPORTED_TYPES = "object_id_engine.types";
 	public static final String TYPE_DETAILS_FORMAT = SUPPORTED_TYPES + ".%s";
@@ -0,0 +1,148 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+
+import com.talvish.tales.communication.Status;
+import com.talvish.tales.rigs.objectid.client.IdBlock;
+import com.talvish.tales.rigs.objectid.client.IdBlockSource;
+import com.talvish.tales.rigs.objectid.client.IdSourceResult;
+import com.talvish.tales.rigs.objectid.client.IdType;
+
+/**
+ * An id block source that gets blocks directly from an engine running in
+ * the same process, avoiding the cost of HTTP and JSON when a service runs
+ * alongside the data directory. Requests go through the same validation 
+ * as the resource and blocks are persisted by the engine exactly as they 
+ * are when requested over HTTP.
+ * <p>
+ * The source works in terms of the client's IdType and IdBlock, so the 
+ * engine's blocks are converted in {@link #toClientBlock}.
+ * @author jmolnar
+ *
+ */
+public class EmbeddedIdBlockSource implements IdBlockSource {
+	/**
+	 * The client form of the types in a version of the engine's type registry.
+	 */
+	private static final class ConvertedTypes {
+		private final TypeRegistry registry;
+		private final List<IdType> types;
+		
+		private ConvertedTypes( TypeRegistry theRegistry, List<IdType> theTypes ) {
+			registry = theRegistry;
+			types = theTypes;
+		}
+	}
+	
+	private final ObjectIdEngine engine;
+	private volatile ConvertedTypes convertedTypes;
+	
+	/**
+	 * Constructor taking the engine to get blocks from.
+	 * @param theEngine the engine to use
+	 */
+	public EmbeddedIdBlockSource( ObjectIdEngine theEngine ) {
+		Preconditions.checkArgument( theEngine != null, "need an engine" );
+		engine = theEngine;
+	}
+	
+	/**
+	 * The engine blocks are retrieved from.
+	 * @return the engine
+	 */
+	public ObjectIdEngine getEngine( ) {
+		return engine;
+	}
+
+	@Override
+	public IdSourceResult<List<IdType>> getTypes( ) {
+		return getTypes( null );
+	}
+
+	/**
+	 * Returns the types from the engine's registry, unless they haven't changed 
+	 * since the entity tag given. Like the resource, last values are not included.
+	 * The client form of the types is only created when the registry changes.
+	 * @param theEntityTag the entity tag from the previous result, which may be null
+	 * @return the result containing the types
+	 */
+	@Override
+	public IdSourceResult<List<IdType>> getTypes( String theEntityTag ) {
+		TypeRegistry registry = engine.getTypeRegistry( );
+		LocalDateTime expiration = LocalDateTime.now( ).plusSeconds( engine.getMaximumCacheAge( ) );
+		
+		if( registry.getEntityTag( ).equals( theEntityTag ) ) {
+			return new IdSourceResult<>( null, Status.OPERATION_NOT_MODIFIED, null, expiration, 0, registry.getEntityTag( ) );
+		}
+		ConvertedTypes converted = convertedTypes;
+		if( converted == null || converted.registry != registry ) {
+			List<IdType> clientTypes = new ArrayList<>( registry.getTypes( ).size( ) );
+			
+			for( IdTypeMetadata type : registry.getTypes( ) ) {
+				clientTypes.add( new IdType( type.getName( ), type.getDescription( ), type.getId( ), type.getSource( ), 0 ) );
+			}
+			converted = new ConvertedTypes( registry, Collections.unmodifiableList( clientTypes ) );
+			convertedTypes = converted;
+		}
+		return new IdSourceResult<>( converted.types, Status.OPERATION_COMPLETED, null, expiration, 0, registry.getEntityTag( ) );
+	}
+
+	@Override
+	public IdSourceResult<IdBlock> generateIds( String theTypeName, long theAmount ) {
+		// these match the constraints on the resource
+		if( Strings.isNullOrEmpty( theTypeName ) ) {
+			return new IdSourceResult<>( null, Status.CALLER_BAD_INPUT, "the type name must be given", null );
+		} else if( theAmount < 1 || theAmount > Integer.MAX_VALUE ) {
+			return new IdSourceResult<>( null, Status.CALLER_BAD_INPUT, String.format( "the amount, %s, must be between 1 and %s", theAmount, Integer.MAX_VALUE ), null );
+		}
+		
+		IdBlock idBlock;
+		try {
+			idBlock = toClientBlock( engine.generateIds( theTypeName, theAmount ) );
+		} catch( IllegalArgumentException e ) {
+			return new IdSourceResult<>( null, Status.CALLER_BAD_INPUT, e.getMessage( ), null );
+		} catch( IllegalStateException e ) {
+			return new IdSourceResult<>( null, Status.LOCAL_ERROR, e.getMessage( ), null );
+		}
+		
+		if( idBlock == null ) {
+			return new IdSourceResult<>( null, Status.CALLER_NOT_FOUND, String.format( "Could not find the type identified by the name '%s'.", theTypeName ), null );
+		} else {
+			return new IdSourceResult<>( idBlock, Status.OPERATION_COMPLETED, null, null );
+		}
+	}
+	
+	/**
+	 * Helper method that converts a block from the engine into the client's form.
+	 * @param theBlock the block from the engine, which may be null
+	 * @return the client form of the block, or null if no block was given
+	 */
+	private static IdBlock toClientBlock( com.talvish.tales.rigs.objectid.service.IdBlock theBlock ) {
+		if( theBlock == null ) {
+			return null;
+		} else {
+			return new IdBlock( theBlock.getSourceId( ), theBlock.getTypeName( ), theBlock.getTypeId( ), theBlock.getStartValue( ), theBlock.getEndValue( ) );
+		}
+	}
+}
@@ -0,0 +1,75 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.service;
+
+import com.google.common.base.Preconditions;
+import com.talvish.tales.contracts.data.DataContract;
+import com.talvish.tales.contracts.data.DataMember;
+
+/**
+ * The last value generated for a particular type at the time it was
+ * requested. These change with every block generated, so are never cached.
+ * @author jmolnar
+ *
+ */
+@DataContract( name ="com.talvish.tales.object_id.id_type_counter")
+public class IdTypeCounter {
+	@DataMember( name="name")private String name;
+	@DataMember( name="id" )private int id;
+	@DataMember( name="last_value" )private long lastValue;
+
+	/**
+	 * Constructor used for serialization.
+	 */
+	protected IdTypeCounter( ) {
+	}
+
+	/**
+	 * Constructor taking the type to get the counter from.
+	 * @param theType the type to get the counter from
+	 */
+	public IdTypeCounter( IdType theType ) {
+		Preconditions.checkNotNull( theType, "need a type" );
+		
+		name = theType.getName( );
+		id = theType.getId( );
+		lastValue = theType.getLastValue( );
+	}
+	
+	/**
+	 * Returns the name for the type.
+	 * @return the name
+	 */
+	public String getName( ) {
+		return name;
+	}
+	
+	/**
+	 * Gets the type's id value.
+	 * @return the type id
+	 */
+	public int getId( ) {
+		return id;
+	}
+	
+	/**
+	 * Returns the last value generated for the type.
+	 * @return the last value
+	 */
+	public long getLastValue( ) {
+		return lastValue;
+	}
+}
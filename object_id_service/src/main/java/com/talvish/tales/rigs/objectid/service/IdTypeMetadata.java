@@ -0,0 +1,102 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.service;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.talvish.tales.contracts.data.DataContract;
+import com.talvish.tales.contracts.data.DataMember;
+
+/**
+ * The unchanging information for a particular type. Unlike {@link IdType}
+ * this does not include the last value, which changes with every block 
+ * generated, so responses containing it can be cached and revalidated 
+ * using its entity tag.
+ * @author jmolnar
+ *
+ */
+@DataContract( name ="com.talvish.tales.object_id.id_type_metadata")
+public class IdTypeMetadata {
+	@DataMember( name="name")private String name;
+	@DataMember( name="description" )private String description;
+	@DataMember( name="id" )private int id;
+	@DataMember( name="source")private long source;
+	
+	private final String entityTag;
+
+	/**
+	 * Constructor used for serialization.
+	 */
+	protected IdTypeMetadata( ) {
+		entityTag = null;
+	}
+
+	/**
+	 * Constructor taking the type the metadata is for.
+	 * @param theType the type to take the metadata from
+	 * @param theEntityTag the entity tag for the metadata
+	 */
+	public IdTypeMetadata( IdType theType, String theEntityTag ) {
+		Preconditions.checkNotNull( theType, "need a type" );
+		Preconditions.checkArgument( !Strings.isNullOrEmpty( theEntityTag ), "need an entity tag for type '%s'", theType.getName( ) );
+		
+		name = theType.getName( );
+		description = theType.getDescription( );
+		id = theType.getId( );
+		source = theType.getSource( );
+		entityTag = theEntityTag;
+	}
+	
+	/**
+	 * Returns the name for the type.
+	 * @return the name
+	 */
+	public String getName( ) {
+		return name;
+	}
+	
+	/**
+	 * Returns the description for the type.
+	 * @return the description
+	 */
+	public String getDescription( ) {
+		return description;
+	}
+	
+	/**
+	 * Gets the type's id value.
+	 * @return the type id
+	 */
+	public int getId( ) {
+		return id;
+	}
+	
+	/**
+	 * Gets the source associated with this particular id/value.
+	 * @return the source
+	 */
+	public long getSource( ) {
+		return source;
+	}
+	
+	/**
+	 * The strong entity tag for the metadata, which only changes if the metadata does.
+	 * @return the entity tag, quoted as needed for an ETag header
+	 */
+	public String getEntityTag( ) {
+		return entityTag;
+	}
+}
@@ -63,6 +63,7 @@ public class ObjectIdEngine {
 	private volatile Map<Integer,IdType> idTypesById = new HashMap<Integer,IdType>( );
 	private volatile Map<String,IdType> idTypesByName = new HashMap<String,IdType>( );
 	private volatile List<IdType> externalIdTypes;
+	private volatile TypeRegistry typeRegistry;
 	
 
 	/**
@@ -121,6 +122,29 @@ public class ObjectIdEngine {
 		return externalIdTypes;
 	}
 	
+	/**
+	 * Returns the metadata, which excludes last values, for the types in the system.
+	 * The registry returned only changes if the metadata does.
+	 * @return the current type registry
+	 */
+	TypeRegistry getTypeRegistry( ) {
+		return typeRegistry;
+	}
+	
+	/**
+	 * Returns the last value generated for each type in the system.
+	 * @return the counters for the available types
+	 */
+	public List<IdTypeCounter> getCounters( ) {
+		List<IdType> types = externalIdTypes;
+		List<IdTypeCounter> counters = new ArrayList<IdTypeCounter>( types.size( ) );
+		
+		for( IdType type : types ) {
+			counters.add( new IdTypeCounter( type ) );
+		}
+		return counters;
+	}
+	
 	/**
 	 * Returns a specific id type.
 	 * @param theTypeId the type id to retrieve information for
@@ -158,10 +182,15 @@ public class ObjectIdEngine {
 		IdType idType = this.idTypesByName.get( theTypeName ); 
 	
 		if( idType != null ) {
-			// get the last value so we can re-use it (and not worry about it changing)
-			long lastValue = idType.getLastValue();
-			// next we increment the last value, which will if we overflow
-			idType.incrementLastValue( theAmount ); // if the amount is too big, this will throw an exception
+			long lastValue;
+			// reading and incrementing must be done together, otherwise concurrent 
+			// requests for the same type could be handed overlapping blocks
+			synchronized( idType ) {
+				// get the last value so we can re-use it (and not worry about it changing)
+				lastValue = idType.getLastValue();
+				// next we increment the last value, which will if we overflow
+				idType.incrementLastValue( theAmount ); // if the amount is too big, this will throw an exception
+			}
 			// now calculate our change
 			long startValue = lastValue + 1;
 			long endValue = lastValue + theAmount;
@@ -211,6 +240,8 @@ public class ObjectIdEngine {
 		// and we reset the external version, the gap of time between these where the wrong ones
 		// could be returned is acceptable and not problematic
 		externalIdTypes = Collections.unmodifiableList( new ArrayList<IdType>( idTypesById.values( ) ) );
+		// the registry is only replaced if the metadata changed, so entity tags stay valid
+		typeRegistry = TypeRegistry.create( externalIdTypes, typeRegistry );
 	}
 	
 	/**
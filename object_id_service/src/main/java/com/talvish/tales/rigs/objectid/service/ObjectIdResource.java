@@ -16,11 +16,13 @@
 package com.talvish.tales.rigs.objectid.service;
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 
 import com.talvish.tales.communication.Status;
+import com.talvish.tales.contracts.services.http.HeaderParam;
 import com.talvish.tales.contracts.services.http.PathParam;
 import com.talvish.tales.contracts.services.http.RequestParam;
 import com.talvish.tales.contracts.services.http.ResourceContract;
@@ -32,20 +34,35 @@ import com.talvish.tales.validation.constraints.NotEmpty;
 
 /**
  * HTTP resource contract for generating ids for client services.
+ * <p>
+ * Version 20161101 returns type metadata, without last values, that can be
+ * revalidated using entity tags and adds the counters operation. Version 
+ * 20141001 is still served, returning types with their last values.
  * @author Joseph Molnar
  *
  */
-@ResourceContract( name="com.tales.object_id_contract", versions={ "20141001" } )
+@ResourceContract( name="com.tales.object_id_contract", versions={ "20141001", "20161101" } )
 public class ObjectIdResource {
+	private static final String ORIGINAL_VERSION = "20141001";
+	private static final String METADATA_VERSION = "20161101";
+	
+	private static final String RETRY_AFTER_HEADER = "Retry-After";
+	private static final String ENTITY_TAG_HEADER = "ETag";
+	private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+
 	private final ObjectIdEngine engine;
+	private final AdmissionController admissionController;
 	
 	/**
 	 * Constructor taking the engine needed by the resource.
 	 * @param theEngine the engine to use
+	 * @param theAdmissionController the controller limiting outstanding requests for ids
 	 */
-	public ObjectIdResource( ObjectIdEngine theEngine ) {
+	public ObjectIdResource( ObjectIdEngine theEngine, AdmissionController theAdmissionController ) {
 		Preconditions.checkArgument( theEngine != null, "need an engine" );
+		Preconditions.checkArgument( theAdmissionController != null, "need an admission controller" );
 		engine = theEngine;
+		admissionController = theAdmissionController;
 	}
 	
 	/**
@@ -57,11 +74,26 @@ public class ObjectIdResource {
 	}
 
 	/**
-	 * Returns the list of id types in the system.
+	 * Returns the list of id types in the system. The last values of the types
+	 * are not included, see {@link #getCounters()}, so the response only changes
+	 * when the types do and can be revalidated using the entity tag.
+	 * @param theEntityTags the entity tags, from If-None-Match, the caller already has
 	 * @return the list of available IdTypes
 	 */
-	@ResourceOperation( name="get_id_types", path="GET : types" )
-	public ResourceResult<List<IdType>> getTypes( ) {
+	@ResourceOperation( name="get_id_types", path="GET : types", versions={ METADATA_VERSION } )
+	public ResourceResult<List<IdTypeMetadata>> getTypes( @HeaderParam( name=IF_NONE_MATCH_HEADER )String theEntityTags ) {
+		TypeRegistry registry = engine.getTypeRegistry( );
+		
+		return respond( registry.getTypes( ), registry.getEntityTag( ), theEntityTags );
+	}
+
+	/**
+	 * Returns the list of id types in the system, including their last values,
+	 * as done by the original version of the contract.
+	 * @return the list of available IdTypes
+	 */
+	@ResourceOperation( name="get_id_types", path="GET : types", versions={ ORIGINAL_VERSION } )
+	public ResourceResult<List<IdType>> getTypesWithValues( ) {
 		ResourceResult<List<IdType>> result = new ResourceResult<List<IdType>>( );
 		
 		result.setResult( engine.getTypes(), Status.OPERATION_COMPLETED );
@@ -70,22 +102,55 @@ public class ObjectIdResource {
 		return result;
 	}
 
+	/**
+	 * Returns the last value generated for each type in the system. Unlike
+	 * the type information, these change constantly so are never cached.
+	 * @return the counters for the available types
+	 */
+	@ResourceOperation( name="get_id_type_counters", path="GET : counters", versions={ METADATA_VERSION } )
+	public ResourceResult<List<IdTypeCounter>> getCounters( ) {
+		ResourceResult<List<IdTypeCounter>> result = new ResourceResult<List<IdTypeCounter>>( );
+		
+		result.setResult( engine.getCounters( ), Status.OPERATION_COMPLETED );
+		result.setCachingDisabled( );
+		
+		return result;
+	}
+
 
 	/**
 	 * Returns a specific id type.
 	 * @param theTypeId the type id to retrieve information for
+	 * @param theEntityTags the entity tags, from If-None-Match, the caller already has
 	 * @return the information regarding the specified type id
 	 */
 	//@Cache( maxAge="com.somethign.something" )
 	//@NotNull( ) // though we would want it to act differently depending on issue (so, sometimes a 401 or so)
-	@ResourceOperation( name="get_id_type_by_id", path="GET : types/{type_id : [0-9]+}" ) // regex separates from below method, this must be a number
-	public ResourceResult<IdType> getType( @Min( 1 ) @PathParam( name="type_id" )int theTypeId ) { 
+	@ResourceOperation( name="get_id_type_by_id", path="GET : types/{type_id : [0-9]+}", versions={ METADATA_VERSION } ) // regex separates from below method, this must be a number
+	public ResourceResult<IdTypeMetadata> getType( 
+			@Min( 1 ) @PathParam( name="type_id" )int theTypeId,
+			@HeaderParam( name=IF_NONE_MATCH_HEADER )String theEntityTags ) { 
+		IdTypeMetadata idType = engine.getTypeRegistry( ).getType( theTypeId );
+		
+		Conditions.checkFound( idType != null, Integer.toString( theTypeId ), "Could not find the type identified by the id '%s'.", theTypeId );
+		
+		return respond( idType, idType.getEntityTag( ), theEntityTags );
+	}
+
+	/**
+	 * Returns a specific id type, including its last value, as done by the 
+	 * original version of the contract.
+	 * @param theTypeId the type id to retrieve information for
+	 * @return the information regarding the specified type id
+	 */
+	@ResourceOperation( name="get_id_type_by_id", path="GET : types/{type_id : [0-9]+}", versions={ ORIGINAL_VERSION } ) // regex separates from below method, this must be a number
+	public ResourceResult<IdType> getTypeWithValue( @Min( 1 ) @PathParam( name="type_id" )int theTypeId ) { 
 		ResourceResult<IdType> result = new ResourceResult<IdType>( );
 		IdType idType = engine.getType( theTypeId );
 		
 		Conditions.checkFound( idType != null, Integer.toString( theTypeId ), "Could not find the type identified by the id '%s'.", theTypeId );
 		
-		result.setResult( idType, Status.OPERATION_COMPLETED );;
+		result.setResult( idType, Status.OPERATION_COMPLETED );
 		result.setCachingEnabled( engine.getMaximumCacheAge( ) );
 		
 		return result;
@@ -94,35 +159,114 @@ public class ObjectIdResource {
 	/**
 	 * Returns a specific id type.
 	 * @param theTypeName the type name to retrieve information for
+	 * @param theEntityTags the entity tags, from If-None-Match, the caller already has
 	 * @return the information regarding the specified type name
 	 */
-	@ResourceOperation( name="get_id_type_by_name", path="GET : types/{type_name : [a-zA-Z_].*}" ) // regex separates from above method, this must start with a letter or underscore
-	public ResourceResult<IdType> getType( @NotEmpty @PathParam( name="type_name" )String theTypeName ) { 
+	@ResourceOperation( name="get_id_type_by_name", path="GET : types/{type_name : [a-zA-Z_].*}", versions={ METADATA_VERSION } ) // regex separates from above method, this must start with a letter or underscore
+	public ResourceResult<IdTypeMetadata> getType( 
+			@NotEmpty @PathParam( name="type_name" )String theTypeName,
+			@HeaderParam( name=IF_NONE_MATCH_HEADER )String theEntityTags ) { 
+		IdTypeMetadata idType = engine.getTypeRegistry( ).getType( theTypeName );
+		
+		Conditions.checkFound( idType != null, theTypeName, "Could not find the type identified by the name '%s'.", theTypeName ); // TODO: and this is why you have constraints on the return side 
+
+		return respond( idType, idType.getEntityTag( ), theEntityTags );
+	}
+
+	/**
+	 * Returns a specific id type, including its last value, as done by the 
+	 * original version of the contract.
+	 * @param theTypeName the type name to retrieve information for
+	 * @return the information regarding the specified type name
+	 */
+	@ResourceOperation( name="get_id_type_by_name", path="GET : types/{type_name : [a-zA-Z_].*}", versions={ ORIGINAL_VERSION } ) // regex separates from above method, this must start with a letter or underscore
+	public ResourceResult<IdType> getTypeWithValue( @NotEmpty @PathParam( name="type_name" )String theTypeName ) { 
 		ResourceResult<IdType> result = new ResourceResult<IdType>( );
 		IdType idType = engine.getType( theTypeName );
 		
-		Conditions.checkFound( idType != null, theTypeName, "Could not find the type identified by the name '%s'.", theTypeName ); // TODO: and this is why you have constraints on the return side 
+		Conditions.checkFound( idType != null, theTypeName, "Could not find the type identified by the name '%s'.", theTypeName );
 
-		result.setResult( idType, Status.OPERATION_COMPLETED );;
-		result.setCachingEnabled( engine.getMaximumCacheAge( ) ); // TODO: could i make this an annotation BUT have it reference a configuration setting somehow?
+		result.setResult( idType, Status.OPERATION_COMPLETED );
+		result.setCachingEnabled( engine.getMaximumCacheAge( ) );
 		
 		return result;
 	}
 
 	/**
 	 * A request to generate a block of values for a particular type.
+	 * If the type has too many outstanding requests, or requests have
+	 * been slow, the request is refused with a 'Retry-After' header, 
+	 * in seconds, saying when to try again.
 	 * @param theTypeId the type id to generate a block of values for
 	 * @param theAmount the number of values to generate within the block
 	 * @return returns the generate block
 	 */
 	@ResourceOperation( name="generate_ids", path="POST : types/{type_name}/generate_ids" )
-	public IdBlock generateIds( 
+	public ResourceResult<IdBlock> generateIds( 
 			@NotEmpty @PathParam( name="type_name" )String theTypeName,
 			@Min( 1 ) @RequestParam( name="amount")int theAmount ) { 
 
-		IdBlock idBlock = engine.generateIds( theTypeName, theAmount);
-		Conditions.checkFound( idBlock != null, theTypeName, "Could not find the type identified by the name '%s'.", theTypeName );
-				
-		return idBlock;
+		ResourceResult<IdBlock> result = new ResourceResult<IdBlock>( );
+		Conditions.checkFound( engine.getType( theTypeName ) != null, theTypeName, "Could not find the type identified by the name '%s'.", theTypeName );
+
+		AdmissionController.Rejection rejection = admissionController.tryAdmit( theTypeName );
+		if( rejection != null ) {
+			result.setResult( null, rejection.getStatus( ), rejection.getSubcode( ), String.format( "Too many requests for ids of type '%s' are outstanding, try again later.", theTypeName ) );
+			result.setHeader( RETRY_AFTER_HEADER, Long.toString( TimeUnit.MILLISECONDS.toSeconds( rejection.getRetryAfter( ) + 999 ) ) ); // rounding up
+		} else {
+			long requestStart = System.nanoTime( );
+			try {
+				IdBlock idBlock = engine.generateIds( theTypeName, theAmount);
+				Conditions.checkFound( idBlock != null, theTypeName, "Could not find the type identified by the name '%s'.", theTypeName );
+				result.setResult( idBlock, Status.OPERATION_COMPLETED );
+			} finally {
+				admissionController.release( theTypeName, System.nanoTime( ) - requestStart );
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Helper method that creates a cacheable result for type information, 
+	 * leaving out the value if the caller already has the current version.
+	 * @param theValue the value to return
+	 * @param theEntityTag the entity tag for the value
+	 * @param theEntityTags the entity tags, from If-None-Match, the caller already has
+	 * @return the result to send back
+	 */
+	private <T> ResourceResult<T> respond( T theValue, String theEntityTag, String theEntityTags ) {
+		ResourceResult<T> result = new ResourceResult<T>( );
+		
+		if( matches( theEntityTag, theEntityTags ) ) {
+			result.setResult( null, Status.OPERATION_NOT_MODIFIED );
+		} else {
+			result.setResult( theValue, Status.OPERATION_COMPLETED );
+		}
+		result.setHeader( ENTITY_TAG_HEADER, theEntityTag );
+		result.setCachingEnabled( engine.getMaximumCacheAge( ) ); // TODO: could i make this an annotation BUT have it reference a configuration setting somehow?
+		
+		return result;
+	}
+	
+	/**
+	 * Helper method that determines if an entity tag is in the list from an If-None-Match
+	 * header. As required for If-None-Match, weak tags match their strong equivalent.
+	 * @param theEntityTag the current entity tag
+	 * @param theEntityTags the comma separated entity tags the caller has, which may be null
+	 * @return true if the caller has the current version, false otherwise
+	 */
+	private static boolean matches( String theEntityTag, String theEntityTags ) {
+		if( !Strings.isNullOrEmpty( theEntityTags ) ) {
+			for( String entityTag : theEntityTags.split( "," ) ) {
+				entityTag = entityTag.trim( );
+				if( entityTag.startsWith( "W/" ) ) {
+					entityTag = entityTag.substring( 2 );
+				}
+				if( entityTag.equals( "*" ) || entityTag.equals( theEntityTag ) ) {
+					return true;
+				}
+			}
+		}
+		return false;
 	}
 }
@@ -28,6 +28,7 @@ import com.talvish.tales.services.http.ServiceConstants;
  */
 public class ObjectIdService extends Service {
 	private ObjectIdEngine engine;
+	private AdmissionController admissionController;
 
 	public ObjectIdService( ) {
 		super( "object_id_service", "Object Id Service", "A service that generates object ids for other service." );
@@ -38,7 +39,11 @@ public class ObjectIdService extends Service {
 		super.onStart();
 		
 		engine = new ObjectIdEngine( this.getConfigurationManager( ) );
-		this.interfaceManager.getInterface( ServiceConstants.INTERNAL_INTERFACE_NAME, HttpInterface.class ).bind( new ObjectIdResource( engine ), "/id" );
+		admissionController = new AdmissionController( 
+				this.getConfigurationManager( ).getIntegerValue( ConfigurationConstants.ADMISSION_QUEUE_LIMIT, ConfigurationConstants.ADMISSION_QUEUE_LIMIT_DEFAULT ),
+				this.getConfigurationManager( ).getIntegerValue( ConfigurationConstants.ADMISSION_LATENCY_BUDGET, ConfigurationConstants.ADMISSION_LATENCY_BUDGET_DEFAULT ) );
+		this.interfaceManager.getInterface( ServiceConstants.INTERNAL_INTERFACE_NAME, HttpInterface.class ).bind( new ObjectIdResource( engine, admissionController ), "/id" );
+		this.statusManager.register( "admission_controller_status", admissionController );
 
 		// TODO: add status, it would be nice to track the total number of ids generated for the different types
 		//this.statusManager.register( "object_id_engine_status", engine.getStatus( ) );
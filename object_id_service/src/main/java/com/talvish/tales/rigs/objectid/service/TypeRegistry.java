@@ -0,0 +1,142 @@
+// ***************************************************************************
+// *  Copyright 2014 Joseph Molnar
+// *
+// *  Licensed under the Apache License, Version 2.0 (the "License");
+// *  you may not use this file except in compliance with the License.
+// *  You may obtain a copy of the License at
+// *
+// *      http://www.apache.org/licenses/LICENSE-2.0
+// *
+// *  Unless required by applicable law or agreed to in writing, software
+// *  distributed under the License is distributed on an "AS IS" BASIS,
+// *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// *  See the License for the specific language governing permissions and
+// *  limitations under the License.
+// ***************************************************************************
+package com.talvish.tales.rigs.objectid.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hashing;
+
+/**
+ * An immutable view of the metadata for all types, as of a particular
+ * version of the engine's type registry. Entity tags are hashes of the 
+ * metadata, so they are the same across restarts and across services 
+ * sharing the same configuration. The engine swaps in a new registry 
+ * only when the metadata changes.
+ * @author jmolnar
+ *
+ */
+final class TypeRegistry {
+	private final long version;
+	private final String entityTag;
+	private final List<IdTypeMetadata> types;
+	private final Map<Integer,IdTypeMetadata> typesById;
+	private final Map<String,IdTypeMetadata> typesByName;
+	
+	/**
+	 * Constructor taking the metadata for the registry.
+	 */
+	private TypeRegistry( long theVersion, String theEntityTag, List<IdTypeMetadata> theTypes ) {
+		Map<Integer,IdTypeMetadata> byId = new HashMap<>( theTypes.size( ) );
+		Map<String,IdTypeMetadata> byName = new HashMap<>( theTypes.size( ) );
+		for( IdTypeMetadata type : theTypes ) {
+			byId.put( type.getId( ), type );
+			byName.put( type.getName( ), type );
+		}
+		version = theVersion;
+		entityTag = theEntityTag;
+		types = Collections.unmodifiableList( theTypes );
+		typesById = byId;
+		typesByName = byName;
+	}
+	
+	/**
+	 * Creates the registry for the types given. If the metadata hasn't changed 
+	 * from the previous registry, the previous registry is returned.
+	 * @param theTypes the types to create the registry for
+	 * @param thePrevious the current registry, which may be null
+	 * @return the registry to use
+	 */
+	static TypeRegistry create( Collection<IdType> theTypes, TypeRegistry thePrevious ) {
+		Preconditions.checkNotNull( theTypes, "need types" );
+		
+		List<IdType> sortedTypes = new ArrayList<>( theTypes );
+		sortedTypes.sort( Comparator.comparingInt( IdType::getId ) );
+		
+		StringBuilder registryContent = new StringBuilder( );
+		List<IdTypeMetadata> metadata = new ArrayList<>( sortedTypes.size( ) );
+		for( IdType type : sortedTypes ) {
+			String typeContent = String.format( "%s\t%s\t%s\t%s\n", type.getId( ), type.getName( ), type.getSource( ), type.getDescription( ) );
+			registryContent.append( typeContent );
+			metadata.add( new IdTypeMetadata( type, hash( typeContent ) ) );
+		}
+		String newEntityTag = hash( registryContent.toString( ) );
+		
+		if( thePrevious != null && thePrevious.entityTag.equals( newEntityTag ) ) {
+			return thePrevious;
+		} else {
+			return new TypeRegistry( thePrevious == null ? 1 : thePrevious.version + 1, newEntityTag, metadata );
+		}
+	}
+	
+	/**
+	 * Helper method that creates a quoted entity tag from content.
+	 * @param theContent the content to create the tag for
+	 * @return the entity tag
+	 */
+	private static String hash( String theContent ) {
+		return "\"" + Hashing.sha256( ).hashString( theContent, StandardCharsets.UTF_8 ).toString( ).substring( 0, 32 ) + "\"";
+	}
+	
+	/**
+	 * The version of the registry, which increases each time the metadata changes.
+	 * @return the version
+	 */
+	long getVersion( ) {
+		return version;
+	}
+	
+	/**
+	 * The strong entity tag for the metadata of all types.
+	 * @return the entity tag, quoted as needed for an ETag header
+	 */
+	String getEntityTag( ) {
+		return entityTag;
+	}
+	
+	/**
+	 * The metadata for all types, ordered by type id.
+	 * @return the type metadata
+	 */
+	List<IdTypeMetadata> getTypes( ) {
+		return types;
+	}
+	
+	/**
+	 * Gets the metadata for a type by its id.
+	 * @param theTypeId the type id
+	 * @return the metadata, or null if not found
+	 */
+	IdTypeMetadata getType( int theTypeId ) {
+		return typesById.get( theTypeId );
+	}
+
+	/**
+	 * Gets the metadata for a type by its name.
+	 * @param theTypeName the type name
+	 * @return the metadata, or null if not found
+	 */
+	IdTypeMetadata getType( String theTypeName ) {
+		return typesByName.get( theTypeName );
+	}
+}